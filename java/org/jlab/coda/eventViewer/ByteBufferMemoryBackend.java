@@ -0,0 +1,237 @@
+package org.jlab.coda.eventViewer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class maps a file as a list of ByteBuffers since the largest memory map
+ * Java 8 can handle is Integer.MAX_VALUE bytes. Each map (except the last) is a
+ * power of 2 in size so that finding the map and the position in it for any file
+ * position is a shift and a mask instead of a division. Each map also extends
+ * {@link #MAP_OVERLAP} bytes into the next one so that any header, event or other
+ * structure no bigger than that can be viewed, zero-copy, in a single ByteBuffer
+ * no matter where in the file it falls.<p>
+ *
+ * This works on any JVM and is the default.
+ */
+final class ByteBufferMemoryBackend implements MemoryBackend {
+
+    /**
+     * Number of bytes each map extends into the next. This is much larger than any
+     * record header including its index and user header, or most events, so that
+     * these can be viewed without copying even if they cross from one map to the next.
+     */
+    static final int MAP_OVERLAP = 1 << 20;
+
+    /** Power of 2 of the max map size in bytes (2^30 = 1GiB). */
+    private int mapShift = 30;
+    //private int mapShift = 12; // For testing
+
+    /** Max map size in bytes, not counting the overlap with the next map. */
+    private long maxMapSize;
+
+    /** Mask to get position in a map from a file position. */
+    private long mapMask;
+
+    /** Each memory map. */
+    private ByteBuffer[] maps;
+
+    /** Int views of each memory map used for bulk reads. */
+    private IntBuffer[] intMaps;
+
+
+    /**
+     * Constructor which maps the given file channel.
+     * @param fileChannel channel of file to map.
+     * @param fileSize    size of file in bytes.
+     * @param order       byte order of data.
+     * @throws IOException if could not map file.
+     */
+    ByteBufferMemoryBackend(FileChannel fileChannel, long fileSize, ByteOrder order)
+            throws IOException {
+
+        maxMapSize = 1L << mapShift;
+        mapMask = maxMapSize - 1L;
+
+        int mapCount = (int) ((fileSize + maxMapSize - 1L) >>> mapShift);
+        maps = new ByteBuffer[mapCount];
+
+        long offset = 0L, remainingSize = fileSize;
+
+        // Divide the memory into chunks or regions
+        for (int i=0; i < mapCount; i++) {
+            // Map a little extra to overlap the next chunk
+            long mapSize = Math.min(remainingSize, maxMapSize + MAP_OVERLAP);
+            maps[i] = fileChannel.map(FileChannel.MapMode.READ_ONLY, offset, mapSize);
+            maps[i].order(order);
+
+            offset += maxMapSize;
+            remainingSize -= maxMapSize;
+        }
+
+        createIntViews();
+    }
+
+
+    /**
+     * Constructor which uses the given buffer as the one and only map.
+     * @param buf buffer to use.
+     */
+    ByteBufferMemoryBackend(ByteBuffer buf) {
+        // Everything is in the one map
+        mapShift = 31;
+        maxMapSize = 1L << mapShift;
+        mapMask = maxMapSize - 1L;
+
+        maps = new ByteBuffer[] {buf};
+        createIntViews();
+    }
+
+
+    /**
+     * Constructor which reads the maps of another backend in the same byte order.
+     * @param other backend whose maps are read.
+     */
+    private ByteBufferMemoryBackend(ByteBufferMemoryBackend other) {
+        mapShift   = other.mapShift;
+        maxMapSize = other.maxMapSize;
+        mapMask    = other.mapMask;
+
+        // A duplicate's order is big endian, so set it
+        maps = new ByteBuffer[other.maps.length];
+        for (int i=0; i < maps.length; i++) {
+            maps[i] = other.maps[i].duplicate();
+            maps[i].order(other.maps[i].order());
+        }
+        createIntViews();
+    }
+
+
+    /**
+     * Create the int views of each map used in bulk reads.
+     * Must be redone when the byte order changes.
+     */
+    private void createIntViews() {
+        intMaps = new IntBuffer[maps.length];
+        for (int i=0; i < maps.length; i++) {
+            ByteBuffer buf = maps[i].duplicate();
+            buf.order(maps[i].order());
+            buf.position(0);
+            intMaps[i] = buf.asIntBuffer();
+        }
+    }
+
+
+    /** {@inheritDoc} */
+    public String getName() {return "ByteBuffer";}
+
+    /** {@inheritDoc} */
+    public void setByteOrder(ByteOrder order) {
+        for (ByteBuffer map : maps) {
+            map.order(order);
+        }
+        createIntViews();
+    }
+
+    /** {@inheritDoc} */
+    public MemoryBackend duplicate() {return new ByteBufferMemoryBackend(this);}
+
+    /** {@inheritDoc} */
+    public int getInt(long bytePosition) {
+        return maps[(int) (bytePosition >>> mapShift)].getInt((int) (bytePosition & mapMask));
+    }
+
+    /** {@inheritDoc} */
+    public short getShort(long bytePosition) {
+        return maps[(int) (bytePosition >>> mapShift)].getShort((int) (bytePosition & mapMask));
+    }
+
+    /** {@inheritDoc} */
+    public byte get(long bytePosition) {
+        return maps[(int) (bytePosition >>> mapShift)].get((int) (bytePosition & mapMask));
+    }
+
+    /** {@inheritDoc} */
+    public void getInts(long bytePosition, int[] dst, int offset, int count) {
+        // Int views require word alignment, so do this the slow way if not
+        if ((bytePosition & 3L) != 0L) {
+            for (int i=0; i < count; i++) {
+                dst[offset + i] = getInt(bytePosition + 4L*i);
+            }
+            return;
+        }
+
+        int read = 0;
+        while (read < count) {
+            int mapIndex  = (int) (bytePosition >>> mapShift);
+            int wordIndex = (int) ((bytePosition & mapMask) >>> 2);
+            // Use a duplicate so the view's position is not shared between threads
+            IntBuffer ib  = intMaps[mapIndex].duplicate();
+
+            // Fast path if all in one map, else read up to the end of this map
+            int n = Math.min(count - read, ib.limit() - wordIndex);
+            ib.position(wordIndex);
+            ib.get(dst, offset + read, n);
+
+            read += n;
+            bytePosition += 4L*n;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void getBytes(long bytePosition, byte[] dst, int offset, int length) {
+        int read = 0;
+        while (read < length) {
+            // Use a duplicate so the map's position is left alone
+            ByteBuffer buf = maps[(int) (bytePosition >>> mapShift)].duplicate();
+            int byteIndex = (int) (bytePosition & mapMask);
+            int n = Math.min(length - read, buf.limit() - byteIndex);
+            buf.position(byteIndex);
+            buf.get(dst, offset + read, n);
+
+            read += n;
+            bytePosition += n;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public ByteBuffer getByteBuffer(long bytePosition, int length) {
+        ByteBuffer map = maps[(int) (bytePosition >>> mapShift)];
+        int byteIndex = (int) (bytePosition & mapMask);
+
+        ByteBuffer buf;
+        if (byteIndex + length <= map.limit()) {
+            // Zero-copy view
+            buf = map.duplicate();
+            buf.limit(byteIndex + length).position(byteIndex);
+            buf = buf.slice();
+        }
+        else {
+            // Too big for overlap region, so copy
+            byte[] array = new byte[length];
+            getBytes(bytePosition, array, 0, length);
+            buf = ByteBuffer.wrap(array);
+        }
+
+        buf.order(map.order());
+        return buf;
+    }
+
+    /** {@inheritDoc} */
+    public boolean canView(long bytePosition, long length) {
+        ByteBuffer map = maps[(int) (bytePosition >>> mapShift)];
+        return (bytePosition & mapMask) + length <= map.limit();
+    }
+
+    /** {@inheritDoc} */
+    public long getMaxMapSize() {return maxMapSize;}
+
+    /** {@inheritDoc} */
+    public int getMapCount() {return maps.length;}
+
+    /** {@inheritDoc} */
+    public ByteBuffer getMap(int mapIndex) {return maps[mapIndex];}
+}
@@ -0,0 +1,218 @@
+package org.jlab.coda.eventViewer;
+
+import org.jlab.coda.cMsg.*;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+/**
+ * This class is a feed of the evio data in the byte arrays of messages
+ * arriving for a cMsg subscription. Each subscriber to the feed gets its own
+ * cMsg subscription. An xml dictionary in a String payload item called
+ * "dictionary" is delivered along with the message's data.<p>
+ *
+ * Messages are delivered on cMsg's callback thread, which never waits so the
+ * server is never blocked. When no more buffers are asked for, a message is
+ * thrown away and counted as dropped by the subscriber. The callback is quick,
+ * so cMsg's own queue of messages for it, which skips messages when full,
+ * only has to hold bursts.
+ * Since senders usually attach the same dictionary to every message, the last
+ * one from each sender is kept and delivered in place of an equal one.
+ */
+class CMsgFeed implements EventFeed {
+
+    /** Number of messages cMsg itself may hold for the callback before skipping some. */
+    private static final int CMSG_QUEUE_SIZE = 10000;
+
+    /** Number of messages cMsg skips at once when its queue is full. */
+    private static final int CMSG_SKIP_SIZE = 500;
+
+    /** Connection to cMsg server. */
+    private final cMsg cmsg;
+
+    /** Subject to subscribe to. */
+    private final String subject;
+
+    /** Type to subscribe to. */
+    private final String type;
+
+
+
+    /**
+     * Constructor.
+     * @param cmsg    connection to cMsg server.
+     * @param subject subject to subscribe to.
+     * @param type    type to subscribe to.
+     */
+    CMsgFeed(cMsg cmsg, String subject, String type) {
+        this.cmsg    = cmsg;
+        this.subject = subject;
+        this.type    = type;
+    }
+
+
+    /** {@inheritDoc} */
+    public String getName() {return "cMsg " + subject + "/" + type;}
+
+
+    /** {@inheritDoc} */
+    public void subscribe(Subscriber subscriber) {
+        MessageSubscription subscription = new MessageSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        try {
+            subscription.setHandle(cmsg.subscribe(subject, type, subscription, null));
+        }
+        catch (cMsgException e) {
+            subscriber.onError(e);
+        }
+    }
+
+
+    /**
+     * This class is both the subscription given to a subscriber
+     * and the callback of the cMsg subscription feeding it.
+     */
+    private final class MessageSubscription extends cMsgCallbackAdapter implements Subscription {
+
+        /** Subscriber given buffers. */
+        private final Subscriber subscriber;
+
+        /** cMsg subscription, set once made. */
+        private cMsgSubscriptionHandle handle;
+
+        /** Buffers requested and not yet delivered. */
+        private long demand;
+
+        /** Set once cancelled. */
+        private volatile boolean cancelled;
+
+        /** Last dictionary received from each sender. Only used by callback thread. */
+        private final HashMap<String, String> dictionaries = new HashMap<String, String>();
+
+
+        MessageSubscription(Subscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+
+        /** {@inheritDoc} */
+        public void request(long n) {
+            if (n < 1) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("requested " + n + " buffers"));
+                return;
+            }
+            synchronized (this) {
+                demand += n;
+                if (demand < 0L) demand = Long.MAX_VALUE;
+            }
+        }
+
+
+        /** {@inheritDoc} */
+        public void cancel() {
+            cancelled = true;
+            unsubscribe();
+        }
+
+
+        /**
+         * Set the cMsg subscription once made, ending it if already cancelled.
+         * @param h cMsg subscription.
+         */
+        void setHandle(cMsgSubscriptionHandle h) {
+            synchronized (this) {
+                handle = h;
+            }
+            if (cancelled) {
+                unsubscribe();
+            }
+        }
+
+
+        /** End the cMsg subscription, if made and not yet ended. */
+        private void unsubscribe() {
+            cMsgSubscriptionHandle h;
+            synchronized (this) {
+                h = handle;
+                handle = null;
+            }
+            if (h == null) return;
+            try {
+                cmsg.unsubscribe(h);
+            }
+            catch (cMsgException e) {
+                // if this fails it's disconnected anyway
+            }
+        }
+
+
+        /**
+         * Take one buffer from the demand, without waiting.
+         * @return {@code false} if none are asked for.
+         */
+        private synchronized boolean takeDemand() {
+            if (demand < 1L) return false;
+            if (demand != Long.MAX_VALUE) demand--;
+            return true;
+        }
+
+
+        /**
+         * Get the kept copy of a dictionary from the given sender,
+         * keeping this one if it's different from the last.
+         * @param sender name of message sender.
+         * @param xml    dictionary XML.
+         * @return kept copy of dictionary XML.
+         */
+        private String getDictionary(String sender, String xml) {
+            if (sender == null) sender = "";
+            String last = dictionaries.get(sender);
+            if (last != null && last.equals(xml)) {
+                return last;
+            }
+            dictionaries.put(sender, xml);
+            return xml;
+        }
+
+
+        /**
+         * Callback method definition.
+         * @param msg        message received from cMsg server
+         * @param userObject not used.
+         */
+        public void callback(cMsgMessage msg, Object userObject) {
+            // Check to see if message may contain evio event (there is a byte array)
+            byte[] data = msg.getByteArray();
+            if (data == null || cancelled) return;
+
+            // Never block the callback, and so the server, waiting for demand
+            if (!takeDemand()) {
+                subscriber.onDropped(1L);
+                return;
+            }
+
+            // Any dictionary must be taken now since the message is not kept
+            String dictionary = null;
+            cMsgPayloadItem payloadItem = msg.getPayloadItem("dictionary");
+            if (payloadItem != null) {
+                try { dictionary = getDictionary(msg.getSender(), payloadItem.getString()); }
+                catch (cMsgException e) { }
+            }
+
+            subscriber.onNext(ByteBuffer.wrap(data), dictionary);
+        }
+
+        /** Deliver messages one at a time, in order. */
+        public boolean mustSerializeMessages() {return true;}
+
+        /** Rather than block the server, skip messages if falling behind. */
+        public boolean maySkipMessages() {return true;}
+
+        /** Hold many messages before skipping. */
+        public int getMaximumQueueSize() {return CMSG_QUEUE_SIZE;}
+
+        /** Number of messages skipped at once. */
+        public int getSkipSize() {return CMSG_SKIP_SIZE;}
+    }
+}
@@ -0,0 +1,79 @@
+package org.jlab.coda.eventViewer;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class counts the hits and misses of a cache.
+ * Obtain objects of this class from {@link MetricsRegistry#cache(String)}.
+ */
+public class CacheMetric implements CacheMetricMBean {
+
+    /** Name of cache. */
+    private final String name;
+
+    /** Number of lookups that found what they wanted. */
+    private final LongAdder hits = new LongAdder();
+
+    /** Number of lookups that did not find what they wanted. */
+    private final LongAdder misses = new LongAdder();
+
+
+    /**
+     * Constructor.
+     * @param name name of cache.
+     */
+    CacheMetric(String name) {
+        this.name = name;
+    }
+
+
+    /**
+     * Get the name of the cache.
+     * @return name of the cache.
+     */
+    public String getName() {return name;}
+
+    /** Count a hit. */
+    public void hit() {hits.increment();}
+
+    /** Count a miss. */
+    public void miss() {misses.increment();}
+
+    /**
+     * Count a hit or a miss.
+     * @param hit {@code true} if hit, {@code false} if miss.
+     */
+    public void lookup(boolean hit) {
+        if (hit) hits.increment();
+        else     misses.increment();
+    }
+
+    /** {@inheritDoc} */
+    public long getHits() {return hits.sum();}
+
+    /** {@inheritDoc} */
+    public long getMisses() {return misses.sum();}
+
+    /** {@inheritDoc} */
+    public double getHitRate() {
+        long h = hits.sum(), total = h + misses.sum();
+        if (total == 0) return 0.;
+        return (double) h / total;
+    }
+
+    /** {@inheritDoc} */
+    public void reset() {
+        hits.reset();
+        misses.reset();
+    }
+
+
+    /**
+     * Get a one line summary of this metric.
+     * @return one line summary of this metric.
+     */
+    public String toString() {
+        return String.format("%-20s hits %,d, misses %,d, hit rate %.1f%%",
+                             name, getHits(), getMisses(), 100.*getHitRate());
+    }
+}
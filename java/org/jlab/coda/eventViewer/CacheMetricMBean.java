@@ -0,0 +1,19 @@
+package org.jlab.coda.eventViewer;
+
+/**
+ * This interface describes what JMX clients can see of a {@link CacheMetric}.
+ */
+public interface CacheMetricMBean {
+
+    /** @return number of lookups that found what they wanted. */
+    long getHits();
+
+    /** @return number of lookups that did not find what they wanted. */
+    long getMisses();
+
+    /** @return fraction of lookups that were hits, 0 if none. */
+    double getHitRate();
+
+    /** Set all values back to zero. */
+    void reset();
+}
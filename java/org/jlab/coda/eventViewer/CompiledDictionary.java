@@ -0,0 +1,168 @@
+package org.jlab.coda.eventViewer;
+
+import org.jlab.coda.jevio.*;
+
+import java.util.Arrays;
+
+/**
+ * This class wraps an evio dictionary so that finding the name of a structure
+ * is a lookup in a table keyed by a primitive int made from its tag and num
+ * instead of going through the dictionary's string and object keyed maps.
+ * Names of all tag/num and tag-only entries are found when this object is
+ * created. Any other tag and num, such as those matching a tag range, is looked
+ * up in the dictionary the first time it is seen and remembered afterwards.
+ * This object is given to evio's NameProvider so that it is what supplies the
+ * descriptions in the event tree.
+ */
+final class CompiledDictionary implements INameProvider {
+
+    /** Value of num in a key for structures without one (segments, tagsegments). */
+    private static final int NO_NUM = 0x100;
+
+    /** Marks an empty slot in the table. */
+    private static final int EMPTY = -1;
+
+    /** Dictionary being wrapped. */
+    private final EvioXMLDictionary dictionary;
+
+    /** Keys of table made from tag and num. */
+    private int[] keys;
+
+    /** Names in table. */
+    private String[] names;
+
+    /** Number of entries in table. */
+    private int count;
+
+
+
+    /**
+     * Constructor which finds the names of all the dictionary's
+     * tag/num and tag-only entries.
+     * @param dictionary dictionary to wrap.
+     */
+    CompiledDictionary(EvioXMLDictionary dictionary) {
+        this.dictionary = dictionary;
+
+        int size = 64;
+        int entries = dictionary.tagNumMap.size() + dictionary.tagOnlyMap.size();
+        while (size < 2*entries) size *= 2;
+        keys  = new int[size];
+        names = new String[size];
+        Arrays.fill(keys, EMPTY);
+
+        // Ask the dictionary itself so the order it searches its maps in is respected
+        for (EvioDictionaryEntry entry : dictionary.tagNumMap.keySet()) {
+            Integer tag = entry.getTag();
+            Integer num = entry.getNum();
+            if (tag == null || num == null) continue;
+            put(key(tag, num), dictionary.getName(tag, num));
+        }
+
+        for (EvioDictionaryEntry entry : dictionary.tagOnlyMap.keySet()) {
+            Integer tag = entry.getTag();
+            if (tag == null) continue;
+            put(key(tag, NO_NUM), dictionary.getName(tag, null));
+        }
+    }
+
+
+    /**
+     * Get the dictionary being wrapped.
+     * @return dictionary being wrapped.
+     */
+    EvioXMLDictionary getDictionary() {return dictionary;}
+
+
+    /**
+     * Make a table key out of a tag and num.
+     * @param tag tag.
+     * @param num num, or NO_NUM if none.
+     * @return key.
+     */
+    private static int key(int tag, int num) {
+        return ((tag & 0xffff) << 9) | (num & 0x1ff);
+    }
+
+
+    /**
+     * Find the slot of the given key, or the empty slot where it belongs.
+     * @param key key.
+     * @return index into table.
+     */
+    private int slot(int key) {
+        int mask = keys.length - 1;
+        // Spread bits since tags are often consecutive
+        int i = (key * 0x9E3779B9) >>> 7 & mask;
+        while (keys[i] != EMPTY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+
+    /**
+     * Put a name in the table, growing it if it gets more than half full.
+     * @param key  key.
+     * @param name name.
+     */
+    private void put(int key, String name) {
+        int i = slot(key);
+        if (keys[i] == EMPTY) {
+            count++;
+        }
+        keys[i]  = key;
+        names[i] = name;
+
+        if (2*count > keys.length) {
+            int[] oldKeys = keys;
+            String[] oldNames = names;
+            keys  = new int[2*oldKeys.length];
+            names = new String[2*oldKeys.length];
+            Arrays.fill(keys, EMPTY);
+            for (int j=0; j < oldKeys.length; j++) {
+                if (oldKeys[j] != EMPTY) {
+                    int k = slot(oldKeys[j]);
+                    keys[k]  = oldKeys[j];
+                    names[k] = oldNames[j];
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Get the name of a structure with the given tag and num.
+     * Called from both the Swing thread and the thread making tree labels.
+     *
+     * @param tag tag.
+     * @param num num, or -1 if none.
+     * @return name or {@link INameProvider#NO_NAME_STRING} if none.
+     */
+    synchronized String getName(int tag, int num) {
+        int key = key(tag, num < 0 ? NO_NUM : num);
+        int i = slot(key);
+        if (keys[i] == key) {
+            return names[i];
+        }
+
+        // First time for this tag & num
+        String name = dictionary.getName(tag, num < 0 ? null : num);
+        if (name == null) {
+            name = NO_NAME_STRING;
+        }
+        put(key, name);
+        return name;
+    }
+
+
+    /** {@inheritDoc} */
+    public String getName(BaseStructure structure) {
+        BaseStructureHeader header = structure.getHeader();
+        // Segments have no num
+        if (structure instanceof EvioSegment || structure instanceof EvioTagSegment) {
+            return getName(header.getTag(), -1);
+        }
+        return getName(header.getTag(), header.getNumber());
+    }
+}
@@ -0,0 +1,127 @@
+package org.jlab.coda.eventViewer;
+
+import org.jlab.coda.jevio.EvioXMLDictionary;
+import org.jlab.coda.jevio.NameProviderFactory;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * This class keeps all the dictionaries the viewer has parsed so identical
+ * XML arriving again in events from a file, ET system or cMsg server is not
+ * parsed and compiled over and over. Rather than keying on the XML itself,
+ * which would mean hashing and comparing several KB of text for every event,
+ * dictionaries are found by a fingerprint made of the XML's length and a
+ * 64 bit hash of it. The last few XML strings seen are remembered by identity,
+ * and since all events of one ET or cMsg buffer share the same string, the
+ * fingerprint is only computed once per buffer.
+ */
+final class DictionaryRegistry {
+
+    /** Number of XML strings remembered by identity. */
+    private static final int RECENT = 8;
+
+    /** Compiled dictionaries by fingerprint of their XML. */
+    private static final HashMap<Fingerprint, CompiledDictionary> byFingerprint =
+            new HashMap<Fingerprint, CompiledDictionary>(32);
+
+    /** Compiled dictionaries by the dictionary they wrap. */
+    private static final IdentityHashMap<EvioXMLDictionary, CompiledDictionary> byDictionary =
+            new IdentityHashMap<EvioXMLDictionary, CompiledDictionary>(32);
+
+    /** XML strings most recently looked up. */
+    private static final String[] recentXml = new String[RECENT];
+
+    /** Compiled dictionaries of recentXml. */
+    private static final CompiledDictionary[] recentDict = new CompiledDictionary[RECENT];
+
+    /** Next slot of recentXml to replace. */
+    private static int recentIndex;
+
+
+    /** Key made from XML's length and 64 bit hash. */
+    private static final class Fingerprint {
+        /** Length of XML. */
+        final int length;
+        /** 64 bit hash of XML. */
+        final long hash;
+
+        Fingerprint(String xml) {
+            length = xml.length();
+            // FNV-1a
+            long h = 0xcbf29ce484222325L;
+            for (int i=0; i < length; i++) {
+                h ^= xml.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            hash = h;
+        }
+
+        public int hashCode() {return (int) (hash ^ (hash >>> 32));}
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Fingerprint)) return false;
+            Fingerprint f = (Fingerprint) o;
+            return f.length == length && f.hash == hash;
+        }
+    }
+
+
+    private DictionaryRegistry() {}
+
+
+    /**
+     * Get the compiled form of the dictionary in the given XML,
+     * parsing and compiling it if this XML has not been seen before.
+     * This may be called from any thread, so ET and cMsg handlers call
+     * it once for each buffer to keep the work off the Swing thread.
+     *
+     * @param xml dictionary XML.
+     * @return compiled dictionary, or null if xml is null.
+     */
+    static synchronized CompiledDictionary get(String xml) {
+        if (xml == null) return null;
+
+        for (int i=0; i < RECENT; i++) {
+            if (recentXml[i] == xml) {
+                MetricsRegistry.cache(MetricsRegistry.DICTIONARY_CACHE).hit();
+                return recentDict[i];
+            }
+        }
+
+        Fingerprint fingerprint = new Fingerprint(xml);
+        CompiledDictionary compiled = byFingerprint.get(fingerprint);
+        MetricsRegistry.cache(MetricsRegistry.DICTIONARY_CACHE).lookup(compiled != null);
+        if (compiled == null) {
+            EvioXMLDictionary dict = (EvioXMLDictionary) NameProviderFactory.createNameProvider(xml);
+            compiled = new CompiledDictionary(dict);
+            byFingerprint.put(fingerprint, compiled);
+            byDictionary.put(dict, compiled);
+        }
+
+        recentXml[recentIndex]  = xml;
+        recentDict[recentIndex] = compiled;
+        recentIndex = (recentIndex + 1) % RECENT;
+
+        return compiled;
+    }
+
+
+    /**
+     * Get the compiled form of the given dictionary,
+     * such as one read from a file by the user.
+     *
+     * @param dictionary dictionary.
+     * @return compiled dictionary, or null if dictionary is null.
+     */
+    static synchronized CompiledDictionary get(EvioXMLDictionary dictionary) {
+        if (dictionary == null) return null;
+
+        CompiledDictionary compiled = byDictionary.get(dictionary);
+        if (compiled == null) {
+            compiled = new CompiledDictionary(dictionary);
+            byDictionary.put(dictionary, compiled);
+        }
+        return compiled;
+    }
+}
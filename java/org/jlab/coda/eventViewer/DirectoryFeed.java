@@ -0,0 +1,95 @@
+package org.jlab.coda.eventViewer;
+
+import org.jlab.coda.jevio.Utilities;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class is a feed of the evio files of a directory, one after another
+ * in the order of a run's series (run.evio.9 before run.evio.10), starting with
+ * the first. Files which aren't evio are skipped. Each file is fed block by block
+ * (evio 4) or record by record (evio 6).<p>
+ *
+ * When following a directory into which a DAQ is writing a run's files,
+ * new files are waited for. The newest file, which may still be being written,
+ * is only read once a file after it appears. A new file which comes before
+ * those already read is still read, next.
+ */
+class DirectoryFeed extends FileFeed {
+
+    /** Seconds between looks for new files when following. */
+    private static final int LOOK_PERIOD = 1;
+
+    /** Directory of files to feed. */
+    private final File directory;
+
+    /** Wait for new files? */
+    private final boolean follow;
+
+    /** Names of files read or skipped. */
+    private final HashSet<String> done = new HashSet<String>();
+
+    /** Only look at regular files which aren't hidden. */
+    private static final FileFilter filesOnly = new FileFilter() {
+        public boolean accept(File f) {
+            return f.isFile() && !f.isHidden();
+        }
+    };
+
+
+
+    /**
+     * Constructor.
+     * @param directory directory of files to feed.
+     * @param follow    if {@code true}, wait for new files once all are read.
+     */
+    DirectoryFeed(File directory, boolean follow) {
+        super("Directory " + directory.getName());
+        this.directory = directory;
+        this.follow    = follow;
+    }
+
+
+    /** {@inheritDoc} */
+    protected File nextFile() {
+        while (!isCancelled()) {
+            File[] files = directory.listFiles(filesOnly);
+            if (files == null) return null;
+            Arrays.sort(files, RunSession.SERIES_ORDER);
+
+            // The newest file of a directory being followed may not be finished
+            int end = follow ? files.length - 1 : files.length;
+
+            for (int i=0; i < end; i++) {
+                if (!done.add(files[i].getName())) continue;
+                if (isEvio(files[i])) {
+                    return files[i];
+                }
+            }
+
+            if (!follow) return null;
+            LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(LOOK_PERIOD));
+        }
+        return null;
+    }
+
+
+    /**
+     * Is the given file in evio format?
+     * @param file file to look at.
+     * @return {@code true} if evio.
+     */
+    private static boolean isEvio(File file) {
+        try {
+            return Utilities.getEvioVersion(file) > 0;
+        }
+        catch (Exception e) {
+            return false;
+        }
+    }
+}
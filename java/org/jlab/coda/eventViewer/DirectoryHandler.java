@@ -0,0 +1,153 @@
+package org.jlab.coda.eventViewer;
+
+import javax.swing.*;
+import javax.swing.border.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.io.File;
+
+/**
+ * This class views the evio files of a directory, one after another in order of
+ * name, as if they were arriving from ET. It's meant for watching the files of a
+ * run as the DAQ writes them, or looking through a run's files after the fact.
+ * Each block (evio 4) or record (evio 6) is taken through a {@link DirectoryFeed}
+ * as one received buffer.
+ */
+public class DirectoryHandler extends FeedHandler {
+
+    /** Panel to control reading of directory. */
+    private JPanel panel;
+
+    /** Directory whose files are read. */
+    private File directory;
+
+    /** Wait for new files once all are read? */
+    private boolean follow = true;
+
+
+
+    /** Constructor. */
+    public DirectoryHandler() {
+        super("Directory", "files of a directory");
+    }
+
+
+    /**
+     * Get the directory whose files are read.
+     * @return directory whose files are read, or null if none chosen.
+     */
+    public File getDirectory() {return directory;}
+
+    /**
+     * Set the directory whose files are read the next time reading starts.
+     * @param directory directory whose files are read.
+     */
+    public void setDirectory(File directory) {this.directory = directory;}
+
+    /**
+     * Set whether to wait for new files once all are read.
+     * Takes effect the next time reading starts.
+     * @param follow if {@code true}, wait for new files.
+     */
+    public void setFollow(boolean follow) {this.follow = follow;}
+
+
+    /** {@inheritDoc} */
+    protected EventFeed createFeed() {
+        if (directory == null) return null;
+        return new DirectoryFeed(directory, follow);
+    }
+
+
+    /**
+     *  Create the panel/menu-item used to choose and read a directory.
+     * @return the panel/menu-item used to choose and read a directory.
+     */
+    public JPanel createPanel() {
+        if (panel != null) return panel;
+
+        // custom colors
+        final Color darkGreen = new Color(0, 160, 0);
+        final Color darkRed   = new Color(160, 0, 0);
+
+        final JButton startButton = new JButton("Start");
+
+        Border lowerEtched = BorderFactory.createEtchedBorder(EtchedBorder.LOWERED);
+        Border empty = BorderFactory.createEmptyBorder(4,4,4,4);
+
+        // This creates a nice frame
+        CompoundBorder compound = BorderFactory.createCompoundBorder(lowerEtched, empty);
+
+        final JLabel status = new JLabel("  Choose a directory to read  ");
+        status.setForeground(Color.BLUE);
+        status.setBorder(empty);
+
+        JPanel statusPanel = new JPanel(new BorderLayout());
+        statusPanel.add(status, BorderLayout.CENTER);
+        statusPanel.add(getMetrics().createRateLabel(), BorderLayout.SOUTH);
+
+        // directory chooser
+        final JTextField dirName = new JTextField(30);
+        dirName.setEditable(false);
+        JButton chooseButton = new JButton("Directory ...");
+        chooseButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                JFileChooser chooser = new JFileChooser(directory);
+                chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+                if (chooser.showOpenDialog(panel) == JFileChooser.APPROVE_OPTION) {
+                    directory = chooser.getSelectedFile();
+                    dirName.setText(directory.getPath());
+                }
+            }
+        });
+
+        final JCheckBox followBox = new JCheckBox("Wait for new files", follow);
+        followBox.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                follow = followBox.isSelected();
+            }
+        });
+
+        JPanel dirPanel = new JPanel(new BorderLayout(5, 0));
+        dirPanel.add(dirName, BorderLayout.CENTER);
+        dirPanel.add(chooseButton, BorderLayout.EAST);
+
+        JPanel centerPanel = new JPanel(new GridLayout(2, 1, 0, 5));
+        centerPanel.setBorder(compound);
+        centerPanel.add(dirPanel);
+        centerPanel.add(followBox);
+
+        // start/stop button
+        startButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (startButton.getText().equals("Start")) {
+                    if (directory == null) {
+                        status.setForeground(darkRed);
+                        status.setText(" Choose a directory first");
+                        return;
+                    }
+                    getMetrics().reset();
+                    startFillingEventList();
+                    status.setForeground(darkGreen);
+                    status.setText(" Reading " + directory.getName());
+                    startButton.setText("Stop");
+                }
+                else {
+                    stopFillingEventList();
+                    status.setForeground(darkRed);
+                    status.setText(" Stopped reading");
+                    startButton.setText("Start");
+                }
+            }
+        });
+        startButton.setAlignmentX(Component.CENTER_ALIGNMENT);
+
+        // top-level panel
+        panel = new JPanel(new BorderLayout());
+        panel.add(centerPanel, BorderLayout.NORTH);
+        panel.add(statusPanel, BorderLayout.CENTER);
+        panel.add(startButton, BorderLayout.SOUTH);
+
+        return panel;
+    }
+}
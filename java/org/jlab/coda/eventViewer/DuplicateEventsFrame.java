@@ -0,0 +1,328 @@
+package org.jlab.coda.eventViewer;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class implements a window which lists the groups of identical events in
+ * an evio file, such as those left by an event builder sending the same event twice.
+ * The 64 bit hash of every event is computed in parallel directly from the memory
+ * mapped file. Events with the same hash are then compared byte for byte so a hash
+ * collision can never report a false duplicate. The hashes are saved in the file's
+ * index sidecar so searching the same file again is immediate.
+ */
+public class DuplicateEventsFrame extends JFrame {
+
+    /** Session of file being searched. */
+    private FileSession fileSession;
+
+    /** List of groups of identical events. */
+    private DefaultListModel<Group> listModel = new DefaultListModel<Group>();
+
+    /** Shows progress. */
+    private JLabel statusLabel;
+
+    /** Updates the display. */
+    private Timer timer;
+
+    /** Thread doing search. */
+    private Search search;
+
+
+
+    /** Class describing a group of identical events. */
+    private static final class Group {
+        /** Indexes of events starting at 0. */
+        final int[] events;
+        /** File byte position of each event. */
+        final long[] positions;
+
+        Group(int[] events, long[] positions) {
+            this.events    = events;
+            this.positions = positions;
+        }
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(events.length).append(" copies:");
+            for (int i=0; i < events.length; i++) {
+                sb.append("  #").append(events[i] + 1);
+                sb.append(" (byte 0x").append(Long.toHexString(positions[i])).append(')');
+            }
+            return sb.toString();
+        }
+    }
+
+
+
+    /**
+     * Constructor.
+     * @param file file to search.
+     * @throws IOException if file cannot be opened.
+     */
+    public DuplicateEventsFrame(File file) throws IOException {
+        super("Duplicate events in " + file.getName());
+        fileSession = FileSession.open(file);
+        createWidgets();
+        search = new Search();
+        search.start();
+    }
+
+
+    /** Add widgets to this frame, start updating them, and show it. */
+    private void createWidgets() {
+        addWindowListener(new WindowAdapter() {
+            public void windowClosing(WindowEvent event) {
+                DuplicateEventsFrame.this.dispose();
+            }
+        });
+
+        setLayout(new BorderLayout());
+
+        JList<Group> list = new JList<Group>(listModel);
+        list.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        add(new JScrollPane(list), BorderLayout.CENTER);
+
+        statusLabel = new JLabel(" ");
+        add(statusLabel, BorderLayout.SOUTH);
+
+        timer = new Timer(500, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                refresh();
+            }
+        });
+        timer.start();
+
+        setSize(700, 600);
+        setLocationRelativeTo(null);
+        setVisible(true);
+    }
+
+
+    /** Display the latest results. */
+    private void refresh() {
+        statusLabel.setText(search.getStatus());
+        if (search.isDone()) {
+            timer.stop();
+            for (Group g : search.getGroups()) {
+                listModel.addElement(g);
+            }
+        }
+    }
+
+
+    /** Stop searching and give back the file. */
+    @Override
+    public void dispose() {
+        timer.stop();
+        search.cancel();
+        if (fileSession != null) {
+            fileSession.release();
+            fileSession = null;
+        }
+        super.dispose();
+    }
+
+
+    /**
+     * This class is a thread which hashes all events of the file
+     * using a pool of threads and then finds the identical ones.
+     */
+    private class Search extends Thread {
+
+        /** Threads hashing ranges of events. */
+        private final ExecutorService pool;
+
+        /** File being searched. */
+        private final File file;
+
+        /** Index of file's events. */
+        private volatile EventIndex index;
+
+        /** Groups of identical events found. */
+        private volatile Group[] groups;
+
+        /** Number of events hashed so far. */
+        private final AtomicInteger hashed = new AtomicInteger();
+
+        /** Were the hashes read from the sidecar? */
+        private volatile boolean fromSidecar;
+
+        /** Time search started in milliseconds. */
+        private final long startTime = System.currentTimeMillis();
+
+        /** Time search took in milliseconds, -1 if not done yet. */
+        private volatile long searchTime = -1L;
+
+        /** Set to stop searching. */
+        private volatile boolean cancelled;
+
+
+        /** Constructor. */
+        Search() {
+            super("Duplicate event search");
+            setDaemon(true);
+            file = fileSession.getFile();
+            pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+
+
+        /** Stop searching. */
+        void cancel() {
+            cancelled = true;
+            pool.shutdownNow();
+        }
+
+
+        /**
+         * Is the search done?
+         * @return {@code true} if done.
+         */
+        boolean isDone() {return searchTime > -1L;}
+
+
+        /**
+         * Get the groups of identical events in order of their first event. Only call when done.
+         * @return groups of identical events.
+         */
+        Group[] getGroups() {return groups == null ? new Group[0] : groups;}
+
+
+        /**
+         * Get a description of the search's progress.
+         * @return description of the search's progress.
+         */
+        String getStatus() {
+            EventIndex idx = index;
+            if (idx == null) {
+                return "Indexing ...";
+            }
+            if (!isDone()) {
+                return String.format("Hashing ... %d%%",
+                                     100L*hashed.get()/Math.max(idx.getEventCount(), 1));
+            }
+
+            String status = String.format("Searched %,d events in %.2f sec%s, %,d groups of duplicates",
+                                          idx.getEventCount(), searchTime/1000.,
+                                          fromSidecar ? " (hashes from index file)" : "",
+                                          getGroups().length);
+            if (idx.isCompressed()) {
+                status += ", events in compressed records not checked";
+            }
+            if (idx.getError() != null) {
+                status += ", " + idx.getError();
+            }
+            return status;
+        }
+
+
+        /** Hash all events, then group identical ones. */
+        public void run() {
+            EventIndex idx = fileSession.getIndex();
+            index = idx;
+
+            fromSidecar = idx.hasHashes();
+            if (!idx.computeHashes(pool, hashed) || cancelled) {
+                searchTime = System.currentTimeMillis() - startTime;
+                return;
+            }
+            if (!fromSidecar) {
+                idx.save(file);
+            }
+
+            groups = findGroups(idx);
+            searchTime = System.currentTimeMillis() - startTime;
+        }
+
+
+        /**
+         * Find the groups of identical events once all are hashed.
+         * @param idx index with hashes.
+         * @return groups of identical events in order of their first event.
+         */
+        private Group[] findGroups(EventIndex idx) {
+            // Find hashes occurring more than once by sorting them
+            int count = idx.getEventCount();
+            long[] sorted = new long[count];
+            int n = 0;
+            for (int i=0; i < count; i++) {
+                if (idx.getPosition(i) > -1) {
+                    sorted[n++] = idx.getHash(i);
+                }
+            }
+            Arrays.sort(sorted, 0, n);
+
+            HashSet<Long> repeated = new HashSet<Long>();
+            for (int i=1; i < n; i++) {
+                if (sorted[i] == sorted[i-1]) {
+                    repeated.add(sorted[i]);
+                }
+            }
+
+            // Gather events with those hashes in order
+            LinkedHashMap<Long, ArrayList<Integer>> candidates = new LinkedHashMap<Long, ArrayList<Integer>>();
+            for (int i=0; i < count && !repeated.isEmpty(); i++) {
+                if (idx.getPosition(i) < 0 || !repeated.contains(idx.getHash(i))) continue;
+                ArrayList<Integer> events = candidates.get(idx.getHash(i));
+                if (events == null) {
+                    events = new ArrayList<Integer>();
+                    candidates.put(idx.getHash(i), events);
+                }
+                events.add(i);
+            }
+
+            // Only bytes that really are identical make a group
+            ArrayList<Group> found = new ArrayList<Group>();
+            for (ArrayList<Integer> events : candidates.values()) {
+                while (events.size() > 1 && !cancelled) {
+                    ByteBuffer first = idx.getEvent(events.get(0));
+                    ArrayList<Integer> same = new ArrayList<Integer>();
+                    ArrayList<Integer> rest = new ArrayList<Integer>();
+                    same.add(events.get(0));
+                    for (int j=1; j < events.size(); j++) {
+                        if (first.equals(idx.getEvent(events.get(j)))) {
+                            same.add(events.get(j));
+                        }
+                        else {
+                            rest.add(events.get(j));
+                        }
+                    }
+
+                    if (same.size() > 1) {
+                        int[] indexes = new int[same.size()];
+                        long[] positions = new long[same.size()];
+                        for (int j=0; j < indexes.length; j++) {
+                            indexes[j]   = same.get(j);
+                            positions[j] = idx.getPosition(indexes[j]);
+                        }
+                        found.add(new Group(indexes, positions));
+                    }
+                    events = rest;
+                }
+            }
+
+            Collections.sort(found, new Comparator<Group>() {
+                public int compare(Group a, Group b) {
+                    return a.events[0] < b.events[0] ? -1 : (a.events[0] == b.events[0] ? 0 : 1);
+                }
+            });
+            return found.toArray(new Group[0]);
+        }
+    }
+}
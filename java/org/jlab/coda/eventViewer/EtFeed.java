@@ -0,0 +1,101 @@
+package org.jlab.coda.eventViewer;
+
+import org.jlab.coda.et.EtAttachment;
+import org.jlab.coda.et.EtEvent;
+import org.jlab.coda.et.EtSystem;
+import org.jlab.coda.et.enums.Mode;
+import org.jlab.coda.et.enums.Modify;
+import org.jlab.coda.et.exception.EtTimeoutException;
+import org.jlab.coda.et.exception.EtWakeUpException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * This class is a feed of the data of ET events gotten through an attachment
+ * to a station. Events are only gotten when buffers are asked for, so once
+ * the viewer wants no more, events pile up in the station instead (which
+ * is non-blocking when created by the viewer and so never holds up ET).
+ * Each event's data is copied and the event put back right away.
+ */
+class EtFeed extends PolledFeed {
+
+    /** Most events gotten from ET at once. */
+    private static final int CHUNK = 10;
+
+    /** Microseconds to wait for events before checking whether cancelled. */
+    private static final int TIMEOUT = 1000000;
+
+    /** Smallest data holding a block header and a bank. */
+    private static final int MIN_BYTES = 40;
+
+    /** ET system. */
+    private final EtSystem etSystem;
+
+    /** Attachment through which to get events. */
+    private final EtAttachment att;
+
+    /** Data gotten from ET and not yet delivered. */
+    private final ArrayDeque<ByteBuffer> gotten = new ArrayDeque<ByteBuffer>();
+
+
+
+    /**
+     * Constructor.
+     * @param etSystem   opened ET system.
+     * @param attachment attachment to a station of that system.
+     */
+    EtFeed(EtSystem etSystem, EtAttachment attachment) {
+        super("ET");
+        this.etSystem = etSystem;
+        att = attachment;
+    }
+
+
+    /** {@inheritDoc} */
+    protected ByteBuffer poll() throws Exception {
+        while (gotten.isEmpty()) {
+            if (isCancelled()) return null;
+
+            EtEvent[] events;
+            try {
+                events = etSystem.getEvents(att, Mode.TIMED, Modify.NOTHING, TIMEOUT, CHUNK);
+            }
+            catch (EtTimeoutException e) {
+                continue;
+            }
+            catch (EtWakeUpException e) {
+                continue;
+            }
+
+            for (EtEvent ev : events) {
+                // Only the event's length holds data, the rest of its memory is left over
+                int length = ev.getLength();
+                if (length < MIN_BYTES) continue;
+                byte[] data = new byte[length];
+                System.arraycopy(ev.getData(), 0, data, 0, length);
+                gotten.add(ByteBuffer.wrap(data).order(ev.getByteOrder()));
+            }
+
+            etSystem.putEvents(att, events);
+        }
+        return gotten.poll();
+    }
+
+
+    /** {@inheritDoc} */
+    protected void wakeUp() {
+        try {
+            etSystem.wakeUpAttachment(att);
+        }
+        catch (Exception e) {
+            // if closed, the feed's thread returns anyway
+        }
+    }
+
+
+    /** {@inheritDoc} */
+    protected void close() {
+        gotten.clear();
+    }
+}
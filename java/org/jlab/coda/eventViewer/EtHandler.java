@@ -1,13 +1,7 @@
 package org.jlab.coda.eventViewer;
 
 import org.jlab.coda.et.*;
-import org.jlab.coda.et.enums.Mode;
-import org.jlab.coda.et.enums.Modify;
 import org.jlab.coda.et.exception.*;
-import org.jlab.coda.hipo.CompressionType;
-import org.jlab.coda.jevio.EvioEvent;
-import org.jlab.coda.jevio.EvioException;
-import org.jlab.coda.jevio.EvioReader;
 
 import javax.swing.*;
 import javax.swing.border.*;
@@ -15,18 +9,18 @@ import java.awt.*;
 import java.awt.event.*;
 import java.io.IOException;
 import java.net.UnknownHostException;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 /**
  * This class handles communications with an ET system
  * - including creating a panel to do so through the GUI -
  * in order to get ET events which are parsed into evio events.
+ * The events are taken through an {@link EtFeed}.
  *
  * @author Timmer
  * Feb 25, 2013
  */
-public class EtHandler {
+public class EtHandler extends FeedHandler {
 
     /** Panel to control connection to the ET system. */
     private JPanel panel;
@@ -55,345 +49,37 @@ public class EtHandler {
     private String lastHost = "localhost";
 
 
-    /** Keep track of event numbering across ET events. */
-    private int eventNum = 1;
 
-    /** Thread that gets ET events, parses their data into Evio events,
-     *  and places them into the eventList. */
-    private ProcessEvents getEventThread;
 
-    /** Used to tell the getEventThread to terminate. */
-    private volatile boolean die;
-
-    /** Keep track of that last event the user asked for. */
-    private int currentIndex = -1;
-
-    /** How many events we currently allow into the eventList. */
-    private int listLimit = 100;
-
-    /** Maximum number of events allowed in list. */
-    private final int maxListSize = 1000;
-
-    /** List of received EvioEvent objects (parsed ET buffers). */
-    private final ArrayList<EvioEvent> eventList = new ArrayList<EvioEvent>(maxListSize);
-
-    /** Filter allowing only certain events into eventList. */
-    private Filter eventFilter = Filter.EVERY;
-
-    /** Evio version of data from ET. Default to v6. */
-    private int evioVersion = 6;
-
-    /** What type of data compression? */
-    private CompressionType dataCompressionType = CompressionType.RECORD_UNCOMPRESSED;
-
-
-
-
-
-    /**
-     * Get the evio version of data being viewed.
-     * @return evio version of data being viewed.
-     */
-    public int getEvioVersion() {return evioVersion;}
-
-    /**
-     * Get the compression type of data being viewed.
-     * @return compression type of data being viewed.
-     */
-    public CompressionType getDataCompressionType() {return dataCompressionType;}
-
-    /**
-     * Get the event filter to use on each event before adding to list.
-     * @return the event filter to use on each event before adding to list.
-     */
-    public Filter getEventFilter() {
-        return eventFilter;
+    /** Constructor. */
+    public EtHandler() {
+        super("ET", "ET buffers");
     }
 
-    /**
-     * Set the event filter to use on each event before adding to list.
-     * @param eventFilter filter to use on each event before adding to list.
-     */
-    public void setEventFilter(Filter eventFilter) {
-        this.eventFilter = eventFilter;
-    }
-
-    /** Reset the event number back to 1. */
-    synchronized private void resetEventNumber() {
-        eventNum = 1;
-    }
 
     /**
-     * Add the given event to the event list.
-     * If the list is full, nothing is added.
-     *
-     * @param event Evio event to add to event list.
+     * Get events from an ET system which was opened and attached to elsewhere,
+     * instead of one chosen in this handler's panel. Used to drive this handler
+     * with an in-process stand-in for an ET system.
+     * @param system     opened ET system.
+     * @param attachment attachment to a station of that system.
      */
-    synchronized public void addEvent(EvioEvent event) {
-        if (event == null || eventList.size() >= listLimit) return;
-
-        if (!Filter.allow(event)) {
-            System.out.println("ET FILTER REJECTS event -> " + event);
-            return;
-        }
-
-        event.setEventNumber(eventNum++);
-        eventList.add(event);
+    synchronized public void useEtSystem(EtSystem system, EtAttachment attachment) {
+        stopFillingEventList();
+        etSystem = system;
+        att = attachment;
     }
 
-    /**
-     * Get the specified event, index beginning at 1.
-     * @param index index into event list beginning at 1.
-     * @return EvioEvent object at given index in event list;
-     *         or null if no object at that index
-     */
-    synchronized public EvioEvent getEvent(int index) {
-        if (index < 1 || index > listLimit || index > eventList.size()) return null;
-        currentIndex = index - 1;
-        return eventList.get(currentIndex);
-    }
-
-    /**
-     * Get the next evio event from the list or null if none.
-     * @return next evio event from the list or null if none.
-     */
-    synchronized public EvioEvent getNextEvent() {
-        int nextIndex = currentIndex + 1;
-        if (nextIndex >= listLimit || nextIndex >= eventList.size()) return null;
-        return eventList.get(++currentIndex);
-    }
-
-    /**
-     * Is there another evio event, after the one previously obtained, in the list?
-     * @return <code>true</code> if there is an event, after the one previously obtained,
-     *         in the list, else <code>false</code>.
-     */
-    synchronized public boolean hasNextEvent() {
-        int nextIndex = currentIndex + 1;
-        return !(nextIndex >= listLimit || nextIndex >= eventList.size());
-    }
-
-    /**
-     * Get the previous evio event from the list or null if none.
-     * @return previous evio event from the list or null if none.
-     */
-    synchronized public EvioEvent getPrevEvent() {
-        int prevIndex = currentIndex - 1;
-        if (prevIndex < 0) return null;
-        return eventList.get(--currentIndex);
-    }
-
-    /**
-     * Get the size of the event list.
-     * @return size of the event list.
-     */
-    synchronized public int getListSize() {
-        return eventList.size();
-    }
 
-    /**
-     * Get the index of the current event (starting at 0).
-     * Used to determine what is next and what is previous.
-     * @return index of the current event (starting at 0).
-     */
-    synchronized public int getCurrentEventIndex() {
-        return currentIndex;
+    /** {@inheritDoc} */
+    synchronized protected EventFeed createFeed() {
+        if (etSystem == null) return null;
+        return new EtFeed(etSystem, att);
     }
 
-    /**
-      * Reset the index of the current event to -1.
-      * Used to determine what is next and what is previous.
-      */
-     synchronized public void resetCurrentEventIndex() {
-         currentIndex = -1;
-     }
-
-    /**
-     * Set the event number. Newly added events
-     * have numbers starting with the given value.
-     * @param eventNum newly added events have numbers starting with this value
-     */
-    public void setEventNum(int eventNum) {
-        this.eventNum = eventNum;
-    }
-
-    /** Clear the entire event list - all events. */
-    synchronized public void clearList() {
-        eventList.clear();
-        currentIndex = -1;
-        resetEventNumber();
-    }
-
-    /**
-     * Clear the specified number of latest events from the list.
-     * @param numberToDelete number of latest events to delete from the list.
-     */
-    synchronized public void clearList(int numberToDelete) {
-        // Use an extra variable here to avoid a changing upper limit as
-        // we're removing one item from eventList each iteration.
-        int listSize = eventList.size();
-        if (numberToDelete < listSize) {
-            // delete latest additions
-            for (int i=listSize; i > listSize - numberToDelete; i--) {
-                eventList.remove(i-1);
-            }
-            // if we removed what we are looking at, look at nothing
-            if (currentIndex >= eventList.size()) {
-                currentIndex = -1;
-            }
-            return;
-        }
-
-        clearList();
-    }
-
-    /**
-     * Get the maximum number of events that the list will hold.
-     * @return maximum number of events that the list will hold.
-     */
-    synchronized public int getListLimit() {
-        return listLimit;
-    }
-
-    /**
-     * Set the maximum number of events that the list will hold.
-     * Does nothing if limit &lt; 1. Will set it to a max of 1000.
-     * If reducing the size of the current limit, it will clear
-     * any events beyond the new limit.
-     * @param limit maximum number of events that the list will hold.
-     */
-    synchronized public void setListLimit(int limit) {
-        if (limit < 1 || limit == listLimit) return;
-
-        if (limit > maxListSize) limit = maxListSize;
-
-        if (limit < listLimit) {
-            // If we're here, we must reduce the current limit.
-            // If necessary, get rid of newest events.
-            if (limit < eventList.size()) {
-                clearList(eventList.size() - limit);
-            }
-        }
-
-        listLimit = limit;
-    }
-
-    /** Create and start a thread to process ET events into Evio events. */
-    synchronized public void startFillingEventList() {
-        if (getEventThread == null || !getEventThread.isAlive()) {
-            die = false;
-            getEventThread = new ProcessEvents();
-            getEventThread.start();
-        }
-    }
-
-    /** Stop the thread processing ET events into Evio events, if any. */
-    synchronized public void stopFillingEventList() {
-        if (getEventThread == null || !getEventThread.isAlive()) return;
-
-        die = true;
-        try {
-            etSystem.wakeUpAttachment(att);
-            getEventThread.join(200);
-        }
-        catch (EtClosedException e) { }
-        catch (EtException e) { }
-        catch (InterruptedException e) { }
-        catch (IOException e) { }
-
-        getEventThread = null;
-    }
-
-    /**
-     * This class is a thread which gets ET events and parses them
-     * to extract evio events from the ET event data.
-     */
-    private class ProcessEvents extends Thread {
-
-        public void run() {
-            if (etSystem == null) {
-                return;
-            }
-
-            int chunk = 1;
-            EvioEvent evioEv;
-            String dictionary;
-            EtEvent[] events = null;
-            EvioReader reader = null;
-
-            // Start event number at 1
-            resetEventNumber();
-
-            do {
-                if (die) {
-                    return;
-                }
-
-                // Get some events
-                try {
-                    events = etSystem.getEvents(att, Mode.TIMED,
-                                                Modify.NOTHING, 1000000, chunk);
-                }
-                catch (EtTimeoutException e) {
-                    continue;
-                }
-                catch (EtWakeUpException e) {
-                    continue;
-                }
-                catch (Exception e) {
-                    //e.printStackTrace();
-                    return;
-                }
-
-                loop:
-                for (EtEvent ev : events) {
-                    byte[] data = ev.getData();
-
-                    // Data must contain at least one block header and a single bank ...
-                    if (data.length < 40) {
-                        continue;
-                    }
-
-                    ByteBuffer buf = ByteBuffer.wrap(data);
-
-                    // Pick event apart
-                    try {
-                        if (reader == null) {
-                            reader = new EvioReader(buf);
-                        }
-                        else {
-                            reader.setBuffer(buf);
-                        }
-                        dictionary = reader.getDictionaryXML();
-                        evioVersion = reader.getEvioVersion();
-                        dataCompressionType = reader.getFirstBlockHeader().getCompressionType();
-
-                        while ((evioEv = reader.parseNextEvent()) != null) {
-                            evioEv.setDictionaryXML(dictionary);
-                            addEvent(evioEv);
-                            if (eventList.size() >= listLimit)  break loop;
-                        }
-                    }
-                    // Error, try next ET buffer
-                    catch (EvioException e) { }
-                    catch (IOException e)   { }
-                }
-
-                // Put events back into ET
-                try {
-                    etSystem.putEvents(att, events);
-                }
-                catch (Exception e) {
-                    //e.printStackTrace();
-                    return;
-                }
-
-              // keep going until the list is full ...
-            } while (eventList.size() < listLimit);
-
-        }
-    }
 
+    /** {@inheritDoc} */
+    public JPanel createPanel() {return createEtPanel();}
 
     /**
      *  Create the panel/menu-item used to handle communications with an ET system.
@@ -426,6 +112,7 @@ public class EtHandler {
 
         JPanel statusPanel = new JPanel(new BorderLayout());
         statusPanel.add(status, BorderLayout.CENTER);
+        statusPanel.add(getMetrics().createRateLabel(), BorderLayout.SOUTH);
 
         // connect/disconnect button
         ActionListener al_con = new ActionListener() {
@@ -461,6 +148,7 @@ public class EtHandler {
                     }
 
                     // success connecting to ET
+                    getMetrics().reset();
                     status.setForeground(darkGreen);
                     status.setText(" Connected to ET system");
                     connectButton.setText("Disconnect");
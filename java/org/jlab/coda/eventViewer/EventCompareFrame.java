@@ -0,0 +1,434 @@
+package org.jlab.coda.eventViewer;
+
+import org.jlab.coda.jevio.*;
+
+import javax.swing.*;
+import javax.swing.border.TitledBorder;
+import javax.swing.event.TreeSelectionEvent;
+import javax.swing.event.TreeSelectionListener;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeCellRenderer;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreePath;
+import javax.swing.tree.TreeSelectionModel;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+import java.util.List;
+
+/**
+ * This class implements a window which compares two evio events, for example
+ * the same event from two different files or two events from an ET system.
+ * The structures of the two events are lined up by their type, tag and num,
+ * and the data of lined up leaves is compared as whole byte arrays.
+ * The results are shown in a tree in which differing structures are marked.
+ * Selecting a structure displays the words of both versions side by side
+ * with the first differing word highlighted.
+ */
+public class EventCompareFrame extends JFrame {
+
+    /** Structures are identical. */
+    private static final int SAME = 0;
+
+    /** Structures differ. */
+    private static final int DIFFERENT = 1;
+
+    /** Structure is only in first event. */
+    private static final int ONLY_FIRST = 2;
+
+    /** Structure is only in second event. */
+    private static final int ONLY_SECOND = 3;
+
+    /** Color of things that differ. */
+    private static final Color differentColor = new Color(255, 190, 190);
+
+    /** Description of first event. */
+    private final String firstName;
+
+    /** Description of second event. */
+    private final String secondName;
+
+    /** Tree of lined up structures. */
+    private JTree tree;
+
+    /** Displays summary of comparison. */
+    private JLabel statusLabel;
+
+    /** Tables of words of first and second structures. */
+    private JTable[] tables = new JTable[2];
+
+    /** Models of tables. */
+    private MyTableModel[] models = new MyTableModel[2];
+
+    /** Renderers of tables. */
+    private MyRenderer[] renderers = new MyRenderer[2];
+
+    /** Number of structure pairs compared. */
+    private int compared;
+
+    /** Number of structure pairs which differ. */
+    private int differences;
+
+    /** First differing pair which has no differing children. */
+    private Pair firstDifference;
+
+
+
+    /** Class holding one structure from each event which have been lined up. */
+    private final class Pair {
+        /** Structure from first event, null if none. */
+        final BaseStructure first;
+        /** Structure from second event, null if none. */
+        final BaseStructure second;
+        /** SAME, DIFFERENT, ONLY_FIRST, or ONLY_SECOND. */
+        int status = SAME;
+        /** Lined up children. */
+        final ArrayList<Pair> kids = new ArrayList<Pair>();
+
+        Pair(BaseStructure first, BaseStructure second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        public String toString() {
+            BaseStructure s = first != null ? first : second;
+            String text = s.getStructureType() + " of " + s.getHeader().getDataType() +
+                          "s:  tag=" + s.getHeader().getTag() + "  num=" + s.getHeader().getNumber();
+            switch (status) {
+                case DIFFERENT:   return text + "  (differs)";
+                case ONLY_FIRST:  return text + "  (only in " + firstName + ")";
+                case ONLY_SECOND: return text + "  (only in " + secondName + ")";
+                default:          return text;
+            }
+        }
+    }
+
+
+
+    /**
+     * Constructor.
+     * @param first      first event.
+     * @param firstName  description of first event.
+     * @param second     second event.
+     * @param secondName description of second event.
+     */
+    public EventCompareFrame(final EvioEvent first, String firstName,
+                             final EvioEvent second, String secondName) {
+        super("Compare " + firstName + " with " + secondName);
+        this.firstName  = firstName;
+        this.secondName = secondName;
+        createWidgets();
+
+        // Very large events may take a while
+        statusLabel.setText("Comparing ...");
+        SwingWorker<Pair, Void> worker = new SwingWorker<Pair, Void>() {
+            protected Pair doInBackground() {
+                return align(first, second);
+            }
+
+            protected void done() {
+                try {
+                    showResults(get());
+                }
+                catch (Exception e) {
+                    e.printStackTrace();
+                    statusLabel.setText("Comparison failed: " + e.getMessage());
+                }
+            }
+        };
+        worker.execute();
+    }
+
+
+    /** Add widgets to this frame and show it. */
+    private void createWidgets() {
+        addWindowListener(new WindowAdapter() {
+            public void windowClosing(WindowEvent event) {
+                EventCompareFrame.this.dispose();
+            }
+        });
+
+        setLayout(new BorderLayout());
+
+        tree = new JTree((DefaultTreeModel) null);
+        tree.setBorder(BorderFactory.createTitledBorder(null, "Lined up structures",
+                       TitledBorder.LEADING, TitledBorder.TOP, null, Color.blue));
+        tree.setShowsRootHandles(true);
+        tree.setLargeModel(true);
+        tree.getSelectionModel().setSelectionMode(TreeSelectionModel.SINGLE_TREE_SELECTION);
+        tree.setCellRenderer(new DefaultTreeCellRenderer() {
+            public Component getTreeCellRendererComponent(JTree tree, Object value, boolean sel,
+                                                          boolean expanded, boolean leaf,
+                                                          int row, boolean hasFocus) {
+                super.getTreeCellRendererComponent(tree, value, sel, expanded, leaf, row, hasFocus);
+                Object obj = ((DefaultMutableTreeNode) value).getUserObject();
+                if (obj instanceof Pair && ((Pair) obj).status != SAME) {
+                    setForeground(Color.red);
+                }
+                return this;
+            }
+        });
+        tree.addTreeSelectionListener(new TreeSelectionListener() {
+            public void valueChanged(TreeSelectionEvent e) {
+                DefaultMutableTreeNode node = (DefaultMutableTreeNode) tree.getLastSelectedPathComponent();
+                if (node != null) {
+                    showPair((Pair) node.getUserObject());
+                }
+            }
+        });
+
+        // Tables of words, just like those in EventTreePanel
+        JPanel tablePanel = new JPanel(new GridLayout(1, 2));
+        String[] names = {firstName, secondName};
+        for (int i=0; i < 2; i++) {
+            models[i] = new MyTableModel();
+            models[i].setFirstColLabel("Position");
+            renderers[i] = new MyRenderer(5, differentColor);
+            renderers[i].setHorizontalAlignment(SwingConstants.CENTER);
+            renderers[i].setTableModel(models[i]);
+            tables[i] = new JTable(models[i]);
+            tables[i].setDefaultRenderer(String.class, renderers[i]);
+            tables[i].setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+            tables[i].setFont(new Font(Font.MONOSPACED, Font.PLAIN, tables[i].getFont().getSize()));
+            // Comments column is of no use here
+            tables[i].removeColumn(tables[i].getColumnModel().getColumn(6));
+
+            JScrollPane pane = new JScrollPane(tables[i]);
+            pane.setBorder(BorderFactory.createTitledBorder(null, names[i],
+                           TitledBorder.LEADING, TitledBorder.TOP, null, Color.blue));
+            tablePanel.add(pane);
+        }
+
+        JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT,
+                                              new JScrollPane(tree), tablePanel);
+        splitPane.setDividerLocation(300);
+        add(splitPane, BorderLayout.CENTER);
+
+        statusLabel = new JLabel(" ");
+        add(statusLabel, BorderLayout.SOUTH);
+
+        setSize(1100, 800);
+        setLocationRelativeTo(null);
+        setVisible(true);
+    }
+
+
+    /**
+     * Get a structure's children.
+     * @param structure structure.
+     * @return list of children, never null.
+     */
+    private static List<BaseStructure> kids(BaseStructure structure) {
+        List<BaseStructure> kids = structure.getChildrenList();
+        if (kids == null) return Collections.emptyList();
+        return kids;
+    }
+
+
+    /**
+     * Make the key used to line up structures from its type, tag and num.
+     * @param structure structure.
+     * @return key.
+     */
+    private static long key(BaseStructure structure) {
+        BaseStructureHeader header = structure.getHeader();
+        return ((long) structure.getStructureType().ordinal() << 32) |
+               ((long) (header.getTag() & 0xffff) << 8) |
+               (header.getNumber() & 0xff);
+    }
+
+
+    /**
+     * Get a structure in evio format in big endian byte order.
+     * @param structure structure.
+     * @return bytes of structure including header.
+     */
+    static byte[] toBytes(BaseStructure structure) {
+        ByteBuffer buf = ByteBuffer.allocate(structure.getTotalBytes());
+        structure.write(buf);
+        return buf.array();
+    }
+
+
+    /**
+     * Is the data of the two leaves the same?
+     * @param first  first leaf.
+     * @param second second leaf.
+     * @return {@code true} if the same.
+     */
+    private static boolean sameData(BaseStructure first, BaseStructure second) {
+        byte[] a = first.getRawBytes();
+        byte[] b = second.getRawBytes();
+        if (a != null && b != null && first.getByteOrder() == second.getByteOrder()) {
+            return Arrays.equals(a, b);
+        }
+        // Different endian or built from arrays, so compare in one byte order
+        return Arrays.equals(toBytes(first), toBytes(second));
+    }
+
+
+    /**
+     * Line up two structures and their descendants and compare them.
+     * Children are matched by their type, tag and num in the order they appear.
+     *
+     * @param first  structure from first event, null if none.
+     * @param second structure from second event, null if none.
+     * @return object holding results.
+     */
+    private Pair align(BaseStructure first, BaseStructure second) {
+        Pair pair = new Pair(first, second);
+        compared++;
+
+        if (first == null || second == null) {
+            pair.status = first == null ? ONLY_SECOND : ONLY_FIRST;
+            // Show what's in it too
+            for (BaseStructure kid : kids(first == null ? second : first)) {
+                Pair kidPair = first == null ? align(null, kid) : align(kid, null);
+                pair.kids.add(kidPair);
+            }
+        }
+        else if (first.getStructureType() != second.getStructureType() ||
+                 first.getHeader().getDataType() != second.getHeader().getDataType() ||
+                 first.isLeaf() != second.isLeaf()) {
+            pair.status = DIFFERENT;
+        }
+        else if (first.isLeaf()) {
+            if (!sameData(first, second)) {
+                pair.status = DIFFERENT;
+            }
+        }
+        else {
+            // Second event's children, with the same key, in order
+            HashMap<Long, LinkedList<BaseStructure>> unmatched = new HashMap<Long, LinkedList<BaseStructure>>();
+            for (BaseStructure kid : kids(second)) {
+                LinkedList<BaseStructure> list = unmatched.get(key(kid));
+                if (list == null) {
+                    list = new LinkedList<BaseStructure>();
+                    unmatched.put(key(kid), list);
+                }
+                list.add(kid);
+            }
+
+            Set<BaseStructure> matched = Collections.newSetFromMap(new IdentityHashMap<BaseStructure, Boolean>());
+            for (BaseStructure kid : kids(first)) {
+                LinkedList<BaseStructure> list = unmatched.get(key(kid));
+                BaseStructure match = (list == null) ? null : list.poll();
+                if (match != null) {
+                    matched.add(match);
+                }
+                Pair kidPair = align(kid, match);
+                pair.kids.add(kidPair);
+                if (kidPair.status != SAME) {
+                    pair.status = DIFFERENT;
+                }
+            }
+
+            for (BaseStructure kid : kids(second)) {
+                if (!matched.contains(kid)) {
+                    pair.kids.add(align(null, kid));
+                    pair.status = DIFFERENT;
+                }
+            }
+        }
+
+        if (pair.status != SAME) {
+            differences++;
+            // Children were done first, so this is the deepest difference
+            if (firstDifference == null) {
+                firstDifference = pair;
+            }
+        }
+
+        return pair;
+    }
+
+
+    /**
+     * Make the tree node of a pair and its descendants.
+     * @param pair pair.
+     * @param nodes map to fill with each pair's node.
+     * @return tree node.
+     */
+    private static DefaultMutableTreeNode makeNode(Pair pair, Map<Pair, DefaultMutableTreeNode> nodes) {
+        DefaultMutableTreeNode node = new DefaultMutableTreeNode(pair, !pair.kids.isEmpty());
+        nodes.put(pair, node);
+        for (Pair kid : pair.kids) {
+            node.add(makeNode(kid, nodes));
+        }
+        return node;
+    }
+
+
+    /**
+     * Display the results of the comparison and select the first difference.
+     * @param root lined up top level events.
+     */
+    private void showResults(Pair root) {
+        Map<Pair, DefaultMutableTreeNode> nodes = new IdentityHashMap<Pair, DefaultMutableTreeNode>();
+        tree.setModel(new DefaultTreeModel(makeNode(root, nodes)));
+
+        if (firstDifference == null) {
+            statusLabel.setText(String.format("Compared %,d structures, events are identical", compared));
+            tree.expandRow(0);
+            tree.setSelectionRow(0);
+            return;
+        }
+
+        statusLabel.setText(String.format("Compared %,d structures, %,d differ", compared, differences));
+        TreePath path = new TreePath(nodes.get(firstDifference).getPath());
+        tree.setSelectionPath(path);
+        tree.scrollPathToVisible(path);
+    }
+
+
+    /**
+     * Display the words of both structures of a pair and highlight the first one which differs.
+     * @param pair pair to display.
+     */
+    private void showPair(Pair pair) {
+        byte[][] bytes = new byte[2][];
+        BaseStructure[] structures = {pair.first, pair.second};
+
+        for (int i=0; i < 2; i++) {
+            renderers[i].clearHighlights();
+            if (structures[i] == null) {
+                models[i].setTableData((LeafFormatter) null);
+                continue;
+            }
+            bytes[i] = toBytes(structures[i]);
+            models[i].setTableData(LeafFormatter.words(bytes[i], ByteOrder.BIG_ENDIAN));
+        }
+
+        if (bytes[0] == null || bytes[1] == null) {
+            return;
+        }
+
+        // Find first differing word
+        int len = Math.min(bytes[0].length, bytes[1].length);
+        int index = 0;
+        while (index < len && bytes[0][index] == bytes[1][index]) {
+            index++;
+        }
+        if (index == len && bytes[0].length == bytes[1].length) {
+            statusLabel.setText(String.format("Compared %,d structures, %,d differ; selected structures are identical",
+                                              compared, differences));
+            return;
+        }
+
+        int word = index / 4;
+        statusLabel.setText(String.format("Compared %,d structures, %,d differ; first different word is %,d",
+                                          compared, differences, word));
+
+        int row = word / 5, col = word % 5 + 1;
+        for (int i=0; i < 2; i++) {
+            if (row < models[i].getRowCount()) {
+                renderers[i].setHighlightCell(null, row, col, true);
+                tables[i].scrollRectToVisible(tables[i].getCellRect(row, col, true));
+            }
+            tables[i].repaint();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package org.jlab.coda.eventViewer;
+
+import org.jlab.coda.hipo.FileHeader;
+import org.jlab.coda.hipo.RecordHeader;
+import org.jlab.coda.jevio.EvioException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class counts the events of a memory mapped evio file by reading only its
+ * block (evio 4) or record (evio 6) headers, never the events themselves. The count
+ * is the same as EvioReader's, so any dictionary is not included.<p>
+ *
+ * When an evio 6 file has an index of its records, either in its file header or
+ * in its trailer, where each record starts is known without reading them. Ranges
+ * of records are then handed out to threads which each read the event count of
+ * their records' headers. Otherwise, since each header must be read to find
+ * the next, the headers are walked one after another.
+ */
+final class EventCounter {
+
+    /** Try to make ranges of records counted by one thread at least this long. */
+    private static final int RECORDS_PER_TASK = 4096;
+
+
+
+    /** No instances. */
+    private EventCounter() {}
+
+
+    /**
+     * Count the events of a mapped evio file.
+     * @param handler object which memory maps the file.
+     * @return number of events, not including any dictionary.
+     * @throws EvioException if the file is not in evio format, or has over 2G events.
+     */
+    static int count(SimpleMappedMemoryHandler handler) throws EvioException {
+        long total = -1L;
+        long[] positions = findRecords(handler);
+        if (positions != null) {
+            total = countRecords(handler, positions);
+        }
+        // Fall back to walking if the index did not match the records
+        if (total < 0L) {
+            total = walk(handler);
+        }
+
+        if (total > Integer.MAX_VALUE) {
+            throw new EvioException("file has over " + Integer.MAX_VALUE + " events");
+        }
+        return (int) total;
+    }
+
+
+    /**
+     * Find where each record of an evio 6 file starts from its index.
+     * @param handler object which memory maps the file.
+     * @return file position of each record, or null if the file has no usable index.
+     */
+    private static long[] findRecords(SimpleMappedMemoryHandler handler) {
+        FileHeader fileHeader = handler.getFileHeader();
+        if (fileHeader == null) return null;
+
+        // The index is pairs of record length in bytes and event count
+        ByteBuffer index = null;
+        if (fileHeader.getIndexLength() > 0) {
+            index = handler.getByteBuffer(fileHeader.getHeaderLength(), fileHeader.getIndexLength());
+        }
+        else if (fileHeader.hasTrailerWithIndex() && fileHeader.getTrailerPosition() > 0L) {
+            long pos = fileHeader.getTrailerPosition();
+            ByteBuffer trailer = handler.getByteBuffer(pos, HeaderWalker.MIN_HEADER_BYTES);
+            if (trailer != null) {
+                trailer.order(fileHeader.getByteOrder());
+                int hdrLen   = 4 * trailer.getInt(RecordHeader.HEADER_LENGTH_OFFSET);
+                int indexLen = trailer.getInt(RecordHeader.INDEX_ARRAY_OFFSET);
+                if (trailer.getInt(RecordHeader.MAGIC_OFFSET) == RecordHeader.HEADER_MAGIC &&
+                    hdrLen >= HeaderWalker.MIN_HEADER_BYTES && indexLen > 0) {
+                    index = handler.getByteBuffer(pos + hdrLen, indexLen);
+                }
+            }
+        }
+        if (index == null) return null;
+        index.order(fileHeader.getByteOrder());
+
+        long fileSize = handler.getFileSize();
+        long pos = handler.getTotalFileHeaderBytes();
+        long[] positions = new long[index.limit() / 8];
+        for (int i=0; i < positions.length; i++) {
+            long len = index.getInt(8*i) & 0xffffffffL;
+            if (len < HeaderWalker.MIN_HEADER_BYTES || pos + len > fileSize) return null;
+            positions[i] = pos;
+            pos += len;
+        }
+        return positions;
+    }
+
+
+    /**
+     * Count the events of the given records, handing out ranges of them to threads.
+     * @param handler   object which memory maps the file.
+     * @param positions file position of each record.
+     * @return number of events, or -1 if a record header was not where expected.
+     */
+    private static long countRecords(final SimpleMappedMemoryHandler handler, final long[] positions) {
+        final ByteOrder order = handler.getFileHeader().getByteOrder();
+        int tasks = (positions.length + RECORDS_PER_TASK - 1) / RECORDS_PER_TASK;
+        if (tasks < 1) return 0L;
+
+        int threads = Math.min(tasks, Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            ArrayList<Future<Long>> counts = new ArrayList<Future<Long>>(tasks);
+            for (int t=0; t < tasks; t++) {
+                final int first = t * RECORDS_PER_TASK;
+                final int last  = Math.min(first + RECORDS_PER_TASK, positions.length);
+                counts.add(pool.submit(new Callable<Long>() {
+                    public Long call() {
+                        long sum = 0L;
+                        for (int i = first; i < last; i++) {
+                            ByteBuffer header = handler.getByteBuffer(positions[i], HeaderWalker.MIN_HEADER_BYTES);
+                            if (header == null) return -1L;
+                            header.order(order);
+                            if (header.getInt(RecordHeader.MAGIC_OFFSET) != RecordHeader.HEADER_MAGIC) {
+                                return -1L;
+                            }
+                            sum += header.getInt(RecordHeader.EVENT_COUNT_OFFSET) & 0xffffffffL;
+                        }
+                        return sum;
+                    }
+                }));
+            }
+
+            long total = 0L;
+            for (Future<Long> f : counts) {
+                long sum = f.get();
+                if (sum < 0L) return -1L;
+                total += sum;
+            }
+            return total;
+        }
+        catch (InterruptedException e) {
+            return -1L;
+        }
+        catch (ExecutionException e) {
+            return -1L;
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+
+    /**
+     * Count the events of a file by walking its block or record headers one after another.
+     * @param handler object which memory maps the file.
+     * @return number of events.
+     * @throws EvioException if a header is bad.
+     */
+    private static long walk(SimpleMappedMemoryHandler handler) throws EvioException {
+        HeaderWalker walker = new HeaderWalker(handler);
+        long total = 0L;
+        while (walker.next()) {
+            total += walker.getEventCount() & 0xffffffffL;
+        }
+        if (walker.getError() != null) {
+            throw new EvioException(walker.getError());
+        }
+        return total;
+    }
+}
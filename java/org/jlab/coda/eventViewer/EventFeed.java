@@ -0,0 +1,90 @@
+package org.jlab.coda.eventViewer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This interface is a source of raw evio buffers which a {@link FeedHandler}
+ * turns into the list of events viewed. ET, cMsg, replaying a file, a directory
+ * of files and a pipe into standard input are all feeds, and new kinds of live
+ * data only need another implementation of this interface.<p>
+ *
+ * Delivery is asynchronous with back-pressure, in the manner of reactive streams
+ * (java.util.concurrent.Flow, which this viewer can't use since it must run on
+ * Java 8). A subscriber is given a subscription through which it requests the
+ * number of buffers it's ready for, and a feed never delivers more than that.
+ * A feed whose subscriber stops asking stops taking data from its source, so
+ * a full event list leaves buffers with ET or the file, instead of keeping
+ * a thread busy receiving data only to throw it away. A source which can't
+ * be held back, like cMsg, has its unwanted buffers thrown away and counted.<p>
+ *
+ * Each buffer holds one or more whole blocks (evio 4) or records (evio 6),
+ * the last of which is marked as such, and belongs to the subscriber once
+ * given to it. A feed whose data arrives on threads of its own, like cMsg,
+ * may implement this interface directly. One which must be read, like ET or
+ * a file, extends {@link PolledFeed} which does the reading when there's demand.
+ */
+public interface EventFeed {
+
+    /**
+     * Get the name of this feed, shown to the user.
+     * @return name of this feed.
+     */
+    String getName();
+
+    /**
+     * Start delivering buffers to the given subscriber. Its
+     * {@link Subscriber#onSubscribe(Subscription)} method is called
+     * before anything else, and nothing is delivered until it requests it.
+     * A feed delivers to one subscriber at a time.
+     * @param subscriber object to deliver buffers to.
+     */
+    void subscribe(Subscriber subscriber);
+
+
+    /** Receiver of the buffers of a feed. Its methods are called by one thread at a time. */
+    interface Subscriber {
+
+        /**
+         * Called first with the subscription through which buffers are requested.
+         * @param subscription subscription to the feed.
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Called with each buffer, no more often than requested.
+         * @param buffer     evio data, from position to limit, kept by the subscriber.
+         * @param dictionary dictionary to use if the buffer has none of its own, may be null.
+         */
+        void onNext(ByteBuffer buffer, String dictionary);
+
+        /**
+         * Called when a feed which cannot hold back its source, like cMsg,
+         * throws away buffers because none were asked for.
+         * @param n number of buffers thrown away.
+         */
+        void onDropped(long n);
+
+        /**
+         * Called if the feed fails. Nothing more is delivered.
+         * @param error what went wrong.
+         */
+        void onError(Throwable error);
+
+        /** Called when the feed has no more data, for example at the end of a file. */
+        void onComplete();
+    }
+
+
+    /** Link between a feed and its subscriber. Its methods may be called from any thread. */
+    interface Subscription {
+
+        /**
+         * Ask for more buffers.
+         * @param n number of buffers, added to those asked for earlier and not yet delivered.
+         */
+        void request(long n);
+
+        /** Stop delivering buffers. Some may still arrive while this takes effect. */
+        void cancel();
+    }
+}
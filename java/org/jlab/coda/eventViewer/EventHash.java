@@ -0,0 +1,108 @@
+package org.jlab.coda.eventViewer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * This class computes the 64 bit xxHash (XXH64, seed 0) of an event's bytes.
+ * It reads 8 bytes at a time straight out of the buffer it's given, such as a
+ * view into a memory mapped file, so no copy of the event is ever made.
+ * The hash is only used to find candidates for identical events;
+ * events with the same hash must still be compared byte for byte.
+ */
+final class EventHash {
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+
+    private EventHash() {}
+
+
+    /**
+     * Get the hash of the bytes between the buffer's position and limit.
+     * The buffer's position, limit and byte order are not changed.
+     * @param buffer buffer containing event.
+     * @return 64 bit hash.
+     */
+    static long hash(ByteBuffer buffer) {
+        // xxHash is defined on little endian words
+        ByteBuffer buf = buffer.duplicate();
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+
+        int pos = buf.position();
+        int end = buf.limit();
+        int len = end - pos;
+        long h;
+
+        if (len >= 32) {
+            long v1 = PRIME1 + PRIME2;
+            long v2 = PRIME2;
+            long v3 = 0L;
+            long v4 = -PRIME1;
+            int limit = end - 32;
+            do {
+                v1 = round(v1, buf.getLong(pos));
+                v2 = round(v2, buf.getLong(pos + 8));
+                v3 = round(v3, buf.getLong(pos + 16));
+                v4 = round(v4, buf.getLong(pos + 24));
+                pos += 32;
+            } while (pos <= limit);
+
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) +
+                Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = merge(h, v1);
+            h = merge(h, v2);
+            h = merge(h, v3);
+            h = merge(h, v4);
+        }
+        else {
+            h = PRIME5;
+        }
+
+        h += len;
+
+        while (pos + 8 <= end) {
+            h ^= round(0L, buf.getLong(pos));
+            h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+            pos += 8;
+        }
+
+        if (pos + 4 <= end) {
+            h ^= (buf.getInt(pos) & 0xffffffffL) * PRIME1;
+            h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+            pos += 4;
+        }
+
+        while (pos < end) {
+            h ^= (buf.get(pos) & 0xffL) * PRIME5;
+            h = Long.rotateLeft(h, 11) * PRIME1;
+            pos++;
+        }
+
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+
+    /** Mix 8 bytes of input into an accumulator. */
+    private static long round(long acc, long input) {
+        acc += input * PRIME2;
+        acc  = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+
+
+    /** Merge an accumulator into the hash. */
+    private static long merge(long h, long acc) {
+        h ^= round(0L, acc);
+        return h * PRIME1 + PRIME4;
+    }
+}
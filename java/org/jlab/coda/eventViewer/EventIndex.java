@@ -0,0 +1,786 @@
+package org.jlab.coda.eventViewer;
+
+import org.jlab.coda.hipo.RecordHeader;
+import org.jlab.coda.jevio.DataType;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class finds where each event of a memory mapped evio file is, by walking
+ * the block (evio 4) or record (evio 6) headers and the event lengths inside each.
+ * Events are numbered from 0 in the same order EvioReader numbers them from 1,
+ * so any dictionary event is not included. Events in compressed records cannot be
+ * viewed in the mapped file, so they are counted but have no position.<p>
+ *
+ * While walking, the first CODA event number and the timestamp found in the
+ * built trigger bank of each built physics event are kept so that an event can be
+ * found by either one with a binary search.<p>
+ *
+ * The 64 bit hash of each event's bytes may also be computed. The index, along
+ * with any hashes, is saved in a small sidecar file in the user's cache directory
+ * (never next to the evio file, which is often shared DAQ data) so that opening the
+ * same file again does not have to walk or hash it again. A sidecar is only used
+ * if the size and modification time of the evio file it records still match.
+ */
+final class EventIndex {
+
+    /** Ending added to evio file's name to make its sidecar's name. */
+    private static final String SIDECAR_SUFFIX = ".evidx";
+
+    /** Directory, under the user's cache directory, holding sidecar files. */
+    private static final String SIDECAR_DIR = "evioViewer";
+
+    /** First word of a sidecar file. */
+    private static final int SIDECAR_MAGIC = 0x45564958;
+
+    /** Version of sidecar file format. */
+    private static final int SIDECAR_VERSION = 2;
+
+    /** Bytes at the start of a built event holding its first event number and timestamp. */
+    private static final int TRIGGER_BYTES = 36;
+
+    /** Try to make ranges of events hashed by one thread at least this big. */
+    private static final int CHUNK_BYTES = 16000000;
+
+    /** Object which memory maps the file. */
+    private final SimpleMappedMemoryHandler handler;
+
+    /** File byte position of each event, -1 if in compressed record. */
+    private long[] positions = new long[1024];
+
+    /** Length of each event in bytes. */
+    private int[] lengths = new int[1024];
+
+    /** Number of events. */
+    private int count;
+
+    /** Index of first event of each record. */
+    private int[] recordFirstEvents = new int[64];
+
+    /** Number of records. */
+    private int recordCount;
+
+    /** Byte order of data. */
+    private ByteOrder order;
+
+    /** Number of compressed records. */
+    private int compressedRecords;
+
+    /** Description of any problem with the file, else null. */
+    private String error;
+
+    /** Hash of each event, valid only if positions is not -1. */
+    private long[] hashes;
+
+    /** First CODA event number of each event, -1 if not a built physics event. */
+    private long[] eventNumbers = new long[1024];
+
+    /** Timestamp of each event, -1 if not a built physics event with timestamps. */
+    private long[] timestamps = new long[1024];
+
+    /** Indexes of events with event numbers, made when first searched. */
+    private int[] numbered;
+
+    /** Are event numbers increasing through the file? */
+    private boolean numbersSorted;
+
+    /** Indexes of events with timestamps, made when first searched. */
+    private int[] timestamped;
+
+    /** Are timestamps increasing through the file? */
+    private boolean timestampsSorted;
+
+
+
+    /**
+     * Constructor which indexes the given file.
+     * @param handler object which memory maps the file.
+     */
+    EventIndex(SimpleMappedMemoryHandler handler) {
+        this.handler = handler;
+        build();
+    }
+
+
+    /**
+     * Constructor of an empty index to be filled from a sidecar file.
+     * @param handler object which memory maps the file.
+     * @param build   only distinguishes this constructor, always false.
+     */
+    private EventIndex(SimpleMappedMemoryHandler handler, boolean build) {
+        this.handler = handler;
+    }
+
+
+    /**
+     * Get the index of the given file from its sidecar if there is a current one,
+     * otherwise by walking the file and then writing a sidecar.
+     * @param file    evio file.
+     * @param handler object which memory maps the file.
+     * @return index of file.
+     */
+    static EventIndex open(File file, SimpleMappedMemoryHandler handler) {
+        EventIndex index = load(sidecarFile(file), file, handler);
+        if (index != null) {
+            return index;
+        }
+
+        MetricsRegistry.cache(MetricsRegistry.EVENT_INDEX_CACHE).miss();
+        index = new EventIndex(handler);
+        index.save(file);
+        return index;
+    }
+
+
+    /**
+     * Get the user's directory of sidecar files, which is $XDG_CACHE_HOME/evioViewer
+     * if that variable is set, else ~/.cache/evioViewer.
+     * @return directory of sidecar files.
+     */
+    private static File sidecarDirectory() {
+        String cache = System.getenv("XDG_CACHE_HOME");
+        if (cache == null || cache.length() < 1) {
+            cache = System.getProperty("user.home") + File.separator + ".cache";
+        }
+        return new File(cache, SIDECAR_DIR);
+    }
+
+
+    /**
+     * Get the sidecar of the given file in the user's cache directory.
+     * @param file evio file.
+     * @return sidecar file.
+     */
+    private static File sidecarFile(File file) {
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        }
+        catch (IOException e) {
+            path = file.getAbsolutePath();
+        }
+        // Distinguish same named files of different directories
+        String name = file.getName() + "." + Integer.toHexString(path.hashCode()) + SIDECAR_SUFFIX;
+        return new File(sidecarDirectory(), name);
+    }
+
+
+    /**
+     * Read an index from a sidecar file.
+     * @param sidecar sidecar file.
+     * @param file    evio file.
+     * @param handler object which memory maps the evio file.
+     * @return index, or null if sidecar does not exist, cannot be read or is out of date.
+     */
+    private static EventIndex load(File sidecar, File file, SimpleMappedMemoryHandler handler) {
+        if (!sidecar.isFile()) return null;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar)));
+            if (in.readInt() != SIDECAR_MAGIC || in.readInt() != SIDECAR_VERSION ||
+                in.readLong() != handler.getFileSize() || in.readLong() != file.lastModified()) {
+                return null;
+            }
+
+            EventIndex index = new EventIndex(handler, false);
+            index.count       = in.readInt();
+            index.recordCount = in.readInt();
+            index.compressedRecords = in.readInt();
+            int order = in.readByte();
+            index.order = order == 0 ? null : (order == 1 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+
+            index.positions    = new long[Math.max(index.count, 1)];
+            index.lengths      = new int[Math.max(index.count, 1)];
+            index.eventNumbers = new long[Math.max(index.count, 1)];
+            index.timestamps   = new long[Math.max(index.count, 1)];
+            index.recordFirstEvents = new int[Math.max(index.recordCount, 1)];
+            for (int i=0; i < index.count; i++) {
+                index.positions[i]    = in.readLong();
+                index.lengths[i]      = in.readInt();
+                index.eventNumbers[i] = in.readLong();
+                index.timestamps[i]   = in.readLong();
+            }
+            for (int i=0; i < index.recordCount; i++) {
+                index.recordFirstEvents[i] = in.readInt();
+            }
+            if (in.readBoolean()) {
+                long[] hashes = new long[index.count];
+                for (int i=0; i < index.count; i++) {
+                    hashes[i] = in.readLong();
+                }
+                index.hashes = hashes;
+            }
+            MetricsRegistry.cache(MetricsRegistry.EVENT_INDEX_CACHE).hit();
+            return index;
+        }
+        catch (IOException e) {
+            // Damaged or truncated, just rebuild it
+            return null;
+        }
+        finally {
+            if (in != null) {
+                try {in.close();}
+                catch (IOException e) {}
+            }
+        }
+    }
+
+
+    /**
+     * Write this index, including any hashes, to a sidecar file of the given file.
+     * Nothing is written if the file could not be fully indexed. Failure to write
+     * a sidecar is not an error, the file just gets indexed again next time.
+     * @param file evio file this is the index of.
+     */
+    synchronized void save(File file) {
+        if (error != null) return;
+
+        File sidecar = sidecarFile(file);
+        File dir = sidecar.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) return;
+
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(sidecar)));
+            out.writeInt(SIDECAR_MAGIC);
+            out.writeInt(SIDECAR_VERSION);
+            out.writeLong(handler.getFileSize());
+            out.writeLong(file.lastModified());
+            out.writeInt(count);
+            out.writeInt(recordCount);
+            out.writeInt(compressedRecords);
+            out.writeByte(order == null ? 0 : (order == ByteOrder.BIG_ENDIAN ? 1 : 2));
+            for (int i=0; i < count; i++) {
+                out.writeLong(positions[i]);
+                out.writeInt(lengths[i]);
+                out.writeLong(eventNumbers[i]);
+                out.writeLong(timestamps[i]);
+            }
+            for (int i=0; i < recordCount; i++) {
+                out.writeInt(recordFirstEvents[i]);
+            }
+            out.writeBoolean(hashes != null);
+            if (hashes != null) {
+                for (int i=0; i < count; i++) {
+                    out.writeLong(hashes[i]);
+                }
+            }
+            out.close();
+            out = null;
+        }
+        catch (IOException e) {
+            // Don't leave a partial one behind
+            sidecar.delete();
+        }
+        finally {
+            if (out != null) {
+                try {out.close();}
+                catch (IOException e) {}
+            }
+        }
+    }
+
+
+    /** Walk the headers of the file and find all events. */
+    private void build() {
+        HeaderWalker walker = new HeaderWalker(handler);
+        while (walker.next()) {
+            ByteBuffer header = walker.getHeader();
+            long pos = walker.getPosition();
+            long len = walker.getLength();
+            if (len > Integer.MAX_VALUE) {
+                error = String.format("bad length at byte %,d", pos);
+                break;
+            }
+            if (order == null) {
+                order = walker.getOrder();
+            }
+
+            if (recordCount == recordFirstEvents.length) {
+                recordFirstEvents = Arrays.copyOf(recordFirstEvents, 2*recordCount);
+            }
+            recordFirstEvents[recordCount++] = count;
+
+            int hdrLen = walker.getHeaderLength();
+            boolean ok = (walker.getBitInfo() & 0xff) < 6 ? addBlock(header, pos, (int) len, hdrLen) :
+                                                            addRecord(header, pos, (int) len, hdrLen);
+            if (!ok) {
+                error = String.format("bad event in record at byte %,d", pos);
+                break;
+            }
+        }
+        if (error == null) {
+            error = walker.getError();
+        }
+    }
+
+
+    /**
+     * Add the events of an evio 4 block.
+     * @param header block header.
+     * @param pos    file position of block.
+     * @param len    length of block in bytes.
+     * @param hdrLen length of block header in bytes.
+     * @return {@code true} if block understood.
+     */
+    private boolean addBlock(ByteBuffer header, long pos, int len, int hdrLen) {
+        int events  = header.getInt(RecordHeader.EVENT_COUNT_OFFSET);
+        int bitInfo = header.getInt(RecordHeader.BIT_INFO_OFFSET);
+
+        // Skip any dictionary, which is not included in the count
+        int skip = (bitInfo & 0x100) != 0 ? 1 : 0;
+        return addEvents(header.order(), pos + hdrLen, pos + len, events + skip, skip);
+    }
+
+
+    /**
+     * Add the events of an evio 6 record.
+     * @param header record header.
+     * @param pos    file position of record.
+     * @param len    length of record in bytes.
+     * @param hdrLen length of record header in bytes.
+     * @return {@code true} if record understood.
+     */
+    private boolean addRecord(ByteBuffer header, long pos, int len, int hdrLen) {
+        int events   = header.getInt(RecordHeader.EVENT_COUNT_OFFSET);
+        int indexLen = header.getInt(RecordHeader.INDEX_ARRAY_OFFSET);
+        int userLen  = header.getInt(RecordHeader.USER_LENGTH_OFFSET);
+        int compType = header.getInt(RecordHeader.COMPRESSION_TYPE_OFFSET) >>> 28;
+
+        if (compType != 0 && events > 0) {
+            // Events exist but cannot be seen in the mapped file
+            compressedRecords++;
+            for (int i=0; i < events; i++) {
+                add(-1L, 0, -1L, -1L);
+            }
+            return true;
+        }
+
+        long start = pos + hdrLen + indexLen + 4*((userLen + 3)/4);
+        return addEvents(header.order(), start, pos + len, events, 0);
+    }
+
+
+    /**
+     * Add consecutive events.
+     * @param order byte order of events.
+     * @param pos   file position of first event.
+     * @param limit file position just past the last event.
+     * @param events number of events.
+     * @param skip  number of leading events (dictionary) not to add.
+     * @return {@code true} if all events understood.
+     */
+    private boolean addEvents(ByteOrder order, long pos, long limit, int events, int skip) {
+        for (int i=0; i < events; i++) {
+            if (pos + 8 > limit) return false;
+
+            ByteBuffer head = handler.getByteBuffer(pos, 8);
+            head.order(order);
+            long bytes = 4L * ((head.getInt(0) & 0xffffffffL) + 1L);
+            if (pos + bytes > limit) return false;
+
+            if (i >= skip) {
+                long number = -1L, timestamp = -1L;
+                if (isBuiltPhysics(head.getInt(4)) && bytes >= TRIGGER_BYTES) {
+                    ByteBuffer trigger = handler.getByteBuffer(pos, TRIGGER_BYTES);
+                    trigger.order(order);
+                    number = getFirstEventNumber(trigger);
+                    if (number > -1L) {
+                        timestamp = getTimestamp(trigger);
+                    }
+                }
+                add(pos, (int) bytes, number, timestamp);
+            }
+            pos += bytes;
+        }
+        return true;
+    }
+
+
+    /**
+     * Is the bank with the given second header word a built physics event?
+     * Like {@link Filter}, that is a bank of banks with a tag of 0xFF50 - 0xFF8F.
+     * @param word second word of bank header.
+     * @return {@code true} if built physics event.
+     */
+    private static boolean isBuiltPhysics(int word) {
+        int tag  = word >>> 16;
+        int type = (word >> 8) & 0x3f;
+        return tag >= 0xFF50 && tag <= 0xFF8F &&
+               (type == DataType.BANK.getValue() || type == DataType.ALSOBANK.getValue());
+    }
+
+
+    /**
+     * Get the first event number in the built trigger bank, which is the first bank of
+     * a built event. The first segment of the trigger bank holds 64 bit values: the
+     * first event number, then the average timestamp if the trigger bank's tag says so.
+     * @param buf start of built event with proper byte order.
+     * @return first event number, or -1 if no built trigger bank.
+     */
+    private static long getFirstEventNumber(ByteBuffer buf) {
+        int trigWord = buf.getInt(12);
+        int trigTag  = trigWord >>> 16;
+        if (trigTag < CodaBankTag.TRIGGER_BUILT_NOTS_NORUN.getValue() ||
+            trigTag > CodaBankTag.TRIGGER_BUILT_TS_RUN_NOSPEC.getValue() ||
+            ((trigWord >> 8) & 0x3f) != DataType.SEGMENT.getValue()) {
+            return -1L;
+        }
+
+        int segWord = buf.getInt(16);
+        int segType = (segWord >> 16) & 0x3f;
+        if ((segType != DataType.ULONG64.getValue() && segType != DataType.LONG64.getValue()) ||
+            (segWord & 0xffff) < 2) {
+            return -1L;
+        }
+        return buf.getLong(20);
+    }
+
+
+    /**
+     * Get the timestamp in the built trigger bank of a built event
+     * which {@link #getFirstEventNumber(ByteBuffer)} has checked.
+     * @param buf start of built event with proper byte order.
+     * @return timestamp, or -1 if none.
+     */
+    private static long getTimestamp(ByteBuffer buf) {
+        // Odd tags have timestamps
+        int trigTag = buf.getInt(12) >>> 16;
+        if ((trigTag & 1) == 0 || (buf.getInt(16) & 0xffff) < 4) {
+            return -1L;
+        }
+        return buf.getLong(28);
+    }
+
+
+    /**
+     * Add an event.
+     * @param pos       file position of event, or -1 if not in mapped file.
+     * @param bytes     length of event in bytes.
+     * @param number    first CODA event number, or -1 if none.
+     * @param timestamp timestamp, or -1 if none.
+     */
+    private void add(long pos, int bytes, long number, long timestamp) {
+        if (count == positions.length) {
+            positions    = Arrays.copyOf(positions, 2*count);
+            lengths      = Arrays.copyOf(lengths, 2*count);
+            eventNumbers = Arrays.copyOf(eventNumbers, 2*count);
+            timestamps   = Arrays.copyOf(timestamps, 2*count);
+        }
+        positions[count]    = pos;
+        eventNumbers[count] = number;
+        timestamps[count]   = timestamp;
+        lengths[count++]    = bytes;
+    }
+
+
+    /**
+     * Get the number of events.
+     * @return number of events.
+     */
+    int getEventCount() {return count;}
+
+
+    /**
+     * Get the number of records or blocks.
+     * @return number of records or blocks.
+     */
+    int getRecordCount() {return recordCount;}
+
+
+    /**
+     * Get the index of the first event of the given record or block.
+     * @param record index of record.
+     * @return index of first event of record.
+     */
+    int getRecordFirstEvent(int record) {return recordFirstEvents[record];}
+
+
+    /**
+     * Get the byte order of the data.
+     * @return byte order of the data, null if no valid headers.
+     */
+    ByteOrder getOrder() {return order;}
+
+
+    /**
+     * Does the file have compressed records whose events cannot be viewed in the mapped file?
+     * @return {@code true} if file has compressed records.
+     */
+    boolean isCompressed() {return compressedRecords > 0;}
+
+
+    /**
+     * Get a description of any problem found in the file.
+     * The index contains all events found before the problem.
+     * @return description of problem, else null.
+     */
+    String getError() {return error;}
+
+
+    /**
+     * Get the file byte position of the given event.
+     * @param index index of event.
+     * @return file byte position of event, or -1 if it is in a compressed record.
+     */
+    long getPosition(int index) {return positions[index];}
+
+
+    /**
+     * Get the length of the given event in bytes.
+     * @param index index of event.
+     * @return length of event in bytes, or 0 if it is in a compressed record.
+     */
+    int getLength(int index) {return lengths[index];}
+
+
+    /**
+     * Get a view into the mapped file of the given event.
+     * This may be called from any thread.
+     * @param index index of event.
+     * @return buffer of event with proper byte order, or null if in a compressed record.
+     */
+    ByteBuffer getEvent(int index) {
+        if (positions[index] < 0) return null;
+        ByteBuffer buf = handler.getByteBuffer(positions[index], lengths[index]);
+        buf.order(order);
+        return buf;
+    }
+
+
+    /**
+     * Have the hashes of events been computed?
+     * @return {@code true} if hashes computed.
+     */
+    synchronized boolean hasHashes() {return hashes != null;}
+
+
+    /**
+     * Get the hash of the given event. Only valid once hashes are computed
+     * and if the event is not in a compressed record.
+     * @param index index of event.
+     * @return 64 bit hash of event's bytes.
+     */
+    long getHash(int index) {return hashes[index];}
+
+
+    /**
+     * Compute the hash of every event in the mapped file by handing out ranges of
+     * whole records to the given threads and waiting for them to finish.
+     * The pool is shut down when done. To stop early, call its shutdownNow().
+     * Does nothing if the hashes were already computed.
+     *
+     * @param pool   threads to hash with.
+     * @param hashed incremented as each event is hashed or skipped.
+     * @return {@code true} if all events were hashed, {@code false} if stopped early.
+     */
+    boolean computeHashes(ExecutorService pool, final AtomicInteger hashed) {
+        if (hasHashes()) {
+            hashed.set(count);
+            pool.shutdown();
+            return true;
+        }
+
+        final long[] h = new long[count];
+        final AtomicInteger done = new AtomicInteger();
+        ArrayList<int[]> ranges = new ArrayList<int[]>();
+        int first = 0;
+        long bytes = 0L;
+        for (int r=1; r <= recordCount; r++) {
+            int last = (r == recordCount) ? count : recordFirstEvents[r];
+            for (int i = recordFirstEvents[r - 1]; i < last; i++) {
+                bytes += lengths[i];
+            }
+            if (bytes >= CHUNK_BYTES || last == count) {
+                ranges.add(new int[] {first, last});
+                first = last;
+                bytes = 0L;
+            }
+        }
+
+        for (final int[] range : ranges) {
+            pool.execute(new Runnable() {
+                public void run() {
+                    for (int i = range[0]; i < range[1]; i++) {
+                        if (Thread.currentThread().isInterrupted()) return;
+                        ByteBuffer event = getEvent(i);
+                        if (event != null) {
+                            h[i] = EventHash.hash(event);
+                        }
+                        hashed.incrementAndGet();
+                    }
+                    done.addAndGet(range[1] - range[0]);
+                }
+            });
+        }
+
+        pool.shutdown();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            pool.shutdownNow();
+        }
+
+        if (done.get() < count) return false;
+
+        synchronized (this) {
+            hashes = h;
+        }
+        return true;
+    }
+
+
+    /**
+     * Get the first CODA event number of the given event.
+     * @param index index of event.
+     * @return first event number, or -1 if not a built physics event.
+     */
+    long getEventNumber(int index) {return eventNumbers[index];}
+
+
+    /**
+     * Get the timestamp of the given event.
+     * @param index index of event.
+     * @return timestamp, or -1 if not a built physics event with timestamps.
+     */
+    long getTimestamp(int index) {return timestamps[index];}
+
+
+    /**
+     * Find the built event holding the given CODA event number.
+     * A built event holds as many consecutive event numbers as the num of its header.
+     * @param number CODA event number.
+     * @return index of event, or -1 if not found.
+     */
+    int findEventNumber(long number) {
+        int[] idx;
+        boolean sorted;
+        synchronized (this) {
+            findNumbered();
+            idx = numbered;
+            sorted = numbersSorted;
+        }
+
+        int i = floor(eventNumbers, idx, sorted, number);
+        if (i < 0) return -1;
+
+        int index = idx[i];
+        ByteBuffer head = getEvent(index);
+        int events = Math.max(head.getInt(4) & 0xff, 1);
+        return number < eventNumbers[index] + events ? index : -1;
+    }
+
+
+    /**
+     * Do built events have event numbers which increase through the file?
+     * @return {@code true} if some events have event numbers and they increase.
+     */
+    synchronized boolean hasIncreasingEventNumbers() {
+        findNumbered();
+        return numbered.length > 0 && numbersSorted;
+    }
+
+
+    /** Find the events with event numbers, if not done already. */
+    private synchronized void findNumbered() {
+        if (numbered == null) {
+            numbered = present(eventNumbers, count);
+            numbersSorted = isSorted(eventNumbers, numbered);
+        }
+    }
+
+
+    /**
+     * Find the last built event whose timestamp is not after the given one.
+     * @param timestamp timestamp.
+     * @return index of event, or -1 if no events have timestamps or all are later.
+     */
+    int findTimestamp(long timestamp) {
+        int[] idx;
+        boolean sorted;
+        synchronized (this) {
+            if (timestamped == null) {
+                timestamped = present(timestamps, count);
+                timestampsSorted = isSorted(timestamps, timestamped);
+            }
+            idx = timestamped;
+            sorted = timestampsSorted;
+        }
+
+        int i = floor(timestamps, idx, sorted, timestamp);
+        return i < 0 ? -1 : idx[i];
+    }
+
+
+    /**
+     * Get the indexes of all events with a value.
+     * @param values value of each event, -1 if none.
+     * @param count  number of events.
+     * @return indexes of events with a value.
+     */
+    private static int[] present(long[] values, int count) {
+        int n = 0;
+        int[] idx = new int[count];
+        for (int i=0; i < count; i++) {
+            if (values[i] > -1L) idx[n++] = i;
+        }
+        return Arrays.copyOf(idx, n);
+    }
+
+
+    /**
+     * Are the values of the given events in increasing order?
+     * @param values value of each event.
+     * @param idx    indexes of events to look at.
+     * @return {@code true} if increasing.
+     */
+    private static boolean isSorted(long[] values, int[] idx) {
+        for (int i=1; i < idx.length; i++) {
+            if (values[idx[i]] < values[idx[i-1]]) return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * Find the event with the largest value not greater than the given one,
+     * by binary search if the values are in order or else by looking at all.
+     * @param values value of each event.
+     * @param idx    indexes of events to look at.
+     * @param sorted are values of idx in increasing order?
+     * @param value  value to look for.
+     * @return position in idx of event found, or -1 if none.
+     */
+    private static int floor(long[] values, int[] idx, boolean sorted, long value) {
+        if (!sorted) {
+            int best = -1;
+            for (int i=0; i < idx.length; i++) {
+                long v = values[idx[i]];
+                if (v <= value && (best < 0 || v > values[idx[best]])) best = i;
+            }
+            return best;
+        }
+
+        int lo = 0, hi = idx.length - 1, found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[idx[mid]] <= value) {
+                found = mid;
+                lo = mid + 1;
+            }
+            else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+}
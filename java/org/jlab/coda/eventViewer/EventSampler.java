@@ -0,0 +1,152 @@
+package org.jlab.coda.eventViewer;
+
+import java.util.Random;
+
+/**
+ * This class decides which events from a live source (ET or cMsg) are kept
+ * in its list of at most listLimit events. By default the list is filled with
+ * the first events and then nothing more is taken, but over a long run that only
+ * ever shows the start. Other policies keep taking events and give a view of
+ * the whole stream. Events in the list always stay in order of arrival: making
+ * room for a new event means removing one, which then goes on the end.<p>
+ *
+ * Like {@link Filter}, the policy is chosen once for all sources. Each source has
+ * its own sampler which keeps the counts the policy needs, and which starts over
+ * whenever the policy is changed. The policy may also be set outside the gui,
+ * for example by a benchmark which must keep events flowing into a full list.
+ */
+public final class EventSampler {
+
+    /** Ways of choosing which events to keep. */
+    public enum Policy {
+        /** Keep the first events, then stop taking more. */
+        FIRST,
+        /** Keep every Nth event, replacing the oldest when full. */
+        EVERY_NTH,
+        /** Keep a uniform random sample of the events of the current window of T seconds. */
+        RESERVOIR,
+        /** Keep the newest events, replacing the oldest when full. */
+        NEWEST
+    }
+
+    /** Returned by {@link #place(int, int)} if the event is not kept. */
+    static final int DROP = -2;
+
+    /** Returned by {@link #place(int, int)} if the event is added without removing another. */
+    static final int APPEND = -1;
+
+
+    /** Policy of all samplers. */
+    private static volatile Policy policy = Policy.FIRST;
+
+    /** N of {@link Policy#EVERY_NTH}. */
+    private static volatile int everyN = 10;
+
+    /** Length of window of {@link Policy#RESERVOIR} in milliseconds. */
+    private static volatile long windowMillis = 10000L;
+
+    /** Number of times the settings have changed. */
+    private static volatile int settingsVersion;
+
+
+    /** Settings version this sampler's counts belong to. */
+    private int version = -1;
+
+    /** Number of events seen. */
+    private long seen;
+
+    /** Start of current reservoir window in milliseconds. */
+    private long windowStart;
+
+    /** Number of events seen in current reservoir window. */
+    private long windowSeen;
+
+    /** Chooses which event a reservoir replaces. */
+    private final Random random = new Random();
+
+
+
+    /**
+     * Set how all live event sources choose which events to keep.
+     * @param policy  way of choosing events.
+     * @param n       keep every nth event for {@link Policy#EVERY_NTH}.
+     * @param seconds length of window for {@link Policy#RESERVOIR}.
+     */
+    public static synchronized void setPolicy(Policy policy, int n, int seconds) {
+        everyN = Math.max(1, n);
+        windowMillis = 1000L * Math.max(1, seconds);
+        EventSampler.policy = policy;
+        settingsVersion++;
+    }
+
+
+    /**
+     * Get how live event sources choose which events to keep.
+     * @return way of choosing events.
+     */
+    public static Policy getPolicy() {return policy;}
+
+
+    /** Start counting over. */
+    void reset() {
+        seen = windowSeen = 0L;
+        windowStart = System.currentTimeMillis();
+    }
+
+
+    /**
+     * Does the source need to keep taking events?
+     * Only if the list is not full or the policy replaces events in it.
+     * @param size  number of events in list.
+     * @param limit most events allowed in list.
+     * @return {@code true} if more events are wanted.
+     */
+    boolean wantsMore(int size, int limit) {
+        return policy != Policy.FIRST || size < limit;
+    }
+
+
+    /**
+     * Decide what to do with a newly arrived event which got past the filter.
+     * @param size  number of events in list.
+     * @param limit most events allowed in list.
+     * @return {@link #DROP} if event is not kept, {@link #APPEND} if it goes on the end
+     *         of the list, or else the index of the event to remove before it goes on the end.
+     */
+    int place(int size, int limit) {
+        if (version != settingsVersion) {
+            version = settingsVersion;
+            reset();
+        }
+        seen++;
+
+        switch (policy) {
+            case EVERY_NTH:
+                if ((seen - 1) % everyN != 0) return DROP;
+                return size < limit ? APPEND : 0;
+
+            case RESERVOIR:
+                long now = System.currentTimeMillis();
+                if (now - windowStart >= windowMillis) {
+                    windowStart = now;
+                    windowSeen = 0L;
+                }
+                windowSeen++;
+                if (size < limit) return APPEND;
+
+                // The first events of a window replace those of the last, oldest first
+                if (windowSeen <= limit) return 0;
+
+                // Then, like any reservoir, each event is kept with probability limit/seen
+                long j = (long) (random.nextDouble() * windowSeen);
+                return j < size ? (int) j : DROP;
+
+            case NEWEST:
+                return size < limit ? APPEND : 0;
+
+            case FIRST:
+            default:
+                return size < limit ? APPEND : DROP;
+        }
+    }
+}
@@ -1,17 +1,19 @@
 package org.jlab.coda.eventViewer;
 
 /**
- * This enum contains the choices for a source of events to view.
+ * This enum contains the choices for a source of events to view: a file, or one
+ * of the live feeds (ET, cMsg, a replayed file, a directory of files or standard
+ * input), all of which are handled through a {@link FeedHandler}.
  * @author timmer
  * Oct 20, 2009
  */
 public enum EventSource {
     FILE ,
-    CMSG ,
-    ET   ;
+    FEED ;
 
     /** Each event source may be associated with a single dictionary source
-      * and thereby a single dictionary. */
+      * and thereby a single dictionary. Each feed keeps its own instead,
+      * see {@link FeedHandler#getDictionarySource()}. */
     private DictionarySource source = DictionarySource.NONE;
 
 
@@ -0,0 +1,479 @@
+package org.jlab.coda.eventViewer;
+
+import org.jlab.coda.hipo.Compressor;
+import org.jlab.coda.hipo.HipoException;
+import org.jlab.coda.hipo.RecordHeader;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * This class accumulates statistics about evio events: how many of each
+ * top-level tag, a histogram of event lengths, compression ratios of evio 6 records
+ * and how often each trigger (event) type appears in built physics events.
+ * Everything is kept in primitive counters and found by walking the raw data
+ * of blocks (evio 4) or records (evio 6) so no EvioEvent objects are created.<p>
+ *
+ * All methods are synchronized. To gather statistics in parallel, give each thread
+ * its own object and {@link #merge(EventStatistics)} them into a shared one.
+ */
+public class EventStatistics {
+
+    /** Number of event length histogram bins, one per power of 2 bytes. */
+    private static final int LENGTH_BINS = 32;
+
+    /** Width of each compression ratio histogram bin. */
+    private static final double RATIO_BIN_WIDTH = 0.25;
+
+    /** Number of compression ratio histogram bins, the last holding all larger ratios. */
+    private static final int RATIO_BINS = 20;
+
+    /** Evio data type of segments. */
+    private static final int TYPE_SEGMENT = 0x20;
+
+    /** Evio data type of unsigned 16 bit ints. */
+    private static final int TYPE_USHORT16 = 0x5;
+
+
+    /** Number of events. */
+    private long eventCount;
+
+    /** Total bytes of all events. */
+    private long eventBytes;
+
+    /** Number of evio 4 blocks or evio 6 records. */
+    private long recordCount;
+
+    /** Number of blocks or records which could not be understood. */
+    private long badRecordCount;
+
+    /** Number of events, by top-level tag. */
+    private final long[] tagCounts = new long[65536];
+
+    /** Number of events in each length bin, bin n holding lengths in [2^n, 2^(n+1)) bytes. */
+    private final long[] lengthHistogram = new long[LENGTH_BINS];
+
+    /** Number of compressed records. */
+    private long compressedRecordCount;
+
+    /** Total bytes of compressed data in compressed records. */
+    private long compressedBytes;
+
+    /** Total bytes of data in compressed records once uncompressed. */
+    private long uncompressedBytes;
+
+    /** Number of compressed records in each ratio bin. */
+    private final long[] ratioHistogram = new long[RATIO_BINS];
+
+    /** Number of events, by trigger type, in built physics events. */
+    private final long[] triggerTypeCounts = new long[65536];
+
+    /** Number of built physics events. */
+    private long builtEventCount;
+
+    /** Place to put compressed data, reused to avoid garbage. */
+    private byte[] compressedData = new byte[0];
+
+    /** Place to put uncompressed data, reused to avoid garbage. */
+    private byte[] uncompressedData = new byte[0];
+
+
+
+    /** Set all counters back to zero. */
+    public synchronized void clear() {
+        eventCount = eventBytes = recordCount = badRecordCount = 0L;
+        compressedRecordCount = compressedBytes = uncompressedBytes = builtEventCount = 0L;
+        Arrays.fill(tagCounts, 0L);
+        Arrays.fill(lengthHistogram, 0L);
+        Arrays.fill(ratioHistogram, 0L);
+        Arrays.fill(triggerTypeCounts, 0L);
+    }
+
+
+    /**
+     * Add all the counts of another object to this one.
+     * @param other object whose counts are added to this one.
+     */
+    public void merge(EventStatistics other) {
+        // Avoid holding 2 locks at once
+        EventStatistics copy = other.copy();
+        synchronized (this) {
+            eventCount            += copy.eventCount;
+            eventBytes            += copy.eventBytes;
+            recordCount           += copy.recordCount;
+            badRecordCount        += copy.badRecordCount;
+            compressedRecordCount += copy.compressedRecordCount;
+            compressedBytes       += copy.compressedBytes;
+            uncompressedBytes     += copy.uncompressedBytes;
+            builtEventCount       += copy.builtEventCount;
+            add(tagCounts, copy.tagCounts);
+            add(lengthHistogram, copy.lengthHistogram);
+            add(ratioHistogram, copy.ratioHistogram);
+            add(triggerTypeCounts, copy.triggerTypeCounts);
+        }
+    }
+
+
+    /**
+     * Add the elements of one array to those of another.
+     * @param sum    array added to.
+     * @param counts array added.
+     */
+    private static void add(long[] sum, long[] counts) {
+        for (int i=0; i < sum.length; i++) {
+            sum[i] += counts[i];
+        }
+    }
+
+
+    /**
+     * Get a copy of this object's counts.
+     * @return copy of this object's counts.
+     */
+    public synchronized EventStatistics copy() {
+        EventStatistics copy = new EventStatistics();
+        copy.eventCount            = eventCount;
+        copy.eventBytes            = eventBytes;
+        copy.recordCount           = recordCount;
+        copy.badRecordCount        = badRecordCount;
+        copy.compressedRecordCount = compressedRecordCount;
+        copy.compressedBytes       = compressedBytes;
+        copy.uncompressedBytes     = uncompressedBytes;
+        copy.builtEventCount       = builtEventCount;
+        System.arraycopy(tagCounts, 0, copy.tagCounts, 0, tagCounts.length);
+        System.arraycopy(lengthHistogram, 0, copy.lengthHistogram, 0, lengthHistogram.length);
+        System.arraycopy(ratioHistogram, 0, copy.ratioHistogram, 0, ratioHistogram.length);
+        System.arraycopy(triggerTypeCounts, 0, copy.triggerTypeCounts, 0, triggerTypeCounts.length);
+        return copy;
+    }
+
+
+    /**
+     * Get the number of events seen.
+     * @return number of events seen.
+     */
+    public synchronized long getEventCount() {return eventCount;}
+
+
+    /**
+     * Get the number of events seen with the given top-level tag.
+     * @param tag top-level tag.
+     * @return number of events seen with the given tag.
+     */
+    public synchronized long getTagCount(int tag) {return tagCounts[tag & 0xffff];}
+
+
+    /**
+     * Get the number of events of the given trigger type seen in built physics events.
+     * @param type trigger type.
+     * @return number of events of the given trigger type.
+     */
+    public synchronized long getTriggerTypeCount(int type) {return triggerTypeCounts[type & 0xffff];}
+
+
+    /**
+     * Gather statistics from a buffer containing a sequence of evio 4 blocks
+     * or evio 6 records (buffer format, without any file header), from
+     * position 0 to its limit. Each block or record's byte order is found
+     * from its magic number. Scanning stops at the first data not understood.
+     *
+     * @param buf buffer of evio data, not changed.
+     */
+    public synchronized void scanBuffer(ByteBuffer buf) {
+        // Don't touch caller's buffer's position or order
+        buf = buf.duplicate();
+        int limit = buf.limit();
+        int pos = 0;
+
+        while (pos + 32 <= limit) {
+            // Find the byte order of this block/record
+            buf.order(ByteOrder.BIG_ENDIAN);
+            if (buf.getInt(pos + RecordHeader.MAGIC_OFFSET) != RecordHeader.HEADER_MAGIC) {
+                buf.order(ByteOrder.LITTLE_ENDIAN);
+                if (buf.getInt(pos + RecordHeader.MAGIC_OFFSET) != RecordHeader.HEADER_MAGIC) {
+                    badRecordCount++;
+                    return;
+                }
+            }
+
+            long len = 4L * (buf.getInt(pos) & 0xffffffffL);
+            int hdrLen = 4 * buf.getInt(pos + RecordHeader.HEADER_LENGTH_OFFSET);
+            if (len < hdrLen || hdrLen < 32 || pos + len > limit) {
+                badRecordCount++;
+                return;
+            }
+
+            int version = buf.getInt(pos + RecordHeader.BIT_INFO_OFFSET) & 0xff;
+            boolean ok = version < 6 ? scanBlock(buf, pos, (int) len, hdrLen) :
+                                       scanRecord(buf, pos, (int) len, hdrLen);
+            if (!ok) {
+                badRecordCount++;
+                return;
+            }
+
+            recordCount++;
+            pos += (int) len;
+        }
+    }
+
+
+    /**
+     * Gather statistics from an evio 4 block.
+     *
+     * @param buf    buffer with proper byte order.
+     * @param pos    position of block header.
+     * @param len    length of block in bytes.
+     * @param hdrLen length of block header in bytes.
+     * @return {@code true} if block understood.
+     */
+    private boolean scanBlock(ByteBuffer buf, int pos, int len, int hdrLen) {
+        int count   = buf.getInt(pos + 12);
+        int bitInfo = buf.getInt(pos + 20);
+
+        // Skip any dictionary, which is not included in the count
+        int skip = (bitInfo & 0x100) != 0 ? 1 : 0;
+        return scanEvents(buf, pos + hdrLen, pos + len, count + skip, skip);
+    }
+
+
+    /**
+     * Gather statistics from an evio 6 record, uncompressing it if necessary.
+     *
+     * @param buf    buffer with proper byte order.
+     * @param pos    position of record header.
+     * @param len    length of record in bytes.
+     * @param hdrLen length of record header in bytes.
+     * @return {@code true} if record understood.
+     */
+    private boolean scanRecord(ByteBuffer buf, int pos, int len, int hdrLen) {
+        int count      = buf.getInt(pos + RecordHeader.EVENT_COUNT_OFFSET);
+        int indexLen   = buf.getInt(pos + RecordHeader.INDEX_ARRAY_OFFSET);
+        int bitInfo    = buf.getInt(pos + RecordHeader.BIT_INFO_OFFSET);
+        int userLen    = buf.getInt(pos + RecordHeader.USER_LENGTH_OFFSET);
+        int dataLen    = buf.getInt(pos + RecordHeader.UNCOMPRESSED_LENGTH_OFFSET);
+        int compWord   = buf.getInt(pos + RecordHeader.COMPRESSION_TYPE_OFFSET);
+        int compType   = compWord >>> 28;
+
+        int userPadded = 4*((userLen + 3)/4);
+        int skipBytes  = indexLen + userPadded;
+
+        if (compType == 0 || count < 1) {
+            return scanEvents(buf, pos + hdrLen + skipBytes, pos + len, count, 0);
+        }
+
+        // Compressed data
+        int compLen = 4*(compWord & 0x0fffffff) - ((bitInfo >>> 24) & 3);
+        int fullLen = skipBytes + dataLen;
+        if (compLen < 1 || fullLen < skipBytes || hdrLen + compLen > len) {
+            return false;
+        }
+
+        if (compressedData.length < compLen) {
+            compressedData = new byte[compLen];
+        }
+        ByteBuffer src = buf.duplicate();
+        src.position(pos + hdrLen);
+        src.get(compressedData, 0, compLen);
+
+        byte[] data;
+        try {
+            if (compType == 3) {
+                data = Compressor.uncompressGZIP(compressedData, 0, compLen);
+            }
+            else {
+                if (uncompressedData.length < fullLen) {
+                    uncompressedData = new byte[fullLen];
+                }
+                Compressor.uncompressLZ4(compressedData, 0, compLen, uncompressedData, 0);
+                data = uncompressedData;
+            }
+        }
+        catch (HipoException e) {
+            return false;
+        }
+        catch (RuntimeException e) {
+            // LZ4Exception
+            return false;
+        }
+
+        if (data == null || data.length < fullLen) return false;
+
+        compressedRecordCount++;
+        compressedBytes   += compLen;
+        uncompressedBytes += fullLen;
+        int bin = (int) ((double) fullLen / compLen / RATIO_BIN_WIDTH);
+        ratioHistogram[Math.min(bin, RATIO_BINS - 1)]++;
+
+        ByteBuffer dataBuf = ByteBuffer.wrap(data, 0, fullLen);
+        dataBuf.order(buf.order());
+        return scanEvents(dataBuf, skipBytes, fullLen, count, 0);
+    }
+
+
+    /**
+     * Gather statistics from consecutive events.
+     *
+     * @param buf   buffer with proper byte order.
+     * @param pos   position of first event.
+     * @param limit position just past the last event.
+     * @param count number of events.
+     * @param skip  number of leading events (dictionary) not to count.
+     * @return {@code true} if all events understood.
+     */
+    private boolean scanEvents(ByteBuffer buf, int pos, int limit, int count, int skip) {
+        for (int i=0; i < count; i++) {
+            if (pos + 8 > limit) return false;
+
+            long bytes = 4L * ((buf.getInt(pos) & 0xffffffffL) + 1L);
+            if (pos + bytes > limit) return false;
+
+            if (i >= skip) {
+                addEvent(buf, pos, (int) bytes);
+            }
+            pos += (int) bytes;
+        }
+        return true;
+    }
+
+
+    /**
+     * Count a single event.
+     *
+     * @param buf   buffer with proper byte order.
+     * @param pos   position of event.
+     * @param bytes length of event in bytes.
+     */
+    private void addEvent(ByteBuffer buf, int pos, int bytes) {
+        int word = buf.getInt(pos + 4);
+        int tag = word >>> 16;
+
+        eventCount++;
+        eventBytes += bytes;
+        tagCounts[tag]++;
+        lengthHistogram[31 - Integer.numberOfLeadingZeros(bytes)]++;
+
+        CodaBankTag codaTag = CodaBankTag.getBankType(tag);
+        if (codaTag == CodaBankTag.PEB || codaTag == CodaBankTag.PEB_SYNC ||
+            codaTag == CodaBankTag.SEB || codaTag == CodaBankTag.SEB_SYNC) {
+            builtEventCount++;
+            addTriggerTypes(buf, pos, bytes, word & 0xff);
+        }
+    }
+
+
+    /**
+     * Count the trigger types found in the built trigger bank of a built physics event.
+     * The trigger bank is the first bank. Its first segment holds event numbers and
+     * timestamps and its second segment holds one unsigned short type for each event.
+     *
+     * @param buf   buffer with proper byte order.
+     * @param pos   position of built event.
+     * @param bytes length of built event in bytes.
+     * @param num   number of events in built event.
+     */
+    private void addTriggerTypes(ByteBuffer buf, int pos, int bytes, int num) {
+        int limit = pos + bytes;
+        int trigPos = pos + 8;
+        if (trigPos + 8 > limit) return;
+
+        int trigWord = buf.getInt(trigPos + 4);
+        int trigTag  = trigWord >>> 16;
+        if (trigTag < CodaBankTag.TRIGGER_BUILT_NOTS_NORUN.getValue() ||
+            trigTag > CodaBankTag.TRIGGER_BUILT_TS_RUN_NOSPEC.getValue() ||
+            ((trigWord >> 8) & 0x3f) != TYPE_SEGMENT) {
+            return;
+        }
+
+        int segPos = trigPos + 8;
+        if (segPos + 4 > limit) return;
+        segPos += 4 + 4*(buf.getInt(segPos) & 0xffff);
+        if (segPos + 4 > limit) return;
+
+        int segWord = buf.getInt(segPos);
+        if (((segWord >> 16) & 0x3f) != TYPE_USHORT16) return;
+
+        int types = Math.min(num, 2*(segWord & 0xffff));
+        if (segPos + 4 + 2*types > limit) return;
+
+        for (int i=0; i < types; i++) {
+            triggerTypeCounts[buf.getShort(segPos + 4 + 2*i) & 0xffff]++;
+        }
+    }
+
+
+    /**
+     * Get a printable report of all statistics.
+     * @return printable report of all statistics.
+     */
+    public String report() {
+        EventStatistics s = copy();
+        StringBuilder sb = new StringBuilder(4096);
+
+        sb.append(String.format("Events:  %,d in %,d blocks/records", s.eventCount, s.recordCount));
+        if (s.badRecordCount > 0) {
+            sb.append(String.format(" (%,d unreadable)", s.badRecordCount));
+        }
+        sb.append(String.format("%nBytes:   %,d", s.eventBytes));
+        if (s.eventCount > 0) {
+            sb.append(String.format(", average event %,d", s.eventBytes/s.eventCount));
+        }
+
+        sb.append(String.format("%n%nTop-level tags:%n"));
+        for (int tag=0; tag < s.tagCounts.length; tag++) {
+            if (s.tagCounts[tag] == 0) continue;
+            sb.append(String.format("  0x%04x  %-24s %,14d  %6.2f%%%n", tag,
+                                    CodaBankTag.getName(tag), s.tagCounts[tag],
+                                    100.*s.tagCounts[tag]/s.eventCount));
+        }
+
+        sb.append(String.format("%nEvent lengths (bytes):%n"));
+        long max = 1;
+        for (long c : s.lengthHistogram) max = Math.max(max, c);
+        for (int bin=0; bin < LENGTH_BINS; bin++) {
+            if (s.lengthHistogram[bin] == 0) continue;
+            sb.append(String.format("  %,13d - %,-13d %,14d  %s%n", 1L << bin, (1L << (bin + 1)) - 1,
+                                    s.lengthHistogram[bin], bar(s.lengthHistogram[bin], max)));
+        }
+
+        if (s.compressedRecordCount > 0) {
+            sb.append(String.format("%nCompressed records: %,d, overall ratio %.3f%n",
+                                    s.compressedRecordCount, (double) s.uncompressedBytes/s.compressedBytes));
+            max = 1;
+            for (long c : s.ratioHistogram) max = Math.max(max, c);
+            for (int bin=0; bin < RATIO_BINS; bin++) {
+                if (s.ratioHistogram[bin] == 0) continue;
+                String range = bin == RATIO_BINS - 1 ?
+                        String.format("%5.2f +      ", bin*RATIO_BIN_WIDTH) :
+                        String.format("%5.2f - %5.2f", bin*RATIO_BIN_WIDTH, (bin + 1)*RATIO_BIN_WIDTH);
+                sb.append(String.format("  %s %,14d  %s%n", range, s.ratioHistogram[bin],
+                                        bar(s.ratioHistogram[bin], max)));
+            }
+        }
+
+        if (s.builtEventCount > 0) {
+            sb.append(String.format("%nTrigger types in %,d built events:%n", s.builtEventCount));
+            for (int type=0; type < s.triggerTypeCounts.length; type++) {
+                if (s.triggerTypeCounts[type] == 0) continue;
+                sb.append(String.format("  %5d %,14d%n", type, s.triggerTypeCounts[type]));
+            }
+        }
+
+        return sb.toString();
+    }
+
+
+    /**
+     * Make a text bar whose length is proportional to a count.
+     * @param count count.
+     * @param max   largest count.
+     * @return text bar.
+     */
+    private static String bar(long count, long max) {
+        int len = (int) (40*count/max);
+        if (len == 0 && count > 0) len = 1;
+        StringBuilder sb = new StringBuilder(len);
+        for (int i=0; i < len; i++) sb.append('#');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,390 @@
+package org.jlab.coda.eventViewer;
+
+import org.jlab.coda.jevio.BaseStructure;
+import org.jlab.coda.jevio.BaseStructureHeader;
+import org.jlab.coda.jevio.EvioEvent;
+import org.jlab.coda.jevio.EvioException;
+import org.jlab.coda.jevio.EvioReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * This class holds the list of events received from a live source (ET or cMsg)
+ * without keeping them on the heap. Each event's bytes are written into a spill
+ * file and only a compact index of position, length, event number, byte order
+ * and dictionary is kept in memory, about 20 bytes per event. An event is parsed
+ * again each time it's asked for. This way hundreds of thousands of recent events
+ * can be kept for browsing after a problem, bounded by disk instead of heap.<p>
+ *
+ * The spill file is used as a ring. Once it's written up to its size limit,
+ * writing starts over at the beginning and the oldest events in the way are
+ * dropped from the list. It's deleted when the viewer exits.<p>
+ *
+ * The spill file is sized by the "spillBytes" system property (default 1GB).
+ * If a thread using it is interrupted, its channel is closed, so it's opened again
+ * for the next event. Any other failure to use it prints one error and no more
+ * events are kept.
+ * This class is not thread safe, each handler uses it while synchronized.
+ */
+final class EventStore {
+
+    /** Most events allowed in a list. */
+    static final int MAX_EVENTS = 1000000;
+
+    /** Default size of spill file in bytes. */
+    private static final long DEFAULT_SPILL_BYTES = 1L << 30;
+
+
+    /** Maximum size of spill file in bytes. */
+    private final long maxBytes = Math.max(1L << 20, Long.getLong("spillBytes", DEFAULT_SPILL_BYTES));
+
+    /** Spill file, created when the first event arrives. */
+    private File file;
+
+    /** Channel to spill file. */
+    private FileChannel channel;
+
+    /** Has using the spill file failed so events are no longer kept? */
+    private boolean disabled;
+
+    /** Where the next event is written in the spill file. */
+    private long writePosition;
+
+    /** Reused to write events into spill file. */
+    private ByteBuffer writeBuffer = ByteBuffer.allocateDirect(64 * 1024);
+
+    /** Dictionaries of stored events, in order seen. */
+    private final ArrayList<String> dictionaries = new ArrayList<String>();
+
+    /** Index into {@link #dictionaries} of each dictionary. */
+    private final HashMap<String, Integer> dictionaryIndexes = new HashMap<String, Integer>();
+
+    // The index is a ring of slots, event i of the list is in slot (head + i) % capacity
+
+    /** File position of each event. */
+    private long[] positions = new long[1024];
+
+    /** Length in bytes of each event. */
+    private int[] lengths = new int[1024];
+
+    /** Event number of each event. */
+    private int[] numbers = new int[1024];
+
+    /** Index of dictionary + 1 (0 for none) shifted left 1, with the low bit set for big endian. */
+    private int[] flags = new int[1024];
+
+    /** Slot of oldest event. */
+    private int head;
+
+    /** Number of events stored. */
+    private int count;
+
+
+
+    /**
+     * Get the number of events stored.
+     * @return number of events stored.
+     */
+    int size() {return count;}
+
+
+    /**
+     * Write the given event into the spill file and add it to the end of the list.
+     * If the spill file has no room, the oldest events are dropped.
+     * An event too big for the spill file, or one that cannot be written, is not added.
+     * @param event event to add.
+     * @param bytes bytes of event as received, or null if the event must be written out.
+     *              Their position and limit are not changed.
+     * @return number of events dropped from the front of the list to make room.
+     */
+    int add(EvioEvent event, ByteBuffer bytes) {
+        int length = event.getTotalBytes();
+        if (disabled || length > maxBytes) return 0;
+        int before = count;
+
+        try {
+            if (file == null) {
+                file = File.createTempFile("JEventViewer", ".spill");
+                file.deleteOnExit();
+            }
+            if (channel == null || !channel.isOpen()) {
+                channel = new RandomAccessFile(file, "rw").getChannel();
+            }
+
+            if (count == 0) {
+                writePosition = 0L;
+            }
+            else if (writePosition + length > maxBytes) {
+                // Events left after this position are from the last time around and are the oldest
+                while (count > 0 && positions[head] >= writePosition) {
+                    dropOldest();
+                }
+                writePosition = 0L;
+            }
+
+            // Make room where this event goes
+            while (count > 0 && positions[head] >= writePosition &&
+                                positions[head] < writePosition + length) {
+                dropOldest();
+            }
+
+            ByteBuffer buf;
+            if (bytes != null) {
+                buf = bytes.duplicate();
+            }
+            else {
+                if (writeBuffer.capacity() < length) {
+                    writeBuffer = ByteBuffer.allocateDirect(Math.max(length, 2 * writeBuffer.capacity()));
+                }
+                writeBuffer.clear();
+                writeBuffer.order(event.getByteOrder());
+                writeEvent(event, writeBuffer);
+                writeBuffer.flip();
+                buf = writeBuffer;
+            }
+            long pos = writePosition;
+            while (buf.hasRemaining()) {
+                pos += channel.write(buf, pos);
+            }
+        }
+        catch (ClosedChannelException e) {
+            // Interrupted while writing, the channel is opened again for the next event
+            return before - count;
+        }
+        catch (IOException e) {
+            disable(e);
+            return before;
+        }
+
+        if (count == positions.length) {
+            grow();
+        }
+        int slot = slot(count++);
+        positions[slot] = writePosition;
+        lengths[slot]   = length;
+        numbers[slot]   = event.getEventNumber();
+        flags[slot]     = (dictionaryIndex(event.getDictionaryXML()) << 1) |
+                          (event.getByteOrder() == ByteOrder.BIG_ENDIAN ? 1 : 0);
+        writePosition  += length;
+        return before + 1 - count;
+    }
+
+
+    /**
+     * Read the event at the given place in the list out of the spill file and parse it.
+     * @param index index into list starting at 0.
+     * @return parsed event, or null if it cannot be read or parsed.
+     */
+    EvioEvent get(int index) {
+        if (index < 0 || index >= count) return null;
+        int slot = slot(index);
+
+        try {
+            if (!channel.isOpen()) {
+                channel = new RandomAccessFile(file, "rw").getChannel();
+            }
+
+            byte[] bytes = new byte[lengths[slot]];
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            long pos = positions[slot];
+            while (buf.hasRemaining()) {
+                int n = channel.read(buf, pos);
+                if (n < 0) return null;
+                pos += n;
+            }
+
+            ByteOrder order = (flags[slot] & 1) == 1 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+            EvioEvent event = EvioReader.parseEvent(bytes, 0, order);
+            event.setEventNumber(numbers[slot]);
+            int dict = flags[slot] >>> 1;
+            if (dict > 0) {
+                event.setDictionaryXML(dictionaries.get(dict - 1));
+            }
+            return event;
+        }
+        catch (ClosedChannelException e) {
+            // Interrupted while reading, the channel is opened again for the next event
+        }
+        catch (IOException e) {
+            disable(e);
+        }
+        catch (EvioException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+
+    /**
+     * Remove the event at the given place in the list.
+     * Its bytes stay in the spill file until written over.
+     * @param index index into list starting at 0.
+     */
+    void remove(int index) {
+        if (index < 0 || index >= count) return;
+
+        // Move whichever side of the ring is shorter
+        if (index < count / 2) {
+            for (int i = index; i > 0; i--) {
+                copy(slot(i - 1), slot(i));
+            }
+            head = slot(1);
+        }
+        else {
+            for (int i = index; i < count - 1; i++) {
+                copy(slot(i + 1), slot(i));
+            }
+        }
+        count--;
+    }
+
+
+    /** Remove all events. The spill file is kept to be written over. */
+    void clear() {
+        head = count = 0;
+        writePosition = 0L;
+    }
+
+
+    /**
+     * Stop keeping events after the spill file fails, dropping those kept and the file.
+     * @param e reason the spill file failed.
+     */
+    private void disable(IOException e) {
+        System.err.println("Event list spill file failed, no more events kept: " + e.getMessage());
+        disabled = true;
+        clear();
+        try {
+            if (channel != null) channel.close();
+        }
+        catch (IOException ex) {}
+        if (file != null) file.delete();
+    }
+
+
+    /** Drop the oldest event. */
+    private void dropOldest() {
+        head = slot(1);
+        count--;
+    }
+
+
+    /**
+     * Get the slot in the index of the given place in the list.
+     * @param index index into list starting at 0.
+     * @return slot in index.
+     */
+    private int slot(int index) {
+        int slot = head + index;
+        return slot < positions.length ? slot : slot - positions.length;
+    }
+
+
+    /** Copy one index slot into another. */
+    private void copy(int from, int to) {
+        positions[to] = positions[from];
+        lengths[to]   = lengths[from];
+        numbers[to]   = numbers[from];
+        flags[to]     = flags[from];
+    }
+
+
+    /** Double the size of the index, moving the oldest event to slot 0. */
+    private void grow() {
+        int size = 2 * positions.length;
+        long[] newPositions = new long[size];
+        int[]  newLengths   = new int[size];
+        int[]  newNumbers   = new int[size];
+        int[]  newFlags     = new int[size];
+        for (int i=0; i < count; i++) {
+            int slot = slot(i);
+            newPositions[i] = positions[slot];
+            newLengths[i]   = lengths[slot];
+            newNumbers[i]   = numbers[slot];
+            newFlags[i]     = flags[slot];
+        }
+        positions = newPositions;
+        lengths   = newLengths;
+        numbers   = newNumbers;
+        flags     = newFlags;
+        head = 0;
+    }
+
+
+    /**
+     * Get the index of the given dictionary, adding it if new.
+     * @param xml dictionary, may be null.
+     * @return index + 1 of dictionary, or 0 if none.
+     */
+    private int dictionaryIndex(String xml) {
+        if (xml == null) return 0;
+        Integer index = dictionaryIndexes.get(xml);
+        if (index == null) {
+            dictionaries.add(xml);
+            index = dictionaries.size();
+            dictionaryIndexes.put(xml, index);
+        }
+        return index;
+    }
+
+
+    /**
+     * Write an event into a buffer at its position, in the buffer's byte order.
+     * Evio's own write sign extends the byte holding a bank's or segment's padding
+     * and data type, so any whose data is padded by 2 or 3 bytes (8 or 16 bit data)
+     * comes out with a tag of all ones. Those header words are written again here.
+     * @param event event to write.
+     * @param buf   buffer with room for the event.
+     */
+    static void writeEvent(EvioEvent event, ByteBuffer buf) {
+        int pos = buf.position();
+        event.write(buf);
+        fixHeaders(event, buf, pos);
+    }
+
+
+    /**
+     * Rewrite the header of a written structure and its children if padded.
+     * @param structure structure written.
+     * @param buf       buffer written into.
+     * @param pos       position of structure in buffer.
+     */
+    private static void fixHeaders(BaseStructure structure, ByteBuffer buf, int pos) {
+        BaseStructureHeader header = structure.getHeader();
+        int typePad = (header.getPadding() << 6) | (header.getDataType().getValue() & 0x3f);
+
+        switch (structure.getStructureType()) {
+            case BANK:
+                if (header.getPadding() != 0) {
+                    buf.putInt(pos + 4, (header.getTag() << 16) | (typePad << 8) |
+                                        (header.getNumber() & 0xff));
+                }
+                pos += 8;
+                break;
+            case SEGMENT:
+                if (header.getPadding() != 0) {
+                    buf.putInt(pos, ((header.getTag() & 0xff) << 24) | (typePad << 16) |
+                                    (header.getLength() & 0xffff));
+                }
+                pos += 4;
+                break;
+            default:
+                // Tag segments have no padding
+                pos += 4;
+        }
+
+        if (structure.getChildCount() < 1) return;
+        for (BaseStructure child : structure.getChildrenList()) {
+            fixHeaders(child, buf, pos);
+            pos += child.getTotalBytes();
+        }
+    }
+}
@@ -193,7 +193,9 @@ public class EventTreeFrame extends JFrame  {
                 "        [-help]                print this help\n" +
                 "        [-DfilePath=xxx]       set default directory for data files\n" +
                 "        [-DdictionaryPath=xxx] set default dictionary for dictionary files\n" +
-                "        [-Ddictionary=xxx]     set name of default dictionary file\n");
+                "        [-Ddictionary=xxx]     set name of default dictionary file\n" +
+                "        [-DmemoryBackend=xxx]  how to map files: buffer, segment (JDK 22+), or auto (default)\n" +
+                "        [-DmetricsLog=xxx]     print timing metrics (also in JMX) every xxx seconds\n");
     }
 
 
@@ -215,4 +217,4 @@ public class EventTreeFrame extends JFrame  {
 		});
 	}
 
-}
\ No newline at end of file
+}
\ No newline at end of file
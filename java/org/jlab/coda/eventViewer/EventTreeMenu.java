@@ -18,7 +18,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.EventListener;
-import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
 
 /**
  * This class creates the menus used in the GUI.
@@ -43,6 +43,9 @@ public class EventTreeMenu {
     /** Menu item for opening event file. */
     private JMenuItem openEventFile;
 
+    /** Menu item to open all the files of a run. */
+    private JMenuItem openRun;
+
     /** Menu item allowing configuration of event sources.  */
     private JMenu eventSourceConfig;
 
@@ -97,9 +100,27 @@ public class EventTreeMenu {
     /** Remember if evio file extension filter was used last time. */
     boolean useEvioFileFilter = false;
 
-    /** The reader object for the currently viewed evio file. */
+    /** The reader object for the currently viewed evio file, once created. */
     private EvioReader evioFileReader;
 
+    /** The currently viewed evio file, shared with any windows viewing its bytes. */
+    private FileSession fileSession;
+
+    /** The currently viewed run of many files, if viewing one instead of a single file. */
+    private RunSession runSession;
+
+    /** Event marked to be compared with another. */
+    private EvioEvent markedEvent;
+
+    /** Description of markedEvent. */
+    private String markedEventName;
+
+    /** Captures what a live source receives into files, null if not capturing. */
+    private FlightRecorder recorder;
+
+    /** Menu item to start or stop capturing into files. */
+    private JMenuItem captureItem;
+
     /** Evio version of opened file. Default to v6. */
     private int evioVersion = 6;
 
@@ -123,34 +144,32 @@ public class EventTreeMenu {
      */
     private DictionarySource dictionarySource = DictionarySource.NONE;
 
-    /**
-     * To avoid parsing of identical XML strings into dictionary objects
-     * over and over again, just keep a hash of created dictionaries.
-     */
-    private HashMap<String, EvioXMLDictionary> dictionaryMap =
-            new HashMap<String, EvioXMLDictionary>(32);
-
     //----------------------
-    // cMsg stuff
+    // Live feed stuff
     //----------------------
 
-    /** Panel to handle cMsg communications object. */
-    private JPanel cmsgPanel;
+    /** Object handling the live feed being viewed, if any. */
+    private FeedHandler feedHandler;
 
     /** Object to handle cMsg communications. */
     private cMsgHandler cmsgHandler;
 
-    //----------------------
-    // ET stuff
-    //----------------------
-
-    /** Panel to handle ET communications object. */
-    private JPanel etPanel;
-
     /** Object to handle ET communications. */
     private EtHandler etHandler;
 
-    /** Thread to update cMsg or ET list size in GUI. */
+    /** Object to replay a file as if from ET. */
+    private ReplayHandler replayHandler;
+
+    /** Object to read the files of a directory as they're written. */
+    private DirectoryHandler directoryHandler;
+
+    /** Object to read evio piped into standard input. */
+    private FeedHandler stdinHandler;
+
+    /** Feed handler whose data is being captured, if any. */
+    private FeedHandler capturedHandler;
+
+    /** Thread to update live feed's list size in GUI. */
     private UpdateThread listSizeUpdateThread;
 
     //----------------------
@@ -211,103 +230,77 @@ public class EventTreeMenu {
 
 
 
-    private void displayCmsgEvent(EvioEvent event) {
+    /**
+     * Display an event from the live feed, making any dictionary which came
+     * with it available as the cMsg or ET dictionary, depending on the feed.
+     * @param event event to display, may be null.
+     */
+    private void displayFeedEvent(EvioEvent event) {
         if (event != null) {
             eventTreePanel.setEvent(event);
-            // If there's a dictionary in the this message, make it available.
-            String xml = event.getDictionaryXML();
-            if (xml != null) {
-                EvioXMLDictionary dict = dictionaryMap.get(xml);
-                if (dict == null) {
-                    dict = (EvioXMLDictionary)NameProviderFactory.
-                            createNameProvider(xml);
-                    dictionaryMap.put(xml, dict);
-                }
 
-                // Store this dictionary as the cMsg dictionary
-                DictionarySource.CMSG.setDictionary(dict);
+            DictionarySource dataSource = feedHandler.getDataDictionarySource();
+            JRadioButtonMenuItem dataItem = (dataSource == DictionarySource.CMSG) ? cmsgItem : etItem;
 
-                // Allow the new dictionary to be used
-                cmsgItem.setEnabled(true);
+            // If there's a dictionary with this event, make it available.
+            String xml = event.getDictionaryXML();
+            if (xml != null) {
+                // Store this dictionary as the cMsg or ET dictionary
+                applyDictionary(xml, dataSource);
             }
             else {
-                // No dictionary associated with this cMsg message
-                DictionarySource.CMSG.setDictionary(null);
+                // No dictionary associated with this event
+                dataSource.setDictionary(null);
 
-                // If cMsg was chose as dictionary source, switch to NONE
+                // If it was chosen as dictionary source, switch to NONE
                 validateDictionarySource();
 
-                // Don't allow cMsg dictionary (non-existent) to be used
-                cmsgItem.setSelected(false);
-                cmsgItem.setEnabled(false);
+                // Don't allow non-existent dictionary to be used
+                dataItem.setSelected(false);
+                dataItem.setEnabled(false);
             }
             currentEvent.setValue(event.getEventNumber());
         }
     }
 
 
-    private void displayEtEvent(EvioEvent event) {
-        if (event != null) {
-            eventTreePanel.setEvent(event);
-            String xml = event.getDictionaryXML();
-            if (xml != null) {
-                EvioXMLDictionary dict = dictionaryMap.get(xml);
-                if (dict == null) {
-                    dict = (EvioXMLDictionary)NameProviderFactory.
-                            createNameProvider(xml);
-                    dictionaryMap.put(xml, dict);
-                }
+    /**
+     * Store a dictionary as that of the given source and allow it to be used.
+     * A dictionary loaded with an evio file is also started being used
+     * for the current (file) event source. Identical xml is only parsed once.
+     * @param xml    dictionary XML.
+     * @param source source of dictionary: evio file, cMsg or ET.
+     */
+    private void applyDictionary(String xml, DictionarySource source) {
+        source.setDictionary(DictionaryRegistry.get(xml).getDictionary());
 
-                DictionarySource.ET.setDictionary(dict);
-                etItem.setEnabled(true);
-            }
-            else {
-                DictionarySource.ET.setDictionary(null);
-                validateDictionarySource();
-                etItem.setSelected(false);
-                etItem.setEnabled(false);
-            }
-            currentEvent.setValue(event.getEventNumber());
+        if (source == DictionarySource.EVIOFILE) {
+            fileItem.setEnabled(true);
+            setDictionarySource(DictionarySource.EVIOFILE);
         }
-    }
-
-
-    private void setCmsgButtons() {
-        if (isListSizeOne) {
-            prevButton.setEnabled(false);
-            nextButton.setEnabled(true);
+        else if (source == DictionarySource.CMSG) {
+            cmsgItem.setEnabled(true);
         }
         else {
-            if (cmsgHandler.getCurrentEventIndex() > 0) {
-                prevButton.setEnabled(true);
-            }
-            else {
-                prevButton.setEnabled(false);
-            }
-
-            if (cmsgHandler.getCurrentEventIndex() >= cmsgHandler.getListSize() - 1 ) {
-                nextButton.setEnabled(false);
-            }
-            else {
-                nextButton.setEnabled(true);
-            }
+            etItem.setEnabled(true);
         }
     }
 
-    private void setEtButtons() {
+
+    private void setFeedButtons() {
         if (isListSizeOne) {
             prevButton.setEnabled(false);
             nextButton.setEnabled(true);
         }
         else {
-            if (etHandler.getCurrentEventIndex() > 0) {
+            if (feedHandler.getCurrentEventIndex() > 0) {
                 prevButton.setEnabled(true);
             }
             else {
                 prevButton.setEnabled(false);
             }
 
-            if (etHandler.getCurrentEventIndex() >= etHandler.getListSize() - 1 ) {
+            if (feedHandler.getCurrentEventIndex() >= feedHandler.getListSize() - 1 ) {
                 nextButton.setEnabled(false);
             }
             else {
@@ -326,79 +319,40 @@ public class EventTreeMenu {
         Runnable r = new Runnable() {
 
             public void run() {
-                switch (eventSource) {
-                    case CMSG:
-                        if (cmsgHandler != null) {
-                            int listSize = cmsgHandler.getListSize();
-
-                            // Set the limits of the event # spinner (valid event #s to select)
-                            SpinnerNumberModel model = (SpinnerNumberModel) currentEvent.getModel();
-                            model.setMaximum(listSize);
-                            if (listSize > 0) {
-                                currentEvent.setEnabled(true);
-                                // Don't leave the widget value outside of its range or trouble!
-                                if ((Integer)model.getValue() > 0) {
-                                    model.setMinimum(1);
-                                }
-                            }
-
-                            // Enable "next" button if more events come along
-                            if (cmsgHandler.getCurrentEventIndex() < listSize - 1) {
-                                nextButton.setEnabled(true);
-                            }
-
-                            // Update Q size widget
-                            if (listSize >= cmsgHandler.getListLimit()) {
-                                setNumberOfEventsColor(darkRed);
-                                qSize.setText("Full  " + listSize);
-                            }
-                            else {
-                                setNumberOfEventsColor(darkGreen);
-                                qSize.setText("" + listSize);
-                            }
-
-                            // If we've redefined the "next" button when list limit = 1,
-                            // then we load a new event every time next is hit.
-                            if (isListSizeOne && listSize > 0) {
-                                displayCmsgEvent(cmsgHandler.getNextEvent());
-                            }
+                if (eventSource == EventSource.FEED && feedHandler != null) {
+                    int listSize = feedHandler.getListSize();
+
+                    // Set the limits of the event # spinner (valid event #s to select)
+                    SpinnerNumberModel model = (SpinnerNumberModel) currentEvent.getModel();
+                    model.setMaximum(listSize);
+                    if (listSize > 0) {
+                        currentEvent.setEnabled(true);
+                        // Don't leave the widget value outside of its range or trouble!
+                        if ((Integer)model.getValue() > 0) {
+                            model.setMinimum(1);
                         }
-                        break;
-
-                    case ET:
-                        if (etHandler != null) {
-                            int listSize = etHandler.getListSize();
-
-                            SpinnerNumberModel model = (SpinnerNumberModel) currentEvent.getModel();
-                            model.setMaximum(listSize);
-                            if (listSize > 0) {
-                                currentEvent.setEnabled(true);
-                                if ((Integer)model.getValue() > 0) {
-                                    model.setMinimum(1);
-                                }
-                            }
-
-                            if (etHandler.getCurrentEventIndex() <  listSize - 1) {
-                                nextButton.setEnabled(true);
-                            }
-
-                            if (listSize >= etHandler.getListLimit()) {
-                                setNumberOfEventsColor(darkRed);
-                                qSize.setText("Full  " + listSize);
-                            }
-                            else {
-                                setNumberOfEventsColor(darkGreen);
-                                qSize.setText("" + listSize);
-                            }
+                    }
 
-                            if (isListSizeOne && listSize > 0) {
-                                displayEtEvent(etHandler.getNextEvent());
-                            }
-                        }
-                        break;
+                    // Enable "next" button if more events come along
+                    if (feedHandler.getCurrentEventIndex() < listSize - 1) {
+                        nextButton.setEnabled(true);
+                    }
 
-                    default:
+                    // Update Q size widget
+                    if (listSize >= feedHandler.getListLimit()) {
+                        setNumberOfEventsColor(darkRed);
+                        qSize.setText("Full  " + listSize);
+                    }
+                    else {
+                        setNumberOfEventsColor(darkGreen);
+                        qSize.setText("" + listSize);
+                    }
 
+                    // If we've redefined the "next" button when list limit = 1,
+                    // then we load a new event every time next is hit.
+                    if (isListSizeOne && listSize > 0) {
+                        displayFeedEvent(feedHandler.getNextEvent());
+                    }
                 }
             }
         };
@@ -417,132 +371,197 @@ public class EventTreeMenu {
 
 
     /**
-     * Switch between different event sources (file, cmsg, et).
+     * Is a file, or a run of many files, open for viewing?
+     * @return {@code true} if a file or run is open.
      */
-    private void setEventSource(EventSource source) {
+    private boolean isFileOpen() {
+        return fileSession != null || runSession != null;
+    }
 
-        // do nothing if same source already selected
-        if (source == eventSource) {
-            return;
+
+    /**
+     * Get the number of events in the open file, or in the whole of the open run.
+     * @return number of events.
+     * @throws IOException if file could not be read.
+     * @throws EvioException if file is not in evio format.
+     */
+    private int getFileEventCount() throws IOException, EvioException {
+        if (runSession != null) {
+            return runSession.getEventCount();
         }
+        return fileSession.getEventCount();
+    }
 
-        // remember the current source
-        eventSource = source;
 
-        // clear display of any event
-        eventTreePanel.setEvent(null);
+    /**
+     * Parse an event of the open file or run.
+     * @param index number of event, starting at 1, counting through the whole run.
+     * @return parsed event, or null if there is no such event.
+     * @throws IOException if file could not be read.
+     * @throws EvioException if data is not in evio format.
+     */
+    private EvioEvent parseFileEvent(int index) throws IOException, EvioException {
+        if (runSession != null) {
+            return runSession.parseEvent(index);
+        }
+        return getFileReader().parseEvent(index);
+    }
 
-        // Switch dictionary back to last one used by
-        // this particular event source, else use none.
-        setDictionarySource(eventSource.getDictionarySource());
 
-        switch (source) {
+    /**
+     * Parse an event of the open file or run and make it the
+     * one a file's reader continues from.
+     * @param index number of event, starting at 1, counting through the whole run.
+     * @return parsed event, or null if there is no such event.
+     * @throws IOException if file could not be read.
+     * @throws EvioException if data is not in evio format.
+     */
+    private EvioEvent gotoFileEvent(int index) throws IOException, EvioException {
+        if (runSession != null) {
+            return runSession.parseEvent(index);
+        }
+        return getFileReader().gotoEventNumber(index);
+    }
 
-            case CMSG:
-                filterMenu.setEnabled(true);
 
-                // show "cMsg config" menu item
-                eventSourceConfig.setEnabled(true);
-                eventSourceConfig.removeAll();
-                eventSourceConfig.add(cmsgPanel);
-                eventSourceConfig.setText("cMsg config");
+    /**
+     * Get the reader of the open file. It's created in the background once the
+     * file is opened, so this only waits if an event is wanted before it's ready.
+     * @return reader of the open file.
+     * @throws IOException if file could not be read.
+     * @throws EvioException if file is not in evio format.
+     */
+    private EvioReader getFileReader() throws IOException, EvioException {
+        EvioReader reader = fileSession.getReader();
+        if (reader != evioFileReader) {
+            evioFileReader = reader;
+            connectEvioListeners();     // Connect Listeners to the parser.
+        }
+        return reader;
+    }
 
-                // turn menu items off/on
-                openEventFile.setEnabled(false);
-                if (xmlExportItem.isEnabled()) {
-                    xmlExportItem.setEnabled(false);
-                }
 
+    /**
+     * This class creates the reader of a newly opened file in the background,
+     * since the reader finds every event of the file. The events are already
+     * counted from the block or record headers, so the file can be moved through
+     * right away, and the first one is shown once the reader is ready.
+     */
+    private class ReaderTask extends SwingWorker<EvioReader, Void> {
 
-                // cmsgHandler should never be null ...
-                ((qLimit.getModel())).setValue(cmsgHandler.getListLimit());
-                // show event we we're looking at before
-                int evIndex = cmsgHandler.getCurrentEventIndex() + 1;
-                EvioEvent ev = cmsgHandler.getEvent(evIndex);
-                if (ev != null) {
-                    eventTreePanel.setEvent(ev);
-                }
+        /** Session of the newly opened file. */
+        private final FileSession session;
 
-                evioVersion = cmsgHandler.getEvioVersion();
-                dataCompressionType = cmsgHandler.getDataCompressionType();
-                eventTreePanel.setEvioVersion(evioVersion);
-                eventTreePanel.setDataCompressionType(dataCompressionType);
+        /** Show the first event once the reader is ready? */
+        private final boolean showFirst;
 
-                eventInfoPanel.setSource("cMsg messages");
-                int listSize = cmsgHandler.getListSize();
+        ReaderTask(FileSession session, boolean showFirst) {
+            this.session   = session;
+            this.showFirst = showFirst;
+        }
 
-                // Update Q size widget
-                if (listSize >= cmsgHandler.getListLimit()) {
-                    setNumberOfEventsColor(darkRed);
-                    qSize.setText("Full  " + listSize);
-                }
-                else {
-                    setNumberOfEventsColor(darkGreen);
-                    qSize.setText("" + listSize);
-                }
+        @Override
+        public EvioReader doInBackground() throws Exception {
+            return session.getReader();
+        }
 
+        // Executed in event dispatching thread
+        @Override
+        public void done() {
+            // Another file may have been opened since
+            if (session != fileSession) return;
 
-                SpinnerNumberModel model = (SpinnerNumberModel) currentEvent.getModel();
-                if (listSize > 0) {
-                    currentEvent.setEnabled(true);
-                    if (evIndex > 0)  model.setMinimum(1);
-                    else              model.setMinimum(0);
-                }
-                else {
-                    currentEvent.setEnabled(false);
-                    model.setMinimum(0);
-                }
-                model.setMaximum(listSize);
-                model.setValue(evIndex);
+            try {
+                get();
+                getFileReader();
+            }
+            catch (Exception e) {
+                Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                closeFileSession();
+                nextButton.setEnabled(false);
+                prevButton.setEnabled(false);
+                xmlExportItem.setEnabled(false);
+                currentEvent.setEnabled(false);
+                JOptionPane.showMessageDialog(eventTreePanel, cause.getMessage(),
+                                              "Error reading file", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
 
-                setCmsgButtons();
+            // Unless the user has already moved on, automatically go to the first event
+            if (showFirst && ((Number) currentEvent.getValue()).intValue() < 1) {
+                nextButton.doClick();
+            }
+        }
+    }
 
-                qLimit.setEnabled(true);
-                clearQ.setEnabled(true);
 
-                // start thread that tells how many messages are in list
-                if (listSizeUpdateThread == null) {
-                    listSizeUpdateThread = new UpdateThread();
-                    listSizeUpdateThread.start();
-                }
+    /**
+     * Switch between different event sources (file or one of the live feeds).
+     * @param source  source of events.
+     * @param handler object handling the live feed if source is {@link EventSource#FEED}.
+     */
+    private void setEventSource(EventSource source, FeedHandler handler) {
 
-                break;
+        // do nothing if same source already selected
+        if (source == eventSource && (source == EventSource.FILE || handler == feedHandler)) {
+            return;
+        }
 
-            case ET:
+        // remember the current source
+        eventSource = source;
+        if (source == EventSource.FEED) {
+            feedHandler = handler;
+        }
+
+        // clear display of any event
+        eventTreePanel.setEvent(null);
+
+        // Switch dictionary back to last one used by
+        // this particular event source, else use none.
+        if (source == EventSource.FEED) {
+            setDictionarySource(feedHandler.getDictionarySource());
+        }
+        else {
+            setDictionarySource(eventSource.getDictionarySource());
+        }
+
+        switch (source) {
+
+            case FEED:
                 filterMenu.setEnabled(true);
 
-                // Show "ET config" menu item
+                // show "<feed> config" menu item
                 eventSourceConfig.setEnabled(true);
                 eventSourceConfig.removeAll();
-                eventSourceConfig.add(etPanel);
-                eventSourceConfig.setText("ET config");
+                eventSourceConfig.add(feedHandler.createPanel());
+                eventSourceConfig.setText(feedHandler.getName() + " config");
 
-                // Turn menu items off/on
+                // turn menu items off/on
                 openEventFile.setEnabled(false);
+                openRun.setEnabled(false);
                 if (xmlExportItem.isEnabled()) {
                     xmlExportItem.setEnabled(false);
                 }
 
 
-                // etHandler should never be null ...
-                ((qLimit.getModel())).setValue(etHandler.getListLimit());
-                // Show event we we're looking at before
-                evIndex = etHandler.getCurrentEventIndex() + 1;
-                ev = etHandler.getEvent(evIndex);
+                ((qLimit.getModel())).setValue(feedHandler.getListLimit());
+                // show event we we're looking at before
+                int evIndex = feedHandler.getCurrentEventIndex() + 1;
+                EvioEvent ev = feedHandler.getEvent(evIndex);
                 if (ev != null) {
                     eventTreePanel.setEvent(ev);
                 }
 
-                evioVersion = etHandler.getEvioVersion();
-                dataCompressionType = etHandler.getDataCompressionType();
+                evioVersion = feedHandler.getEvioVersion();
+                dataCompressionType = feedHandler.getDataCompressionType();
                 eventTreePanel.setEvioVersion(evioVersion);
                 eventTreePanel.setDataCompressionType(dataCompressionType);
 
-                eventInfoPanel.setSource("ET buffers");
-                listSize = etHandler.getListSize();
+                eventInfoPanel.setSource(feedHandler.getDescription());
+                int listSize = feedHandler.getListSize();
 
                 // Update Q size widget
-                if (listSize >= etHandler.getListLimit()) {
+                if (listSize >= feedHandler.getListLimit()) {
                     setNumberOfEventsColor(darkRed);
                     qSize.setText("Full  " + listSize);
                 }
@@ -551,7 +570,8 @@ public class EventTreeMenu {
                     qSize.setText("" + listSize);
                 }
 
-                model = (SpinnerNumberModel) currentEvent.getModel();
+
+                SpinnerNumberModel model = (SpinnerNumberModel) currentEvent.getModel();
                 if (listSize > 0) {
                     currentEvent.setEnabled(true);
                     if (evIndex > 0)  model.setMinimum(1);
@@ -564,12 +584,12 @@ public class EventTreeMenu {
                 model.setMaximum(listSize);
                 model.setValue(evIndex);
 
-                setEtButtons();
+                setFeedButtons();
 
                 qLimit.setEnabled(true);
                 clearQ.setEnabled(true);
 
-                // Start thread that tells how many messages are in list
+                // start thread that tells how many events are in list
                 if (listSizeUpdateThread == null) {
                     listSizeUpdateThread = new UpdateThread();
                     listSizeUpdateThread.start();
@@ -590,12 +610,13 @@ public class EventTreeMenu {
                 eventSourceConfig.setText(" ");
                 eventSourceConfig.setEnabled(false);
                 openEventFile.setEnabled(true);
+                openRun.setEnabled(true);
 
                 // values for display
                 String fileName = "";
                 int eventCount = 0;
 
-                if (evioFileReader == null) {
+                if (!isFileOpen()) {
                     prevButton.setEnabled(false);
                     nextButton.setEnabled(false);
                 }
@@ -608,7 +629,7 @@ public class EventTreeMenu {
                     }
 
                     try {
-                        if (eventIndex >= evioFileReader.getEventCount()) {
+                        if (eventIndex >= getFileEventCount()) {
                             nextButton.setEnabled(false);
                         }
                         else {
@@ -618,21 +639,21 @@ public class EventTreeMenu {
                     catch (IOException   e) {}
                     catch (EvioException e) {}
 
-                    xmlExportItem.setEnabled(true);
+                    xmlExportItem.setEnabled(runSession == null);
 
-                    // Switch data back to last file (which is still loaded)
-                    fileName = dataFilePath;
+                    // Switch data back to last file or run (which is still loaded)
+                    fileName = (runSession == null) ? dataFilePath : runSession.getName();
 
                     // Get event count
                     try {
-                        eventCount = evioFileReader.getEventCount();
+                        eventCount = getFileEventCount();
                     }
                     catch (IOException   e) {e.printStackTrace();}
                     catch (EvioException e) { /* should never happen */ }
 
                     // switch back to last event viewed
                     try {
-                        EvioEvent event = evioFileReader.parseEvent(eventIndex);
+                        EvioEvent event = parseFileEvent(eventIndex);
                         if (event != null) {
                             eventTreePanel.setEvent(event);
                         }
@@ -700,7 +721,12 @@ public class EventTreeMenu {
             dictText = dictionary.toXML();
         }
         dictionarySource = dictSource;
-        eventSource.setDictionarySource(dictSource);
+        if (eventSource == EventSource.FEED) {
+            feedHandler.setDictionarySource(dictSource);
+        }
+        else {
+            eventSource.setDictionarySource(dictSource);
+        }
 
         switch (dictSource) {
 
@@ -736,7 +762,8 @@ public class EventTreeMenu {
             default:
         }
 
-        NameProvider.setProvider(dictionary);
+        // Names come from the compiled form of the dictionary
+        NameProvider.setProvider(DictionaryRegistry.get(dictionary));
         eventInfoPanel.setDictionary(description);
         eventTreePanel.setDictionaryText(dictText);
         eventTreePanel.refreshDescription();
@@ -798,11 +825,11 @@ public class EventTreeMenu {
                 switch (eventSource) {
                     // If we're looking at a file, there are multiple events contained in it
                     case FILE:
-                        if (evioFileReader != null) {
+                        if (isFileOpen()) {
                             try {
-                                if (eventIndex >= evioFileReader.getEventCount()) break;
+                                if (eventIndex >= getFileEventCount()) break;
 //System.out.println("next button: looking at eventIndex = " + (eventIndex + 1));
-                                EvioEvent event = evioFileReader.parseEvent(++eventIndex);
+                                EvioEvent event = parseFileEvent(++eventIndex);
                                 if (event != null)  {
                                     eventTreePanel.setEvent(event);
                                     SpinnerNumberModel model = (SpinnerNumberModel) currentEvent.getModel();
@@ -814,7 +841,7 @@ public class EventTreeMenu {
                                 }
 
                                 if (eventIndex > 1) prevButton.setEnabled(true);
-                                if (eventIndex >= evioFileReader.getEventCount()) {
+                                if (eventIndex >= getFileEventCount()) {
                                     nextButton.setEnabled(false);
                                 }
                             }
@@ -832,50 +859,25 @@ public class EventTreeMenu {
                         }
                         break;
 
-                    // If we're looking at cMsg messages, there is a queue of evio events
-                    // extracted from the messages.
-                    case CMSG:
-                        if (cmsgHandler != null) {
+                    // If we're looking at a live feed, there is a queue of evio events
+                    // extracted from the buffers (ET events, cMsg messages, ...).
+                    case FEED:
+                        if (feedHandler != null) {
                             if (isListSizeOne) {
-                                cmsgHandler.clearList();
+                                // Clearing asks the feed for more
+                                feedHandler.clearList();
                                 eventTreePanel.setEvent(null);
                                 currentEvent.setValue(0);
                                 // next event will be automatically loaded into view by update thread
                             }
                             else {
-                                displayCmsgEvent(cmsgHandler.getNextEvent());
-                                setCmsgButtons();
-                            }
-                        }
-
-                        break;
+                                if (!feedHandler.hasNextEvent()) break;
 
-                    // If we're looking at ET buffers(events), there is a queue of evio events
-                    // extracted from the buffers.
-                    case ET:
-                        if (etHandler != null) {
-                            if (isListSizeOne) {
-                                // stop old filling thread, if any
-                                etHandler.stopFillingEventList();
-
-                                etHandler.clearList();
-                                eventTreePanel.setEvent(null);
-
-                                // start a new one
-                                etHandler.startFillingEventList();
-                                currentEvent.setValue(0);
-
-                                // next event will be automatically loaded into view by update thread
-                            }
-                            else {
-                                if (!etHandler.hasNextEvent()) break;
-
-                                displayEtEvent(etHandler.getNextEvent());
-                                setEtButtons();
+                                displayFeedEvent(feedHandler.getNextEvent());
+                                setFeedButtons();
                             }
                         }
                         break;
-
                     default:
 
                 }
@@ -891,12 +893,12 @@ public class EventTreeMenu {
                 switch (eventSource) {
                     // If we're looking at a file, there are multiple events contained in it
                     case FILE:
-                        if (evioFileReader != null) {
+                        if (isFileOpen()) {
                             try {
                                 if (eventIndex < 2) break;
 //System.out.println("prev button: looking at eventIndex = " + (eventIndex - 1));
 
-                                EvioEvent event = evioFileReader.parseEvent(--eventIndex);
+                                EvioEvent event = parseFileEvent(--eventIndex);
                                 if (event != null)  {
                                     eventTreePanel.setEvent(event);
 //System.out.println("prev button: set spinner value to " + eventIndex);
@@ -904,7 +906,7 @@ public class EventTreeMenu {
                                 }
 
                                 if (eventIndex < 2) prevButton.setEnabled(false);
-                                if (eventIndex < evioFileReader.getEventCount()) {
+                                if (eventIndex < getFileEventCount()) {
                                     nextButton.setEnabled(true);
                                 }
                             }
@@ -919,21 +921,12 @@ public class EventTreeMenu {
                         }
                         break;
 
-                    case CMSG:
-                        if (cmsgHandler != null) {
-                            if (cmsgHandler.getCurrentEventIndex() < 1) break;
+                    case FEED:
+                        if (feedHandler != null) {
+                            if (feedHandler.getCurrentEventIndex() < 1) break;
 
-                            displayCmsgEvent(cmsgHandler.getPrevEvent());
-                            setCmsgButtons();
-                        }
-                        break;
-
-                    case ET:
-                        if (etHandler != null) {
-                            if (etHandler.getCurrentEventIndex() < 1) break;
-
-                            displayEtEvent(etHandler.getPrevEvent());
-                            setEtButtons();
+                            displayFeedEvent(feedHandler.getPrevEvent());
+                            setFeedButtons();
                         }
                         break;
 
@@ -979,9 +972,9 @@ public class EventTreeMenu {
                     switch (eventSource) {
                         // If we're looking at a file, go to the specified event number
                         case FILE:
-                            if ((eventNum > 0) && (eventNum <= evioFileReader.getEventCount())) {
+                            if ((eventNum > 0) && (eventNum <= getFileEventCount())) {
                                 eventIndex = eventNum;
-                                EvioEvent event = evioFileReader.gotoEventNumber(eventIndex);
+                                EvioEvent event = gotoFileEvent(eventIndex);
                                 if (event != null) {
                                     eventTreePanel.setEvent(event);
                                 }
@@ -989,7 +982,7 @@ public class EventTreeMenu {
                                 if (eventIndex > 1) prevButton.setEnabled(true);
                                 else                prevButton.setEnabled(false);
 
-                                if (eventIndex >= evioFileReader.getEventCount()) {
+                                if (eventIndex >= getFileEventCount()) {
                                     nextButton.setEnabled(false);
                                 }
                                 else {
@@ -998,29 +991,10 @@ public class EventTreeMenu {
                             }
                             break;
 
-                        // If we're looking at cMsg messages, there is a list of events.
-                        // Can go forwards and backwards to various list elements.
-                        case CMSG:
-                            if (cmsgHandler != null) {
-                                // Look at event 0 (nothing)
-                                if (eventNum < 1) {
-                                    eventTreePanel.setEvent(null);
-                                    currentEvent.setValue(0);
-                                    return;
-                                }
-
-                                if ((eventNum > 0) && (eventNum <= cmsgHandler.getListSize())) {
-                                    displayCmsgEvent(cmsgHandler.getEvent(eventNum));
-                                    setCmsgButtons();
-                                }
-                            }
-
-                            break;
-
-                        // If we're looking at ET events, there is a list of events.
+                        // If we're looking at a live feed, there is a list of events.
                         // Can go forwards and backwards to various list elements.
-                        case ET:
-                            if (etHandler != null) {
+                        case FEED:
+                            if (feedHandler != null) {
                                 // Look at event 0 (nothing)
                                 if (eventNum < 1) {
                                     eventTreePanel.setEvent(null);
@@ -1028,14 +1002,13 @@ public class EventTreeMenu {
                                     return;
                                 }
 
-                                if ((eventNum > 0) && (eventNum <= etHandler.getListSize())) {
-                                    displayEtEvent(etHandler.getEvent(eventNum));
-                                    setEtButtons();
+                                if ((eventNum > 0) && (eventNum <= feedHandler.getListSize())) {
+                                    displayFeedEvent(feedHandler.getEvent(eventNum));
+                                    setFeedButtons();
                                 }
                             }
                             break;
 
-
                         default:
                     }
                 }
@@ -1063,39 +1036,18 @@ public class EventTreeMenu {
                 // switch limit color to green
                 setNumberOfEventsColor(darkGreen);
 
-                switch (eventSource) {
-                    case CMSG:
-                        cmsgHandler.clearList();
-                        prevButton.setEnabled(false);
-                        nextButton.setEnabled(false);
-                        eventTreePanel.setEvent(null);
-                        SpinnerNumberModel model = (SpinnerNumberModel) currentEvent.getModel();
-                        model.setMinimum(0);
-                        model.setValue(0);
-                        // Update Q size widget
-                        setNumberOfEventsColor(darkGreen);
-                        qSize.setText("0");
-
-                        break;
-
-                    case ET:
-                        // stop old filling thread, if any
-                        etHandler.stopFillingEventList();
-
-                        etHandler.clearList();
-                        prevButton.setEnabled(false);
-                        nextButton.setEnabled(false);
-                        eventTreePanel.setEvent(null);
-                        model = (SpinnerNumberModel) currentEvent.getModel();
-                        model.setMinimum(0);
-                        model.setValue(0);
-                        setNumberOfEventsColor(darkGreen);
-                        qSize.setText("0");
-
-                        // start a new one
-                        etHandler.startFillingEventList();
-
-                    default:
+                if (eventSource == EventSource.FEED) {
+                    // Clearing asks the feed for more
+                    feedHandler.clearList();
+                    prevButton.setEnabled(false);
+                    nextButton.setEnabled(false);
+                    eventTreePanel.setEvent(null);
+                    SpinnerNumberModel model = (SpinnerNumberModel) currentEvent.getModel();
+                    model.setMinimum(0);
+                    model.setValue(0);
+                    // Update Q size widget
+                    setNumberOfEventsColor(darkGreen);
+                    qSize.setText("0");
                 }
             }
         });
@@ -1109,86 +1061,52 @@ public class EventTreeMenu {
         qLabel.setHorizontalAlignment(JLabel.CENTER);
 
         // Set Q size limit
-        qLimit = new JSpinner(new SpinnerNumberModel(100, 1, 1000, 1));
+        qLimit = new JSpinner(new SpinnerNumberModel(100, 1, EventStore.MAX_EVENTS, 1));
         qLimit.setEnabled(false);
         qLimit.addChangeListener(new ChangeListener() {
             public void stateChanged(ChangeEvent e) {
                 SpinnerNumberModel model = (SpinnerNumberModel) ((JSpinner) e.getSource()).getModel();
                 int limit = model.getNumber().intValue();
 
-                switch (eventSource) {
-                    case CMSG:
-                        // Do we need to delete any events from the list?
-                        int num2delete = cmsgHandler.getListSize() - limit;
-
-                        // If so, newly added events (if limit is increased later)
-                        // should start at a new #.
-                        if (num2delete > 0) cmsgHandler.setEventNum(limit + 1);
-
-                        int evIndex = cmsgHandler.getCurrentEventIndex();
-                        cmsgHandler.setListLimit(limit);
-
-                        // If we've removed the event we were
-                        // looking at by reducing the list size ...
-                        if (evIndex > limit - 1) {
-                            cmsgHandler.resetCurrentEventIndex();
-                            eventTreePanel.setEvent(null);
-                            prevButton.setEnabled(false);
-                            nextButton.setEnabled(true);
-                        }
-                        // If we've removed all > the event we are
-                        // looking at by, there is no next event ...
-                        else if (evIndex == limit - 1) {
-                            nextButton.setEnabled(false);
-                        }
-
-                        // With only 1 in list, "prev" is meaningless and
-                        // "next" is redefined to mean clear list and get (1) more.
-                        if (limit < 2) {
-                            isListSizeOne = true;
-                            // If none left ...
-                            if (evIndex < 0) {
-                                cmsgHandler.clearList();
-                            }
-                            prevButton.setEnabled(false);
-                            nextButton.setEnabled(true);
-                        }
-                        else {
-                            isListSizeOne = false;
-                        }
+                if (eventSource == EventSource.FEED) {
+                    // Do we need to delete any events from the list?
+                    int num2delete = feedHandler.getListSize() - limit;
 
-                        break;
+                    // If so, newly added events (if limit is increased later)
+                    // should start at a new #.
+                    if (num2delete > 0) feedHandler.setEventNum(limit + 1);
 
-                    case ET:
-                        num2delete = etHandler.getListSize() - limit;
-                        if (num2delete > 0) etHandler.setEventNum(limit + 1);
+                    int evIndex = feedHandler.getCurrentEventIndex();
+                    feedHandler.setListLimit(limit);
 
-                        evIndex = etHandler.getCurrentEventIndex();
-                        etHandler.setListLimit(limit);
-                        if (evIndex > limit - 1) {
-                            etHandler.resetCurrentEventIndex();
-                            eventTreePanel.setEvent(null);
-                            prevButton.setEnabled(false);
-                            nextButton.setEnabled(true);
-                        }
-                        else if (evIndex == limit - 1) {
-                            nextButton.setEnabled(false);
-                        }
+                    // If we've removed the event we were
+                    // looking at by reducing the list size ...
+                    if (evIndex > limit - 1) {
+                        feedHandler.resetCurrentEventIndex();
+                        eventTreePanel.setEvent(null);
+                        prevButton.setEnabled(false);
+                        nextButton.setEnabled(true);
+                    }
+                    // If we've removed all > the event we are
+                    // looking at by, there is no next event ...
+                    else if (evIndex == limit - 1) {
+                        nextButton.setEnabled(false);
+                    }
 
-                        if (limit < 2) {
-                            isListSizeOne = true;
-                            if (evIndex < 0) {
-                                etHandler.clearList();
-                            }
-                            prevButton.setEnabled(false);
-                            nextButton.setEnabled(true);
+                    // With only 1 in list, "prev" is meaningless and
+                    // "next" is redefined to mean clear list and get (1) more.
+                    if (limit < 2) {
+                        isListSizeOne = true;
+                        // If none left ...
+                        if (evIndex < 0) {
+                            feedHandler.clearList();
                         }
-                        else {
-                            isListSizeOne = false;
-                        }
-                        break;
-
-                    default:
+                        prevButton.setEnabled(false);
+                        nextButton.setEnabled(true);
+                    }
+                    else {
+                        isListSizeOne = false;
+                    }
                 }
             }
         });
@@ -1283,20 +1201,25 @@ public class EventTreeMenu {
         JRadioButtonMenuItem fileItem = new JRadioButtonMenuItem("File");
         JRadioButtonMenuItem cmsgItem = new JRadioButtonMenuItem("cMsg");
         JRadioButtonMenuItem   etItem = new JRadioButtonMenuItem("ET");
+        JRadioButtonMenuItem replayItem = new JRadioButtonMenuItem("File Replay");
+        JRadioButtonMenuItem directoryItem = new JRadioButtonMenuItem("Directory");
+        JRadioButtonMenuItem stdinItem = new JRadioButtonMenuItem("Standard Input");
 
         EmptyBorder eBorder = new EmptyBorder(3,20,3,0);
         fileItem.setBorder(eBorder);
         cmsgItem.setBorder(eBorder);
         etItem.setBorder(eBorder);
+        replayItem.setBorder(eBorder);
+        directoryItem.setBorder(eBorder);
+        stdinItem.setBorder(eBorder);
 
         // action listener for selecting cmsg source
         ActionListener cmsgListener = new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                if (cmsgPanel == null) {
+                if (cmsgHandler == null) {
                     cmsgHandler = new cMsgHandler();
-                    cmsgPanel = cmsgHandler.createCmsgPanel();
                 }
-                setEventSource(EventSource.CMSG);
+                setEventSource(EventSource.FEED, cmsgHandler);
                 // keep this menu up (displayed) so user can go to config item
                 menu.doClick();
             }
@@ -1306,20 +1229,56 @@ public class EventTreeMenu {
         // action listener for selecting ET source
         ActionListener etListener = new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                if (etPanel == null) {
+                if (etHandler == null) {
                     etHandler = new EtHandler();
-                    etPanel = etHandler.createEtPanel();
                 }
-                setEventSource(EventSource.ET);
+                setEventSource(EventSource.FEED, etHandler);
                 menu.doClick();
             }
         };
         etItem.addActionListener(etListener);
 
+        // action listener for selecting replay of a file as if from ET
+        ActionListener replayListener = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (replayHandler == null) {
+                    replayHandler = new ReplayHandler();
+                }
+                setEventSource(EventSource.FEED, replayHandler);
+                menu.doClick();
+            }
+        };
+        replayItem.addActionListener(replayListener);
+
+        // action listener for selecting the files of a directory
+        ActionListener directoryListener = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (directoryHandler == null) {
+                    directoryHandler = new DirectoryHandler();
+                }
+                setEventSource(EventSource.FEED, directoryHandler);
+                menu.doClick();
+            }
+        };
+        directoryItem.addActionListener(directoryListener);
+
+        // action listener for selecting evio piped into standard input
+        ActionListener stdinListener = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (stdinHandler == null) {
+                    stdinHandler = new FeedHandler("stdin", "standard input");
+                    stdinHandler.setFeed(new StreamFeed("stdin", System.in));
+                }
+                setEventSource(EventSource.FEED, stdinHandler);
+                menu.doClick();
+            }
+        };
+        stdinItem.addActionListener(stdinListener);
+
         // action listener for selecting file source
         ActionListener fileListener = new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                setEventSource(EventSource.FILE);
+                setEventSource(EventSource.FILE, null);
                 menu.doClick();
             }
         };
@@ -1329,16 +1288,25 @@ public class EventTreeMenu {
         group.add(fileItem);
         group.add(cmsgItem);
         group.add(  etItem);
+        group.add(replayItem);
+        group.add(directoryItem);
+        group.add(stdinItem);
         // file source selected by default
         group.setSelected(fileItem.getModel(), true);
 
         fileItem.setAlignmentX(Component.CENTER_ALIGNMENT);
         cmsgItem.setAlignmentX(Component.CENTER_ALIGNMENT);
         etItem.setAlignmentX(Component.CENTER_ALIGNMENT);
+        replayItem.setAlignmentX(Component.CENTER_ALIGNMENT);
+        directoryItem.setAlignmentX(Component.CENTER_ALIGNMENT);
+        stdinItem.setAlignmentX(Component.CENTER_ALIGNMENT);
 
         menu.add(fileItem);
         menu.add(cmsgItem);
         menu.add(  etItem);
+        menu.add(replayItem);
+        menu.add(directoryItem);
+        menu.add(stdinItem);
 
         menu.addSeparator();
 
@@ -1423,6 +1391,90 @@ public class EventTreeMenu {
         menu.add(orientItem);
 
 
+        // menuitem to show statistics of the current event source
+        ActionListener al_stats = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                showStatistics();
+            }
+        };
+        JMenuItem statsItem = new JMenuItem("Event Statistics");
+        statsItem.addActionListener(al_stats);
+        statsItem.setEnabled(true);
+        menu.add(statsItem);
+
+
+        // menuitem to start or stop capturing a live source into files
+        ActionListener al_capture = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                doCapture();
+            }
+        };
+        captureItem = new JMenuItem("Capture to Files ...");
+        captureItem.addActionListener(al_capture);
+        captureItem.setEnabled(true);
+        menu.add(captureItem);
+
+
+        // menuitem to remember the current event for comparing
+        ActionListener al_mark = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                EvioEvent event = eventTreePanel.getEvent();
+                if (event == null) {
+                    JOptionPane.showMessageDialog(eventTreePanel, "No event is being viewed",
+                                                  "Nothing Marked", JOptionPane.INFORMATION_MESSAGE);
+                    return;
+                }
+                markedEvent = event;
+                markedEventName = describeCurrentEvent();
+            }
+        };
+        JMenuItem markItem = new JMenuItem("Mark Event for Compare");
+        markItem.addActionListener(al_mark);
+        markItem.setEnabled(true);
+        menu.add(markItem);
+
+
+        // menuitem to compare the current event with the marked one
+        ActionListener al_compare = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                EvioEvent event = eventTreePanel.getEvent();
+                if (markedEvent == null || event == null) {
+                    JOptionPane.showMessageDialog(eventTreePanel,
+                                                  "Mark an event, then view another to compare it with",
+                                                  "No Comparison", JOptionPane.INFORMATION_MESSAGE);
+                    return;
+                }
+                new EventCompareFrame(markedEvent, markedEventName, event, describeCurrentEvent());
+            }
+        };
+        JMenuItem compareItem = new JMenuItem("Compare with Marked Event");
+        compareItem.addActionListener(al_compare);
+        compareItem.setEnabled(true);
+        menu.add(compareItem);
+
+
+        // menuitems to go to the file's event with a CODA event number or timestamp
+        ActionListener al_gotoNumber = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                gotoCodaEvent(false);
+            }
+        };
+        JMenuItem gotoNumberItem = new JMenuItem("Go to CODA Event Number");
+        gotoNumberItem.addActionListener(al_gotoNumber);
+        gotoNumberItem.setEnabled(true);
+        menu.add(gotoNumberItem);
+
+        ActionListener al_gotoTime = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                gotoCodaEvent(true);
+            }
+        };
+        JMenuItem gotoTimeItem = new JMenuItem("Go to Timestamp");
+        gotoTimeItem.addActionListener(al_gotoTime);
+        gotoTimeItem.setEnabled(true);
+        menu.add(gotoTimeItem);
+
+
 //        menu.addSeparator();
 //
 //
@@ -1714,6 +1766,81 @@ public class EventTreeMenu {
         qPanel.setAlignmentX(Component.CENTER_ALIGNMENT);
         filterMenu.add(qPanel);
 
+        filterMenu.addSeparator();
+
+        // Select which events to keep once the list is full
+        JLabel kl = new JLabel("Keep");
+        kl.setHorizontalTextPosition(JLabel.CENTER);
+        kl.setBorder(new EmptyBorder(3, 3, 3, 3));
+        kl.setAlignmentX(Component.RIGHT_ALIGNMENT);
+        filterMenu.add(kl);
+
+        final JRadioButtonMenuItem    firstItem = new JRadioButtonMenuItem("First events", true);
+        final JRadioButtonMenuItem      nthItem = new JRadioButtonMenuItem("Every Nth event");
+        final JRadioButtonMenuItem reservoirItem = new JRadioButtonMenuItem("Random sample of last T sec");
+        final JRadioButtonMenuItem   newestItem = new JRadioButtonMenuItem("Newest events");
+
+        final JSpinner everyN = new JSpinner(new SpinnerNumberModel(10, 1, 1000000, 1));
+        final JSpinner window = new JSpinner(new SpinnerNumberModel(10, 1, 3600, 1));
+
+        // action listener for selecting any way of keeping events or changing N or T
+        final ActionListener sampleListener = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                EventSampler.Policy policy = EventSampler.Policy.FIRST;
+                if (nthItem.isSelected()) {
+                    policy = EventSampler.Policy.EVERY_NTH;
+                }
+                else if (reservoirItem.isSelected()) {
+                    policy = EventSampler.Policy.RESERVOIR;
+                }
+                else if (newestItem.isSelected()) {
+                    policy = EventSampler.Policy.NEWEST;
+                }
+
+                EventSampler.setPolicy(policy,
+                                       ((Number) everyN.getValue()).intValue(),
+                                       ((Number) window.getValue()).intValue());
+
+                // Feeds held back by a full list may now be wanted again
+                for (FeedHandler handler : new FeedHandler[] {cmsgHandler, etHandler, replayHandler,
+                                                              directoryHandler, stdinHandler}) {
+                    if (handler != null) handler.resume();
+                }
+
+                // keep this menu up (displayed) so user can set N or T
+                if (e.getSource() instanceof JRadioButtonMenuItem) {
+                    filterMenu.doClick();
+                }
+            }
+        };
+
+        ChangeListener sampleChangeListener = new ChangeListener() {
+            public void stateChanged(ChangeEvent e) {
+                sampleListener.actionPerformed(new ActionEvent(e.getSource(),
+                                               ActionEvent.ACTION_PERFORMED, null));
+            }
+        };
+        everyN.addChangeListener(sampleChangeListener);
+        window.addChangeListener(sampleChangeListener);
+
+        ButtonGroup sampleGroup = new ButtonGroup();
+        for (JRadioButtonMenuItem item : new JRadioButtonMenuItem[] {firstItem, nthItem,
+                                                                     reservoirItem, newestItem}) {
+            item.setBorder(eBorder);
+            item.setAlignmentX(Component.CENTER_ALIGNMENT);
+            item.addActionListener(sampleListener);
+            sampleGroup.add(item);
+            filterMenu.add(item);
+        }
+
+        JPanel sPanel = new JPanel();
+        sPanel.add(new JLabel("N"));
+        sPanel.add(everyN);
+        sPanel.add(new JLabel("T (sec)"));
+        sPanel.add(window);
+        sPanel.setAlignmentX(Component.CENTER_ALIGNMENT);
+        filterMenu.add(sPanel);
+
         filterMenu.setEnabled(false);
 
 		return filterMenu;
@@ -1738,6 +1865,16 @@ public class EventTreeMenu {
         openEventFile.addActionListener(al_oef);
         menu.add(openEventFile);
 
+        // open all files of a run menu item
+        ActionListener al_run = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                doOpenRun();
+            }
+        };
+        openRun = new JMenuItem("Open Run");
+        openRun.addActionListener(al_run);
+        menu.add(openRun);
+
         // open dictionary menu item
 		ActionListener al_odf = new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
@@ -1758,6 +1895,26 @@ public class EventTreeMenu {
         viewFile.addActionListener(al_vf);
         menu.add(viewFile);
 
+        // compare 2 files menu item
+        ActionListener al_cf = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                doCompareFiles();
+            }
+        };
+        JMenuItem compareFiles = new JMenuItem("Compare Event Files");
+        compareFiles.addActionListener(al_cf);
+        menu.add(compareFiles);
+
+        // find duplicate events menu item
+        ActionListener al_dup = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                doFindDuplicates();
+            }
+        };
+        JMenuItem findDuplicates = new JMenuItem("Find Duplicate Events");
+        findDuplicates.addActionListener(al_dup);
+        menu.add(findDuplicates);
+
         // separator
 		menu.addSeparator();
 
@@ -1791,21 +1948,228 @@ public class EventTreeMenu {
      * Select and open an event file.
      */
     private void doOpenEventFile() {
-        EvioReader eFile    = evioFileReader;
-        EvioReader evioFile = openEventFile();
+        FileSession oldSession = fileSession;
+        FileSession session = openEventFile();
         // handle cancel button properly
-        if (eFile == evioFile) {
+        if (oldSession == session) {
             return;
         }
-        nextButton.setEnabled(evioFile != null);
+        nextButton.setEnabled(session != null);
         prevButton.setEnabled(false);
-        xmlExportItem.setEnabled(evioFile != null);
+        xmlExportItem.setEnabled(session != null);
         eventTreePanel.setEvent(null);
         // Tell the panel which will tell the headerPanel which will display to user
         eventTreePanel.setEvioVersion(evioVersion);
         eventTreePanel.setDataCompressionType(dataCompressionType);
-        // automatically go to the first event
-        nextButton.doClick();
+        // automatically go to the first event once the file's reader is ready
+        if (session != null) {
+            new ReaderTask(session, true).execute();
+        }
+    }
+
+    /**
+     * Get a short description of the event currently being viewed.
+     * @return short description of the event currently being viewed.
+     */
+    private String describeCurrentEvent() {
+        if (eventSource == EventSource.FILE && fileSession != null) {
+            return fileSession.getFile().getName() + " #" + currentEvent.getValue();
+        }
+        if (eventSource == EventSource.FILE && runSession != null) {
+            return runSession.describe(((Number) currentEvent.getValue()).intValue());
+        }
+        return eventSource + " #" + currentEvent.getValue();
+    }
+
+
+    /**
+     * Ask for a CODA event number or timestamp and view the file's built
+     * physics event holding it, found from the file's index of events.
+     * @param byTimestamp {@code true} to ask for a timestamp and go to the last event
+     *                    not after it, {@code false} to ask for an event number.
+     */
+    private void gotoCodaEvent(boolean byTimestamp) {
+        if (eventSource != EventSource.FILE || fileSession == null) {
+            JOptionPane.showMessageDialog(eventTreePanel, "No event file is open",
+                                          "Nothing to Search", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+
+        String what = byTimestamp ? "timestamp" : "CODA event number";
+        String txt = JOptionPane.showInputDialog(eventTreePanel, "Go to " + what + ":");
+        if (txt == null || txt.trim().length() < 1) return;
+
+        long value;
+        try {
+            txt = txt.trim();
+            if (txt.length() > 1 && txt.substring(0, 2).equalsIgnoreCase("0x")) {
+                value = Long.parseLong(txt.substring(2), 16);
+            }
+            else {
+                value = Long.parseLong(txt, 10);
+            }
+        }
+        catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(eventTreePanel, "Not a number: " + txt,
+                                          "Bad Input", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        // The first search indexes the file, so do that in the background
+        final FileSession session = fileSession;
+        final boolean timestamp = byTimestamp;
+        final long target = value;
+        final String wanted = what + " " + txt;
+        final Cursor cursor = eventTreePanel.getCursor();
+        eventTreePanel.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+
+        new SwingWorker<EventIndex, Void>() {
+            @Override
+            public EventIndex doInBackground() {
+                return session.getIndex();
+            }
+
+            // Executed in event dispatching thread
+            @Override
+            public void done() {
+                eventTreePanel.setCursor(cursor);
+                // Another file may have been opened since
+                if (session != fileSession) return;
+
+                try {
+                    showCodaEvent(get(), timestamp, target, wanted);
+                }
+                catch (Exception e) {
+                    Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                    JOptionPane.showMessageDialog(eventTreePanel, cause.getMessage(),
+                                                  "Error reading file", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+
+    /**
+     * View the file's built physics event holding a CODA event number
+     * or the last one not after a timestamp.
+     * @param index       index of the file's events.
+     * @param byTimestamp {@code true} if value is a timestamp, {@code false} if an event number.
+     * @param value       event number or timestamp.
+     * @param wanted      what was asked for, shown if not found.
+     */
+    private void showCodaEvent(EventIndex index, boolean byTimestamp, long value, String wanted) {
+        int i = byTimestamp ? index.findTimestamp(value) : index.findEventNumber(value);
+        if (i < 0) {
+            String msg = "No built physics event has " + wanted;
+            // Events in compressed records are not indexed by number or timestamp
+            if (index.isCompressed()) {
+                msg += "\nEvents in compressed records cannot be searched";
+            }
+            JOptionPane.showMessageDialog(eventTreePanel, msg,
+                                          "Not Found", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+
+        // The spinner's listener shows the event
+        currentEvent.setValue(i + 1);
+    }
+
+
+    /**
+     * Show a window of statistics gathered from the current event source.
+     */
+    private void showStatistics() {
+        switch (eventSource) {
+            case FILE:
+                if (fileSession == null) {
+                    JOptionPane.showMessageDialog(eventTreePanel, "No event file is open",
+                                                  "No Statistics", JOptionPane.INFORMATION_MESSAGE);
+                    return;
+                }
+                try {
+                    // The window gets its own hold on the file
+                    new StatisticsFrame(FileSession.open(fileSession.getFile()));
+                }
+                catch (IOException e) {
+                    JOptionPane.showMessageDialog(eventTreePanel, e.getMessage(),
+                                                  "Error reading file", JOptionPane.ERROR_MESSAGE);
+                }
+                break;
+
+            case FEED:
+                if (feedHandler != null) {
+                    new StatisticsFrame(feedHandler);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Start capturing what the current live source receives into a rolling set
+     * of evio files, or stop capturing if already doing so.
+     */
+    private void doCapture() {
+        if (recorder != null) {
+            if (capturedHandler != null && capturedHandler.getRecorder() == recorder) {
+                capturedHandler.setRecorder(null);
+            }
+            capturedHandler = null;
+            recorder.close();
+            JOptionPane.showMessageDialog(eventTreePanel, recorder.getSummary(),
+                                          "Capture Stopped", JOptionPane.INFORMATION_MESSAGE);
+            recorder = null;
+            captureItem.setText("Capture to Files ...");
+            return;
+        }
+
+        if (eventSource != EventSource.FEED || feedHandler == null) {
+            JOptionPane.showMessageDialog(eventTreePanel, "Only live sources can be captured",
+                                          "Nothing to Capture", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+
+        JFileChooser chooser = new JFileChooser(dataFilePath);
+        chooser.setDialogTitle("Directory to capture into");
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showDialog(eventTreePanel, "Select") != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File directory = chooser.getSelectedFile();
+
+        JComboBox<FlightRecorder.Mode> mode = new JComboBox<FlightRecorder.Mode>(FlightRecorder.Mode.values());
+        JCheckBox lz4 = new JCheckBox("LZ4 compress");
+        JSpinner megabytes = new JSpinner(new SpinnerNumberModel(512, 1, 100000, 1));
+        JSpinner minutes   = new JSpinner(new SpinnerNumberModel(10, 1, 10000, 1));
+        JSpinner fileCount = new JSpinner(new SpinnerNumberModel(10, 1, 10000, 1));
+
+        JPanel panel = new JPanel(new GridLayout(5, 2, 5, 5));
+        panel.add(new JLabel("Capture"));
+        panel.add(mode);
+        panel.add(new JLabel("Compression"));
+        panel.add(lz4);
+        panel.add(new JLabel("New file after MB"));
+        panel.add(megabytes);
+        panel.add(new JLabel("New file after minutes"));
+        panel.add(minutes);
+        panel.add(new JLabel("Files kept"));
+        panel.add(fileCount);
+
+        int answer = JOptionPane.showConfirmDialog(eventTreePanel, panel, "Capture to Files",
+                                                   JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (answer != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        String prefix = feedHandler.getName().toLowerCase() + "Capture";
+        recorder = new FlightRecorder((FlightRecorder.Mode) mode.getSelectedItem(), directory, prefix,
+                                      lz4.isSelected(),
+                                      ((Number) megabytes.getValue()).longValue() * 1024L * 1024L,
+                                      60 * ((Number) minutes.getValue()).intValue(),
+                                      ((Number) fileCount.getValue()).intValue());
+
+        capturedHandler = feedHandler;
+        capturedHandler.setRecorder(recorder);
+        captureItem.setText("Stop Capture");
     }
 
     /**
@@ -1840,18 +2204,21 @@ public class EventTreeMenu {
      * @param file the file to open
      */
     public void manualOpenEventFile(File file) {
-        EvioReader eFile    = evioFileReader;
-        EvioReader evioFile = openEventFile(file);
+        FileSession oldSession = fileSession;
+        FileSession session = openEventFile(file);
         // handle cancel button properly
-        if (eFile == evioFile) {
+        if (oldSession == session) {
             return;
         }
-        nextButton.setEnabled(evioFile != null);
+        nextButton.setEnabled(session != null);
         prevButton.setEnabled(false);
-        xmlExportItem.setEnabled(evioFile != null);
+        xmlExportItem.setEnabled(session != null);
         eventTreePanel.setEvent(null);
         eventTreePanel.setEvioVersion(evioVersion);
         eventTreePanel.setDataCompressionType(dataCompressionType);
+        if (session != null) {
+            new ReaderTask(session, false).execute();
+        }
     }
 
 	/**
@@ -1889,10 +2256,12 @@ public class EventTreeMenu {
             }
 
             // do the xml processing in a separate thread.
+            final FileSession session = fileSession;
+            if (session == null) return;
             Runnable runner = new Runnable() {
                 public void run() {
                     try {
-                        evioFileReader.toXMLFile(xmlFilePath, null);
+                        session.getReader().toXMLFile(xmlFilePath, null);
                     }
                     catch (EvioException e) {e.printStackTrace();}
                     catch (IOException   e) {e.printStackTrace();}
@@ -1933,11 +2302,13 @@ public class EventTreeMenu {
 
 
     /**
-     * Select and open an event file.
+     * Select and open an event file. Its events are counted from the block or record
+     * headers, and its reader must still be created before the first event is parsed.
      *
-     * @return the opened file reader, or <code>null</code>
+     * @return session of the opened file, or of the file open before if none
+     *         was opened, or <code>null</code>
      */
-    public EvioReader openEventFile() {
+    public FileSession openEventFile() {
 
         if (dataFilePath == null || dataFilePath.length() < 1) {
             // Instead of going to the user's home directory, go cmd line given path
@@ -1977,23 +2348,28 @@ public class EventTreeMenu {
                     "Error reading file",
                     JOptionPane.ERROR_MESSAGE);
 
-                return evioFileReader;
+                return fileSession;
             }
 
+            FileSession session = null;
             try {
-                // Try creating a new reader, if it fails the old is retained
-                EvioReader reader = new EvioReader(selectedFile);
-                int evCount = reader.getEventCount();
-                evioVersion = reader.getEvioVersion();
-                dataCompressionType = reader.getFirstBlockHeader().getCompressionType();
-
-                // Close current reader if any
-                if (evioFileReader != null) {
-                    evioFileReader.close();
+                // Try opening the new file, if it fails the old is retained
+                session = FileSession.open(selectedFile);
+                int evCount = session.getEventCount();
+                String xml = session.getDictionaryXML();
+                evioVersion = session.getEvioVersion();
+                dataCompressionType = session.getCompressionType();
+
+                // Close current reader or run if any
+                if (fileSession != null) {
+                    fileSession.release();
                     qLimit.setValue(0);
                 }
+                closeRunSession();
                 // Use new one
-                evioFileReader = reader;
+                fileSession = session;
+                session = null;
+                evioFileReader = null;
 
                 qLimit.setValue(evCount);
                 qSize.setText("" + evCount);
@@ -2004,23 +2380,8 @@ public class EventTreeMenu {
                 model.setMinimum(0);
                 model.setValue(0);
 
-                String xml = evioFileReader.getDictionaryXML();
                 if (xml != null) {
-                    EvioXMLDictionary dict = dictionaryMap.get(xml);
-                    if (dict == null) {
-                        dict = (EvioXMLDictionary)NameProviderFactory.
-                                createNameProvider(xml);
-                        dictionaryMap.put(xml, dict);
-                    }
-
-                    // Store this dictionary as the loaded-evio-file dictionary
-                    DictionarySource.EVIOFILE.setDictionary(dict);
-
-                    // Allow the new dictionary to be used
-                    fileItem.setEnabled(true);
-
-                    // Start using loaded evio file as dictionary for current(file) event source
-                    setDictionarySource(DictionarySource.EVIOFILE);
+                    applyDictionary(xml, DictionarySource.EVIOFILE);
                 }
 
                 eventIndex = 0;
@@ -2030,7 +2391,11 @@ public class EventTreeMenu {
             }
             catch (Exception e) {
 e.printStackTrace();
-                // We're here if there's trouble with evioFileReader
+                // Don't hang onto a file that could not be read
+                if (session != null) {
+                    session.release();
+                }
+                // We're here if there's trouble with the new file
                 JOptionPane.showMessageDialog(new Frame(),
                         e.getMessage(),
                         "Error reading file",
@@ -2038,9 +2403,43 @@ e.printStackTrace();
             }
         }
 
-        connectEvioListeners();     // Connect Listeners to the parser.
+        return fileSession;
+    }
+
+
+    /**
+     * Select 2 files and compare all their events.
+     */
+    private void doCompareFiles() {
+        File first = viewFileBytes();
+        if (first == null) return;
+        File second = viewFileBytes();
+        if (second == null) return;
+
+        try {
+            new FileDiffFrame(first, second);
+        }
+        catch (IOException e) {
+            JOptionPane.showMessageDialog(eventTreePanel, e.getMessage(),
+                                          "Error reading file", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+
+    /**
+     * Select a file and list its groups of identical events.
+     */
+    private void doFindDuplicates() {
+        File file = viewFileBytes();
+        if (file == null) return;
 
-        return evioFileReader;
+        try {
+            new DuplicateEventsFrame(file);
+        }
+        catch (IOException e) {
+            JOptionPane.showMessageDialog(eventTreePanel, e.getMessage(),
+                                          "Error reading file", JOptionPane.ERROR_MESSAGE);
+        }
     }
 
 
@@ -2105,10 +2504,13 @@ e.printStackTrace();
     /**
      * Open an event file using a given file.
      *
+     * Its events are counted from the block or record headers, and its reader
+     * must still be created before the first event is parsed.
+     *
      * @param file the file to use, i.e., an event file
-     * @return the opened file reader, or <code>null</code>
+     * @return session of the opened file, or <code>null</code>
      */
-    public EvioReader openEventFile(File file) {
+    public FileSession openEventFile(File file) {
         currentEvent.setValue(0);
 
         eventTreePanel.getHeaderPanel().setHeader(null, evioVersion, dataCompressionType);
@@ -2120,13 +2522,17 @@ e.printStackTrace();
         eventInfoPanel.setSource(dataFilePath);
 
         try {
-            if (evioFileReader != null) {
-                evioFileReader.close();
+            if (fileSession != null) {
+                fileSession.release();
+                fileSession = null;
                 qLimit.setValue(0);
             }
+            closeRunSession();
 
-            evioFileReader = new EvioReader(file);
-            int evCount = evioFileReader.getEventCount();
+            fileSession = FileSession.open(file);
+            int evCount = fileSession.getEventCount();
+            evioVersion = fileSession.getEvioVersion();
+            dataCompressionType = fileSession.getCompressionType();
             qLimit.setValue(evCount);
             qSize.setText("" + evCount);
             // Enable & set limits of event # spinner
@@ -2136,41 +2542,138 @@ e.printStackTrace();
             model.setMinimum(0);
             model.setValue(0);
 
-            String xml = evioFileReader.getDictionaryXML();
+            String xml = fileSession.getDictionaryXML();
             if (xml != null) {
-                EvioXMLDictionary dict = dictionaryMap.get(xml);
-                if (dict == null) {
-                    dict = (EvioXMLDictionary)NameProviderFactory.
-                            createNameProvider(xml);
-                    dictionaryMap.put(xml, dict);
-                }
-
-                DictionarySource.EVIOFILE.setDictionary(dict);
-                fileItem.setEnabled(true);
-                setDictionarySource(DictionarySource.EVIOFILE);
+                applyDictionary(xml, DictionarySource.EVIOFILE);
             }
 
             eventIndex = 0;
         }
         catch (EvioException e) {
-            evioFileReader = null;
+            closeFileSession();
             e.printStackTrace();
         }
         catch (IOException e) {
-            evioFileReader = null;
+            closeFileSession();
+            e.printStackTrace();
+        }
+        return fileSession;
+    }
+
+
+    /** Give back the currently viewed file, if any, after a failure to read it. */
+    private void closeFileSession() {
+        evioFileReader = null;
+        if (fileSession != null) {
+            fileSession.release();
+            fileSession = null;
+        }
+    }
+
+
+    /** Give back the files of the currently viewed run, if any. */
+    private void closeRunSession() {
+        if (runSession != null) {
+            runSession.release();
+            runSession = null;
+        }
+    }
+
+
+    /**
+     * Select any file of a run and open all the run's files (run.evio.0, run.evio.1, ...)
+     * to view as one. Their events are counted in parallel and numbered through the whole
+     * run, so "next" and "prev" go right on from one file into the next.
+     */
+    private void doOpenRun() {
+        if (dataFilePath == null || dataFilePath.length() < 1) {
+            // Instead of going to the user's home directory, go cmd line given path
+            dataFilePath = System.getProperty("filePath");
+            // If that is null, go to current path
+            if (dataFilePath == null) {
+                dataFilePath = System.getProperty("user.dir");
+            }
+        }
+
+        JFileChooser chooser = new JFileChooser(dataFilePath);
+        chooser.setDialogTitle("Open any file of a run");
+        if (chooser.showOpenDialog(eventTreePanel) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File selectedFile = chooser.getSelectedFile();
+        dataFilePath = selectedFile.getAbsolutePath();
+
+        RunSession run;
+        Cursor cursor = eventTreePanel.getCursor();
+        eventTreePanel.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        try {
+            run = RunSession.open(RunSession.findSeries(selectedFile));
+            evioVersion = run.getSession(0).getEvioVersion();
+            dataCompressionType = run.getSession(0).getCompressionType();
+        }
+        catch (Exception e) {
+            JOptionPane.showMessageDialog(eventTreePanel, e.getMessage(),
+                                          "Error reading run", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        finally {
+            eventTreePanel.setCursor(cursor);
+        }
+
+        // Use the run instead of any file or run viewed before
+        closeFileSession();
+        closeRunSession();
+        runSession = run;
+
+        eventTreePanel.getHeaderPanel().setHeader(null, evioVersion, dataCompressionType);
+        int evCount = run.getEventCount();
+        qLimit.setValue(evCount);
+        qSize.setText("" + evCount);
+        currentEvent.setEnabled(true);
+        SpinnerNumberModel model = (SpinnerNumberModel) currentEvent.getModel();
+        model.setMaximum(evCount);
+        model.setMinimum(0);
+        model.setValue(0);
+
+        // The files of a run share the dictionary of the first
+        try {
+            String xml = run.getSession(0).getDictionaryXML();
+            if (xml != null) {
+                applyDictionary(xml, DictionarySource.EVIOFILE);
+            }
+        }
+        catch (Exception e) {
             e.printStackTrace();
         }
-        connectEvioListeners();     // Connect Listeners to the parser.
-        return evioFileReader;
+
+        eventIndex = 0;
+        eventInfoPanel.setSource(run.getName());
+        connectEvioListeners();
+
+        nextButton.setEnabled(evCount > 0);
+        prevButton.setEnabled(false);
+        xmlExportItem.setEnabled(false);
+        eventTreePanel.setEvent(null);
+        eventTreePanel.setEvioVersion(evioVersion);
+        eventTreePanel.setDataCompressionType(dataCompressionType);
+        // automatically go to the first event
+        nextButton.doClick();
     }
 
 
     /**
-     * Get the EvioReader object so the file/buffer can be read.
-     * @return  EvioReader object
+     * Get the EvioReader object so the file/buffer can be read,
+     * waiting for it to be created if necessary.
+     * @return  EvioReader object, or null if no file is open or it cannot be read
      */
     public EvioReader getEvioFileReader() {
-        return evioFileReader;
+        if (fileSession == null) return null;
+        try {
+            return getFileReader();
+        }
+        catch (Exception e) {
+            return null;
+        }
     }
 
 
@@ -2269,10 +2772,25 @@ e.printStackTrace();
 			return;
 		}
 
-		EventParser parser = getEvioFileReader().getParser();
-		
 		EventListener listeners[] = evioListenerList.getListeners(IEvioListener.class);
 
+        // Every file of a run has its own parser, made when first needed
+        if (runSession != null) {
+            IEvioListener evioListeners[] = new IEvioListener[listeners.length];
+            for (int i = 0; i < listeners.length; i++) {
+                evioListeners[i] = (IEvioListener)listeners[i];
+            }
+            runSession.setEvioListeners(evioListeners);
+            return;
+        }
+
+        // A file's reader is connected once created
+        if (evioFileReader == null) {
+            return;
+        }
+
+		EventParser parser = evioFileReader.getParser();
+		
 		for (int i = 0; i < listeners.length; i++) {
 			parser.addEvioListener((IEvioListener)listeners[i]);
 		}		
@@ -10,9 +10,12 @@ import javax.swing.event.TreeSelectionListener;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.text.*;
 import javax.swing.tree.DefaultTreeCellRenderer;
+import javax.swing.tree.TreeModel;
 import javax.swing.tree.TreePath;
 import javax.swing.tree.TreeSelectionModel;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
@@ -69,6 +72,25 @@ public class EventTreePanel extends JPanel implements TreeSelectionListener {
     /** The current event. */
 	private EvioEvent event;
 
+    /** Leaf structure whose numerical data is in leafData. */
+    private BaseStructure leafStructure;
+
+    /** Decoded numerical data of leafStructure, kept so that
+     *  redisplaying it, in hex for example, does not decode again. */
+    private LeafFormatter leafData;
+
+    /** Model of the current event displayed in tree. */
+    private LazyEventTreeModel treeModel;
+
+    /** Timer used to expand the tree a piece at a time. */
+    private Timer expandTimer;
+
+    /** Next tree row to be expanded by expandTimer. */
+    private int expandRow;
+
+    /** Number of tree rows expanded each time expandTimer fires. */
+    private static final int ROWS_PER_EXPANSION = 200;
+
     // View manipulating members
 
     /** View ints in hexadecimal or decimal? */
@@ -302,6 +324,24 @@ public class EventTreePanel extends JPanel implements TreeSelectionListener {
     }
 
 
+    /**
+     * Set table's data to the numerical data of the given leaf structure.
+     * The data is only decoded if it is not the leaf previously displayed.
+     * @param structure leaf structure containing numerical data.
+     */
+    void setLeafData(BaseStructure structure) {
+        if (structure != leafStructure || leafData == null) {
+            leafData = LeafFormatter.decode(structure);
+            leafStructure = structure;
+        }
+        if (leafData != null) {
+            leafData.setHex(intsInHex);
+        }
+        MyTableModel model = (MyTableModel)dataTable.getModel();
+        model.setTableData(leafData);
+    }
+
+
     //--------------------------------------------------
     // End of table stuff
     //--------------------------------------------------
@@ -450,6 +490,28 @@ public class EventTreePanel extends JPanel implements TreeSelectionListener {
 		tree = new JTree();
 		tree.setModel(null);
 
+        // Labels come from the lazy model since making them requires dictionary lookups
+        DefaultTreeCellRenderer renderer = new DefaultTreeCellRenderer() {
+            public Component getTreeCellRendererComponent(JTree tree, Object value, boolean sel,
+                                                          boolean expanded, boolean leaf,
+                                                          int row, boolean hasFocus) {
+                TreeModel model = tree.getModel();
+                if (model instanceof LazyEventTreeModel && value instanceof BaseStructure) {
+                    value = ((LazyEventTreeModel) model).getLabel((BaseStructure) value);
+                }
+                return super.getTreeCellRendererComponent(tree, value, sel, expanded, leaf, row, hasFocus);
+            }
+        };
+        tree.setCellRenderer(renderer);
+
+        // With fixed height rows, only visible rows are ever measured
+        int rowHeight = tree.getFontMetrics(tree.getFont()).getHeight() + 2;
+        if (renderer.getLeafIcon() != null) {
+            rowHeight = Math.max(rowHeight, renderer.getLeafIcon().getIconHeight() + 2);
+        }
+        tree.setRowHeight(rowHeight);
+        tree.setLargeModel(true);
+
 		tree.setBorder(BorderFactory.createTitledBorder(null, "EVIO event tree",
 				TitledBorder.LEADING, TitledBorder.TOP, null, Color.blue));
 
@@ -458,7 +520,6 @@ public class EventTreePanel extends JPanel implements TreeSelectionListener {
 		tree.setEditable(false);
 		tree.getSelectionModel().setSelectionMode(TreeSelectionModel.SINGLE_TREE_SELECTION);
 		tree.addTreeSelectionListener(this);
-        DefaultTreeCellRenderer renderer = (DefaultTreeCellRenderer) tree.getCellRenderer();
         renderer.setTextSelectionColor(Color.black);
         renderer.setBackgroundSelectionColor(Color.yellow);
 
@@ -525,98 +586,17 @@ public class EventTreePanel extends JPanel implements TreeSelectionListener {
 
             switch (header.getDataType()) {
 			case DOUBLE64:
-                switchDataAndText(false);
-				double doubledata[] = structure.getDoubleData();
-				if (doubledata != null) {
-                    String[] stringData = new String[doubledata.length];
-					for (double d : doubledata) {
-						stringData[counter++] = String.format("%15.11e", d);
-					}
-                    setTableData(stringData);
-				}
-				break;
-
 			case FLOAT32:
-                switchDataAndText(false);
-				float floatdata[] = structure.getFloatData();
-				if (floatdata != null) {
-                    String[] stringData = new String[floatdata.length];
-					for (float d : floatdata) {
-						stringData[counter++] = String.format("%10.6e", d);
-					}
-                    setTableData(stringData);
-				}
-
 			case LONG64:
 			case ULONG64:
-                switchDataAndText(false);
-				long longdata[] = structure.getLongData();
-				if (longdata != null) {
-                    String[] stringData = new String[longdata.length];
-					for (long i : longdata) {
-                        if (intsInHex) {
-                            stringData[counter++] = String.format("%#018x", i);
-                        }
-                        else {
-                            stringData[counter++] = String.format("%4d", i);
-                        }
-					}
-                    setTableData(stringData);
-				}
-				break;
-
 			case INT32:
 			case UINT32:
-                switchDataAndText(false);
-				int intdata[] = structure.getIntData();
-				if (intdata != null) {
-                    String[] stringData = new String[intdata.length];
-					for (int i : intdata) {
-                        if (intsInHex) {
-                            stringData[counter++] = String.format("%#010x", i);
-                        }
-                        else {
-                            stringData[counter++] = String.format("%4d", i);
-                        }
-                    }
-                    setTableData(stringData);
-				}
-				break;
-
 			case SHORT16:
 			case USHORT16:
-                switchDataAndText(false);
-				short shortdata[] = structure.getShortData();
-				if (shortdata != null) {
-                    String[] stringData = new String[shortdata.length];
-					for (short i : shortdata) {
-                        if (intsInHex) {
-                            stringData[counter++] = String.format("%#06x", i);
-                        }
-                        else {
-                            stringData[counter++] = String.format("%4d", i);
-                        }
-					}
-                    setTableData(stringData);
-				}
-				break;
-
 			case CHAR8:
 			case UCHAR8:
                 switchDataAndText(false);
-				byte bytedata[] = structure.getByteData();
-				if (bytedata != null) {
-                    String[] stringData = new String[bytedata.length];
-					for (byte i : bytedata) {
-                        if (intsInHex) {
-                            stringData[counter++] = String.format("%#04x", i);
-                        }
-                        else {
-                            stringData[counter++] = String.format("%4d", i);
-                        }
-					}
-                    setTableData(stringData);
-				}
+                setLeafData(structure);
 				break;
 
 			case CHARSTAR8:
@@ -688,10 +668,11 @@ public class EventTreePanel extends JPanel implements TreeSelectionListener {
         // Remember any current selection
         TreePath currentSelection = tree.getSelectionPath();
 
-        // Get the tree to repaint itself properly
-        tree.setModel(null);
+        // Get the tree to repaint itself properly.
+        // A new model is needed anyway since its labels are out of date.
+        setTreeModel(null);
         if (event != null) {
-            tree.setModel(event.getTreeModel());
+            setTreeModel(new LazyEventTreeModel(event));
         }
         expandAll();
 
@@ -758,10 +739,14 @@ public class EventTreePanel extends JPanel implements TreeSelectionListener {
 	 * @param event the currently displayed event.
 	 */
 	public void setEvent(EvioEvent event) {
+        TimerMetric metric = MetricsRegistry.timer(MetricsRegistry.TREE_BUILD);
+        long t0 = metric.start();
 		this.event = event;
+        leafStructure = null;
+        leafData = null;
 
 		if (event != null) {
-            tree.setModel(event.getTreeModel());
+            setTreeModel(new LazyEventTreeModel(event));
 			headerPanel.setHeader(event, evioVersion, dataCompressionType);
 		    expandAll();
 
@@ -778,21 +763,66 @@ public class EventTreePanel extends JPanel implements TreeSelectionListener {
             }
         }
 		else {
-			tree.setModel(null);
+			setTreeModel(null);
 			headerPanel.setHeader(null, evioVersion, dataCompressionType);
 		}
+        metric.stop(t0);
 	}
 
 
     /**
-     * Expand all nodes.
+     * Set the model displayed in the tree, stopping work on any previous model.
+     * @param model model to display, may be null.
+     */
+    private void setTreeModel(LazyEventTreeModel model) {
+        if (expandTimer != null) {
+            expandTimer.stop();
+        }
+        if (treeModel != null) {
+            treeModel.dispose();
+        }
+        treeModel = model;
+        tree.setModel(model);
+    }
+
+
+    /**
+     * Expand all nodes. The first rows are expanded right away and the rest
+     * a piece at a time so the gui stays responsive for very large events.
      */
     public void expandAll() {
-        if (tree != null) {
-            for (int i = 0; i < tree.getRowCount(); i++) {
-                tree.expandRow(i);
-            }
+        if (tree == null) return;
+
+        if (expandTimer == null) {
+            expandTimer = new Timer(20, new ActionListener() {
+                public void actionPerformed(ActionEvent e) {
+                    if (expandRows()) {
+                        expandTimer.stop();
+                    }
+                }
+            });
+        }
+
+        expandTimer.stop();
+        expandRow = 0;
+
+        // The first piece, which is all of most events, is done right now
+        if (!expandRows()) {
+            expandTimer.start();
+        }
+    }
+
+
+    /**
+     * Expand the next piece of the tree.
+     * @return {@code true} if all rows are now expanded.
+     */
+    private boolean expandRows() {
+        int last = expandRow + ROWS_PER_EXPANSION;
+        for (; expandRow < tree.getRowCount() && expandRow < last; expandRow++) {
+            tree.expandRow(expandRow);
         }
+        return expandRow >= tree.getRowCount();
     }
 
 
@@ -0,0 +1,140 @@
+package org.jlab.coda.eventViewer;
+
+import org.jlab.coda.hipo.CompressionType;
+import org.jlab.coda.jevio.EvioCompactReader;
+import org.jlab.coda.jevio.EvioEvent;
+import org.jlab.coda.jevio.EvioException;
+import org.jlab.coda.jevio.EvioReader;
+import org.jlab.coda.jevio.Utilities;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * This class parses the evio events out of one buffer after another, as a live
+ * source (ET, cMsg or replay) receives them, reusing its readers from one buffer
+ * to the next since creating one takes far longer than parsing a buffer.<p>
+ *
+ * An EvioCompactReader, which scans each new buffer it's given, finds the events
+ * and each is parsed on its own. An EvioReader can't be used for this: given a new
+ * evio 6 buffer, it keeps the record it has already loaded and goes on returning
+ * the old buffer's events, and it doesn't tell where in the buffer an event was.
+ * The bytes of the last event parsed are kept so they can be stored as received
+ * instead of writing the parsed event out again. A compact reader only reads the
+ * version it was created for, so there is one for each.
+ */
+final class EvioBufferReader {
+
+    /** Reader of evio 4 buffers, created when first needed. */
+    private EvioCompactReader readerV4;
+
+    /** Reader of evio 6 buffers, created when first needed. */
+    private EvioCompactReader readerV6;
+
+    /** Reader of current buffer. */
+    private EvioCompactReader reader;
+
+    /** Bytes of the event last parsed, or null if none. */
+    private ByteBuffer eventBytes;
+
+    /** Evio version of current buffer. */
+    private int evioVersion;
+
+    /** Number of events in current buffer. */
+    private int eventCount;
+
+    /** Number of events of current buffer already parsed. */
+    private int eventsParsed;
+
+    /** Dictionary of current buffer, or null if none. */
+    private String dictionary;
+
+    /** Compression of current buffer. */
+    private CompressionType compressionType;
+
+
+
+    /**
+     * Start reading a new buffer.
+     * @param buf buffer of evio data.
+     * @throws EvioException if buffer is not in evio format.
+     * @throws IOException   if buffer cannot be read.
+     */
+    void setBuffer(ByteBuffer buf) throws EvioException, IOException {
+        eventCount = eventsParsed = 0;
+        eventBytes = null;
+        evioVersion = Utilities.getEvioVersion(buf);
+
+        if (evioVersion < 6) {
+            if (readerV4 == null) {
+                readerV4 = new EvioCompactReader(buf);
+            }
+            else {
+                readerV4.setBuffer(buf);
+            }
+            reader = readerV4;
+        }
+        else {
+            if (readerV6 == null) {
+                readerV6 = new EvioCompactReader(buf);
+            }
+            else {
+                readerV6.setBuffer(buf);
+            }
+            reader = readerV6;
+        }
+
+        dictionary = reader.getDictionaryXML();
+        compressionType = reader.getFirstBlockHeader().getCompressionType();
+        eventCount = reader.getEventCount();
+    }
+
+
+    /**
+     * Get the evio version of the current buffer.
+     * @return evio version of the current buffer.
+     */
+    int getEvioVersion() {return evioVersion;}
+
+
+    /**
+     * Get the dictionary of the current buffer.
+     * @return dictionary of the current buffer, or null if none.
+     */
+    String getDictionaryXML() {return dictionary;}
+
+
+    /**
+     * Get the compression of the current buffer.
+     * @return compression of the current buffer.
+     */
+    CompressionType getCompressionType() {return compressionType;}
+
+
+    /**
+     * Parse the next event of the current buffer.
+     * @return next event, or null if there are no more.
+     * @throws EvioException if event cannot be parsed.
+     * @throws IOException   if buffer cannot be read.
+     */
+    EvioEvent parseNextEvent() throws EvioException, IOException {
+        // Past the last event, readers may throw instead of returning null
+        if (eventsParsed >= eventCount) return null;
+        eventsParsed++;
+
+        // A copy is on the heap, which parsing needs, and may be kept after the buffer is reused
+        eventBytes = reader.getEventBuffer(eventsParsed, true);
+        return EvioReader.parseEvent(eventBytes.array(),
+                                     eventBytes.arrayOffset() + eventBytes.position(),
+                                     eventBytes.order());
+    }
+
+
+    /**
+     * Get the bytes of the event last parsed, as received.
+     * The returned buffer is a copy, positioned at the event's start with
+     * its limit at the event's end, in the byte order of the event.
+     * @return bytes of the event last parsed, or null if none.
+     */
+    ByteBuffer getEventBytes() {return eventBytes;}
+}
@@ -6,6 +6,7 @@ import org.jlab.coda.jevio.*;
 import javax.swing.*;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * This class is used to scan a file for block info, event info, and evio errors
@@ -544,6 +545,7 @@ if (debug) System.out.println("Error 4: " + node.error);
         boolean  firstBlock=true, foundError=false, foundErrorInBlock, debug=false;
         BlockHeader blockNode;
         EvioHeader node;
+        int[] headerInts = new int[8];
 
         blockErrorNodes.clear();
 
@@ -582,12 +584,15 @@ if (debug) System.out.println("Error 4: " + node.error);
             // Read in block header info, swapping is taken care of.
             // Make sure 32 bit unsigned int (read in as a signed int)
             // is properly converted to long without sign extension.
-            blockWordSize    = dataModel.getInt(bufPos) & 0xffffffffL;
-            blockNum         = dataModel.getInt(bufPos + 4*BlockHeaderV4.EV_BLOCKNUM);
-            byteInfo         = dataModel.getInt(bufPos + 4*BlockHeaderV4.EV_VERSION);
-            blockHdrWordSize = dataModel.getInt(bufPos + 4*BlockHeaderV4.EV_HEADERSIZE);
-            blockEventCount  = dataModel.getInt(bufPos + 4*BlockHeaderV4.EV_COUNT);
-            magicNum         = dataModel.getInt(bufPos + 4*BlockHeaderV4.EV_MAGIC);
+            // Read the whole header in one go
+            Arrays.fill(headerInts, 0);
+            dataModel.getInts(bufPos, headerInts, 8);
+            blockWordSize    = headerInts[0] & 0xffffffffL;
+            blockNum         = headerInts[BlockHeaderV4.EV_BLOCKNUM];
+            byteInfo         = headerInts[BlockHeaderV4.EV_VERSION];
+            blockHdrWordSize = headerInts[BlockHeaderV4.EV_HEADERSIZE];
+            blockEventCount  = headerInts[BlockHeaderV4.EV_COUNT];
+            magicNum         = headerInts[BlockHeaderV4.EV_MAGIC];
 
 //            System.out.println("Magic # = 0x" + Integer.toHexString(magicNum));
             // Store block header info in object
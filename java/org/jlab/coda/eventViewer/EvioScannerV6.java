@@ -8,6 +8,7 @@ import org.jlab.coda.jevio.*;
 import javax.swing.*;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * This class is used to scan an <b>EVIO VERSION 6</b> file for block info, event info, and evio errors
@@ -499,6 +500,7 @@ if (debug) System.out.println("Error 4: " + node.error);
         boolean  foundError=false, foundErrorInBlock, debug=false;
         BlockHeaderV6 blockNode;
         EvioHeader node;
+        int[] headerInts = new int[RecordHeader.HEADER_SIZE_WORDS];
 
         blockErrorNodes.clear();
 
@@ -538,18 +540,21 @@ if (debug) System.out.println("Error 4: " + node.error);
             // Read in block header info, swapping is taken care of.
             // Make sure 32 bit unsigned int (read in as a signed int)
             // is properly converted to long without sign extension.
-            blockWordSize         = dataModel.getInt(bufPos) & 0xffffffffL;
-            blockNum              = dataModel.getInt(bufPos + RecordHeader.RECORD_NUMBER_OFFSET);
-            bitInfo               = dataModel.getInt(bufPos + RecordHeader.BIT_INFO_OFFSET);
-            blockHdrWordSize      = dataModel.getInt(bufPos + RecordHeader.HEADER_LENGTH_OFFSET);
-            blockEventCount       = dataModel.getInt(bufPos + RecordHeader.EVENT_COUNT_OFFSET);
-            magicNum              = dataModel.getInt(bufPos + RecordHeader.MAGIC_OFFSET);
-            indexBytes            = dataModel.getInt(bufPos + RecordHeader.INDEX_ARRAY_OFFSET);
-            uncompressedDataBytes = dataModel.getInt(bufPos + RecordHeader.UNCOMPRESSED_LENGTH_OFFSET);
-            int compWord          = dataModel.getInt(bufPos + RecordHeader.COMPRESSION_TYPE_OFFSET);
+            // Read the whole header in one go
+            Arrays.fill(headerInts, 0);
+            dataModel.getInts(bufPos, headerInts, RecordHeader.HEADER_SIZE_WORDS);
+            blockWordSize         = headerInts[0] & 0xffffffffL;
+            blockNum              = headerInts[RecordHeader.RECORD_NUMBER_OFFSET/4];
+            bitInfo               = headerInts[RecordHeader.BIT_INFO_OFFSET/4];
+            blockHdrWordSize      = headerInts[RecordHeader.HEADER_LENGTH_OFFSET/4];
+            blockEventCount       = headerInts[RecordHeader.EVENT_COUNT_OFFSET/4];
+            magicNum              = headerInts[RecordHeader.MAGIC_OFFSET/4];
+            indexBytes            = headerInts[RecordHeader.INDEX_ARRAY_OFFSET/4];
+            uncompressedDataBytes = headerInts[RecordHeader.UNCOMPRESSED_LENGTH_OFFSET/4];
+            int compWord          = headerInts[RecordHeader.COMPRESSION_TYPE_OFFSET/4];
             compressionType       = compWord >>> 28;
             compressedDataWords   = compWord & 0xffffff;
-            userHeaderBytes       = dataModel.getInt(bufPos + RecordHeader.USER_LENGTH_OFFSET); // No padding
+            userHeaderBytes       = headerInts[RecordHeader.USER_LENGTH_OFFSET/4]; // No padding
             totalHeaderBytes      = 4*blockHdrWordSize + indexBytes + 4*Utilities.getWords(userHeaderBytes);
 
             // If no compression ...
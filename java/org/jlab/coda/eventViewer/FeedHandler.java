@@ -0,0 +1,879 @@
+package org.jlab.coda.eventViewer;
+
+import org.jlab.coda.hipo.CompressionType;
+import org.jlab.coda.jevio.EvioEvent;
+import org.jlab.coda.jevio.EvioException;
+
+import javax.swing.*;
+import javax.swing.border.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class keeps the list of events taken from a live {@link EventFeed}: ET, cMsg,
+ * a replayed file, a directory of files or standard input. It subscribes to a feed
+ * and every buffer received goes through the same steps: statistics, capture,
+ * parsing, filtering, sampling and the event list. The gui only deals with this
+ * class, so a new kind of feed needs no code of its own there.<p>
+ *
+ * Buffers are parsed by a pool of worker threads while the events of each buffer
+ * are put on the list in the order the buffers arrived. No more buffers are asked
+ * of the feed than fit in the queue in front of the workers, and none at all once
+ * the list is full (unless events are being sampled from the whole stream, captured
+ * or counted). Taking events again, after the list is cleared for example, asks
+ * the feed for more. So a slow viewer or a full list holds back the feed
+ * instead of making it drop data or keeping a thread busy discarding it.<p>
+ *
+ * The number of workers and the size of their queue are set by the "feedWorkers"
+ * and "feedQueueSize" system properties, unless the subclass chooses.
+ */
+public class FeedHandler {
+
+    /** Number of threads parsing buffers, by default. */
+    static final int DEFAULT_WORKERS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    /** Number of buffers waiting to be parsed, by default. */
+    static final int DEFAULT_QUEUE_SIZE = 16;
+
+    /** Short name of feed, also naming its metrics in JMX. */
+    private final String name;
+
+    /** What the feed delivers, shown to the user. */
+    private final String description;
+
+    /** Number of threads parsing buffers. */
+    private final int workerCount;
+
+    /** Number of buffers waiting to be parsed. */
+    private final int queueSize;
+
+    /** Panel to control the feed. */
+    private JPanel panel;
+
+    /** Feed subscribed to when filling starts, unless a subclass makes its own. */
+    private volatile EventFeed feed;
+
+    /** Parses the buffers of current subscription, if any. */
+    private Pipeline pipeline;
+
+    /** Dictionary source chosen by the user while viewing this feed. */
+    private DictionarySource dictionarySource = DictionarySource.NONE;
+
+
+    /** Keep track of event numbering across buffers. */
+    private int eventNum = 1;
+
+    /** Evio version of data received. Default to v6. */
+    private volatile int evioVersion = 6;
+
+    /** What type of data compression? */
+    private volatile CompressionType dataCompressionType = CompressionType.RECORD_UNCOMPRESSED;
+
+    /** If not null, gather statistics of every buffer received into this object. */
+    private volatile EventStatistics statistics;
+
+    /** If not null, capture what's received into files. */
+    private volatile FlightRecorder recorder;
+
+    /** Counts of what's received, also seen through JMX. */
+    private final SourceMetrics metrics = new SourceMetrics();
+
+    /** Keep track of that last event the user asked for (0 is first event). */
+    private int currentIndex = -1;
+
+    /** How many events we currently allow into the eventList. */
+    private int listLimit = 100;
+
+    /** Chooses which events are kept once the list is full. */
+    private final EventSampler sampler = new EventSampler();
+
+    /** Maximum number of events allowed in list. */
+    private final int maxListSize = EventStore.MAX_EVENTS;
+
+    /** List of received events, kept in a spill file and parsed again when asked for. */
+    private final EventStore eventList = new EventStore();
+
+    /** Filter allowing only certain events into eventList. */
+    private Filter eventFilter = Filter.EVERY;
+
+
+
+    /**
+     * Constructor.
+     * @param name        short name of feed, such as "ET".
+     * @param description what the feed delivers, such as "ET buffers".
+     */
+    public FeedHandler(String name, String description) {
+        this(name, description,
+             Integer.getInteger("feedWorkers", DEFAULT_WORKERS),
+             Integer.getInteger("feedQueueSize", DEFAULT_QUEUE_SIZE));
+    }
+
+
+    /**
+     * Constructor.
+     * @param name        short name of feed, such as "ET".
+     * @param description what the feed delivers, such as "ET buffers".
+     * @param workers     number of threads parsing buffers.
+     * @param queueSize   number of buffers waiting to be parsed.
+     */
+    protected FeedHandler(String name, String description, int workers, int queueSize) {
+        this.name        = name;
+        this.description = description;
+        workerCount      = Math.max(1, workers);
+        this.queueSize   = Math.max(1, queueSize);
+        metrics.register(name);
+    }
+
+
+    /**
+     * Get the short name of the feed.
+     * @return short name of the feed.
+     */
+    public String getName() {return name;}
+
+    /**
+     * Get a description of what the feed delivers.
+     * @return description of what the feed delivers.
+     */
+    public String getDescription() {return description;}
+
+    /**
+     * Get the counts of what's been received.
+     * @return counts of what's been received.
+     */
+    public SourceMetrics getMetrics() {return metrics;}
+
+    /**
+     * Get the evio version of data being viewed.
+     * @return evio version of data being viewed.
+     */
+    public int getEvioVersion() {return evioVersion;}
+
+    /**
+     * Get the compression type of data being viewed.
+     * @return compression type of data being viewed.
+     */
+    public CompressionType getDataCompressionType() {return dataCompressionType;}
+
+    /**
+     * Get the source of dictionaries which arrive along with this feed's data.
+     * @return {@link DictionarySource#ET}, unless overridden.
+     */
+    public DictionarySource getDataDictionarySource() {return DictionarySource.ET;}
+
+    /**
+     * Get the dictionary source last chosen while viewing this feed.
+     * @return dictionary source last chosen while viewing this feed.
+     */
+    public DictionarySource getDictionarySource() {return dictionarySource;}
+
+    /**
+     * Set the dictionary source chosen while viewing this feed.
+     * @param source dictionary source, null for none.
+     */
+    public void setDictionarySource(DictionarySource source) {
+        dictionarySource = (source == null) ? DictionarySource.NONE : source;
+    }
+
+    /**
+     * Set the feed to subscribe to the next time filling starts.
+     * @param feed feed of evio buffers.
+     */
+    public void setFeed(EventFeed feed) {this.feed = feed;}
+
+    /**
+     * Get the feed to subscribe to when filling starts.
+     * This implementation returns the one set with {@link #setFeed(EventFeed)}.
+     * @return feed of evio buffers, or null if there is none yet.
+     */
+    protected EventFeed createFeed() {return feed;}
+
+    /**
+     * Set the object into which statistics of every buffer received are gathered.
+     * @param statistics object gathering statistics, or null to stop gathering.
+     */
+    public void setStatistics(EventStatistics statistics) {
+        this.statistics = statistics;
+        resume();
+    }
+
+    /**
+     * Set the object capturing what's received into files.
+     * While capturing, data keeps being taken even if the list is full.
+     * @param recorder object capturing into files, or null to stop capturing.
+     */
+    public void setRecorder(FlightRecorder recorder) {
+        this.recorder = recorder;
+        resume();
+    }
+
+    /**
+     * Get the object capturing what's received into files.
+     * @return object capturing into files, or null if not capturing.
+     */
+    public FlightRecorder getRecorder() {return recorder;}
+
+    /**
+     * Get the event filter to use on each event before adding to list.
+     * @return the event filter to use on each event before adding to list.
+     */
+    public Filter getEventFilter() {
+        return eventFilter;
+    }
+
+    /**
+     * Set the event filter to use on each event before adding to list.
+     * @param eventFilter filter to use on each event before adding to list.
+     */
+    public void setEventFilter(Filter eventFilter) {
+        this.eventFilter = eventFilter;
+    }
+
+    /** Reset the event number back to 1. */
+    synchronized private void resetEventNumber() {
+        eventNum = 1;
+    }
+
+    /**
+     * Add the given event to the event list.
+     * If the list is full, it depends on the sampling policy
+     * whether the event replaces one in the list.
+     * If the event does not make it past the filter,
+     * nothing is added.
+     *
+     * @param event Evio event to add to event list.
+     */
+    synchronized public void addEvent(EvioEvent event) {
+        if (event == null || !wantsMoreEvents()) return;
+
+        if (!Filter.allow(event)) {
+            metrics.eventFiltered();
+            return;
+        }
+
+        placeEvent(event, null);
+    }
+
+    /**
+     * Add the given events, which have already been filtered, to the event list.
+     * Events which don't fit, according to the sampling policy, are dropped.
+     *
+     * @param events Evio events to add to event list.
+     * @param bytes  bytes of each event as received.
+     */
+    synchronized private void addEvents(ArrayList<EvioEvent> events, ArrayList<ByteBuffer> bytes) {
+        for (int i=0; i < events.size(); i++) {
+            if (!wantsMoreEvents()) return;
+            placeEvent(events.get(i), bytes.get(i));
+        }
+    }
+
+    /**
+     * Place an event, which has made it past the filter, into the list as chosen by the
+     * sampling policy. The list stays in order of arrival and never grows past its limit.
+     * @param event Evio event to place into event list.
+     * @param bytes bytes of event as received, or null if it must be written out.
+     */
+    private void placeEvent(EvioEvent event, ByteBuffer bytes) {
+        FlightRecorder rec = recorder;
+        if (rec != null) {
+            rec.record(event, bytes);
+        }
+
+        event.setEventNumber(eventNum++);
+        int slot = sampler.place(eventList.size(), listLimit);
+        if (slot == EventSampler.DROP) return;
+        if (slot > EventSampler.APPEND) {
+            eventList.remove(slot);
+            if (currentIndex >= slot) currentIndex--;
+        }
+        // Events dropped to make room in the spill file are the oldest
+        currentIndex = Math.max(-1, currentIndex - eventList.add(event, bytes));
+    }
+
+    /**
+     * Does this source need to keep taking events?
+     * Only if the list is not full, events are sampled from the whole stream,
+     * or events are being captured.
+     * @return {@code true} if more events are wanted.
+     */
+    synchronized public boolean wantsMoreEvents() {
+        return recorder != null || sampler.wantsMore(eventList.size(), listLimit);
+    }
+
+    /**
+     * Does this source need to keep taking buffers? Only if it wants more events
+     * or statistics are being gathered.
+     * @return {@code true} if more buffers are wanted.
+     */
+    private boolean wantsMoreBuffers() {
+        return statistics != null || wantsMoreEvents();
+    }
+
+    /**
+     * Ask the feed for more buffers if it was held back because no more events were wanted.
+     * To be called whenever that may have changed, for example when the way events
+     * are sampled changes.
+     */
+    public void resume() {
+        Pipeline p;
+        synchronized (this) {
+            p = pipeline;
+        }
+        if (p != null) {
+            p.resume();
+        }
+    }
+
+    /**
+     * Get the specified event, index beginning at 1.
+     * @param index index into event list beginning at 1.
+     * @return EvioEvent object at given index in event list;
+     *         or null if no object at that index
+     */
+    synchronized public EvioEvent getEvent(int index) {
+        if (index < 1 || index > listLimit || index > eventList.size()) return null;
+        currentIndex = index - 1;
+        return eventList.get(currentIndex);
+    }
+
+    /**
+     * Get the next evio event from the list or null if none.
+     * @return next evio event from the list or null if none.
+     */
+    synchronized public EvioEvent getNextEvent() {
+        int nextIndex = currentIndex + 1;
+        if (nextIndex >= listLimit || nextIndex >= eventList.size()) return null;
+        return eventList.get(++currentIndex);
+    }
+
+    /**
+     * Is there another evio event, after the one previously obtained, in the list?
+     * @return <code>true</code> if there is an event, after the one previously obtained,
+     *         in the list, else <code>false</code>.
+     */
+    synchronized public boolean hasNextEvent() {
+        int nextIndex = currentIndex + 1;
+        return !(nextIndex >= listLimit || nextIndex >= eventList.size());
+    }
+
+    /**
+     * Get the previous evio event from the list or null if none.
+     * @return previous evio event from the list or null if none.
+     */
+    synchronized public EvioEvent getPrevEvent() {
+        int prevIndex = currentIndex - 1;
+        if (prevIndex < 0 || prevIndex >= eventList.size()) return null;
+        return eventList.get(--currentIndex);
+    }
+
+    /**
+     * Get the size of the event list.
+     * @return size of the event list.
+     */
+    synchronized public int getListSize() {
+        return eventList.size();
+    }
+
+    /**
+     * Get the index of the current event (starting at 0).
+     * Used to determine what is next and what is previous.
+     * @return index of the current event (starting at 0).
+     */
+    synchronized public int getCurrentEventIndex() {
+        return currentIndex;
+    }
+
+    /**
+     * Reset the index of the current event to -1.
+     * Used to determine what is next and what is previous.
+     */
+    synchronized public void resetCurrentEventIndex() {
+        currentIndex = -1;
+    }
+
+    /**
+     * Set the event number. Newly added events
+     * have numbers starting with the given value.
+     * @param eventNum newly added events have numbers starting with this value
+     */
+    synchronized public void setEventNum(int eventNum) {
+        this.eventNum = eventNum;
+    }
+
+    /** Clear the entire event list - all events. */
+    public void clearList() {
+        synchronized (this) {
+            eventList.clear();
+            currentIndex = -1;
+            resetEventNumber();
+        }
+        resume();
+    }
+
+    /**
+     * Clear the specified number of latest events from the list.
+     * @param numberToDelete number of latest events to delete from the list.
+     */
+    public void clearList(int numberToDelete) {
+        synchronized (this) {
+            // Use an extra variable here to avoid a changing upper limit as
+            // we're removing one item from eventList each iteration.
+            int listSize = eventList.size();
+            if (numberToDelete < listSize) {
+                // delete latest additions
+                for (int i=listSize; i > listSize - numberToDelete; i--) {
+                    eventList.remove(i-1);
+                }
+                // if we removed what we are looking at, look at nothing
+                if (currentIndex >= eventList.size()) {
+                    currentIndex = -1;
+                }
+                resume();
+                return;
+            }
+        }
+        clearList();
+    }
+
+    /**
+     * Get the maximum number of events that the list will hold.
+     * @return maximum number of events that the list will hold.
+     */
+    synchronized public int getListLimit() {
+        return listLimit;
+    }
+
+    /**
+     * Set the maximum number of events that the list will hold.
+     * Does nothing if limit &lt; 1. Will set it to a max of {@link EventStore#MAX_EVENTS}.
+     * If reducing the size of the current limit, it will clear
+     * any events beyond the new limit.
+     * @param limit maximum number of events that the list will hold.
+     */
+    public void setListLimit(int limit) {
+        synchronized (this) {
+            if (limit < 1 || limit == listLimit) return;
+
+            if (limit > maxListSize) limit = maxListSize;
+
+            if (limit < listLimit) {
+                // If we're here, we must reduce the current limit.
+                // If necessary, get rid of newest events.
+                if (limit < eventList.size()) {
+                    clearList(eventList.size() - limit);
+                }
+            }
+
+            listLimit = limit;
+        }
+        resume();
+    }
+
+    /** Subscribe to the feed, if not already doing so, and start filling the list. */
+    public void startFillingEventList() {
+        EventFeed f;
+        Pipeline p;
+        synchronized (this) {
+            if (pipeline != null && !pipeline.stopped && !pipeline.ended) return;
+            f = createFeed();
+            if (f == null) return;
+
+            // Start event number at 1
+            resetEventNumber();
+            p = pipeline = new Pipeline();
+        }
+        f.subscribe(p);
+    }
+
+    /** Cancel the subscription to the feed, if any. */
+    public void stopFillingEventList() {
+        Pipeline p;
+        synchronized (this) {
+            p = pipeline;
+            pipeline = null;
+        }
+        if (p != null) {
+            p.stop();
+        }
+    }
+
+    /**
+     * Is the feed still delivering to the list? It's not once stopped, or once
+     * the feed fails or has no more data, as at the end of a file, and what it
+     * delivered has been parsed.
+     * @return {@code true} if the feed is still delivering.
+     */
+    synchronized public boolean isFillingEventList() {
+        return pipeline != null && !pipeline.stopped && !pipeline.ended;
+    }
+
+
+    /** A buffer waiting to be parsed. */
+    private static final class Job {
+        /** Order of arrival. */
+        final long sequence;
+        /** Evio data. */
+        final ByteBuffer buffer;
+        /** Dictionary given by feed, if any. */
+        final String dictionary;
+        /** Parsed events which got past the filter. */
+        final ArrayList<EvioEvent> events = new ArrayList<EvioEvent>();
+        /** Bytes of each parsed event as received. */
+        final ArrayList<ByteBuffer> eventBytes = new ArrayList<ByteBuffer>();
+
+        Job(long sequence, ByteBuffer buffer, String dictionary) {
+            this.sequence   = sequence;
+            this.buffer     = buffer;
+            this.dictionary = dictionary;
+        }
+    }
+
+
+    /**
+     * This class is the subscriber to one subscription of a feed. It puts each buffer
+     * into a queue for a pool of worker threads to parse and filter, and puts the events
+     * of each buffer on the list in the order of arrival. Every time a buffer is done
+     * with, one more is asked of the feed, as long as more events are wanted.<p>
+     *
+     * Each worker has its own reader which it gives each new buffer. Since feeds
+     * usually send the same dictionary with every buffer, the last one is kept. A new
+     * buffer's dictionary equal to it is replaced by it so that all events share one
+     * copy and finding its parsed form is an identity check instead of hashing the
+     * XML again.
+     */
+    private final class Pipeline implements EventFeed.Subscriber {
+
+        /** Buffers waiting to be parsed. */
+        private final ArrayBlockingQueue<Job> queue = new ArrayBlockingQueue<Job>(queueSize);
+
+        /** Threads parsing buffers. */
+        private final Thread[] workers = new Thread[workerCount];
+
+        /** Parsed buffers finished out of order, by sequence. */
+        private final HashMap<Long, Job> finished = new HashMap<Long, Job>();
+
+        /** Sequence of next buffer whose events go on the list. */
+        private long nextToList;
+
+        /** Sequence of next buffer to arrive. Only used by the feed's delivering thread. */
+        private long nextSequence;
+
+        /** Number of buffers done with, but not asked for again since no more were wanted. */
+        private final AtomicInteger owed = new AtomicInteger();
+
+        /** Last dictionary received. */
+        private String lastDictionary;
+
+        /** Subscription to feed. */
+        private volatile EventFeed.Subscription subscription;
+
+        /** Set once stopped by the handler. */
+        private volatile boolean stopped;
+
+        /** Number of buffers delivered, set once the feed has failed or has no more data. */
+        private long delivered = -1L;
+
+        /** Set once the feed has failed or has no more data and all buffers are done with. */
+        private volatile boolean ended;
+
+
+        /** Constructor which starts the workers. */
+        Pipeline() {
+            for (int i=0; i < workers.length; i++) {
+                workers[i] = new Thread(name + " parser " + i) {
+                    public void run() {
+                        work();
+                    }
+                };
+                workers[i].setDaemon(true);
+                workers[i].start();
+            }
+        }
+
+
+        /** Cancel the subscription and stop the workers, forgetting waiting buffers. */
+        void stop() {
+            stopped = true;
+            EventFeed.Subscription s = subscription;
+            if (s != null) {
+                s.cancel();
+            }
+            // Workers are not interrupted since that would close the event list's spill file
+            queue.clear();
+        }
+
+
+        /** {@inheritDoc} */
+        public void onSubscribe(EventFeed.Subscription subscription) {
+            this.subscription = subscription;
+            if (stopped) {
+                subscription.cancel();
+                return;
+            }
+            subscription.request(queue.remainingCapacity());
+        }
+
+
+        /** {@inheritDoc} */
+        public void onNext(ByteBuffer buffer, String dictionary) {
+            if (stopped) return;
+            metrics.bufferReceived(buffer.remaining());
+
+            FlightRecorder rec = recorder;
+            if (rec != null) {
+                rec.record(buffer, dictionary);
+            }
+
+            // Never full unless the feed sends more than asked for
+            if (queue.offer(new Job(nextSequence, buffer, dictionary))) {
+                nextSequence++;
+            }
+            else {
+                metrics.bufferDropped();
+            }
+        }
+
+
+        /** {@inheritDoc} */
+        public void onDropped(long n) {
+            metrics.buffersDropped(n);
+        }
+
+
+        /** {@inheritDoc} */
+        public void onError(Throwable error) {
+            if (!stopped) {
+                error.printStackTrace();
+            }
+            onComplete();
+        }
+
+
+        /** {@inheritDoc} */
+        public void onComplete() {
+            synchronized (finished) {
+                delivered = nextSequence;
+                checkEnded();
+            }
+        }
+
+
+        /** Note the end once the feed has no more data and all its buffers are on the list. */
+        private void checkEnded() {
+            if (delivered >= 0L && nextToList >= delivered) {
+                ended = true;
+            }
+        }
+
+
+        /** Ask for one more buffer now that one is done with, or owe it if none are wanted. */
+        private void release() {
+            if (stopped) return;
+            if (wantsMoreBuffers()) {
+                subscription.request(1);
+                return;
+            }
+            owed.incrementAndGet();
+            // More may have become wanted in the meantime without seeing this one owed
+            if (wantsMoreBuffers()) {
+                resume();
+            }
+        }
+
+
+        /** Ask for all owed buffers if more are wanted. */
+        void resume() {
+            if (stopped || subscription == null || !wantsMoreBuffers()) return;
+            int n = owed.getAndSet(0);
+            if (n > 0) {
+                subscription.request(n);
+            }
+        }
+
+
+        /**
+         * Get the kept copy of a dictionary,
+         * keeping this one if it's different from the last.
+         * @param xml dictionary XML.
+         * @return kept copy of dictionary XML.
+         */
+        private synchronized String shareDictionary(String xml) {
+            String last = lastDictionary;
+            if (last != null && (last == xml || last.equals(xml))) {
+                return last;
+            }
+            lastDictionary = xml;
+            return xml;
+        }
+
+
+        /** Parse buffers until stopped. Run by each worker thread. */
+        private void work() {
+            EvioBufferReader reader = null;
+
+            while (!stopped && !ended) {
+                Job job;
+                try {
+                    job = queue.poll(200, TimeUnit.MILLISECONDS);
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                if (job == null) continue;
+
+                // Statistics include buffers whose events don't make it onto the list
+                EventStatistics stats = statistics;
+                if (stats != null) {
+                    stats.scanBuffer(job.buffer.duplicate());
+                }
+
+                if (wantsMoreEvents()) {
+                    reader = extractEvents(reader, job);
+                }
+                finish(job);
+                release();
+            }
+        }
+
+
+        /**
+         * Parse a buffer and extract the evio events which get past the filter from it.
+         *
+         * @param reader reader to reuse, or null if none.
+         * @param job    buffer, to whose lists events and their bytes are added.
+         * @return reader to reuse for next buffer, or null if none.
+         */
+        private EvioBufferReader extractEvents(EvioBufferReader reader, Job job) {
+            long t0 = System.nanoTime();
+            try {
+                EvioEvent ev;
+                if (reader == null) {
+                    reader = new EvioBufferReader();
+                }
+                reader.setBuffer(job.buffer);
+                String dictionary = reader.getDictionaryXML();
+
+                evioVersion = reader.getEvioVersion();
+                dataCompressionType = reader.getCompressionType();
+
+                // If no dictionary defined in buffer, use the one from the feed
+                if (dictionary == null) {
+                    dictionary = job.dictionary;
+                }
+
+                if (dictionary != null) {
+                    dictionary = shareDictionary(dictionary);
+                    // Parse or find it here, once per buffer, instead of in the gui
+                    DictionaryRegistry.get(dictionary);
+                }
+
+                while ( (ev = reader.parseNextEvent()) != null) {
+                    metrics.eventReceived();
+                    if (!Filter.allow(ev)) {
+                        metrics.eventFiltered();
+                        continue;
+                    }
+                    ev.setDictionaryXML(dictionary);
+                    job.events.add(ev);
+                    job.eventBytes.add(reader.getEventBytes());
+                    // Only keeping the first events means the rest of a full buffer
+                    // can't get on the list, other policies may take any of them
+                    if (job.events.size() >= listLimit && recorder == null &&
+                        EventSampler.getPolicy() == EventSampler.Policy.FIRST)  break;
+                }
+                metrics.bufferParsed(System.nanoTime() - t0);
+                return reader;
+            }
+            catch (IOException e) {
+                // data in wrong format so try next buffer with a fresh reader
+                metrics.parseFailed();
+            }
+            catch (EvioException e) {
+                metrics.parseFailed();
+            }
+            catch (RuntimeException e) {
+                metrics.parseFailed();
+            }
+            return null;
+        }
+
+
+        /**
+         * Put the events of a parsed buffer on the list once those of all
+         * earlier buffers are there, along with any later ones waiting for this one.
+         * @param job parsed buffer, holding its events which got past the filter.
+         */
+        private void finish(Job job) {
+            synchronized (finished) {
+                finished.put(job.sequence, job);
+                while ((job = finished.remove(nextToList)) != null) {
+                    nextToList++;
+                    if (!stopped) {
+                        addEvents(job.events, job.eventBytes);
+                    }
+                }
+                checkEnded();
+            }
+        }
+    }
+
+
+    /**
+     * Create the panel/menu-item used to control the feed.
+     * This implementation only starts and stops taking data from it.
+     * @return the panel/menu-item used to control the feed.
+     */
+    public JPanel createPanel() {
+        if (panel != null) return panel;
+
+        // custom colors
+        final Color darkGreen = new Color(0, 160, 0);
+        final Color darkRed   = new Color(160, 0, 0);
+
+        Border empty = BorderFactory.createEmptyBorder(4,4,4,4);
+
+        final JLabel status = new JLabel("  Not reading " + description + "  ");
+        status.setForeground(Color.BLUE);
+        status.setBorder(empty);
+
+        JPanel statusPanel = new JPanel(new BorderLayout());
+        statusPanel.add(status, BorderLayout.CENTER);
+        statusPanel.add(metrics.createRateLabel(), BorderLayout.SOUTH);
+
+        final JButton startButton = new JButton("Start");
+        startButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (startButton.getText().equals("Start")) {
+                    metrics.reset();
+                    startFillingEventList();
+                    status.setForeground(darkGreen);
+                    status.setText(" Reading " + description);
+                    startButton.setText("Stop");
+                }
+                else {
+                    stopFillingEventList();
+                    status.setForeground(darkRed);
+                    status.setText(" Stopped reading " + description);
+                    startButton.setText("Start");
+                }
+            }
+        });
+        startButton.setAlignmentX(Component.CENTER_ALIGNMENT);
+
+        // top-level panel
+        panel = new JPanel(new BorderLayout());
+        panel.add(statusPanel, BorderLayout.CENTER);
+        panel.add(startButton, BorderLayout.SOUTH);
+
+        return panel;
+    }
+}
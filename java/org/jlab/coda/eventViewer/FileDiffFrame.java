@@ -0,0 +1,821 @@
+package org.jlab.coda.eventViewer;
+
+import org.jlab.coda.jevio.EvioEvent;
+import org.jlab.coda.jevio.EvioException;
+import org.jlab.coda.jevio.EvioReader;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class implements a window which compares all the events of two evio files,
+ * for example raw data and the same data after being processed. The events of each
+ * memory mapped file are found by walking its headers.<p>
+ *
+ * Events of the two files are first lined up, so that an event missing from one file
+ * shows up as such instead of making every later event differ. When the built events
+ * of both files have CODA event numbers which increase, events are lined up by event
+ * number. Otherwise, or for events without one, events are lined up in order, and when
+ * two differ the next events of each file are searched for one with the same hash to
+ * get back in step. Hashes are only computed once two events differ, and are saved
+ * in the files' index sidecars for next time.<p>
+ *
+ * Lined up events are compared directly in the mapped files, handed out in ranges to
+ * a pool of threads while lining up goes on. Runs of events lined up in order are split
+ * into ranges which are all compared at once, and only where a range reports a pair
+ * that differs is a way back in step looked for, after which the rest of the run is
+ * lined up again from there. Since events are compared
+ * one by one, the files do not need to have the same record layout. Events which
+ * can't be compared byte for byte, because they are in compressed records or the
+ * files differ in endianness, are parsed and compared structure by structure by the
+ * pool's threads through the readers the files' sessions share, each locked while
+ * parsing. Differing events are listed as they are found, and double clicking one
+ * opens an {@link EventCompareFrame} on it.
+ */
+public class FileDiffFrame extends JFrame {
+
+    /** Try to make ranges of events compared by one thread at least this big. */
+    private static final int CHUNK_BYTES = 16000000;
+
+    /** Number of events of each file searched for a matching hash when events differ. */
+    private static final int RESYNC_EVENTS = 64;
+
+    /** Number of threads comparing. */
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    /** Sessions of files being compared. */
+    private FileSession[] sessions = new FileSession[2];
+
+    /** List of differing events, in order of the first file. */
+    private DefaultListModel<Difference> listModel = new DefaultListModel<Difference>();
+
+    /** Shows progress. */
+    private JLabel statusLabel;
+
+    /** Updates the display. */
+    private Timer timer;
+
+    /** Thread doing comparison. */
+    private Comparison comparison;
+
+    /** Orders differences as they are listed. */
+    private static final Comparator<Difference> ORDER = new Comparator<Difference>() {
+        public int compare(Difference a, Difference b) {
+            if (a.position != b.position) {
+                return a.position < b.position ? -1 : 1;
+            }
+            return a.second < b.second ? -1 : (a.second == b.second ? 0 : 1);
+        }
+    };
+
+
+
+    /** Class describing one differing event. */
+    private final class Difference {
+        /** Index of event in first file starting at 0, -1 if only in second file. */
+        final int first;
+        /** Index of event in second file starting at 0, -1 if only in first file. */
+        final int second;
+        /** Index of first differing word, -1 if unknown or only in one file. */
+        final int word;
+        /** Index of first file's event at or after this one, for ordering. */
+        final int position;
+
+        Difference(int first, int second, int word, int position) {
+            this.first    = first;
+            this.second   = second;
+            this.word     = word;
+            this.position = position;
+        }
+
+        public String toString() {
+            if (second < 0) {
+                return "Event " + (first + 1) + ": only in " + sessions[0].getFile().getName();
+            }
+            if (first < 0) {
+                return "Event " + (second + 1) + ": only in " + sessions[1].getFile().getName();
+            }
+            String text = "Event " + (first + 1);
+            if (first != second) {
+                text += " / " + (second + 1);
+            }
+            if (word > -1) {
+                return text + ": differs at word " + word;
+            }
+            return text + ": differs";
+        }
+    }
+
+
+
+    /**
+     * Constructor.
+     * @param first  first file.
+     * @param second second file.
+     * @throws IOException if either file cannot be opened.
+     */
+    public FileDiffFrame(File first, File second) throws IOException {
+        super("Compare " + first.getName() + " with " + second.getName());
+        sessions[0] = FileSession.open(first);
+        try {
+            sessions[1] = FileSession.open(second);
+        }
+        catch (IOException e) {
+            sessions[0].release();
+            throw e;
+        }
+
+        createWidgets();
+        comparison = new Comparison();
+        comparison.start();
+    }
+
+
+    /** Add widgets to this frame, start updating them, and show it. */
+    private void createWidgets() {
+        addWindowListener(new WindowAdapter() {
+            public void windowClosing(WindowEvent event) {
+                FileDiffFrame.this.dispose();
+            }
+        });
+
+        setLayout(new BorderLayout());
+
+        final JList<Difference> list = new JList<Difference>(listModel);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        list.addMouseListener(new MouseAdapter() {
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2 && list.getSelectedValue() != null) {
+                    showDifference(list.getSelectedValue());
+                }
+            }
+        });
+        add(new JScrollPane(list), BorderLayout.CENTER);
+
+        statusLabel = new JLabel(" ");
+        add(statusLabel, BorderLayout.SOUTH);
+
+        timer = new Timer(500, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                refresh();
+            }
+        });
+        timer.start();
+
+        setSize(600, 700);
+        setLocationRelativeTo(null);
+        setVisible(true);
+    }
+
+
+    /** Display the latest results. */
+    private void refresh() {
+        // Check first so nothing found before it finished is missed
+        boolean done = comparison.isDone();
+        statusLabel.setText(comparison.getStatus());
+
+        // Differences arrive out of order from the comparing threads,
+        // so binary search for where each goes in the sorted list
+        ArrayList<Difference> found = comparison.takeDifferences();
+        Collections.sort(found, ORDER);
+        for (Difference d : found) {
+            int lo = 0, hi = listModel.getSize();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (ORDER.compare(listModel.getElementAt(mid), d) <= 0) lo = mid + 1;
+                else hi = mid;
+            }
+            listModel.add(lo, d);
+        }
+
+        if (done) {
+            timer.stop();
+        }
+    }
+
+
+    /**
+     * Open a window comparing the events of the given difference.
+     * @param difference difference to look at.
+     */
+    private void showDifference(Difference difference) {
+        int[] index = {difference.first, difference.second};
+        EvioEvent[] events = new EvioEvent[2];
+        String[] names = new String[2];
+        try {
+            for (int i=0; i < 2; i++) {
+                if (index[i] < 0) continue;
+                names[i] = sessions[i].getFile().getName() + " #" + (index[i] + 1);
+                EvioReader reader = sessions[i].getReader();
+                synchronized (reader) {
+                    if (index[i] < reader.getEventCount()) {
+                        events[i] = reader.parseEvent(index[i] + 1);
+                    }
+                }
+            }
+        }
+        catch (Exception e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Error reading file", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        if (events[0] == null || events[1] == null) {
+            JOptionPane.showMessageDialog(this, difference.toString(), "Nothing to Compare",
+                                          JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        new EventCompareFrame(events[0], names[0], events[1], names[1]);
+    }
+
+
+    /** Stop comparing and give back the files. */
+    @Override
+    public void dispose() {
+        timer.stop();
+        comparison.cancel();
+        for (int i=0; i < 2; i++) {
+            if (sessions[i] != null) {
+                sessions[i].release();
+                sessions[i] = null;
+            }
+        }
+        super.dispose();
+    }
+
+
+    /**
+     * Find the first differing word of two events in the same byte order.
+     * @param a first event.
+     * @param b second event.
+     * @return index of first differing word, or -1 if identical.
+     */
+    private static int firstDifferentWord(ByteBuffer a, ByteBuffer b) {
+        // Bulk comparison first, it's the usual case
+        if (a.equals(b)) return -1;
+
+        int words = Math.min(a.remaining(), b.remaining()) / 4;
+        for (int i=0; i < words; i++) {
+            if (a.getInt(4*i) != b.getInt(4*i)) {
+                return i;
+            }
+        }
+        return words;
+    }
+
+
+    /**
+     * This class is a thread which indexes both files and lines up their events,
+     * while a pool of threads compares the lined up events.
+     */
+    private class Comparison extends Thread {
+
+        /** Threads comparing ranges of events. */
+        private final ExecutorService pool;
+
+        /** Threads hashing events, if needed to line them up. */
+        private volatile ExecutorService hashPool;
+
+        /** Indexes of both files. */
+        private final EventIndex[] indexes = new EventIndex[2];
+
+        /** Differences found and not yet taken for listing. */
+        private final ConcurrentLinkedQueue<Difference> found = new ConcurrentLinkedQueue<Difference>();
+
+        /** Number of differences found. */
+        private final AtomicInteger differenceCount = new AtomicInteger();
+
+        /** Pairs of lined up events which need comparing structure by structure. */
+        private final ArrayList<int[]> parseList = new ArrayList<int[]>();
+
+        /** Pairs of lined up events, first file's index then second's, not yet handed out. */
+        private int[] chunk = new int[1024];
+
+        /** Number of ints in chunk. */
+        private int chunkLength;
+
+        /** Bytes of first file's events in chunk. */
+        private long chunkBytes;
+
+        /** Number of events compared or found in only one file so far. */
+        private final AtomicInteger compared = new AtomicInteger();
+
+        /** Number of events to compare, at most. */
+        private volatile int total;
+
+        /** Have hashes been looked for? Only used by this thread. */
+        private boolean hashesTried;
+
+        /** Are events being hashed right now? */
+        private volatile boolean hashing;
+
+        /** Are hashes of both files available? */
+        private volatile boolean hashed;
+
+        /** Were events in compressed records, which cannot be hashed, compared in order? */
+        private volatile boolean inOrder;
+
+        /** Time comparison started in milliseconds. */
+        private final long startTime = System.currentTimeMillis();
+
+        /** Time comparison took in milliseconds, -1 if not done yet. */
+        private volatile long compareTime = -1L;
+
+        /** Error found, if any. */
+        private volatile String error;
+
+        /** Set to stop comparing. */
+        private volatile boolean cancelled;
+
+
+        /** Constructor. */
+        Comparison() {
+            super("File comparison");
+            setDaemon(true);
+            pool = Executors.newFixedThreadPool(THREADS);
+        }
+
+
+        /** Stop comparing. */
+        void cancel() {
+            cancelled = true;
+            // Cancel ranges never started so nobody waits for them
+            for (Runnable r : pool.shutdownNow()) {
+                if (r instanceof Future) {
+                    ((Future<?>) r).cancel(false);
+                }
+            }
+            ExecutorService h = hashPool;
+            if (h != null) {
+                h.shutdownNow();
+            }
+        }
+
+
+        /**
+         * Is the comparison done?
+         * @return {@code true} if done.
+         */
+        boolean isDone() {return compareTime > -1L;}
+
+
+        /**
+         * Take the differences found since last called.
+         * @return differences found since last called, in no particular order.
+         */
+        ArrayList<Difference> takeDifferences() {
+            ArrayList<Difference> list = new ArrayList<Difference>();
+            Difference d;
+            while ((d = found.poll()) != null) {
+                list.add(d);
+            }
+            return list;
+        }
+
+
+        /**
+         * Get a description of the comparison's progress.
+         * @return description of the comparison's progress.
+         */
+        String getStatus() {
+            String status;
+            if (isDone()) {
+                status = String.format("Compared %,d events in %.2f sec, %,d differ",
+                                       compared.get(), compareTime/1000., differenceCount.get());
+                if (inOrder) {
+                    status += " (compressed events compared in order)";
+                }
+            }
+            else if (total == 0) {
+                status = "Indexing ...";
+            }
+            else if (hashing) {
+                status = "Hashing events to line them up ...";
+            }
+            else {
+                status = String.format("Comparing ... %d%%, %,d differ",
+                                       Math.min(99L, 100L*compared.get()/total), differenceCount.get());
+            }
+            if (error != null) {
+                status += ", " + error;
+            }
+            return status;
+        }
+
+
+        /**
+         * Add a difference found.
+         * @param d difference.
+         */
+        private void addDifference(Difference d) {
+            differenceCount.incrementAndGet();
+            found.add(d);
+        }
+
+
+        /**
+         * Add an event found in only one file.
+         * @param file     0 for first file, 1 for second.
+         * @param index    index of event.
+         * @param position index of first file's event at or after this one.
+         */
+        private void addOnlyIn(int file, int index, int position) {
+            if (file == 0) {
+                addDifference(new Difference(index, -1, -1, position));
+            }
+            else {
+                addDifference(new Difference(-1, index, -1, position));
+            }
+            compared.incrementAndGet();
+        }
+
+
+        /**
+         * Add a pair of lined up events to those to be compared. Pairs are handed out
+         * to the pool in ranges once enough bytes are collected, or when forced.
+         * @param a index of event in first file, or -1 to only hand out what's collected.
+         * @param b index of event in second file.
+         */
+        private void addPair(int a, int b) {
+            if (a > -1) {
+                ByteBuffer ea = indexes[0].getEvent(a);
+                ByteBuffer eb = indexes[1].getEvent(b);
+                if (ea == null || eb == null || ea.order() != eb.order()) {
+                    parseList.add(new int[] {a, b});
+                    return;
+                }
+
+                if (chunkLength == chunk.length) {
+                    chunk = Arrays.copyOf(chunk, 2*chunkLength);
+                }
+                chunk[chunkLength++] = a;
+                chunk[chunkLength++] = b;
+                chunkBytes += indexes[0].getLength(a);
+                if (chunkBytes < CHUNK_BYTES) return;
+            }
+
+            if (chunkLength > 0) {
+                submit(Arrays.copyOf(chunk, chunkLength));
+                chunkLength = 0;
+                chunkBytes  = 0L;
+            }
+        }
+
+
+        /**
+         * Compare a range of lined up events in one of the pool's threads.
+         * @param pairs pairs of indexes of events, first file's then second's.
+         */
+        private void submit(final int[] pairs) {
+            pool.execute(new Runnable() {
+                public void run() {
+                    for (int i=0; i < pairs.length && !cancelled; i += 2) {
+                        int word = firstDifferentWord(indexes[0].getEvent(pairs[i]),
+                                                      indexes[1].getEvent(pairs[i+1]));
+                        if (word > -1) {
+                            addDifference(new Difference(pairs[i], pairs[i+1], word, pairs[i]));
+                        }
+                        compared.incrementAndGet();
+                    }
+                }
+            });
+        }
+
+
+        /**
+         * Compare the events of the parse list structure by structure after
+         * parsing them. Each of the pool's threads takes the next pair in turn.
+         * The sessions' shared readers parse one event at a time, so each is
+         * locked while parsing, but the parsed events are compared at once.
+         */
+        private void submitParsed() {
+            if (parseList.isEmpty()) return;
+
+            final AtomicInteger next = new AtomicInteger();
+            int tasks = Math.min(THREADS, parseList.size());
+            for (int t=0; t < tasks; t++) {
+                pool.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            EvioReader[] shared = {sessions[0].getReader(), sessions[1].getReader()};
+                            int k;
+                            while (!cancelled && (k = next.getAndIncrement()) < parseList.size()) {
+                                int[] pair = parseList.get(k);
+                                EvioEvent[] events = new EvioEvent[2];
+                                for (int j=0; j < 2; j++) {
+                                    synchronized (shared[j]) {
+                                        events[j] = shared[j].parseEvent(pair[j] + 1);
+                                    }
+                                }
+                                byte[] a = EventCompareFrame.toBytes(events[0]);
+                                byte[] b = EventCompareFrame.toBytes(events[1]);
+                                if (!Arrays.equals(a, b)) {
+                                    addDifference(new Difference(pair[0], pair[1], -1, pair[0]));
+                                }
+                                compared.incrementAndGet();
+                            }
+                        }
+                        catch (IOException e) {
+                            error = e.getMessage();
+                        }
+                        catch (EvioException e) {
+                            error = e.getMessage();
+                        }
+                    }
+                });
+            }
+        }
+
+
+        /**
+         * Get the hashes of both files' events, computing them the first time asked
+         * unless read from the files' sidecars. Computed hashes are saved to the sidecars.
+         * @return {@code true} if both files' events are hashed.
+         */
+        private boolean haveHashes() {
+            if (hashesTried) return hashed;
+            hashesTried = true;
+
+            hashing = true;
+            boolean ok = true;
+            for (int i=0; i < 2 && ok && !cancelled; i++) {
+                boolean fromSidecar = indexes[i].hasHashes();
+                hashPool = Executors.newFixedThreadPool(THREADS);
+                ok = indexes[i].computeHashes(hashPool, new AtomicInteger());
+                if (ok && !fromSidecar && !cancelled) {
+                    indexes[i].save(sessions[i].getFile());
+                }
+            }
+            hashing = false;
+            hashed = ok && !cancelled;
+            return hashed;
+        }
+
+
+        /**
+         * Are the given events of each file in the mapped files with the same hash?
+         * @param a index of event in first file.
+         * @param b index of event in second file.
+         * @return {@code true} if both events have the same hash.
+         */
+        private boolean sameHash(int a, int b) {
+            return indexes[0].getPosition(a) > -1 && indexes[1].getPosition(b) > -1 &&
+                   indexes[0].getLength(a) == indexes[1].getLength(b) &&
+                   indexes[0].getHash(a) == indexes[1].getHash(b);
+        }
+
+
+        /**
+         * Find how many events one file has which the other does not, by looking
+         * ahead in each for an event with the same hash as the other's current one.
+         * @param a index of current event in first file.
+         * @param b index of current event in second file.
+         * @return {number of extra events in first file, in second file},
+         *         or null if back in step or no match was found.
+         */
+        private int[] resync(int a, int b) {
+            // Events in compressed records have no hash to look for
+            if (indexes[0].getPosition(a) < 0L || indexes[1].getPosition(b) < 0L) {
+                inOrder = true;
+                return null;
+            }
+            if (sameHash(a, b)) return null;
+
+            int countA = indexes[0].getEventCount(), countB = indexes[1].getEventCount();
+            for (int k=1; k <= RESYNC_EVENTS; k++) {
+                if (b + k < countB && sameHash(a, b + k)) return new int[] {0, k};
+                if (a + k < countA && sameHash(a + k, b)) return new int[] {k, 0};
+            }
+            return null;
+        }
+
+
+        /**
+         * Is the given pair of events lined up in order, not by event number,
+         * and can it be compared byte for byte?
+         * @param a        index of event in first file.
+         * @param b        index of event in second file.
+         * @param byNumber are events with event numbers lined up by them?
+         * @return {@code true} if pair is lined up in order and comparable in the mapped files.
+         */
+        private boolean isInOrder(int a, int b, boolean byNumber) {
+            if (byNumber && indexes[0].getEventNumber(a) > -1L &&
+                            indexes[1].getEventNumber(b) > -1L) return false;
+            return indexes[0].getPosition(a) > -1L && indexes[1].getPosition(b) > -1L &&
+                   indexes[0].getOrder() == indexes[1].getOrder();
+        }
+
+
+        /**
+         * Compare a range of events lined up in order in one of the pool's threads.
+         * @param a     index of range's first event in first file.
+         * @param b     index of range's first event in second file.
+         * @param from  place in run of range's first pair.
+         * @param pairs number of pairs in range.
+         * @return pairs of place in run and first differing word of each pair which differs.
+         */
+        private Future<int[]> compareRange(final int a, final int b, final int from, final int pairs) {
+            return pool.submit(new Callable<int[]>() {
+                public int[] call() {
+                    int[] diffs = new int[16];
+                    int n = 0;
+                    for (int k=0; k < pairs && !cancelled; k++) {
+                        int word = firstDifferentWord(indexes[0].getEvent(a + k),
+                                                      indexes[1].getEvent(b + k));
+                        if (word < 0) continue;
+                        if (n == diffs.length) {
+                            diffs = Arrays.copyOf(diffs, 2*n);
+                        }
+                        diffs[n++] = from + k;
+                        diffs[n++] = word;
+                    }
+                    return Arrays.copyOf(diffs, n);
+                }
+            });
+        }
+
+
+        /**
+         * Compare a run of events lined up in order, starting with the given pair.
+         * The run is split into ranges compared by the pool's threads at the same time.
+         * Where a pair differs, the next events of each file are searched for a way
+         * back in step. If one is found, the rest of the run was lined up wrongly
+         * and is dropped, to be lined up again from there.
+         * @param a        index of run's first event in first file.
+         * @param b        index of run's first event in second file.
+         * @param byNumber are events with event numbers lined up by them?
+         * @return indexes of the next events of each file to line up.
+         */
+        private int[] compareInOrder(int a, int b, boolean byNumber) {
+            int countA = indexes[0].getEventCount(), countB = indexes[1].getEventCount();
+
+            ArrayList<Future<int[]>> ranges = new ArrayList<Future<int[]>>();
+            int n = 0, rangeStart = 0;
+            long bytes = 0L;
+
+            // Pairs of run accounted for
+            int done = 0;
+            try {
+                // Find the run, one range of about CHUNK_BYTES for each thread at most
+                while (ranges.size() < THREADS && a + n < countA && b + n < countB &&
+                       isInOrder(a + n, b + n, byNumber)) {
+                    bytes += indexes[0].getLength(a + n);
+                    n++;
+                    if (bytes >= CHUNK_BYTES) {
+                        ranges.add(compareRange(a + rangeStart, b + rangeStart, rangeStart, n - rangeStart));
+                        rangeStart = n;
+                        bytes = 0L;
+                    }
+                }
+                if (n > rangeStart) {
+                    ranges.add(compareRange(a + rangeStart, b + rangeStart, rangeStart, n - rangeStart));
+                }
+
+                for (Future<int[]> range : ranges) {
+                    int[] diffs = range.get();
+                    for (int i=0; i < diffs.length; i += 2) {
+                        int k = diffs[i];
+                        compared.addAndGet(k - done);
+
+                        int[] extra = haveHashes() ? resync(a + k, b + k) : null;
+                        if (extra != null) {
+                            for (Future<int[]> r : ranges) {
+                                r.cancel(false);
+                            }
+                            for (int j=0; j < extra[0]; j++) addOnlyIn(0, a + k + j, a + k + j);
+                            for (int j=0; j < extra[1]; j++) addOnlyIn(1, b + k + j, a + k + extra[0]);
+                            return new int[] {a + k + extra[0], b + k + extra[1]};
+                        }
+
+                        addDifference(new Difference(a + k, b + k, diffs[i+1], a + k));
+                        compared.incrementAndGet();
+                        done = k + 1;
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                return new int[] {a + done, b + done};
+            }
+            catch (CancellationException e) {
+                // Comparison cancelled
+                return new int[] {a + done, b + done};
+            }
+            catch (RejectedExecutionException e) {
+                // Comparison cancelled
+                return new int[] {a + done, b + done};
+            }
+            catch (ExecutionException e) {
+                error = e.getMessage();
+                return new int[] {a + done, b + done};
+            }
+
+            compared.addAndGet(n - done);
+            return new int[] {a + n, b + n};
+        }
+
+
+        /**
+         * Line up the events of both files and hand them out for comparing.
+         * @return number of events lined up in first and second file.
+         */
+        private int[] lineUp() {
+            int countA = indexes[0].getEventCount(), countB = indexes[1].getEventCount();
+            boolean byNumber = indexes[0].hasIncreasingEventNumbers() &&
+                               indexes[1].hasIncreasingEventNumbers();
+            int a = 0, b = 0;
+            while (a < countA && b < countB && !cancelled) {
+                long numA = byNumber ? indexes[0].getEventNumber(a) : -1L;
+                long numB = byNumber ? indexes[1].getEventNumber(b) : -1L;
+
+                if (numA > -1L && numB > -1L) {
+                    if (numA < numB) {
+                        addOnlyIn(0, a, a);
+                        a++;
+                        continue;
+                    }
+                    if (numB < numA) {
+                        addOnlyIn(1, b, a);
+                        b++;
+                        continue;
+                    }
+                }
+                else if (isInOrder(a, b, byNumber)) {
+                    int[] next = compareInOrder(a, b, byNumber);
+                    a = next[0];
+                    b = next[1];
+                    continue;
+                }
+
+                addPair(a++, b++);
+            }
+
+            // Hand out what's left
+            addPair(-1, -1);
+            return new int[] {a, b};
+        }
+
+
+        /** Index both files, then compare all events. */
+        public void run() {
+            // Index the 2 files at the same time
+            Thread other = new Thread("File comparison index") {
+                public void run() {
+                    indexes[1] = sessions[1].getIndex();
+                }
+            };
+            other.start();
+            indexes[0] = sessions[0].getIndex();
+            try {
+                other.join();
+            }
+            catch (InterruptedException e) {}
+
+            for (int i=0; i < 2; i++) {
+                if (indexes[i].getError() != null) {
+                    error = sessions[i].getFile().getName() + ": " + indexes[i].getError();
+                }
+            }
+
+            total = Math.max(1, Math.max(indexes[0].getEventCount(), indexes[1].getEventCount()));
+
+            int[] lined = lineUp();
+            submitParsed();
+
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e) {}
+
+            // Events past the end of the other file
+            if (!cancelled) {
+                for (int i = lined[0]; i < indexes[0].getEventCount(); i++) {
+                    addOnlyIn(0, i, i);
+                }
+                for (int i = lined[1]; i < indexes[1].getEventCount(); i++) {
+                    addOnlyIn(1, i, lined[0]);
+                }
+            }
+
+            compareTime = System.currentTimeMillis() - startTime;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package org.jlab.coda.eventViewer;
+
+import org.jlab.coda.hipo.RecordHeader;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class is a feed of the blocks (evio 4) or records (evio 6) of a file,
+ * one at a time, as if arriving from ET. They're delivered at a given rate of
+ * events or as fast as asked for, optionally starting over at the end of the file.
+ * Subclasses may feed one file after another by overriding {@link #nextFile()}.
+ */
+class FileFeed extends PolledFeed {
+
+    /** File to feed, if only one. */
+    private final File file;
+
+    /** Events per second to deliver, 0 for as fast as asked for. */
+    private volatile int rate;
+
+    /** Start over at the end of the file? */
+    private volatile boolean loop;
+
+    /** Number of times the file was started. */
+    private int passes;
+
+    /** Number of buffers delivered from current or last file. */
+    private int buffersOfFile;
+
+
+    /** Hold on file being read. */
+    private FileSession session;
+
+    /** Memory mapped file being read. */
+    private SimpleMappedMemoryHandler handler;
+
+    /** Walker of current file's block or record headers. */
+    private HeaderWalker walker;
+
+    /** Dictionary of file, or null if none. */
+    private String dictionary;
+
+
+    /** Thread reading, woken when cancelled. */
+    private volatile Thread thread;
+
+    /** Number of events delivered since the rate was last set. */
+    private long paced;
+
+    /** Time in nanoseconds the rate was last set. */
+    private long paceStart;
+
+    /** Rate being paced. */
+    private int pacedRate = -1;
+
+
+
+    /**
+     * Constructor.
+     * @param file file to feed.
+     */
+    FileFeed(File file) {
+        super("Replay " + file.getName());
+        this.file = file;
+    }
+
+
+    /**
+     * Constructor for subclasses feeding files of their choosing.
+     * @param name name of feed.
+     */
+    protected FileFeed(String name) {
+        super(name);
+        file = null;
+    }
+
+
+    /**
+     * Set the number of events delivered each second.
+     * @param rate events per second, 0 for as fast as asked for.
+     */
+    void setRate(int rate) {this.rate = Math.max(0, rate);}
+
+    /**
+     * Set whether to start over at the end of the file.
+     * @param loop if {@code true}, start over at the end of the file.
+     */
+    void setLoop(boolean loop) {this.loop = loop;}
+
+
+    /**
+     * Get the next file to read once the last is finished. This implementation
+     * gives the one file, again if looping, as long as it had something to deliver.
+     * Called by the feed's thread.
+     * @return next file, or null if there are no more.
+     */
+    protected File nextFile() {
+        if (passes > 0 && (!loop || buffersOfFile < 1)) {
+            return null;
+        }
+        passes++;
+        return file;
+    }
+
+
+    /** {@inheritDoc} */
+    protected void open() {
+        thread = Thread.currentThread();
+        passes = 0;
+        pacedRate = -1;
+    }
+
+
+    /** {@inheritDoc} */
+    protected void close() {
+        closeFile();
+        thread = null;
+    }
+
+
+    /** {@inheritDoc} */
+    protected void wakeUp() {
+        Thread t = thread;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+
+    /** {@inheritDoc} */
+    protected String getDictionary() {return dictionary;}
+
+
+    /** {@inheritDoc} */
+    protected ByteBuffer poll() throws Exception {
+        while (!isCancelled()) {
+            if (session == null) {
+                File f = nextFile();
+                if (f == null) return null;
+                openFile(f);
+            }
+
+            ByteBuffer buf = nextBuffer();
+            if (buf != null) {
+                buffersOfFile++;
+                pace(buf.getInt(RecordHeader.EVENT_COUNT_OFFSET));
+                return buf;
+            }
+            closeFile();
+        }
+        return null;
+    }
+
+
+    /**
+     * Start reading a file.
+     * @param f file to read.
+     * @throws Exception if file cannot be read or is not evio.
+     */
+    private void openFile(File f) throws Exception {
+        FileSession s = FileSession.open(f);
+        try {
+            // An evio 6 file keeps its dictionary in the file header, not in records,
+            // and an evio 4 file only in its first block. Only the file's start is read.
+            dictionary = s.getDictionaryXML();
+        }
+        catch (Exception e) {
+            s.release();
+            throw e;
+        }
+
+        session  = s;
+        handler  = s.getMemoryHandler();
+        buffersOfFile = 0;
+        walker   = new HeaderWalker(handler);
+    }
+
+
+    /** Stop reading the current file, if any. */
+    private void closeFile() {
+        if (session != null) {
+            session.release();
+            session = null;
+            handler = null;
+            walker  = null;
+        }
+    }
+
+
+    /**
+     * Get the next block or record of the current file
+     * copied into a buffer, as ET would deliver it.
+     * @return next block or record, or null if there are no more.
+     */
+    private ByteBuffer nextBuffer() {
+        while (walker.next()) {
+            // An evio 6 trailer has no events
+            if (walker.getEventCount() == 0) continue;
+
+            int len = (int) walker.getLength();
+            ByteBuffer buf = ByteBuffer.allocate(len);
+            buf.put(handler.getByteBuffer(walker.getPosition(), len)).flip();
+            buf.order(walker.getOrder());
+            return markLast(buf);
+        }
+        return null;
+    }
+
+
+    /**
+     * Wait, if necessary, so events are delivered no faster than the chosen rate.
+     * @param events number of events about to be delivered.
+     */
+    private void pace(int events) {
+        int r = rate;
+        if (r != pacedRate) {
+            pacedRate = r;
+            paceStart = System.nanoTime();
+            paced = 0L;
+        }
+        if (r < 1) return;
+
+        paced += Math.max(0, events);
+        long due = paceStart + paced * 1000000000L / r;
+        long wait;
+        while (!isCancelled() && (wait = due - System.nanoTime()) > 0L) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+}
@@ -52,6 +52,9 @@ public class FileFrameBig extends JFrame implements PropertyChangeListener {
     /** Buffer of memory mapped file. */
     SimpleMappedMemoryHandler mappedMemoryHandler;
 
+    /** Viewed file, shared with other windows looking at it. */
+    private FileSession fileSession;
+
     /** Keep track of the block header currently being viewed so
      *  back and forward arrows know which events to look for.
      */
@@ -264,6 +267,17 @@ public class FileFrameBig extends JFrame implements PropertyChangeListener {
     }
 
 
+    /** Give back the viewed file when this window goes away. */
+    @Override
+    public void dispose() {
+        if (fileSession != null) {
+            fileSession.release();
+            fileSession = null;
+        }
+        super.dispose();
+    }
+
+
     /**
      * Get the object that handles the memory maps.
      * @return object that handles the memory maps.
@@ -864,7 +878,17 @@ public class FileFrameBig extends JFrame implements PropertyChangeListener {
         @Override
         public int[] doInBackground() {
             enableControlsDuringSearch();
-            return scrollToAndHighlight(down, value, findBlock, label, this);
+            TimerMetric metric = MetricsRegistry.timer(MetricsRegistry.SEARCH);
+            long t0 = metric.start();
+            long startWord = lastSearchedRow < 0 ? 0L :
+                             dataTableModel.getWordIndexOf(lastSearchedRow, lastSearchedCol);
+
+            int[] result = scrollToAndHighlight(down, value, findBlock, label, this);
+
+            long endWord = lastSearchedRow < 0 ? 0L :
+                           dataTableModel.getWordIndexOf(lastSearchedRow, lastSearchedCol);
+            metric.stop(t0, 4L*Math.abs(endWord - startWord));
+            return result;
         }
 
         public void setTaskProgress(int p) {
@@ -913,7 +937,12 @@ public class FileFrameBig extends JFrame implements PropertyChangeListener {
         @Override
         public Void doInBackground() {
             enableControlsDuringSearch();
+            TimerMetric metric = MetricsRegistry.timer(MetricsRegistry.ERROR_SCAN);
+            long t0 = metric.start();
             addEvioFaultPanel(this);
+            if (!stopSearch) {
+                metric.stop(t0, mappedMemoryHandler.getFileSize());
+            }
             return null;
         }
 
@@ -2269,7 +2298,9 @@ public class FileFrameBig extends JFrame implements PropertyChangeListener {
 
         // Create object to memory map the whole file (perhaps in chunks)
         try {
-            mappedMemoryHandler = new SimpleMappedMemoryHandler(file, order);
+            fileSession = FileSession.open(file);
+            // Own view of the shared mapping since byte order is switched per window
+            mappedMemoryHandler = fileSession.getMemoryHandler().duplicate();
         }
         catch (IOException e) {/* should not happen */ return;}
 
@@ -2287,7 +2318,15 @@ public class FileFrameBig extends JFrame implements PropertyChangeListener {
 
         // Set up the table widget for displaying data
         dataTableModel = new MyTableModel(mappedMemoryHandler, comments, evioVersion);
-        dataTable = new JTable(dataTableModel);
+        dataTable = new JTable(dataTableModel) {
+            // Time each repaint
+            protected void paintComponent(Graphics g) {
+                TimerMetric metric = MetricsRegistry.timer(MetricsRegistry.BYTE_VIEW_RENDER);
+                long t0 = metric.start();
+                super.paintComponent(g);
+                metric.stop(t0);
+            }
+        };
         dataTableRenderer = new MyRenderer(8);
         dataTableRenderer.setTableModel(dataTableModel);
         dataTableRenderer.setHorizontalAlignment(SwingConstants.CENTER);
@@ -2466,4 +2505,4 @@ public class FileFrameBig extends JFrame implements PropertyChangeListener {
 	}
 
 
-}
\ No newline at end of file
+}
\ No newline at end of file
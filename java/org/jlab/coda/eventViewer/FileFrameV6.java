@@ -54,6 +54,9 @@ public class FileFrameV6 extends JFrame implements PropertyChangeListener {
     /** Buffer of memory mapped file. */
     SimpleMappedMemoryHandler mappedMemoryHandler;
 
+    /** Viewed file, shared with other windows looking at it. */
+    private FileSession fileSession;
+
     /** Keep track of the block header currently being viewed so
      *  back and forward arrows know which events to look for.
      */
@@ -124,6 +127,8 @@ public class FileFrameV6 extends JFrame implements PropertyChangeListener {
     private JRadioButton evioEventButton;
     private JRadioButton evioFaultButton;
     private JRadioButton pageScrollButton;
+    private JRadioButton codaEventButton;
+    private JRadioButton timestampButton;
     private ButtonGroup  radioGroup;
 
     // Widgets & members for fault searching
@@ -292,6 +297,17 @@ public class FileFrameV6 extends JFrame implements PropertyChangeListener {
     }
 
 
+    /** Give back the viewed file when this window goes away. */
+    @Override
+    public void dispose() {
+        if (fileSession != null) {
+            fileSession.release();
+            fileSession = null;
+        }
+        super.dispose();
+    }
+
+
     /**
      * Get the object that handles the memory maps.
      * @return object that handles the memory maps.
@@ -907,7 +923,17 @@ public class FileFrameV6 extends JFrame implements PropertyChangeListener {
         @Override
         public int[] doInBackground() {
             enableControlsDuringSearch();
-            return scrollToAndHighlight(down, value, findBlock, label, this);
+            TimerMetric metric = MetricsRegistry.timer(MetricsRegistry.SEARCH);
+            long t0 = metric.start();
+            long startWord = lastSearchedRow < 0 ? 0L :
+                             dataTableModel.getWordIndexOf(lastSearchedRow, lastSearchedCol);
+
+            int[] result = scrollToAndHighlight(down, value, findBlock, label, this);
+
+            long endWord = lastSearchedRow < 0 ? 0L :
+                           dataTableModel.getWordIndexOf(lastSearchedRow, lastSearchedCol);
+            metric.stop(t0, 4L*Math.abs(endWord - startWord));
+            return result;
         }
 
         public void setTaskProgress(int p) {
@@ -956,7 +982,12 @@ public class FileFrameV6 extends JFrame implements PropertyChangeListener {
         @Override
         public Void doInBackground() {
             enableControlsDuringSearch();
+            TimerMetric metric = MetricsRegistry.timer(MetricsRegistry.ERROR_SCAN);
+            long t0 = metric.start();
             addEvioFaultPanel(this);
+            if (!stopSearch) {
+                metric.stop(t0, mappedMemoryHandler.getFileSize());
+            }
             return null;
         }
 
@@ -1262,6 +1293,80 @@ public class FileFrameV6 extends JFrame implements PropertyChangeListener {
     }
 
 
+    /**
+     * Go to the built physics event holding the CODA event number,
+     * or the last one not after the timestamp, in the search box.
+     * The event is found by binary search of the file's index of events,
+     * which is built in the background the first time.
+     * @param byTimestamp {@code true} if box holds a timestamp, else an event number.
+     */
+    private void handleCodaEventSearch(boolean byTimestamp) {
+        setMessage(" ", null,null);
+
+        if (isCompressed) {
+            JOptionPane.showMessageDialog(this, "Data is compressed, no event searching possible", "Return",
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+
+        long l;
+        String txt = (String) searchStringBox.getSelectedItem();
+        try {
+            if (txt.length() > 1 && txt.substring(0, 2).equalsIgnoreCase("0x")) {
+                l = Long.parseLong(txt.substring(2), 16);
+            }
+            else {
+                l = Long.parseLong(txt, 10);
+            }
+        }
+        catch (NumberFormatException e) {
+            setMessage("Search input not a number: " + txt, Color.red, null);
+            return;
+        }
+
+        // The first search indexes the file, so do that in the background
+        final FileSession session = fileSession;
+        final boolean timestamp = byTimestamp;
+        final long value = l;
+        final String wanted = (byTimestamp ? "timestamp " : "event number ") + txt;
+        setMessage("Indexing events ...", darkGreen, null);
+
+        new SwingWorker<EventIndex, Void>() {
+            @Override
+            public EventIndex doInBackground() {
+                return session.getIndex();
+            }
+
+            // Executed in event dispatching thread
+            @Override
+            public void done() {
+                // Another file may have been opened since
+                if (session != fileSession) return;
+
+                EventIndex index;
+                try {
+                    index = get();
+                }
+                catch (Exception e) {
+                    setMessage("Cannot index events: " + e.getMessage(), Color.red, null);
+                    return;
+                }
+
+                int i = timestamp ? index.findTimestamp(value) : index.findEventNumber(value);
+                if (i < 0 || index.getPosition(i) < 0) {
+                    setMessage("No built event has " + wanted, Color.red, null);
+                    return;
+                }
+
+                setMessage("Event " + (i + 1) + " has first event number " + index.getEventNumber(i) +
+                           ", timestamp " + index.getTimestamp(i), darkGreen, null);
+                scrollToIndex(index.getPosition(i) / 4, highlightEvntHdr, true);
+                setSliderPosition();
+            }
+        }.execute();
+    }
+
+
     /** Handler invoked when task's progress property changes. */
     public void propertyChange(PropertyChangeEvent evt) {
         if (searchDone) {
@@ -1304,6 +1409,8 @@ public class FileFrameV6 extends JFrame implements PropertyChangeListener {
         evioBlockButton.  setEnabled(false);
         evioEventButton.  setEnabled(false);
         evioFaultButton.  setEnabled(false);
+        codaEventButton.  setEnabled(false);
+        timestampButton.  setEnabled(false);
     }
 
     /** Enable control buttons in preparation for jumping to file positions. */
@@ -1355,6 +1462,8 @@ public class FileFrameV6 extends JFrame implements PropertyChangeListener {
         evioBlockButton.  setEnabled(true);
         evioEventButton.  setEnabled(true);
         evioFaultButton.  setEnabled(true);
+        codaEventButton.  setEnabled(true);
+        timestampButton.  setEnabled(true);
     }
 
 
@@ -2132,10 +2241,10 @@ public class FileFrameV6 extends JFrame implements PropertyChangeListener {
                           TitledBorder.TOP, null, Color.blue);
 
         JPanel radioButtonPanel = new JPanel();
-        radioButtonPanel.setLayout(new GridLayout(6, 1, 0, 2));
+        radioButtonPanel.setLayout(new GridLayout(8, 1, 0, 2));
         // The next 2 call determine width of containControlPanel
-        radioButtonPanel.setMinimumSize(new Dimension(controlPanelWidth, 170));
-        radioButtonPanel.setPreferredSize(new Dimension(controlPanelWidth, 170));
+        radioButtonPanel.setMinimumSize(new Dimension(controlPanelWidth, 225));
+        radioButtonPanel.setPreferredSize(new Dimension(controlPanelWidth, 225));
         radioButtonPanel.setBorder(compound);
 
         // Create the radio buttons
@@ -2164,6 +2273,14 @@ public class FileFrameV6 extends JFrame implements PropertyChangeListener {
         evioFaultButton.setMnemonic(KeyEvent.VK_F);
         evioFaultButton.setActionCommand("6");
 
+        codaEventButton = new JRadioButton("CODA Event #");
+        codaEventButton.setMnemonic(KeyEvent.VK_N);
+        codaEventButton.setActionCommand("7");
+
+        timestampButton = new JRadioButton("Timestamp");
+        timestampButton.setMnemonic(KeyEvent.VK_T);
+        timestampButton.setActionCommand("8");
+
         // Group the radio buttons
         radioGroup = new ButtonGroup();
         radioGroup.add(wordValueButton);
@@ -2172,6 +2289,8 @@ public class FileFrameV6 extends JFrame implements PropertyChangeListener {
         radioGroup.add(evioBlockButton);
         radioGroup.add(evioEventButton);
         radioGroup.add(evioFaultButton);
+        radioGroup.add(codaEventButton);
+        radioGroup.add(timestampButton);
 
         // Add radio buttons to panel
         radioButtonPanel.add(wordValueButton);
@@ -2180,6 +2299,8 @@ public class FileFrameV6 extends JFrame implements PropertyChangeListener {
         radioButtonPanel.add(evioBlockButton);
         radioButtonPanel.add(evioEventButton);
         radioButtonPanel.add(evioFaultButton);
+        radioButtonPanel.add(codaEventButton);
+        radioButtonPanel.add(timestampButton);
 
         controlPanel.add(Box.createVerticalStrut(5));
         controlPanel.add(radioButtonPanel);
@@ -2229,6 +2350,14 @@ public class FileFrameV6 extends JFrame implements PropertyChangeListener {
                         // Evio Fault
                         setControlsForErrorScan();
                         break;
+                    case 7:
+                    case 8:
+                        // CODA Event # or Timestamp
+                        enableControlsForPositionJump();
+                        searchStringBox.setEditable(true);
+                        removeEventInfoPanel();
+                        removeBlockInfoPanel();
+                        break;
                     default:
                 }
             }
@@ -2240,6 +2369,8 @@ public class FileFrameV6 extends JFrame implements PropertyChangeListener {
         evioEventButton.addActionListener(al_radio);
         evioFaultButton.addActionListener(al_radio);
         pageScrollButton.addActionListener(al_radio);
+        codaEventButton.addActionListener(al_radio);
+        timestampButton.addActionListener(al_radio);
 
         //----------------------------------
         // Input box
@@ -2369,6 +2500,11 @@ public class FileFrameV6 extends JFrame implements PropertyChangeListener {
                         // Evio Fault
                         scanBlockErrorEventsBack();
                         break;
+                    case 7:
+                    case 8:
+                        // CODA Event # or Timestamp
+                        handleCodaEventSearch(cmd == 8);
+                        break;
                     default:
                 }
             }
@@ -2427,6 +2563,11 @@ public class FileFrameV6 extends JFrame implements PropertyChangeListener {
                         // Evio Fault
                         scanBlockErrorEventsForward();
                         break;
+                    case 7:
+                    case 8:
+                        // CODA Event # or Timestamp
+                        handleCodaEventSearch(cmd == 8);
+                        break;
                     default:
                 }
             }
@@ -2544,7 +2685,9 @@ public class FileFrameV6 extends JFrame implements PropertyChangeListener {
 
         // Create object to memory map the whole file (perhaps in chunks)
         try {
-            mappedMemoryHandler = new SimpleMappedMemoryHandler(file, order);
+            fileSession = FileSession.open(file);
+            // Own view of the shared mapping since byte order is switched per window
+            mappedMemoryHandler = fileSession.getMemoryHandler().duplicate();
             isCompressed = mappedMemoryHandler.isCompressed();
         }
         catch (IOException e) {
@@ -2572,7 +2715,15 @@ public class FileFrameV6 extends JFrame implements PropertyChangeListener {
 
         // Set up the table widget for displaying data
         dataTableModel = new MyTableModel(mappedMemoryHandler, comments, evioVersion);
-        dataTable = new JTable(dataTableModel);
+        dataTable = new JTable(dataTableModel) {
+            // Time each repaint
+            protected void paintComponent(Graphics g) {
+                TimerMetric metric = MetricsRegistry.timer(MetricsRegistry.BYTE_VIEW_RENDER);
+                long t0 = metric.start();
+                super.paintComponent(g);
+                metric.stop(t0);
+            }
+        };
         dataTableRenderer = new MyRenderer(8);
         dataTableRenderer.setTableModel(dataTableModel);
         dataTableRenderer.setHorizontalAlignment(SwingConstants.CENTER);
@@ -2759,4 +2910,4 @@ public class FileFrameV6 extends JFrame implements PropertyChangeListener {
 	}
 
 
-}
\ No newline at end of file
+}
\ No newline at end of file
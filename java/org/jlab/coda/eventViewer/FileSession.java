@@ -0,0 +1,350 @@
+package org.jlab.coda.eventViewer;
+
+import org.jlab.coda.hipo.CompressionType;
+import org.jlab.coda.hipo.FileHeader;
+import org.jlab.coda.hipo.RecordHeader;
+import org.jlab.coda.hipo.RecordInputStream;
+import org.jlab.coda.jevio.BaseStructure;
+import org.jlab.coda.jevio.BlockHeaderV4;
+import org.jlab.coda.jevio.EvioException;
+import org.jlab.coda.jevio.EvioReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+
+/**
+ * This class is an open file shared by all the windows looking at it.
+ * It owns the one memory mapping of the file and the one EvioReader
+ * (with its index of events), so that viewing a file's tree and its bytes,
+ * or the same file in several windows, indexes it only once. The event count,
+ * header index and dictionary are read from that mapping. The reader uses it too
+ * for an evio 4 file that fits in one view. An evio 6 file, or a larger one, is
+ * opened by the reader itself and so is mapped a second time (see {@link #getReader()}).<p>
+ *
+ * Sessions are obtained with {@link #open(File)} and must be given back with
+ * {@link #release()}. The file is closed when the last user releases it.<p>
+ *
+ * Windows which switch the byte order of the data they show read through their own
+ * {@link SimpleMappedMemoryHandler#duplicate()} of the memory handler, so that
+ * the order of the shared one, and of every other view, stays as found in the file.
+ */
+public class FileSession {
+
+    /** Open sessions by canonical file path. */
+    private static final HashMap<String, FileSession> sessions = new HashMap<String, FileSession>();
+
+    /** Key into {@link #sessions}. */
+    private final String key;
+
+    /** File being looked at. */
+    private final File file;
+
+    /** Object which memory maps the file. */
+    private final SimpleMappedMemoryHandler memoryHandler;
+
+    // Each object created when first needed has its own lock, so that building
+    // the index of a big file does not hold up getting its count, for example.
+
+    /** Reader parsing events out of the mapped file. Created when first needed. */
+    private EvioReader reader;
+
+    /** Lock guarding {@link #reader}. */
+    private final Object readerLock = new Object();
+
+    /** Index of events found by walking the mapped file's headers. Created when first needed. */
+    private EventIndex index;
+
+    /** Lock guarding {@link #index}. */
+    private final Object indexLock = new Object();
+
+    /** Number of events found from the mapped file's headers, -1 until first needed. */
+    private int eventCount = -1;
+
+    /** Lock guarding {@link #eventCount}. */
+    private final Object countLock = new Object();
+
+    /** Dictionary found in the mapped file's headers, if any. */
+    private String dictionary;
+
+    /** Has the dictionary been looked for? */
+    private boolean dictionaryRead;
+
+    /** Lock guarding {@link #dictionary} and {@link #dictionaryRead}. */
+    private final Object dictionaryLock = new Object();
+
+    /** Set once the last user has released this session. */
+    private volatile boolean closed;
+
+    /** Number of users of this session. */
+    private int refCount;
+
+
+
+    /**
+     * Get the session of the given file, opening it if necessary.
+     * Each call must be balanced by a call to {@link #release()}.
+     *
+     * @param file file to open.
+     * @return session of given file.
+     * @throws IOException if file could not be mapped.
+     */
+    public static FileSession open(File file) throws IOException {
+        String key = file.getCanonicalPath();
+        synchronized (sessions) {
+            FileSession session = sessions.get(key);
+            MetricsRegistry.cache(MetricsRegistry.FILE_SESSION_CACHE).lookup(session != null);
+            if (session == null) {
+                session = new FileSession(key, file);
+                sessions.put(key, session);
+            }
+            session.refCount++;
+            return session;
+        }
+    }
+
+
+    /**
+     * Constructor.
+     * @param key  canonical path of file.
+     * @param file file to map.
+     * @throws IOException if file could not be mapped.
+     */
+    private FileSession(String key, File file) throws IOException {
+        this.key  = key;
+        this.file = file;
+        memoryHandler = new SimpleMappedMemoryHandler(file, ByteOrder.BIG_ENDIAN);
+    }
+
+
+    /**
+     * Give back this session. When nobody is using it anymore,
+     * the reader and the memory mapping are closed.
+     */
+    public void release() {
+        synchronized (sessions) {
+            if (refCount < 1 || --refCount > 0) return;
+            sessions.remove(key);
+        }
+
+        closed = true;
+        synchronized (readerLock) {
+            if (reader != null) {
+                try {reader.close();}
+                catch (IOException e) {}
+                reader = null;
+            }
+        }
+        // Wait for anything being read from the mapping before closing it
+        synchronized (indexLock) {
+            index = null;
+        }
+        synchronized (countLock) {
+            eventCount = -1;
+        }
+        synchronized (dictionaryLock) {
+            dictionary = null;
+            dictionaryRead = false;
+        }
+        memoryHandler.close();
+    }
+
+
+    /**
+     * Get the file being looked at.
+     * @return file being looked at.
+     */
+    public File getFile() {return file;}
+
+
+    /**
+     * Get the object which memory maps the file.
+     * @return object which memory maps the file.
+     */
+    public SimpleMappedMemoryHandler getMemoryHandler() {return memoryHandler;}
+
+
+    /**
+     * Get the reader used to parse events out of the file.
+     * For evio versions before 6, if the whole file can be viewed as a single
+     * ByteBuffer without copying, the reader uses the existing memory map instead
+     * of mapping the file again. Otherwise (files over 2GB or, when mapping in chunks,
+     * over the first map) the reader must open the file itself.
+     * The same is true of evio 6 files since jevio's reader of evio 6 buffers needs
+     * a heap buffer to read past the first record, and since the file header holding
+     * any dictionary is not part of the buffer format.
+     *
+     * @return reader used to parse events.
+     * @throws EvioException if file is not in evio format.
+     * @throws IOException if file could not be read.
+     */
+    public EvioReader getReader() throws EvioException, IOException {
+        synchronized (readerLock) {
+            if (closed) {
+                throw new IOException(file.getName() + " was closed");
+            }
+            if (reader == null) {
+                TimerMetric metric = MetricsRegistry.timer(MetricsRegistry.INDEX_BUILD);
+                long t0 = metric.start();
+                long fileSize = memoryHandler.getFileSize();
+                if (memoryHandler.getFileHeader() == null &&
+                    memoryHandler.canViewWithoutCopy(0L, fileSize)) {
+                    ByteBuffer buf = memoryHandler.getByteBuffer(0L, (int) fileSize);
+                    reader = new EvioReader(buf);
+                }
+                else {
+                    reader = new EvioReader(file);
+                }
+                metric.stop(t0, fileSize);
+            }
+            return reader;
+        }
+    }
+
+
+    /**
+     * Get the evio version of the file from its first header,
+     * without creating the reader.
+     * @return evio version of the file.
+     */
+    public int getEvioVersion() {
+        FileHeader fileHeader = memoryHandler.getFileHeader();
+        if (fileHeader != null) {
+            return fileHeader.getVersion();
+        }
+        return firstBlock(4*BlockHeaderV4.HEADER_SIZE).getInt(4*BlockHeaderV4.EV_VERSION) & 0xff;
+    }
+
+
+    /**
+     * Get the type of compression of the file's first record,
+     * without creating the reader. Files before evio 6 are never compressed.
+     * @return type of compression of the file's data.
+     */
+    public CompressionType getCompressionType() {
+        FileHeader fileHeader = memoryHandler.getFileHeader();
+        if (fileHeader == null) {
+            return CompressionType.RECORD_UNCOMPRESSED;
+        }
+        try {
+            RecordHeader header = new RecordHeader();
+            header.readHeader(memoryHandler.getByteBuffer(memoryHandler.getTotalFileHeaderBytes(),
+                                                          RecordHeader.HEADER_SIZE_BYTES), 0);
+            return header.getCompressionType();
+        }
+        catch (Exception e) {
+            return CompressionType.RECORD_UNCOMPRESSED;
+        }
+    }
+
+
+    /**
+     * Get the dictionary of the file without creating the reader. It's found in the
+     * user header of an evio 6 file header, or is the first event of an evio 4 file's
+     * first block, so only the start of the file is read.
+     * @return dictionary XML, or null if none.
+     * @throws EvioException if the dictionary cannot be read.
+     */
+    public String getDictionaryXML() throws EvioException {
+        synchronized (dictionaryLock) {
+            if (!dictionaryRead) {
+                dictionary = readDictionary();
+                dictionaryRead = true;
+            }
+            return dictionary;
+        }
+    }
+
+
+    /**
+     * Read the dictionary out of the start of the file.
+     * @return dictionary XML, or null if none.
+     * @throws EvioException if the dictionary cannot be read.
+     */
+    private String readDictionary() throws EvioException {
+        try {
+            FileHeader fileHeader = memoryHandler.getFileHeader();
+            if (fileHeader != null) {
+                if (!fileHeader.hasDictionary() || fileHeader.getUserHeaderLength() < 1) {
+                    return null;
+                }
+                // The user header is a record whose first event is the dictionary
+                ByteBuffer userHeader = memoryHandler.getByteBuffer(
+                        fileHeader.getHeaderLength() + fileHeader.getIndexLength(),
+                        fileHeader.getUserHeaderLength());
+                userHeader.order(memoryHandler.getOrder());
+                RecordInputStream record = new RecordInputStream(memoryHandler.getOrder());
+                record.readRecord(userHeader, 0);
+                return new String(record.getEvent(0), "US-ASCII");
+            }
+
+            ByteBuffer block = firstBlock(4*BlockHeaderV4.HEADER_SIZE);
+            int bitInfo = block.getInt(4*BlockHeaderV4.EV_VERSION);
+            if (!BlockHeaderV4.hasDictionary(bitInfo)) {
+                return null;
+            }
+
+            // The dictionary is a bank of strings right after the block header
+            int headerBytes = 4*block.getInt(4*BlockHeaderV4.EV_HEADERSIZE);
+            int bankBytes = 4*(firstBlock(headerBytes + 4).getInt(headerBytes) + 1);
+            ByteBuffer bank = firstBlock(headerBytes + bankBytes);
+            String[] strings = BaseStructure.unpackRawBytesToStrings(bank, headerBytes + 8, bankBytes - 8);
+            return (strings == null || strings.length < 1) ? null : strings[0];
+        }
+        catch (Exception e) {
+            throw new EvioException("cannot read dictionary of " + file.getName(), e);
+        }
+    }
+
+
+    /**
+     * Get the start of an evio 4 file, in its byte order.
+     * @param bytes number of bytes to get.
+     * @return buffer with start of file.
+     * @throws IllegalArgumentException if the file is shorter than that.
+     */
+    private ByteBuffer firstBlock(int bytes) {
+        ByteBuffer buf = memoryHandler.getByteBuffer(0L, bytes);
+        buf.order(ByteOrder.BIG_ENDIAN);
+        if (buf.getInt(4*BlockHeaderV4.EV_MAGIC) != BlockHeaderV4.MAGIC_NUMBER) {
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return buf;
+    }
+
+
+    /**
+     * Get the number of events in the file, not including any dictionary.
+     * Only the block or record headers are read, so this is much quicker
+     * than creating the reader, which finds every event.
+     *
+     * @return number of events in the file.
+     * @throws EvioException if file is not in evio format.
+     */
+    public int getEventCount() throws EvioException {
+        synchronized (countLock) {
+            if (eventCount < 0) {
+                eventCount = EventCounter.count(memoryHandler);
+            }
+            return eventCount;
+        }
+    }
+
+
+    /**
+     * Get the index of events found by walking the file's block or record headers.
+     * It is read from the file's sidecar if that is up to date.
+     * While it's being built, the session's other objects can still be had.
+     * @return index of events.
+     */
+    EventIndex getIndex() {
+        synchronized (indexLock) {
+            if (index == null) {
+                index = EventIndex.open(file, memoryHandler);
+            }
+            return index;
+        }
+    }
+}
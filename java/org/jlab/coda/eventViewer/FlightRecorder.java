@@ -0,0 +1,488 @@
+package org.jlab.coda.eventViewer;
+
+import org.jlab.coda.hipo.CompressionType;
+import org.jlab.coda.jevio.EventWriter;
+import org.jlab.coda.jevio.EvioCompactReader;
+import org.jlab.coda.jevio.EvioEvent;
+import org.jlab.coda.jevio.EvioException;
+import org.jlab.coda.jevio.EvioReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Date;
+
+/**
+ * This class captures what a live source (ET or cMsg) receives into a rolling set
+ * of evio version 6 files, so the events around a problem in a run are saved.
+ * Either every received buffer or only the events that make it past the filter
+ * are captured.<p>
+ *
+ * The thread receiving data only ever copies it into one of two direct buffers.
+ * A writer thread takes the other, full one and writes it to file, optionally
+ * LZ4 compressed. If the writer falls behind and both buffers are full, data is
+ * dropped and counted rather than making the receiving thread wait on the disk.
+ * A new file is started once the current one reaches a given size or age, and
+ * only the newest files are kept.<p>
+ *
+ * Each file holds the dictionary the source gave along with its events, so its
+ * events can be viewed with their names. When the dictionary changes, the new one
+ * is captured ahead of the data it goes with and a new file is started for it.
+ */
+final class FlightRecorder {
+
+    /** What is captured. */
+    enum Mode {
+        /** Every buffer received, whether or not its events get past the filter. */
+        BUFFERS("Every buffer"),
+        /** Only events that get past the filter. */
+        EVENTS("Filtered events");
+
+        private final String name;
+
+        Mode(String name) {this.name = name;}
+
+        public String toString() {return name;}
+    }
+
+    /** Size of each of the two buffers in bytes. */
+    private static final int BUFFER_BYTES = 8 * 1024 * 1024;
+
+    /** Most time data waits in a buffer before being written, in milliseconds. */
+    private static final long FLUSH_MILLIS = 1000L;
+
+    /** Kind of entry holding a buffer of evio format. */
+    private static final int KIND_BUFFER = 0;
+
+    /** Kind of entry holding a big endian event. */
+    private static final int KIND_BIG_EVENT = 1;
+
+    /** Kind of entry holding a little endian event. */
+    private static final int KIND_LITTLE_EVENT = 2;
+
+    /** Kind of entry holding the UTF-8 dictionary of the entries after it. */
+    private static final int KIND_DICTIONARY = 3;
+
+
+    /** What is captured. */
+    private final Mode mode;
+
+    /** Directory files are written into. */
+    private final File directory;
+
+    /** Start of each file's name. */
+    private final String prefix;
+
+    /** Compression of written files. */
+    private final CompressionType compression;
+
+    /** Start a new file after this many bytes of events. */
+    private final long maxFileBytes;
+
+    /** Start a new file after this many milliseconds. */
+    private final long maxFileMillis;
+
+    /** Most files kept, older ones are deleted. */
+    private final int maxFiles;
+
+    /** Guards the buffers. */
+    private final Object lock = new Object();
+
+    /** Buffer being filled. Each entry is its length, its kind, then its bytes. */
+    private ByteBuffer active = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+    /** Empty buffer waiting to be filled, null while the writer has it. */
+    private ByteBuffer spare = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+    /** Full buffer handed to the writer, null if none. */
+    private ByteBuffer full;
+
+    /** Set when closing. */
+    private boolean closing;
+
+    /** Thread writing files. */
+    private final Thread writerThread;
+
+    /** Number of buffers or events captured. */
+    private volatile long captured;
+
+    /** Number of buffers or events dropped since the writer fell behind. */
+    private volatile long dropped;
+
+    /** Number of events written to file. */
+    private volatile long eventsWritten;
+
+    /** Number of files written. */
+    private volatile int filesWritten;
+
+    /** Last error while writing, or null. */
+    private volatile String error;
+
+    /** Dictionary of the last entry captured, null if none. Guarded by the lock. */
+    private String lastDictionary;
+
+    // Used only by the writer thread
+
+    /** Writer of current file, null if none open. */
+    private EventWriter writer;
+
+    /** Current file. */
+    private File currentFile;
+
+    /** Bytes of events written into current file. */
+    private long fileBytes;
+
+    /** Dictionary of the events being written, null if none. */
+    private String dictionary;
+
+    /** Dictionary of current file, null if none. */
+    private String fileDictionary;
+
+    /** Time current file was started in milliseconds. */
+    private long fileStart;
+
+    /** Files written, oldest first. */
+    private final ArrayDeque<File> files = new ArrayDeque<File>();
+
+
+
+    /**
+     * Constructor which starts the writer thread.
+     * @param mode          what is captured.
+     * @param directory     directory files are written into.
+     * @param prefix        start of each file's name.
+     * @param lz4           if {@code true}, compress files with LZ4.
+     * @param maxFileBytes  start a new file after this many bytes of events.
+     * @param maxFileSeconds start a new file after this many seconds.
+     * @param maxFiles      most files kept, older ones are deleted.
+     */
+    FlightRecorder(Mode mode, File directory, String prefix, boolean lz4,
+                   long maxFileBytes, int maxFileSeconds, int maxFiles) {
+        this.mode = mode;
+        this.directory = directory;
+        this.prefix = prefix;
+        this.compression = lz4 ? CompressionType.RECORD_COMPRESSION_LZ4 :
+                                 CompressionType.RECORD_UNCOMPRESSED;
+        this.maxFileBytes  = Math.max(1L << 20, maxFileBytes);
+        this.maxFileMillis = 1000L * Math.max(1, maxFileSeconds);
+        this.maxFiles = Math.max(1, maxFiles);
+
+        writerThread = new Thread("Flight recorder") {
+            public void run() {
+                writeLoop();
+            }
+        };
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+
+    /**
+     * Get what is captured.
+     * @return what is captured.
+     */
+    Mode getMode() {return mode;}
+
+
+    /**
+     * Capture a received buffer of evio format. Only done in {@link Mode#BUFFERS} mode.
+     * The buffer's position and limit are not changed.
+     * @param buffer     buffer received.
+     * @param dictionary dictionary the source gave with the buffer, may be null.
+     *                   One in the buffer itself takes its place.
+     */
+    void record(ByteBuffer buffer, String dictionary) {
+        if (mode != Mode.BUFFERS) return;
+        ByteBuffer buf = buffer.duplicate();
+
+        synchronized (lock) {
+            if (!makeRoom(buf.remaining(), dictionary)) return;
+            active.order(ByteOrder.BIG_ENDIAN);
+            active.putInt(buf.remaining());
+            active.putInt(KIND_BUFFER);
+            active.put(buf);
+            captured++;
+        }
+    }
+
+
+    /**
+     * Capture an event which got past the filter. Only done in {@link Mode#EVENTS} mode.
+     * The bytes' position and limit are not changed.
+     * @param event event received.
+     * @param bytes bytes of event as received, or null if the event must be written out.
+     */
+    void record(EvioEvent event, ByteBuffer bytes) {
+        if (mode != Mode.EVENTS) return;
+        int length = event.getTotalBytes();
+
+        synchronized (lock) {
+            if (!makeRoom(length, event.getDictionaryXML())) return;
+            active.order(ByteOrder.BIG_ENDIAN);
+            active.putInt(length);
+            active.putInt(event.getByteOrder() == ByteOrder.BIG_ENDIAN ? KIND_BIG_EVENT : KIND_LITTLE_EVENT);
+            active.order(event.getByteOrder());
+            if (bytes != null) {
+                active.put(bytes.duplicate());
+            }
+            else {
+                EventStore.writeEvent(event, active);
+            }
+            captured++;
+        }
+    }
+
+
+    /**
+     * Make sure the active buffer has room for an entry, handing it to the writer if full.
+     * If the entry's dictionary is not that of the last one, it is put in first.
+     * Call while holding the lock.
+     * @param length     length of entry's bytes.
+     * @param dictionary dictionary of entry, may be null.
+     * @return {@code true} if there's room, {@code false} if the entry must be dropped.
+     */
+    private boolean makeRoom(int length, String dictionary) {
+        // Dictionaries are shared by the handler, so this is usually an identity check
+        byte[] xml = null;
+        if (dictionary != null && dictionary != lastDictionary && !dictionary.equals(lastDictionary)) {
+            xml = dictionary.getBytes(StandardCharsets.UTF_8);
+            length += xml.length + 8;
+        }
+
+        if (closing || length > BUFFER_BYTES - 8) {
+            dropped++;
+            return false;
+        }
+        if (active.remaining() < length + 8) {
+            if (spare == null) {
+                // Writer still has the other buffer, never wait for it
+                dropped++;
+                return false;
+            }
+            swap();
+        }
+
+        if (xml != null) {
+            active.order(ByteOrder.BIG_ENDIAN);
+            active.putInt(xml.length);
+            active.putInt(KIND_DICTIONARY);
+            active.put(xml);
+            lastDictionary = dictionary;
+        }
+        return true;
+    }
+
+
+    /** Hand the active buffer to the writer and start filling the spare. Call while holding the lock. */
+    private void swap() {
+        full = active;
+        active = spare;
+        spare = null;
+        lock.notifyAll();
+    }
+
+
+    /** Write whatever is captured, close the current file, and stop the writer thread. */
+    void close() {
+        synchronized (lock) {
+            closing = true;
+            lock.notifyAll();
+        }
+        try {
+            writerThread.join();
+        }
+        catch (InterruptedException e) {}
+    }
+
+
+    /**
+     * Get a description of what's been captured.
+     * @return description of what's been captured.
+     */
+    String getSummary() {
+        String s = String.format("%,d %s captured, %,d dropped, %,d events in %d files in %s",
+                                 captured, mode == Mode.BUFFERS ? "buffers" : "events", dropped,
+                                 eventsWritten, filesWritten, directory.getPath());
+        if (error != null) {
+            s += ", " + error;
+        }
+        return s;
+    }
+
+
+    /** Take full buffers from the receiving threads and write them until closed. */
+    private void writeLoop() {
+        while (true) {
+            ByteBuffer buf;
+            boolean last;
+
+            synchronized (lock) {
+                if (full == null && !closing) {
+                    try {
+                        lock.wait(FLUSH_MILLIS);
+                    }
+                    catch (InterruptedException e) {
+                        closing = true;
+                    }
+                }
+                // Don't let data sit around for long, take what's there
+                if (full == null && active.position() > 0 && spare != null) {
+                    swap();
+                }
+                buf = full;
+                last = closing;
+            }
+
+            if (buf != null) {
+                buf.flip();
+                writeEntries(buf);
+                buf.clear();
+                synchronized (lock) {
+                    full = null;
+                    spare = buf;
+                }
+                // Anything left over when closing is written next time around
+                continue;
+            }
+
+            if (last) {
+                closeFile();
+                return;
+            }
+
+            // Start a new file if the current one is too old, even if nothing arrives
+            if (writer != null && System.currentTimeMillis() - fileStart >= maxFileMillis) {
+                closeFile();
+            }
+        }
+    }
+
+
+    /**
+     * Write all the entries of a full buffer to file.
+     * @param buf buffer of entries, ready to read.
+     */
+    private void writeEntries(ByteBuffer buf) {
+        while (buf.remaining() >= 8) {
+            buf.order(ByteOrder.BIG_ENDIAN);
+            int length = buf.getInt();
+            int kind   = buf.getInt();
+            ByteBuffer entry = buf.slice();
+            entry.limit(length);
+            buf.position(buf.position() + length);
+
+            try {
+                if (kind == KIND_DICTIONARY) {
+                    byte[] xml = new byte[length];
+                    entry.get(xml);
+                    dictionary = new String(xml, StandardCharsets.UTF_8);
+                }
+                else if (kind == KIND_BUFFER) {
+                    // Copy, since the reader may change the buffer and it's reused
+                    ByteBuffer copy = ByteBuffer.allocate(length);
+                    copy.put(entry).flip();
+                    EvioCompactReader reader = new EvioCompactReader(copy);
+                    String own = reader.hasDictionary() ? reader.getDictionaryXML() : null;
+                    if (own != null) {
+                        dictionary = own;
+                    }
+                    int count = reader.getEventCount();
+                    for (int i=1; i <= count; i++) {
+                        writeEvent(reader.getEventBuffer(i, true));
+                    }
+                }
+                else {
+                    entry.order(kind == KIND_BIG_EVENT ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+                    writeEvent(entry);
+                }
+            }
+            catch (EvioException e) {
+                error = e.getMessage();
+            }
+            catch (IOException e) {
+                error = e.getMessage();
+                closeFile();
+            }
+        }
+    }
+
+
+    /**
+     * Write one event to the current file, starting a new file when needed.
+     * @param event buffer containing only the event.
+     * @throws EvioException if event is bad or file cannot be created.
+     * @throws IOException   if file cannot be written.
+     */
+    private void writeEvent(ByteBuffer event) throws EvioException, IOException {
+        if (writer != null && (fileBytes >= maxFileBytes ||
+                               System.currentTimeMillis() - fileStart >= maxFileMillis ||
+                               !sameDictionary(dictionary, fileDictionary))) {
+            closeFile();
+        }
+        if (writer == null) {
+            openFile(event.order());
+        }
+
+        fileBytes += event.remaining();
+        if (event.order() == writer.getByteOrder()) {
+            writer.writeEvent(event);
+        }
+        else {
+            // Events of another byte order are swapped by parsing and writing them again
+            byte[] bytes = new byte[event.remaining()];
+            event.duplicate().get(bytes);
+            ByteBuffer swapped = ByteBuffer.allocate(bytes.length).order(writer.getByteOrder());
+            EventStore.writeEvent(EvioReader.parseEvent(bytes, 0, event.order()), swapped);
+            swapped.flip();
+            writer.writeEvent(swapped);
+        }
+        eventsWritten++;
+    }
+
+
+    /**
+     * Are the given dictionaries the same?
+     * @param a dictionary, may be null.
+     * @param b dictionary, may be null.
+     * @return {@code true} if both are null or equal.
+     */
+    private static boolean sameDictionary(String a, String b) {
+        return a == b || (a != null && a.equals(b));
+    }
+
+
+    /**
+     * Start a new file with the current dictionary, deleting the oldest if too many are kept.
+     * @param order byte order of file.
+     * @throws EvioException if file cannot be created.
+     */
+    private void openFile(ByteOrder order) throws EvioException {
+        String time = new SimpleDateFormat("yyyyMMdd_HHmmss_SSS").format(new Date());
+        currentFile = new File(directory, prefix + "_" + time + "_" + filesWritten + ".evio");
+
+        writer = new EventWriter(currentFile.getPath(), null, null, 0, 0L, 0, 0,
+                                 order, dictionary, false, false, null, 0, 0, 1, 1,
+                                 compression, 1, 8, 0);
+        fileDictionary = dictionary;
+        fileBytes = 0L;
+        fileStart = System.currentTimeMillis();
+        filesWritten++;
+
+        files.addLast(currentFile);
+        while (files.size() > maxFiles) {
+            files.removeFirst().delete();
+        }
+    }
+
+
+    /** Close the current file, if any. */
+    private void closeFile() {
+        if (writer == null) return;
+        writer.close();
+        writer = null;
+    }
+}
@@ -0,0 +1,173 @@
+package org.jlab.coda.eventViewer;
+
+import org.jlab.coda.hipo.RecordHeader;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * This class walks the block (evio 4) or record (evio 6) headers of a memory mapped
+ * evio file one after another, starting after any evio 6 file header. Both kinds of
+ * header have their length, header length, event count, bit info and magic number
+ * in the same places, so they are read the same way. Each header is looked at in
+ * its own byte order, independent of the handler's.<p>
+ *
+ * The walk ends after the last header, after one marked as last, or at the first
+ * header which is not understood, in which case {@link #getError()} says why.
+ */
+final class HeaderWalker {
+
+    /** Smallest length of a block or record header in bytes. */
+    static final int MIN_HEADER_BYTES = 32;
+
+    /** Bit of bit info set in last block or record. */
+    private static final int LAST_BIT = 0x200;
+
+    /** Object which memory maps the file. */
+    private final SimpleMappedMemoryHandler handler;
+
+    /** Size of file in bytes. */
+    private final long fileSize;
+
+    /** File position of current header. */
+    private long position;
+
+    /** File position of next header. */
+    private long nextPosition;
+
+    /** Length of current block or record in bytes. */
+    private long length;
+
+    /** Current header, in its byte order. */
+    private ByteBuffer header;
+
+    /** Bit info word of current header. */
+    private int bitInfo;
+
+    /** Set once a header marked as last has been walked. */
+    private boolean lastSeen;
+
+    /** Description of bad header, else null. */
+    private String error;
+
+
+
+    /**
+     * Constructor.
+     * @param handler object which memory maps the file.
+     */
+    HeaderWalker(SimpleMappedMemoryHandler handler) {
+        this.handler = handler;
+        fileSize = handler.getFileSize();
+
+        // Skip any evio 6 file header
+        if (handler.getFileHeader() != null) {
+            nextPosition = handler.getTotalFileHeaderBytes();
+        }
+    }
+
+
+    /**
+     * Go to the next header.
+     * @return {@code true} if there is one, {@code false} at the end or if it's bad.
+     */
+    boolean next() {
+        header = null;
+        if (error != null || lastSeen) return false;
+
+        position = nextPosition;
+        if (position + MIN_HEADER_BYTES > fileSize) return false;
+
+        ByteBuffer start = handler.getByteBuffer(position, MIN_HEADER_BYTES);
+        start.order(ByteOrder.BIG_ENDIAN);
+        if (start.getInt(RecordHeader.MAGIC_OFFSET) != RecordHeader.HEADER_MAGIC) {
+            start.order(ByteOrder.LITTLE_ENDIAN);
+            if (start.getInt(RecordHeader.MAGIC_OFFSET) != RecordHeader.HEADER_MAGIC) {
+                error = String.format("bad header at byte %,d", position);
+                return false;
+            }
+        }
+
+        length     = 4L * (start.getInt(RecordHeader.RECORD_LENGTH_OFFSET) & 0xffffffffL);
+        int hdrLen = 4 * start.getInt(RecordHeader.HEADER_LENGTH_OFFSET);
+        if (hdrLen < MIN_HEADER_BYTES || length < hdrLen || position + length > fileSize) {
+            error = String.format("bad length at byte %,d", position);
+            return false;
+        }
+
+        header = hdrLen == MIN_HEADER_BYTES ? start : handler.getByteBuffer(position, hdrLen);
+        header.order(start.order());
+        bitInfo = header.getInt(RecordHeader.BIT_INFO_OFFSET);
+        nextPosition = position + length;
+
+        // Evio 4 has no trailer, so the last block must say so
+        lastSeen = (bitInfo & LAST_BIT) != 0;
+        return true;
+    }
+
+
+    /**
+     * Get the file position of the current header.
+     * @return file position of the current header.
+     */
+    long getPosition() {return position;}
+
+
+    /**
+     * Get the file position just past the current block or record, where the next
+     * header is expected. Before the first call to {@link #next()}, this is where
+     * the first header is expected.
+     * @return file position of next header.
+     */
+    long getNextPosition() {return nextPosition;}
+
+
+    /**
+     * Get the length of the current block or record, header included.
+     * @return length in bytes.
+     */
+    long getLength() {return length;}
+
+
+    /**
+     * Get the current header, all of it, in its own byte order.
+     * @return current header, or null if none.
+     */
+    ByteBuffer getHeader() {return header;}
+
+
+    /**
+     * Get the length of the current header.
+     * @return length of current header in bytes.
+     */
+    int getHeaderLength() {return header.limit();}
+
+
+    /**
+     * Get the byte order of the current block or record.
+     * @return byte order of the current block or record.
+     */
+    ByteOrder getOrder() {return header.order();}
+
+
+    /**
+     * Get the bit info word of the current header, holding the evio version in its low byte.
+     * @return bit info word.
+     */
+    int getBitInfo() {return bitInfo;}
+
+
+    /**
+     * Get the number of events in the current block or record, as written in its header.
+     * For evio 4 this does not include any dictionary.
+     * @return number of events.
+     */
+    int getEventCount() {return header.getInt(RecordHeader.EVENT_COUNT_OFFSET);}
+
+
+    /**
+     * Get why the walk stopped early.
+     * @return description of the bad header, or null if none was found.
+     */
+    String getError() {return error;}
+}
@@ -0,0 +1,279 @@
+package org.jlab.coda.eventViewer;
+
+import org.jlab.coda.jevio.BaseStructure;
+
+import javax.swing.*;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreePath;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class is a tree model of an evio event which is backed directly by the
+ * children lists of its structures. Unlike evio's DefaultTreeModel, nothing is
+ * done for a structure until the tree asks for it, which only happens when its
+ * parent is expanded. The text of each node, which includes the dictionary
+ * description, is made in a background thread as nodes become visible and is
+ * cached. Until it is ready a short label without the description is shown.
+ * Except for dispose, all methods must be called in the Swing event thread.
+ */
+class LazyEventTreeModel implements TreeModel {
+
+    /** Thread which makes labels for all models. */
+    private static final ExecutorService labeler = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Event tree labels");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /** Most labels made in one trip to the background thread. */
+    private static final int LABELS_PER_BATCH = 256;
+
+    /** Top level structure of the event. */
+    private final BaseStructure root;
+
+    /** Objects listening for changes to this model. */
+    private final ArrayList<TreeModelListener> listeners = new ArrayList<TreeModelListener>();
+
+    /** Finished labels. */
+    private final Map<BaseStructure, String> labels = new IdentityHashMap<BaseStructure, String>();
+
+    /** Structures whose labels have been asked for but not yet finished. */
+    private final Set<BaseStructure> requested =
+            Collections.newSetFromMap(new IdentityHashMap<BaseStructure, Boolean>());
+
+    /** Structures whose labels have been asked for but not yet handed to the background thread. */
+    private final ArrayList<BaseStructure> pending = new ArrayList<BaseStructure>();
+
+    /** Is the background thread making labels for this model right now? */
+    private boolean working;
+
+    /** Once set, this model is no longer shown and labels are no longer made. */
+    private volatile boolean disposed;
+
+
+
+    /**
+     * Constructor.
+     * @param root top level structure of the event.
+     */
+    LazyEventTreeModel(BaseStructure root) {
+        this.root = root;
+    }
+
+
+    /** Stop making labels since this model is no longer shown. */
+    void dispose() {
+        disposed = true;
+    }
+
+
+    /**
+     * Get the text to display for the given structure. If it is not ready,
+     * a short label is returned and the full one is made in the background.
+     * @param structure structure to display.
+     * @return text to display for the given structure.
+     */
+    String getLabel(BaseStructure structure) {
+        String label = labels.get(structure);
+        if (label != null) {
+            return label;
+        }
+
+        if (requested.add(structure)) {
+            pending.add(structure);
+            if (!working) {
+                makeLabels();
+            }
+        }
+
+        return structure.getStructureType() + " of " +
+               structure.getHeader().getDataType() + "s:  tag=" +
+               structure.getHeader().getTag() + "  num=" +
+               structure.getHeader().getNumber();
+    }
+
+
+    /** Hand the next batch of structures to the background thread to be labeled. */
+    private void makeLabels() {
+        if (disposed || pending.isEmpty()) {
+            working = false;
+            return;
+        }
+
+        int count = Math.min(pending.size(), LABELS_PER_BATCH);
+        final BaseStructure[] batch = new BaseStructure[count];
+        for (int i=0; i < count; i++) {
+            batch[i] = pending.get(i);
+        }
+        pending.subList(0, count).clear();
+        working = true;
+
+        labeler.execute(new Runnable() {
+            public void run() {
+                if (disposed) return;
+
+                // This is where dictionary lookups are done
+                final String[] text = new String[batch.length];
+                for (int i=0; i < batch.length; i++) {
+                    text[i] = batch[i].toString();
+                }
+
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        if (disposed) return;
+                        for (int i=0; i < batch.length; i++) {
+                            labels.put(batch[i], text[i]);
+                            requested.remove(batch[i]);
+                        }
+                        fireNodesChanged(batch);
+                        makeLabels();
+                    }
+                });
+            }
+        });
+    }
+
+
+    /**
+     * Tell the listeners that the given structures are displayed differently.
+     * @param nodes structures displayed differently.
+     */
+    private void fireNodesChanged(BaseStructure[] nodes) {
+        if (listeners.isEmpty()) return;
+
+        // Group structures by parent so each parent's kids are looked through once
+        Map<BaseStructure, Set<BaseStructure>> families = new IdentityHashMap<BaseStructure, Set<BaseStructure>>();
+        for (BaseStructure node : nodes) {
+            BaseStructure parent = node.getParent();
+            if (node == root || parent == null) {
+                fireNodesChanged(new TreeModelEvent(this, new Object[] {root}));
+                continue;
+            }
+            Set<BaseStructure> kids = families.get(parent);
+            if (kids == null) {
+                kids = Collections.newSetFromMap(new IdentityHashMap<BaseStructure, Boolean>());
+                families.put(parent, kids);
+            }
+            kids.add(node);
+        }
+
+        for (Map.Entry<BaseStructure, Set<BaseStructure>> entry : families.entrySet()) {
+            BaseStructure parent = entry.getKey();
+            Set<BaseStructure> kids = entry.getValue();
+
+            int[] indices = new int[kids.size()];
+            Object[] children = new Object[kids.size()];
+            int count = 0, index = 0;
+            for (BaseStructure kid : parent.getChildrenList()) {
+                if (kids.contains(kid)) {
+                    indices[count] = index;
+                    children[count++] = kid;
+                    if (count == indices.length) break;
+                }
+                index++;
+            }
+            if (count < indices.length) continue;
+
+            fireNodesChanged(new TreeModelEvent(this, getPath(parent), indices, children));
+        }
+    }
+
+
+    /**
+     * Give the listeners the given event.
+     * @param event event describing changed nodes.
+     */
+    private void fireNodesChanged(TreeModelEvent event) {
+        for (TreeModelListener listener : new ArrayList<TreeModelListener>(listeners)) {
+            listener.treeNodesChanged(event);
+        }
+    }
+
+
+    /**
+     * Get the path from the root to the given structure.
+     * @param structure structure at end of path.
+     * @return path from the root to the given structure.
+     */
+    private Object[] getPath(BaseStructure structure) {
+        LinkedList<Object> path = new LinkedList<Object>();
+        while (structure != null) {
+            path.addFirst(structure);
+            if (structure == root) break;
+            structure = structure.getParent();
+        }
+        return path.toArray();
+    }
+
+
+    //-------------------------------------------
+    // TreeModel methods
+    //-------------------------------------------
+
+    /** {@inheritDoc} */
+    public Object getRoot() {
+        return root;
+    }
+
+    /** {@inheritDoc} */
+    public Object getChild(Object parent, int index) {
+        List<BaseStructure> kids = ((BaseStructure) parent).getChildrenList();
+        if (kids == null || index < 0 || index >= kids.size()) {
+            return null;
+        }
+        return kids.get(index);
+    }
+
+    /** {@inheritDoc} */
+    public int getChildCount(Object parent) {
+        List<BaseStructure> kids = ((BaseStructure) parent).getChildrenList();
+        return kids == null ? 0 : kids.size();
+    }
+
+    /** {@inheritDoc} */
+    public boolean isLeaf(Object node) {
+        return ((BaseStructure) node).isLeaf();
+    }
+
+    /** {@inheritDoc} */
+    public void valueForPathChanged(TreePath path, Object newValue) {
+        // tree is not editable
+    }
+
+    /** {@inheritDoc} */
+    public int getIndexOfChild(Object parent, Object child) {
+        if (parent == null || child == null) {
+            return -1;
+        }
+        List<BaseStructure> kids = ((BaseStructure) parent).getChildrenList();
+        if (kids == null) {
+            return -1;
+        }
+        // Structures are compared by identity
+        int index = 0;
+        for (BaseStructure kid : kids) {
+            if (kid == child) {
+                return index;
+            }
+            index++;
+        }
+        return -1;
+    }
+
+    /** {@inheritDoc} */
+    public void addTreeModelListener(TreeModelListener l) {
+        listeners.add(l);
+    }
+
+    /** {@inheritDoc} */
+    public void removeTreeModelListener(TreeModelListener l) {
+        listeners.remove(l);
+    }
+}
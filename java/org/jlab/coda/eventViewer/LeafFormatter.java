@@ -0,0 +1,336 @@
+package org.jlab.coda.eventViewer;
+
+import org.jlab.coda.jevio.BaseStructure;
+import org.jlab.coda.jevio.DataType;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class holds the numerical data of an evio leaf structure for display
+ * in EventTreePanel's data table. The data is decoded once, straight from the
+ * structure's raw bytes, into a primitive array. Leaves which are very large
+ * are decoded in pieces by several threads. Individual values are only turned
+ * into text when the table displays them, so switching between hexadecimal and
+ * decimal does not require decoding again.
+ */
+final class LeafFormatter {
+
+    /** Leaves with at least this many bytes are decoded in parallel. */
+    private static final int PARALLEL_BYTES = 4000000;
+
+    /** Number of threads decoding in parallel. */
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    /** Threads used to decode large leaves. */
+    private static final ExecutorService pool = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Leaf decoder");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /** Type of data. */
+    private final DataType type;
+
+    /** Number of data items. */
+    private int count;
+
+    /** Data if 64 bit integers. */
+    private long[] longData;
+
+    /** Data if 64 bit floating point. */
+    private double[] doubleData;
+
+    /** Data if 32 bit integers. */
+    private int[] intData;
+
+    /** Data if 32 bit floating point. */
+    private float[] floatData;
+
+    /** Data if 16 bit integers. */
+    private short[] shortData;
+
+    /** Data if 8 bit integers. */
+    private byte[] byteData;
+
+    /** Display integers in hexadecimal? */
+    private volatile boolean hex;
+
+
+
+    /**
+     * Constructor.
+     * @param type  type of data.
+     * @param count number of data items.
+     */
+    private LeafFormatter(DataType type, int count) {
+        this.type = type;
+        this.count = count;
+    }
+
+
+    /**
+     * Is the given type of data one that this class handles?
+     * @param type type of data.
+     * @return {@code true} if numerical data handled here.
+     */
+    static boolean handles(DataType type) {
+        if (type == null) return false;
+        switch (type) {
+            case DOUBLE64:
+            case FLOAT32:
+            case LONG64:
+            case ULONG64:
+            case INT32:
+            case UINT32:
+            case SHORT16:
+            case USHORT16:
+            case CHAR8:
+            case UCHAR8:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+
+    /**
+     * Decode the data of the given leaf structure.
+     * @param structure leaf structure.
+     * @return object holding decoded data, or null if its type of data is not handled.
+     */
+    static LeafFormatter decode(BaseStructure structure) {
+        DataType type = structure.getHeader().getDataType();
+        if (!handles(type)) {
+            return null;
+        }
+
+        int itemSize;
+        switch (type) {
+            case DOUBLE64:
+            case LONG64:
+            case ULONG64:
+                itemSize = 8; break;
+            case SHORT16:
+            case USHORT16:
+                itemSize = 2; break;
+            case CHAR8:
+            case UCHAR8:
+                itemSize = 1; break;
+            default:
+                itemSize = 4;
+        }
+
+        byte[] raw = structure.getRawBytes();
+        if (raw == null) {
+            // Built rather than parsed, so data is already in arrays
+            return fromArrays(structure, type);
+        }
+
+        // Only 8 and 16 bit data are padded
+        int bytes = raw.length;
+        if (itemSize < 4) {
+            bytes -= structure.getHeader().getPadding();
+        }
+
+        final LeafFormatter leaf = new LeafFormatter(type, Math.max(bytes, 0) / itemSize);
+        leaf.allocate();
+
+        final ByteBuffer buf = ByteBuffer.wrap(raw).order(structure.getByteOrder() == null ?
+                                                          ByteOrder.BIG_ENDIAN :
+                                                          structure.getByteOrder());
+
+        if (bytes < PARALLEL_BYTES || THREADS < 2) {
+            leaf.decode(buf, 0, leaf.count, itemSize);
+            return leaf;
+        }
+
+        // Split into one piece for each thread
+        final int size = itemSize;
+        int piece = (leaf.count + THREADS - 1) / THREADS;
+        ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int start = 0; start < leaf.count; start += piece) {
+            final int first = start;
+            final int n = Math.min(piece, leaf.count - start);
+            futures.add(pool.submit(new Runnable() {
+                public void run() {
+                    leaf.decode(buf.duplicate().order(buf.order()), first, n, size);
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        return leaf;
+    }
+
+
+    /**
+     * Create an object which displays the given bytes as 32 bit words in hexadecimal,
+     * the way a file's bytes are displayed. Any bytes past the last whole word are ignored.
+     * @param bytes bytes to display.
+     * @param order byte order of bytes.
+     * @return object holding words.
+     */
+    static LeafFormatter words(byte[] bytes, ByteOrder order) {
+        LeafFormatter leaf = new LeafFormatter(DataType.UINT32, bytes.length / 4);
+        leaf.allocate();
+        leaf.decode(ByteBuffer.wrap(bytes).order(order), 0, leaf.count, 4);
+        leaf.hex = true;
+        return leaf;
+    }
+
+
+    /**
+     * Create an object from the data arrays of a structure which has no raw bytes.
+     * @param structure leaf structure.
+     * @param type      type of data.
+     * @return object holding data.
+     */
+    private static LeafFormatter fromArrays(BaseStructure structure, DataType type) {
+        LeafFormatter leaf = new LeafFormatter(type, 0);
+        switch (type) {
+            case DOUBLE64:
+                leaf.doubleData = structure.getDoubleData();
+                if (leaf.doubleData != null) leaf.count = leaf.doubleData.length;
+                break;
+            case FLOAT32:
+                leaf.floatData = structure.getFloatData();
+                if (leaf.floatData != null) leaf.count = leaf.floatData.length;
+                break;
+            case LONG64:
+            case ULONG64:
+                leaf.longData = structure.getLongData();
+                if (leaf.longData != null) leaf.count = leaf.longData.length;
+                break;
+            case INT32:
+            case UINT32:
+                leaf.intData = structure.getIntData();
+                if (leaf.intData != null) leaf.count = leaf.intData.length;
+                break;
+            case SHORT16:
+            case USHORT16:
+                leaf.shortData = structure.getShortData();
+                if (leaf.shortData != null) leaf.count = leaf.shortData.length;
+                break;
+            default:
+                leaf.byteData = structure.getByteData();
+                if (leaf.byteData != null) leaf.count = leaf.byteData.length;
+        }
+        return leaf;
+    }
+
+
+    /** Allocate the array to hold the data. */
+    private void allocate() {
+        switch (type) {
+            case DOUBLE64:
+                doubleData = new double[count]; break;
+            case FLOAT32:
+                floatData = new float[count]; break;
+            case LONG64:
+            case ULONG64:
+                longData = new long[count]; break;
+            case INT32:
+            case UINT32:
+                intData = new int[count]; break;
+            case SHORT16:
+            case USHORT16:
+                shortData = new short[count]; break;
+            default:
+                byteData = new byte[count];
+        }
+    }
+
+
+    /**
+     * Decode part of the data.
+     * @param buf      buffer of raw bytes, this method changes its position.
+     * @param first    index of first item to decode.
+     * @param n        number of items to decode.
+     * @param itemSize size of each item in bytes.
+     */
+    private void decode(ByteBuffer buf, int first, int n, int itemSize) {
+        buf.position(first * itemSize);
+        switch (type) {
+            case DOUBLE64:
+                buf.asDoubleBuffer().get(doubleData, first, n); break;
+            case FLOAT32:
+                buf.asFloatBuffer().get(floatData, first, n); break;
+            case LONG64:
+            case ULONG64:
+                buf.asLongBuffer().get(longData, first, n); break;
+            case INT32:
+            case UINT32:
+                buf.asIntBuffer().get(intData, first, n); break;
+            case SHORT16:
+            case USHORT16:
+                buf.asShortBuffer().get(shortData, first, n); break;
+            default:
+                buf.get(byteData, first, n);
+        }
+    }
+
+
+    /**
+     * Get the number of data items.
+     * @return number of data items.
+     */
+    int size() {return count;}
+
+
+    /**
+     * Set whether integers are displayed in hexadecimal or decimal.
+     * @param hex if {@code true} display in hexadecimal, else decimal.
+     */
+    void setHex(boolean hex) {this.hex = hex;}
+
+
+    /**
+     * Get the text of the given data item.
+     * @param index index of data item.
+     * @return text of the data item, or empty string if index out of range.
+     */
+    String format(int index) {
+        if (index < 0 || index >= count) {
+            return "";
+        }
+
+        switch (type) {
+            case DOUBLE64:
+                return String.format("%15.11e", doubleData[index]);
+            case FLOAT32:
+                return String.format("%10.6e", floatData[index]);
+            case LONG64:
+            case ULONG64:
+                return hex ? String.format("%#018x", longData[index]) :
+                             String.format("%4d", longData[index]);
+            case INT32:
+            case UINT32:
+                return hex ? String.format("%#010x", intData[index]) :
+                             String.format("%4d", intData[index]);
+            case SHORT16:
+            case USHORT16:
+                return hex ? String.format("%#06x", shortData[index]) :
+                             String.format("%4d", shortData[index]);
+            default:
+                return hex ? String.format("%#04x", byteData[index]) :
+                             String.format("%4d", byteData[index]);
+        }
+    }
+}
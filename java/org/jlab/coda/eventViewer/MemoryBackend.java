@@ -0,0 +1,110 @@
+package org.jlab.coda.eventViewer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * This interface describes how SimpleMappedMemoryHandler gets at the bytes of
+ * a memory mapped file. All positions are absolute byte positions in the file,
+ * so implementations are free to map the file however they see fit
+ * (as a list of ByteBuffers, or as one long-addressed memory segment).
+ * Implementations need not check arguments - the handler does that.
+ */
+interface MemoryBackend {
+
+    /**
+     * Get a short name describing this backend.
+     * @return short name describing this backend.
+     */
+    String getName();
+
+    /**
+     * Set the byte order used to read multi-byte values.
+     * @param order byte order.
+     */
+    void setByteOrder(ByteOrder order);
+
+    /**
+     * Get a backend reading the same mapped memory, but whose
+     * byte order is set independently of this one's.
+     * @return backend reading the same mapped memory.
+     */
+    MemoryBackend duplicate();
+
+    /**
+     * Get the int at the given byte position. All 4 bytes must be in the file.
+     * @param bytePosition byte position in file.
+     * @return int value.
+     */
+    int getInt(long bytePosition);
+
+    /**
+     * Get the short at the given byte position. Both bytes must be in the file.
+     * @param bytePosition byte position in file.
+     * @return short value.
+     */
+    short getShort(long bytePosition);
+
+    /**
+     * Get the byte at the given byte position.
+     * @param bytePosition byte position in file.
+     * @return byte value.
+     */
+    byte get(long bytePosition);
+
+    /**
+     * Read consecutive ints which must all be in the file.
+     * @param bytePosition byte position in file of first int.
+     * @param dst          array to hold the ints.
+     * @param offset       index into dst to place first int.
+     * @param count        number of ints to read.
+     */
+    void getInts(long bytePosition, int[] dst, int offset, int count);
+
+    /**
+     * Read consecutive bytes which must all be in the file.
+     * @param bytePosition byte position in file of first byte.
+     * @param dst          array to hold the bytes.
+     * @param offset       index into dst to place first byte.
+     * @param length       number of bytes to read.
+     */
+    void getBytes(long bytePosition, byte[] dst, int offset, int length);
+
+    /**
+     * Get a view of a region of the file, which must all be in the file,
+     * with position = 0, limit = length and the current byte order.
+     * Data is only copied if it cannot be helped.
+     * @param bytePosition byte position in file of region.
+     * @param length       number of bytes in region.
+     * @return buffer containing region.
+     */
+    ByteBuffer getByteBuffer(long bytePosition, int length);
+
+    /**
+     * Can the given region of the file, which must all be in the file,
+     * be viewed by {@link #getByteBuffer(long, int)} without copying?
+     * @param bytePosition byte position in file of region.
+     * @param length       number of bytes in region.
+     * @return {@code true} if region can be viewed without copying.
+     */
+    boolean canView(long bytePosition, long length);
+
+    /**
+     * Get the size of each map into which the file is divided (last may be smaller).
+     * @return max size of each map in bytes.
+     */
+    long getMaxMapSize();
+
+    /**
+     * Get the number of maps into which the file is divided.
+     * @return number of maps.
+     */
+    int getMapCount();
+
+    /**
+     * Get the given map as a ByteBuffer with position = 0 and the current byte order.
+     * @param mapIndex index of map.
+     * @return map as ByteBuffer.
+     */
+    ByteBuffer getMap(int mapIndex);
+}
@@ -0,0 +1,170 @@
+package org.jlab.coda.eventViewer;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+
+/**
+ * This class holds all the timings and cache counts of the viewer so slowness
+ * can be diagnosed without a profiler. Each metric is exported as a JMX MBean
+ * named "org.jlab.coda.eventViewer:type=<i>Timer|Cache</i>,name=<i>name</i>".
+ * If the system property "metricsLog" is set to a number of seconds, all metrics
+ * are also printed that often.
+ */
+public final class MetricsRegistry {
+
+    /** JMX domain of all the viewer's MBeans. */
+    static final String DOMAIN = "org.jlab.coda.eventViewer";
+
+    /** Mapped file opening in SimpleMappedMemoryHandler. */
+    public static final String FILE_OPEN = "fileOpen";
+
+    /** Building EvioReader's index of events. */
+    public static final String INDEX_BUILD = "indexBuild";
+
+    /** Scanning a file for evio errors. */
+    public static final String ERROR_SCAN = "errorScan";
+
+    /** Scanning a file for statistics. */
+    public static final String STATISTICS_SCAN = "statisticsScan";
+
+    /** Searching a file for a value. */
+    public static final String SEARCH = "search";
+
+    /** Building the tree in EventTreePanel.setEvent. */
+    public static final String TREE_BUILD = "treeBuild";
+
+    /** Painting the table of a file's bytes. */
+    public static final String BYTE_VIEW_RENDER = "byteViewRender";
+
+    /** Reuse of parsed dictionaries. */
+    public static final String DICTIONARY_CACHE = "dictionaryCache";
+
+    /** Reuse of open, mapped files. */
+    public static final String FILE_SESSION_CACHE = "fileSessionCache";
+
+    /** Reuse of event indexes saved in sidecar files. */
+    public static final String EVENT_INDEX_CACHE = "eventIndexCache";
+
+    /** Timers by name. */
+    private static final Map<String, TimerMetric> timers = new TreeMap<String, TimerMetric>();
+
+    /** Cache metrics by name. */
+    private static final Map<String, CacheMetric> caches = new TreeMap<String, CacheMetric>();
+
+
+    static {
+        String period = System.getProperty("metricsLog");
+        if (period != null) {
+            try {
+                long millis = (long) (1000 * Double.parseDouble(period));
+                if (millis > 0) {
+                    Timer logTimer = new Timer("Metrics log", true);
+                    logTimer.schedule(new TimerTask() {
+                        public void run() {
+                            System.out.print(report());
+                        }
+                    }, millis, millis);
+                }
+            }
+            catch (NumberFormatException e) {
+                System.out.println("Bad metricsLog value: " + period);
+            }
+        }
+    }
+
+
+    private MetricsRegistry() {}
+
+
+    /**
+     * Get the timer of the given name, creating and registering it if necessary.
+     * @param name name of timed operation.
+     * @return timer of the given name.
+     */
+    public static TimerMetric timer(String name) {
+        synchronized (timers) {
+            TimerMetric timer = timers.get(name);
+            if (timer == null) {
+                timer = new TimerMetric(name);
+                timers.put(name, timer);
+                register(timer, "Timer", name);
+            }
+            return timer;
+        }
+    }
+
+
+    /**
+     * Get the cache metric of the given name, creating and registering it if necessary.
+     * @param name name of cache.
+     * @return cache metric of the given name.
+     */
+    public static CacheMetric cache(String name) {
+        synchronized (caches) {
+            CacheMetric cache = caches.get(name);
+            if (cache == null) {
+                cache = new CacheMetric(name);
+                caches.put(name, cache);
+                register(cache, "Cache", name);
+            }
+            return cache;
+        }
+    }
+
+
+    /**
+     * Register an MBean with the platform MBean server under the name
+     * "org.jlab.coda.eventViewer:type=<i>type</i>,name=<i>name</i>".
+     * If that name is taken, a number is added to the name.
+     * Any failure is printed and otherwise ignored.
+     *
+     * @param mbean object to register.
+     * @param type  type of object.
+     * @param name  name of object.
+     * @return name registered under or null if failed.
+     */
+    static ObjectName register(Object mbean, String type, String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            String prefix = DOMAIN + ":type=" + type + ",name=" + name;
+            ObjectName oName = new ObjectName(prefix);
+            // If there's more than one, tell them apart
+            for (int i=2; server.isRegistered(oName); i++) {
+                oName = new ObjectName(prefix + i);
+            }
+            server.registerMBean(mbean, oName);
+            return oName;
+        }
+        catch (JMException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+
+    /**
+     * Get a printable report of all metrics, one per line.
+     * @return printable report of all metrics.
+     */
+    public static String report() {
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append(String.format("Viewer metrics at %tT:%n", System.currentTimeMillis()));
+        synchronized (timers) {
+            for (TimerMetric timer : timers.values()) {
+                sb.append("  ").append(timer).append(String.format("%n"));
+            }
+        }
+        synchronized (caches) {
+            for (CacheMetric cache : caches.values()) {
+                sb.append("  ").append(cache).append(String.format("%n"));
+            }
+        }
+        return sb.toString();
+    }
+}
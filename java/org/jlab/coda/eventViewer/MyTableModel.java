@@ -10,10 +10,16 @@ import java.util.HashMap;
 
 /**
  * This class describes the data table's data including column names.
- * Each file is broken up into 200MB (maxMapByteSize) memory maps
+ * Each file is broken up into 1GB (maxMapByteSize) pages or "maps"
  * (last one is probably smaller than that since file size is probably
- * not an exact multiple of 200MB).
+ * not an exact multiple of 1GB).
  * A single map is loaded into the table at any one time.
+ * These are independent of the memory maps in SimpleMappedMemoryHandler
+ * since pages must be a whole number of table rows (20 bytes) while
+ * memory maps are a power of 2 in size.
+ * Pages are needed even when the whole file is mapped as one MemorySegment,
+ * since a JTable's height in pixels is an int. At 16 pixels a row, a table
+ * can't show more than about 134M rows, or 2.7GB of a file.
  */
 final class MyTableModel extends AbstractTableModel {
 
@@ -48,8 +54,8 @@ final class MyTableModel extends AbstractTableModel {
     /** Number of bytes in each table row. */
     private final int bytesPerRow = 20;
 
-    /** Max number of bytes per memory map. */
-    private long maxMapByteSize;
+    /** Max number of bytes per page (memory map) of table, must be multiple of 20 (1 row). */
+    private long maxMapByteSize = 1000000000L;
 
     /** Max number of rows per memory map. */
     private int  maxRowsPerMap;
@@ -77,6 +83,10 @@ final class MyTableModel extends AbstractTableModel {
      *  for the Evio event tree display in EvenTreePanel. */
     Object[][] data;
 
+    /** Numerical data of the leaf being viewed in EvenTreePanel,
+     *  formatted only as it is displayed. */
+    private LeafFormatter leaf;
+
 
 
     /** Constructor used for viewing event in tree form in EventTreePanel. */
@@ -115,8 +125,7 @@ final class MyTableModel extends AbstractTableModel {
         else {
             maxWordIndex = (fileSize-4L)/4L;
         }
-        mapCount = mappedMemoryHandler.getMapCount();
-        maxMapByteSize = mappedMemoryHandler.getMaxMapSize();
+        mapCount = (int) ((fileSize + maxMapByteSize - 1L)/maxMapByteSize);
         maxWordsPerMap = maxMapByteSize/4;
         maxRowsPerMap  = (int) (maxWordsPerMap/wordsPerRow);
         dataFromFile = true;
@@ -280,7 +289,7 @@ final class MyTableModel extends AbstractTableModel {
     public void setWindowData(long wordIndex) {
         long oldMapIndex = mapIndex;
 
-        mapIndex = mappedMemoryHandler.getMapIndex(wordIndex);
+        mapIndex = (int) (wordIndex*4/maxMapByteSize);
 
         if (oldMapIndex == mapIndex) {
             return;
@@ -543,12 +552,10 @@ final class MyTableModel extends AbstractTableModel {
         if (headerSize != 14) {
             return null;
         }
-        // Index of last word of record header
-        long lastIndex = magicNumIndex + 6 + (headerSize - 14);
+        // Read whole header at once, starting with its first word
         int[] blockData = new int[headerSize];
-
-        for (int i = 0; i < headerSize; i++) {
-            blockData[headerSize - i - 1] = (int) getLongValueAt(lastIndex - i);
+        if (mappedMemoryHandler.getInts(magicNumIndex - 7, blockData, 0, headerSize) != headerSize) {
+            return null;
         }
 
         return blockData;
@@ -683,6 +690,7 @@ final class MyTableModel extends AbstractTableModel {
 
 
     public void setTableData(String[] dataArg) {
+        leaf = null;
         if (dataArg == null || dataArg.length < 1) {
             data = null;
             fireTableDataChanged();
@@ -711,12 +719,25 @@ final class MyTableModel extends AbstractTableModel {
     }
 
 
+    /**
+     * Set table's data to the numerical data of an evio leaf structure
+     * and refresh view.
+     * @param leaf numerical data of a leaf, may be null.
+     */
+    public void setTableData(LeafFormatter leaf) {
+        data = null;
+        this.leaf = leaf;
+        fireTableDataChanged();
+    }
+
+
     /** {@inheritDoc} */
     public int getColumnCount() {return columnNames.length;}
 
     /** {@inheritDoc} */
     public int getRowCount() {
         if (!dataFromFile) {
+            if (leaf != null) return (leaf.size() + wordsPerRow - 1) / wordsPerRow;
             if (data == null) return 0;
             return data.length;
         }
@@ -725,11 +746,9 @@ final class MyTableModel extends AbstractTableModel {
 
         // All maps are maxMapByteSize bytes in size except
         // the last one which may be any non-zero size.
-        int mapCount = mappedMemoryHandler.getMapCount();
-
         if (mapIndex == mapCount - 1) {
             // Need to round up since the last row may not be "full"
-            int mapSize = mappedMemoryHandler.getMapSize(mapIndex);
+            int mapSize = (int) (fileSize - mapIndex*maxMapByteSize);
             int addOne = mapSize % bytesPerRow > 0 ? 1 : 0;
             return mapSize/bytesPerRow + addOne;
         }
@@ -762,6 +781,7 @@ final class MyTableModel extends AbstractTableModel {
 
         if (!dataFromFile) {
             // Remember that the first col of the table is the position and not the data
+            if (leaf != null) return leaf.format(row*wordsPerRow + col - 1);
             if (data != null) return data[row][col - 1];
             return "";
         }
@@ -832,6 +852,17 @@ final class MyTableModel extends AbstractTableModel {
         return (mappedMemoryHandler.getIntAtBytePos(byteIndex));
     }
 
+    /**
+     * Read consecutive int values starting at the given file byte index.
+     * @param byteIndex file byte index of first int.
+     * @param dst       array to hold the ints.
+     * @param count     number of ints to read.
+     * @return number of ints actually read.
+     */
+    public int getInts(long byteIndex, int[] dst, int count) {
+        return mappedMemoryHandler.getIntsAtBytePos(byteIndex, dst, 0, count);
+    }
+
     /**
      * Get the short value at the given file byte index.
      * @param byteIndex file byte index.
@@ -0,0 +1,219 @@
+package org.jlab.coda.eventViewer;
+
+import org.jlab.coda.hipo.RecordHeader;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class is the base of feeds whose data must be read, such as an ET system,
+ * a file or a pipe. Each subscription gets a thread which calls {@link #poll()}
+ * only while the subscriber has asked for more buffers, and waits otherwise.
+ * Subclasses only say how to get the next buffer.<p>
+ *
+ * A feed may be subscribed to again after the previous subscription is cancelled
+ * or finished. A new subscription waits for the thread of the old one to end.
+ */
+public abstract class PolledFeed implements EventFeed {
+
+    /** Name of this feed. */
+    private final String name;
+
+    /** Thread of current or last subscription. */
+    private Poller poller;
+
+
+
+    /**
+     * Constructor.
+     * @param name name of this feed.
+     */
+    protected PolledFeed(String name) {
+        this.name = name;
+    }
+
+
+    /** {@inheritDoc} */
+    public String getName() {return name;}
+
+
+    /** {@inheritDoc} */
+    public synchronized void subscribe(Subscriber subscriber) {
+        Poller last = poller;
+        if (last != null && last.isAlive() && !last.cancelled) {
+            last.cancel();
+        }
+        poller = new Poller(subscriber, last);
+        subscriber.onSubscribe(poller);
+        poller.start();
+    }
+
+
+    /**
+     * Called by the feed's thread before the first {@link #poll()} of a subscription.
+     * @throws Exception if the feed cannot be read, given to the subscriber.
+     */
+    protected void open() throws Exception {}
+
+    /**
+     * Called by the feed's thread after the last {@link #poll()} of a subscription,
+     * whether it finished, failed or was cancelled.
+     */
+    protected void close() {}
+
+    /**
+     * Called when the subscription is cancelled, by the cancelling thread,
+     * to wake up a {@link #poll()} which may be waiting for data.
+     */
+    protected void wakeUp() {}
+
+    /**
+     * Get the next buffer of data, waiting for it if necessary.
+     * Called only by the feed's thread.
+     * @return next buffer, or null if there is no more data.
+     * @throws Exception if data cannot be read, given to the subscriber.
+     */
+    protected abstract ByteBuffer poll() throws Exception;
+
+    /**
+     * Get the dictionary which applies to the buffer last returned by {@link #poll()}
+     * if it contains none of its own. This implementation returns null.
+     * @return dictionary XML, or null if none.
+     */
+    protected String getDictionary() {return null;}
+
+
+    /**
+     * Has the subscription being read by the calling thread been cancelled?
+     * A {@link #poll()} which waits for data should return when this is true.
+     * @return {@code true} if cancelled, or if not called by the feed's thread.
+     */
+    protected final boolean isCancelled() {
+        Thread thread = Thread.currentThread();
+        return !(thread instanceof Poller) || ((Poller) thread).cancelled;
+    }
+
+
+    /**
+     * Mark a buffer holding one block or record as the last one, as readers
+     * expect of a buffer, or they look for more data after it.
+     * @param buf buffer with block or record header at its position,
+     *            in the byte order of the data.
+     * @return the given buffer.
+     */
+    protected static ByteBuffer markLast(ByteBuffer buf) {
+        int offset = buf.position() + RecordHeader.BIT_INFO_OFFSET;
+        buf.putInt(offset, buf.getInt(offset) | 0x200);
+        return buf;
+    }
+
+
+    /**
+     * This class is the thread of one subscription which polls
+     * for buffers as long as there is demand for them.
+     */
+    private final class Poller extends Thread implements Subscription {
+
+        /** Subscriber given buffers. */
+        private final Subscriber subscriber;
+
+        /** Thread of the previous subscription, if any. */
+        private Poller previous;
+
+        /** Buffers requested and not yet delivered. */
+        private long demand;
+
+        /** Set once cancelled. */
+        private volatile boolean cancelled;
+
+
+        Poller(Subscriber subscriber, Poller previous) {
+            super(name + " feed");
+            setDaemon(true);
+            this.subscriber = subscriber;
+            this.previous   = previous;
+        }
+
+
+        /** {@inheritDoc} */
+        public void request(long n) {
+            if (n < 1) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("requested " + n + " buffers"));
+                return;
+            }
+            synchronized (this) {
+                demand += n;
+                // Overflow means unbounded
+                if (demand < 0L) demand = Long.MAX_VALUE;
+                notifyAll();
+            }
+        }
+
+
+        /** {@inheritDoc} */
+        public void cancel() {
+            if (cancelled) return;
+            synchronized (this) {
+                cancelled = true;
+                notifyAll();
+            }
+            wakeUp();
+        }
+
+
+        /**
+         * Wait until a buffer may be delivered.
+         * @return {@code false} if cancelled instead.
+         */
+        private synchronized boolean awaitDemand() {
+            while (demand < 1L && !cancelled) {
+                try {
+                    wait();
+                }
+                catch (InterruptedException e) {
+                    return false;
+                }
+            }
+            if (cancelled) return false;
+            if (demand != Long.MAX_VALUE) demand--;
+            return true;
+        }
+
+
+        public void run() {
+            // Only one thread reads the feed at a time
+            if (previous != null) {
+                try {
+                    previous.join();
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                previous = null;
+            }
+
+            try {
+                if (cancelled) return;
+                open();
+
+                while (awaitDemand()) {
+                    ByteBuffer buf = poll();
+                    if (cancelled) return;
+                    if (buf == null) {
+                        subscriber.onComplete();
+                        return;
+                    }
+                    subscriber.onNext(buf, getDictionary());
+                }
+            }
+            catch (Exception e) {
+                if (!cancelled) {
+                    subscriber.onError(e);
+                }
+            }
+            finally {
+                close();
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package org.jlab.coda.eventViewer;
+
+import javax.swing.*;
+import javax.swing.border.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.io.File;
+
+/**
+ * This class replays an evio file as if it were arriving from ET, in order to
+ * reproduce the behavior of viewing a live source with no ET system or cMsg server,
+ * or to load test it. Each block (evio 4) or record (evio 6) of the file is taken
+ * through a {@link FileFeed} as one received buffer and goes through the same steps
+ * an ET buffer does: statistics, capture, parsing, filtering, sampling and the event list.
+ * Events are replayed at a given rate or as fast as possible,
+ * optionally starting over at the end of the file.
+ */
+public class ReplayHandler extends FeedHandler {
+
+    /** Panel to control replay. */
+    private JPanel panel;
+
+    /** File being replayed. */
+    private File file;
+
+    /** Events per second to replay, 0 for as fast as possible. */
+    private volatile int rate = 1000;
+
+    /** Start over at the end of the file? */
+    private volatile boolean loop;
+
+    /** Feed of the file being replayed, if any. */
+    private volatile FileFeed fileFeed;
+
+
+
+    /** Constructor. */
+    public ReplayHandler() {
+        super("Replay", "replayed file");
+    }
+
+
+    /**
+     * Get the file being replayed.
+     * @return file being replayed, or null if none chosen.
+     */
+    public File getFile() {return file;}
+
+    /**
+     * Set the file to replay the next time replaying starts.
+     * @param file file to replay.
+     */
+    public void setFile(File file) {this.file = file;}
+
+    /**
+     * Set the number of events replayed each second.
+     * @param rate events per second, 0 for as fast as possible.
+     */
+    public void setRate(int rate) {
+        this.rate = Math.max(0, rate);
+        FileFeed f = fileFeed;
+        if (f != null) f.setRate(this.rate);
+    }
+
+    /**
+     * Set whether to start over at the end of the file.
+     * @param loop if {@code true}, start over at the end of the file.
+     */
+    public void setLoop(boolean loop) {
+        this.loop = loop;
+        FileFeed f = fileFeed;
+        if (f != null) f.setLoop(loop);
+    }
+
+
+    /** {@inheritDoc} */
+    protected EventFeed createFeed() {
+        if (file == null) return null;
+        FileFeed f = new FileFeed(file);
+        f.setRate(rate);
+        f.setLoop(loop);
+        fileFeed = f;
+        return f;
+    }
+
+
+    /** {@inheritDoc} */
+    public JPanel createPanel() {return createReplayPanel();}
+
+
+    /**
+     *  Create the panel/menu-item used to choose and replay a file.
+     * @return the panel/menu-item used to choose and replay a file.
+     */
+    public JPanel createReplayPanel() {
+        if (panel != null) return panel;
+
+        // custom colors
+        final Color darkGreen = new Color(0, 160, 0);
+        final Color darkRed   = new Color(160, 0, 0);
+
+        final JButton startButton = new JButton("Start");
+
+        Border lowerEtched = BorderFactory.createEtchedBorder(EtchedBorder.LOWERED);
+        Border empty = BorderFactory.createEmptyBorder(4,4,4,4);
+
+        // This creates a nice frame
+        CompoundBorder compound = BorderFactory.createCompoundBorder(lowerEtched, empty);
+
+        final JLabel status = new JLabel("  Choose a file to replay  ");
+        status.setForeground(Color.BLUE);
+        status.setBorder(empty);
+
+        JPanel statusPanel = new JPanel(new BorderLayout());
+        statusPanel.add(status, BorderLayout.CENTER);
+        statusPanel.add(getMetrics().createRateLabel(), BorderLayout.SOUTH);
+
+        // file chooser
+        final JTextField fileName = new JTextField(30);
+        fileName.setEditable(false);
+        JButton chooseButton = new JButton("File ...");
+        chooseButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                JFileChooser chooser = new JFileChooser(file == null ? null : file.getParentFile());
+                if (chooser.showOpenDialog(panel) == JFileChooser.APPROVE_OPTION) {
+                    file = chooser.getSelectedFile();
+                    fileName.setText(file.getPath());
+                }
+            }
+        });
+
+        // events per second, 0 meaning as fast as possible
+        JLabel rateLabel = new JLabel("Events / sec (0 = max)");
+        final JSpinner rateSpinner = new JSpinner(new SpinnerNumberModel(rate, 0, 10000000, 100));
+        rateSpinner.addChangeListener(new javax.swing.event.ChangeListener() {
+            public void stateChanged(javax.swing.event.ChangeEvent e) {
+                setRate(((Number) rateSpinner.getValue()).intValue());
+            }
+        });
+
+        final JCheckBox loopBox = new JCheckBox("Start over at end of file", loop);
+        loopBox.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                setLoop(loopBox.isSelected());
+            }
+        });
+
+        JPanel filePanel = new JPanel(new BorderLayout(5, 0));
+        filePanel.add(fileName, BorderLayout.CENTER);
+        filePanel.add(chooseButton, BorderLayout.EAST);
+
+        JPanel ratePanel = new JPanel(new BorderLayout(5, 0));
+        ratePanel.add(rateLabel, BorderLayout.WEST);
+        ratePanel.add(rateSpinner, BorderLayout.CENTER);
+
+        JPanel centerPanel = new JPanel(new GridLayout(3, 1, 0, 5));
+        centerPanel.setBorder(compound);
+        centerPanel.add(filePanel);
+        centerPanel.add(ratePanel);
+        centerPanel.add(loopBox);
+
+        // start/stop button
+        startButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (startButton.getText().equals("Start")) {
+                    if (file == null) {
+                        status.setForeground(darkRed);
+                        status.setText(" Choose a file first");
+                        return;
+                    }
+                    getMetrics().reset();
+                    startFillingEventList();
+                    status.setForeground(darkGreen);
+                    status.setText(" Replaying " + file.getName());
+                    startButton.setText("Stop");
+                }
+                else {
+                    stopFillingEventList();
+                    status.setForeground(darkRed);
+                    status.setText(" Stopped replaying");
+                    startButton.setText("Start");
+                }
+            }
+        });
+        startButton.setAlignmentX(Component.CENTER_ALIGNMENT);
+
+        // top-level panel
+        panel = new JPanel(new BorderLayout());
+        panel.add(centerPanel, BorderLayout.NORTH);
+        panel.add(statusPanel, BorderLayout.CENTER);
+        panel.add(startButton, BorderLayout.SOUTH);
+
+        return panel;
+    }
+}
@@ -0,0 +1,360 @@
+package org.jlab.coda.eventViewer;
+
+import org.jlab.coda.jevio.EvioEvent;
+import org.jlab.coda.jevio.EvioException;
+import org.jlab.coda.jevio.EvioReader;
+import org.jlab.coda.jevio.IEvioListener;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class is a CODA run, split across a series of files (run.evio.0, run.evio.1, ...),
+ * looked at as if it were one file. Every file is opened, and its events counted from
+ * its headers, in parallel when the run is opened. Events are numbered through the whole
+ * run, starting at 1, and the file holding an event is found by a binary search of the
+ * number of events before each file. A file's reader, which must find every event, is
+ * only made once an event of that file is first wanted. All files stay open
+ * until the run is released.
+ */
+public class RunSession {
+
+    /** Name of a file in a run's series: a stem, then a dot and the file's number. */
+    private static final Pattern SERIES_NAME = Pattern.compile("(.*)\\.(\\d+)");
+
+    /**
+     * Order of files by the stem of their names, then by the number at the end,
+     * so that run.evio.10 comes after run.evio.9. A name not ending in a number is
+     * all stem and comes before any file of its series.
+     */
+    static final Comparator<File> SERIES_ORDER = new Comparator<File>() {
+        public int compare(File a, File b) {
+            int c = seriesStem(a).compareTo(seriesStem(b));
+            if (c != 0) return c;
+            return Long.compare(seriesNumber(a), seriesNumber(b));
+        }
+    };
+
+    /** Sessions of the run's files, in order. */
+    private final FileSession[] sessions;
+
+    /** Readers of the run's files, in order, each null until first needed. */
+    private final EvioReader[] readers;
+
+    /** Listeners added to the parser of each file's reader. */
+    private IEvioListener[] listeners = new IEvioListener[0];
+
+    /** Number of events before each file, with the run's event count at the end. */
+    private final int[] eventsBefore;
+
+
+
+    /**
+     * Find all the files of the run that the given file is part of, in order.
+     * The run's files are those in the same directory whose names differ from the
+     * given one's only in the number at the end. A file whose name doesn't end
+     * with a number is a run of its own.
+     *
+     * @param file any file of a run.
+     * @return the run's files, in order.
+     */
+    public static File[] findSeries(File file) {
+        Matcher m = SERIES_NAME.matcher(file.getName());
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!m.matches() || dir == null) {
+            return new File[] {file};
+        }
+
+        final String stem = m.group(1);
+        File[] files = dir.listFiles(new FileFilter() {
+            public boolean accept(File f) {
+                Matcher fm = SERIES_NAME.matcher(f.getName());
+                return f.isFile() && fm.matches() && fm.group(1).equals(stem);
+            }
+        });
+        if (files == null || files.length < 1) {
+            return new File[] {file};
+        }
+
+        // Order by number, not name, so that run.evio.10 comes after run.evio.9
+        Arrays.sort(files, SERIES_ORDER);
+        return files;
+    }
+
+
+    /**
+     * Get the name of a file in a run's series without the number at the end.
+     * @param file file in series.
+     * @return stem of name, or the whole name if it doesn't end with a number.
+     */
+    private static String seriesStem(File file) {
+        Matcher m = SERIES_NAME.matcher(file.getName());
+        return m.matches() ? m.group(1) : file.getName();
+    }
+
+
+    /**
+     * Get the number at the end of the name of a file in a run's series.
+     * @param file file in series.
+     * @return number of file in series.
+     */
+    private static long seriesNumber(File file) {
+        Matcher m = SERIES_NAME.matcher(file.getName());
+        if (!m.matches()) return -1L;
+        try {
+            return Long.parseLong(m.group(2));
+        }
+        catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+
+    /**
+     * Open all the files of a run and count their events, in parallel.
+     * Each call must be balanced by a call to {@link #release()}.
+     *
+     * @param files files of the run, in order.
+     * @return opened run.
+     * @throws IOException if a file could not be read, or run has over 2G events.
+     * @throws EvioException if a file is not in evio format.
+     */
+    public static RunSession open(File[] files) throws IOException, EvioException {
+        int threads = Math.max(1, Math.min(files.length, Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        FileSession[] sessions = new FileSession[files.length];
+        int[] counts = new int[files.length];
+        long total = 0L;
+        try {
+            ArrayList<Future<FileSession>> opened = new ArrayList<Future<FileSession>>(files.length);
+            for (final File f : files) {
+                opened.add(pool.submit(new Callable<FileSession>() {
+                    public FileSession call() throws Exception {
+                        FileSession session = FileSession.open(f);
+                        try {
+                            // Only the headers are read
+                            session.getEventCount();
+                            return session;
+                        }
+                        catch (Exception e) {
+                            session.release();
+                            throw e;
+                        }
+                    }
+                }));
+            }
+
+            // Wait for them all so none is left open if one fails
+            Exception failure = null;
+            for (int i=0; i < files.length; i++) {
+                try {
+                    sessions[i] = opened.get(i).get();
+                    counts[i]   = sessions[i].getEventCount();
+                    total += counts[i];
+                }
+                catch (ExecutionException e) {
+                    if (failure == null) failure = describe(files[i], e.getCause());
+                }
+                catch (InterruptedException e) {
+                    if (failure == null) failure = new IOException("interrupted opening " + files[i].getName());
+                }
+            }
+
+            if (failure == null && total > Integer.MAX_VALUE) {
+                failure = new IOException("run has over " + Integer.MAX_VALUE + " events");
+            }
+
+            if (failure != null) {
+                for (FileSession s : sessions) {
+                    if (s != null) s.release();
+                }
+                if (failure instanceof EvioException) throw (EvioException) failure;
+                throw (IOException) failure;
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        return new RunSession(sessions, counts);
+    }
+
+
+    /**
+     * Make an exception naming the file which failed to open.
+     * @param file  file which failed to open.
+     * @param cause reason it failed.
+     * @return EvioException if file was not evio, else IOException.
+     */
+    private static Exception describe(File file, Throwable cause) {
+        String msg = file.getName() + ": " + cause.getMessage();
+        if (cause instanceof EvioException) {
+            return new EvioException(msg, cause);
+        }
+        return new IOException(msg, cause);
+    }
+
+
+    /**
+     * Constructor.
+     * @param sessions opened sessions of the run's files, in order.
+     * @param counts   number of events in each file.
+     */
+    private RunSession(FileSession[] sessions, int[] counts) {
+        this.sessions = sessions;
+        readers       = new EvioReader[sessions.length];
+        eventsBefore  = new int[sessions.length + 1];
+        for (int i=0; i < sessions.length; i++) {
+            eventsBefore[i + 1] = eventsBefore[i] + counts[i];
+        }
+    }
+
+
+    /** Give back the sessions of all the run's files. */
+    public void release() {
+        for (FileSession s : sessions) {
+            s.release();
+        }
+    }
+
+
+    /**
+     * Get the name of the run, from its first file.
+     * @return name of the run, like "run.evio.* (3 files)".
+     */
+    public String getName() {
+        String name = sessions[0].getFile().getName();
+        Matcher m = SERIES_NAME.matcher(name);
+        if (m.matches()) {
+            name = m.group(1) + ".*";
+        }
+        return name + " (" + sessions.length + (sessions.length == 1 ? " file)" : " files)");
+    }
+
+
+    /**
+     * Get the number of files in the run.
+     * @return number of files in the run.
+     */
+    public int getFileCount() {return sessions.length;}
+
+
+    /**
+     * Get the session of one of the run's files.
+     * @param i index of file, starting at 0.
+     * @return session of file.
+     */
+    public FileSession getSession(int i) {return sessions[i];}
+
+
+    /**
+     * Get the reader of one of the run's files, making it if necessary.
+     * @param i index of file, starting at 0.
+     * @return reader of file.
+     * @throws IOException if file could not be read.
+     * @throws EvioException if file is not in evio format.
+     */
+    public synchronized EvioReader getReader(int i) throws IOException, EvioException {
+        if (readers[i] == null) {
+            readers[i] = sessions[i].getReader();
+            for (IEvioListener listener : listeners) {
+                readers[i].getParser().addEvioListener(listener);
+            }
+        }
+        return readers[i];
+    }
+
+
+    /**
+     * Set the listeners added to the parser of each file's reader,
+     * including those of readers not yet made.
+     * @param listeners listeners of parsing.
+     */
+    public synchronized void setEvioListeners(IEvioListener[] listeners) {
+        this.listeners = listeners.clone();
+        for (EvioReader reader : readers) {
+            if (reader == null) continue;
+            for (IEvioListener listener : listeners) {
+                reader.getParser().addEvioListener(listener);
+            }
+        }
+    }
+
+
+    /**
+     * Get the number of events in the whole run.
+     * @return number of events in the whole run.
+     */
+    public int getEventCount() {return eventsBefore[sessions.length];}
+
+
+    /**
+     * Get the number of events in the run before the given file.
+     * @param i index of file, starting at 0.
+     * @return number of events before file.
+     */
+    public int getEventsBefore(int i) {return eventsBefore[i];}
+
+
+    /**
+     * Get the file holding an event of the run.
+     * @param index number of event in the run, starting at 1.
+     * @return index of file holding event, or -1 if there is no such event.
+     */
+    public int getFileIndex(int index) {
+        if (index < 1 || index > getEventCount()) return -1;
+
+        // Find the last file with fewer events before it than the index,
+        // skipping any files without events.
+        int i = Arrays.binarySearch(eventsBefore, 0, sessions.length, index - 1);
+        if (i < 0) {
+            return -i - 2;
+        }
+        while (i < sessions.length - 1 && eventsBefore[i + 1] == index - 1) {
+            i++;
+        }
+        return i;
+    }
+
+
+    /**
+     * Parse an event of the run.
+     * @param index number of event in the run, starting at 1.
+     * @return parsed event, or null if there is no such event.
+     * @throws IOException if file could not be read.
+     * @throws EvioException if data is not in evio format.
+     */
+    public EvioEvent parseEvent(int index) throws IOException, EvioException {
+        int i = getFileIndex(index);
+        if (i < 0) return null;
+        EvioReader reader = getReader(i);
+        // A reader is shared by all users of a file
+        synchronized (reader) {
+            return reader.parseEvent(index - eventsBefore[i]);
+        }
+    }
+
+
+    /**
+     * Get a short description of where an event of the run is.
+     * @param index number of event in the run, starting at 1.
+     * @return name of file holding event and the event's number in it.
+     */
+    public String describe(int index) {
+        int i = getFileIndex(index);
+        if (i < 0) return "#" + index;
+        return sessions[i].getFile().getName() + " #" + (index - eventsBefore[i]);
+    }
+}
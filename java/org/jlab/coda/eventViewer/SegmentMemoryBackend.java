@@ -0,0 +1,306 @@
+package org.jlab.coda.eventViewer;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class maps a whole file as a single, long-addressed
+ * java.lang.foreign.MemorySegment. There is no 2GB limit and therefore
+ * no dividing of the file into maps.<p>
+ *
+ * The foreign memory API is only final from Java 22 on. Java 21 has it as a
+ * preview with different methods, so the Java feature version is checked
+ * before looking for it. Since this code must also compile and run with Java 8,
+ * the API is used only through method handles. They are looked up once and kept
+ * in static final fields so that the JIT treats them as constants and inlines
+ * the segment's accessors. If the API is not available, {@link #isAvailable()}
+ * returns false and SimpleMappedMemoryHandler uses a ByteBufferMemoryBackend instead.<p>
+ *
+ * The segment is allocated in an automatic arena, so it's unmapped once
+ * it's no longer referenced.
+ */
+final class SegmentMemoryBackend implements MemoryBackend {
+
+    /** Size of ByteBuffer views handed out by {@link #getMap(int)}. */
+    private static final long MAP_VIEW_SIZE = 1L << 30;
+
+    /** Lowest Java feature version with the final foreign memory API. */
+    private static final int MIN_JAVA_VERSION = 22;
+
+    // Foreign memory API layouts and methods, null if not available.
+    // Segments and layouts are passed as Object since their classes can't be named here.
+
+    /** Unaligned int, unaligned short and byte layouts in native order. */
+    private static final Object INT_LAYOUT, SHORT_LAYOUT, BYTE_LAYOUT;
+
+    /** Arena.ofAuto() returning Object. */
+    private static final MethodHandle ARENA_OF_AUTO;
+
+    /** FileChannel.map(FileChannel, MapMode, long, long, Object arena) returning Object. */
+    private static final MethodHandle CHANNEL_MAP;
+
+    /** ValueLayout.withOrder(Object layout, ByteOrder) returning Object. */
+    private static final MethodHandle WITH_ORDER;
+
+    /** MemorySegment.asSlice(Object segment, long, long) returning Object. */
+    private static final MethodHandle AS_SLICE;
+
+    /** MemorySegment.asByteBuffer(Object segment) returning ByteBuffer. */
+    private static final MethodHandle AS_BYTE_BUFFER;
+
+    /** MemorySegment.copy(Object segment, Object layout, long, Object array, int, int). */
+    private static final MethodHandle COPY_TO_ARRAY;
+
+    /** MemorySegment.get(Object layout, long) for int, short and byte layouts, segment first. */
+    private static final MethodHandle GET_INT, GET_SHORT, GET_BYTE;
+
+    /** Is the foreign memory API available? */
+    private static final boolean available;
+
+    static {
+        Object intLayout = null, shortLayout = null, byteLayout = null;
+        MethodHandle arenaOfAuto = null, channelMap = null, withOrder = null, asSlice = null;
+        MethodHandle asByteBuffer = null, copyToArray = null, getInt = null, getShort = null, getByte = null;
+        boolean ok = false;
+
+        if (javaFeatureVersion() >= MIN_JAVA_VERSION) {
+            try {
+                Class<?> segmentClass = Class.forName("java.lang.foreign.MemorySegment");
+                Class<?> layoutClass  = Class.forName("java.lang.foreign.ValueLayout");
+                Class<?> arenaClass   = Class.forName("java.lang.foreign.Arena");
+                Class<?> ofInt        = Class.forName("java.lang.foreign.ValueLayout$OfInt");
+                Class<?> ofShort      = Class.forName("java.lang.foreign.ValueLayout$OfShort");
+                Class<?> ofByte       = Class.forName("java.lang.foreign.ValueLayout$OfByte");
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+                intLayout   = layoutClass.getField("JAVA_INT_UNALIGNED").get(null);
+                shortLayout = layoutClass.getField("JAVA_SHORT_UNALIGNED").get(null);
+                byteLayout  = layoutClass.getField("JAVA_BYTE").get(null);
+
+                arenaOfAuto = lookup.findStatic(arenaClass, "ofAuto", MethodType.methodType(arenaClass))
+                                    .asType(MethodType.methodType(Object.class));
+                channelMap  = lookup.findVirtual(FileChannel.class, "map",
+                                    MethodType.methodType(segmentClass, FileChannel.MapMode.class,
+                                                          long.class, long.class, arenaClass))
+                                    .asType(MethodType.methodType(Object.class, FileChannel.class,
+                                                          FileChannel.MapMode.class, long.class,
+                                                          long.class, Object.class));
+                withOrder   = lookup.findVirtual(layoutClass, "withOrder",
+                                    MethodType.methodType(layoutClass, ByteOrder.class))
+                                    .asType(MethodType.methodType(Object.class, Object.class, ByteOrder.class));
+                asSlice     = lookup.findVirtual(segmentClass, "asSlice",
+                                    MethodType.methodType(segmentClass, long.class, long.class))
+                                    .asType(MethodType.methodType(Object.class, Object.class,
+                                                                  long.class, long.class));
+                asByteBuffer = lookup.findVirtual(segmentClass, "asByteBuffer",
+                                    MethodType.methodType(ByteBuffer.class))
+                                    .asType(MethodType.methodType(ByteBuffer.class, Object.class));
+                copyToArray = lookup.findStatic(segmentClass, "copy",
+                                    MethodType.methodType(void.class, segmentClass, layoutClass,
+                                                          long.class, Object.class, int.class, int.class))
+                                    .asType(MethodType.methodType(void.class, Object.class, Object.class,
+                                                          long.class, Object.class, int.class, int.class));
+                getInt      = lookup.findVirtual(segmentClass, "get",
+                                    MethodType.methodType(int.class, ofInt, long.class))
+                                    .asType(MethodType.methodType(int.class, Object.class, Object.class, long.class));
+                getShort    = lookup.findVirtual(segmentClass, "get",
+                                    MethodType.methodType(short.class, ofShort, long.class))
+                                    .asType(MethodType.methodType(short.class, Object.class, Object.class, long.class));
+                getByte     = lookup.findVirtual(segmentClass, "get",
+                                    MethodType.methodType(byte.class, ofByte, long.class))
+                                    .asType(MethodType.methodType(byte.class, Object.class, Object.class, long.class));
+                ok = true;
+            }
+            catch (Throwable e) {
+                // API not as expected
+            }
+        }
+
+        available      = ok;
+        INT_LAYOUT     = ok ? intLayout    : null;
+        SHORT_LAYOUT   = ok ? shortLayout  : null;
+        BYTE_LAYOUT    = ok ? byteLayout   : null;
+        ARENA_OF_AUTO  = ok ? arenaOfAuto  : null;
+        CHANNEL_MAP    = ok ? channelMap   : null;
+        WITH_ORDER     = ok ? withOrder    : null;
+        AS_SLICE       = ok ? asSlice      : null;
+        AS_BYTE_BUFFER = ok ? asByteBuffer : null;
+        COPY_TO_ARRAY  = ok ? copyToArray  : null;
+        GET_INT        = ok ? getInt       : null;
+        GET_SHORT      = ok ? getShort     : null;
+        GET_BYTE       = ok ? getByte      : null;
+    }
+
+
+    /** The whole file. */
+    private final Object segment;
+
+    /** Size of file in bytes. */
+    private final long size;
+
+    /** Byte order of data. */
+    private ByteOrder order;
+
+    /** Layouts with proper byte order. */
+    private Object orderedIntLayout, orderedShortLayout;
+
+
+    /**
+     * Get the feature version of the running Java, such as 8 or 22.
+     * @return feature version of running Java, or 0 if unknown.
+     */
+    private static int javaFeatureVersion() {
+        String version = System.getProperty("java.specification.version", "");
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+        try {
+            return Integer.parseInt(version);
+        }
+        catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+
+    /**
+     * Is the foreign memory API available in this JVM?
+     * @return {@code true} if available, else {@code false}.
+     */
+    static boolean isAvailable() {return available;}
+
+
+    /**
+     * Constructor which maps the given file channel.
+     * @param fileChannel channel of file to map.
+     * @param fileSize    size of file in bytes.
+     * @param order       byte order of data.
+     * @throws Throwable if foreign memory API not available or could not map file.
+     */
+    SegmentMemoryBackend(FileChannel fileChannel, long fileSize, ByteOrder order)
+            throws Throwable {
+
+        if (!available) {
+            throw new UnsupportedOperationException("foreign memory API not available");
+        }
+
+        Object arena = (Object) ARENA_OF_AUTO.invokeExact();
+        segment = (Object) CHANNEL_MAP.invokeExact(fileChannel, FileChannel.MapMode.READ_ONLY,
+                                                   0L, fileSize, arena);
+        size = fileSize;
+        setByteOrder(order);
+    }
+
+
+    /**
+     * Constructor which reads the segment of another backend.
+     * @param other backend whose segment is read.
+     */
+    private SegmentMemoryBackend(SegmentMemoryBackend other) {
+        segment = other.segment;
+        size    = other.size;
+        setByteOrder(other.order);
+    }
+
+
+    /** {@inheritDoc} */
+    public String getName() {return "MemorySegment";}
+
+    /** {@inheritDoc} */
+    public void setByteOrder(ByteOrder order) {
+        this.order = order;
+        try {
+            orderedIntLayout   = (Object) WITH_ORDER.invokeExact(INT_LAYOUT, order);
+            orderedShortLayout = (Object) WITH_ORDER.invokeExact(SHORT_LAYOUT, order);
+        }
+        catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public MemoryBackend duplicate() {return new SegmentMemoryBackend(this);}
+
+    /** {@inheritDoc} */
+    public int getInt(long bytePosition) {
+        try {
+            return (int) GET_INT.invokeExact(segment, orderedIntLayout, bytePosition);
+        }
+        catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public short getShort(long bytePosition) {
+        try {
+            return (short) GET_SHORT.invokeExact(segment, orderedShortLayout, bytePosition);
+        }
+        catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public byte get(long bytePosition) {
+        try {
+            return (byte) GET_BYTE.invokeExact(segment, BYTE_LAYOUT, bytePosition);
+        }
+        catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void getInts(long bytePosition, int[] dst, int offset, int count) {
+        try {
+            COPY_TO_ARRAY.invokeExact(segment, orderedIntLayout, bytePosition, (Object) dst, offset, count);
+        }
+        catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void getBytes(long bytePosition, byte[] dst, int offset, int length) {
+        try {
+            COPY_TO_ARRAY.invokeExact(segment, BYTE_LAYOUT, bytePosition, (Object) dst, offset, length);
+        }
+        catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public ByteBuffer getByteBuffer(long bytePosition, int length) {
+        try {
+            // Always zero-copy
+            Object slice = (Object) AS_SLICE.invokeExact(segment, bytePosition, (long) length);
+            ByteBuffer buf = (ByteBuffer) AS_BYTE_BUFFER.invokeExact(slice);
+            buf.order(order);
+            return buf;
+        }
+        catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public boolean canView(long bytePosition, long length) {return length <= Integer.MAX_VALUE;}
+
+    /** {@inheritDoc} */
+    public long getMaxMapSize() {return MAP_VIEW_SIZE;}
+
+    /** {@inheritDoc} */
+    public int getMapCount() {return (int) ((size + MAP_VIEW_SIZE - 1L)/MAP_VIEW_SIZE);}
+
+    /** {@inheritDoc} */
+    public ByteBuffer getMap(int mapIndex) {
+        long pos = mapIndex*MAP_VIEW_SIZE;
+        return getByteBuffer(pos, (int) Math.min(MAP_VIEW_SIZE, size - pos));
+    }
+}
@@ -10,14 +10,23 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
-import java.util.ArrayList;
 
 /**
  * This is a class designed to handle access files with size greater than 2.1 GBytes.
- * Currently the largest size memory map that Java can handle
+ * Currently the largest size memory map that Java 8 can handle
  * is Integer.MAX_VALUE which limits the use of memory mapping to looking at
- * files that size or smaller. This class circumvents this limit by viewing
- * large files as a collection of multiple memory maps.<p>
+ * files that size or smaller.<p>
+ *
+ * How the file is actually mapped is up to a {@link MemoryBackend} chosen at runtime.
+ * By default on JDK 22+, the whole file is mapped as a single, long-addressed
+ * MemorySegment ({@link SegmentMemoryBackend}). Otherwise it's viewed as a collection
+ * of multiple, overlapping memory maps ({@link ByteBufferMemoryBackend}) which are a
+ * power of 2 in size. The choice can be forced by setting the system property
+ * "memoryBackend" to "buffer" or "segment".<p>
+ *
+ * All access is by absolute file position. Bulk accessors are provided for
+ * reading many words or bytes at once and for viewing a region of the file as
+ * a ByteBuffer without copying.<p>
  *
  * Just a note about synchronization. This object is <b>NOT</b> thread-safe.
  */
@@ -25,18 +34,14 @@ public class SimpleMappedMemoryHandler {
     /** Size of file in bytes. */
     private long fileSize;
 
-    /** Max map size in bytes (1GB) */
-    private long maxMapSize = 1000000000L;
-    //private long maxMapSize = 4052L; // For testing, must be multiple of 4
+    /** Byte position of last int that is fully contained in the file. */
+    private long lastIntPos;
 
     /** Byte order of data in buffer. */
     private ByteOrder order;
 
-    /** Number of memory maps needed to fully map file. */
-    private int mapCount;
-
-    /** List containing each event's memory map. */
-    private final ArrayList<ByteBuffer> maps = new ArrayList<>(20);
+    /** Object which does the actual memory mapping and reading. */
+    private MemoryBackend backend;
 
     /** Channel used to create memory maps. */
     private FileChannel fileChannel;
@@ -78,6 +83,8 @@ public class SimpleMappedMemoryHandler {
     public SimpleMappedMemoryHandler(File file, ByteOrder order)
             throws IOException {
 
+        TimerMetric metric = MetricsRegistry.timer(MetricsRegistry.FILE_OPEN);
+        long t0 = metric.start();
         this.order = order;
 
         // Map the file to get access to its data
@@ -85,46 +92,23 @@ public class SimpleMappedMemoryHandler {
         FileInputStream fileInputStream = new FileInputStream(file);
         fileChannel = fileInputStream.getChannel();
 
-        long remainingSize = fileSize = fileChannel.size();
+        fileSize = fileChannel.size();
         if (fileSize < 4*8) {
             // For a bare minimum there must be 8 words in evio files version < 6 block header,
             // and 14 words for version 6+ file header.
             throw new IOException("file too small at " + fileSize + " bytes");
         }
         extraByteCount = (int)(fileSize % 4);
+        lastIntPos = fileSize - 4L;
 
-        long sz, offset = 0L;
-        ByteBuffer memoryMapBuf;
-
-        // Ensure that the map size is a multiple of 20 bytes (1 row)
-        // so things don't get impossible to deal with
-        if ((maxMapSize % 20) != 0) {
-            maxMapSize = 20*(maxMapSize/20);
-        }
-
-        // Divide the memory into chunks or regions
-        while (remainingSize > 0) {
-            // Break into chunks of maxMapSize bytes
-            sz = Math.min(remainingSize, maxMapSize);
-//System.out.println("mmapHandler: remaining size = " + remainingSize +
-//                   ", map size = " + sz + ", mapCount = " + mapCount);
-
-            memoryMapBuf = fileChannel.map(FileChannel.MapMode.READ_ONLY, offset, sz);
-            memoryMapBuf.order(order);
-
-            // Store the map
-            maps.add(memoryMapBuf);
-
-            offset += sz;
-            remainingSize -= sz;
-            mapCount++;
-        }
+        backend = createBackend(fileChannel, fileSize, order);
 
         // Read in evio version 6 file header
         try {
             // This call gets version and sets ByteBuffer arg's order to correct endianness
-            int version = org.jlab.coda.jevio.Utilities.getEvioVersion(maps.get(0));
-            ByteOrder actualOrder = maps.get(0).order();
+            ByteBuffer firstMap = backend.getMap(0);
+            int version = org.jlab.coda.jevio.Utilities.getEvioVersion(firstMap);
+            ByteOrder actualOrder = firstMap.order();
 
             // For version 6+ get the file header data
             if (version > 5) {
@@ -133,12 +117,7 @@ public class SimpleMappedMemoryHandler {
                 fileHeaderData.order(actualOrder);
 
                 // Do absolute read from map into file header byte buffer
-                // For Java 13+ do:
-                // maps.get(0).get(0, fileHeaderData.array(), 0, 4 * 14);
-                // else do:
-                ByteBuffer bb = maps.get(0);
-                bb.get(fileHeaderData.array(), 0, 4 * 14);
-                bb.position(0);
+                getBytes(0L, fileHeaderData.array(), 0, 4 * 14);
                 // Create FileHeader object
                 fileHeader = new FileHeader();
                 // Have the object parse the buffer and store it in fields.
@@ -150,25 +129,14 @@ public class SimpleMappedMemoryHandler {
                 if (fileHeaderBytes > 4*14) {
                     fileHeaderData = ByteBuffer.wrap(new byte[fileHeaderBytes]);
                     fileHeaderData.order(actualOrder);
-                    // For Java 13+ do:
-                    // maps.get(0).get(0, fileHeaderData.array(), 0, fileHeaderBytes);
-                    // else do:
-                    bb = maps.get(0);
-                    bb.get(fileHeaderData.array(), 0, fileHeaderBytes);
-                    bb.position(0);
+                    getBytes(0L, fileHeaderData.array(), 0, fileHeaderBytes);
                 }
 
                 // Another useful quantity is the index of where the very first data starts,
                 // past the file header the first record header.
                 ByteBuffer firstRecordHdr = ByteBuffer.wrap(new byte[4 * 14]);
-
-                // For Java 13+ do:
-                // maps.get(0).get(fileHeaderBytes, firstRecordHdr.array(), 0, 4 * 14);
-                // else do:
-                bb = maps.get(0);
-                bb.position(fileHeaderBytes);
-                bb.get(fileHeaderData.array(), 0, 4 * 14);
-                bb.position(0);
+                firstRecordHdr.order(actualOrder);
+                getBytes(fileHeaderBytes, firstRecordHdr.array(), 0, 4 * 14);
 
                 // Create RecordHeader object
                 RecordHeader recHeader = new RecordHeader();
@@ -181,17 +149,14 @@ public class SimpleMappedMemoryHandler {
 
                 // Now take this one step further and find out if data in the first record is compressed.
                 try {
-                    isCompressed = RecordHeader.isCompressed(maps.get(0), fileHeaderBytes);
+                    isCompressed = RecordHeader.isCompressed(firstMap, fileHeaderBytes);
                 }
                 catch (HipoException e) {}
             }
 
             // If the actual order is not what it was initially set to, fix it
             if (actualOrder != order) {
-                this.order = actualOrder;
-                for (ByteBuffer buf : maps) {
-                    buf.order(actualOrder);
-                }
+                setByteOrder(actualOrder);
             }
 
         }
@@ -201,6 +166,7 @@ public class SimpleMappedMemoryHandler {
             fileHeader = null;
         }
 
+        metric.stop(t0);
         //Utilities.printBufferBytes(memoryMapBuf, 0, 1000, "File bytes");
     }
 
@@ -214,11 +180,88 @@ public class SimpleMappedMemoryHandler {
             return;
         }
 
-        mapCount = 1;
-        maps.add(buf);
+        fileSize = buf.limit();
+        extraByteCount = (int)(fileSize % 4);
+        lastIntPos = fileSize - 4L;
+        order = buf.order();
+
+        // Everything is in the one map
+        backend = new ByteBufferMemoryBackend(buf);
+    }
+
+
+    /**
+     * Constructor which reads the mapped file of another handler.
+     * @param other handler whose mapped file is read.
+     */
+    private SimpleMappedMemoryHandler(SimpleMappedMemoryHandler other) {
+        fileSize        = other.fileSize;
+        lastIntPos      = other.lastIntPos;
+        order           = other.order;
+        backend         = other.backend.duplicate();
+        extraByteCount  = other.extraByteCount;
+        fileHeaderData  = other.fileHeaderData;
+        fileHeader      = other.fileHeader;
+        fileHeaderBytes = other.fileHeaderBytes;
+        firstDataIndex  = other.firstDataIndex;
+        isCompressed    = other.isCompressed;
     }
 
 
+    /**
+     * Get a handler reading the same mapped file whose byte order is set
+     * independently of this one's, so one window can view the data in another
+     * byte order without changing what other users of the file see.
+     * Nothing is mapped again. The mapping is only valid until this handler is closed,
+     * and closing the duplicate does nothing.
+     *
+     * @return handler reading the same mapped file.
+     */
+    public SimpleMappedMemoryHandler duplicate() {
+        return new SimpleMappedMemoryHandler(this);
+    }
+
+
+    /**
+     * Create the object used to map and read the file.
+     * Use a MemorySegment if possible unless told otherwise.
+     *
+     * @param fileChannel channel of file to map.
+     * @param fileSize    size of file in bytes.
+     * @param order       byte order of data.
+     * @return object used to map and read file.
+     * @throws IOException if could not map file.
+     */
+    private static MemoryBackend createBackend(FileChannel fileChannel, long fileSize, ByteOrder order)
+            throws IOException {
+
+        String choice = System.getProperty("memoryBackend");
+        boolean useBuffers = "buffer".equalsIgnoreCase(choice);
+
+        if (!useBuffers && SegmentMemoryBackend.isAvailable()) {
+            try {
+                return new SegmentMemoryBackend(fileChannel, fileSize, order);
+            }
+            catch (Throwable e) {
+                // Fall back to ByteBuffers
+                System.out.println("Cannot map file as MemorySegment, use ByteBuffers: " + e);
+            }
+        }
+        else if ("segment".equalsIgnoreCase(choice)) {
+            System.out.println("MemorySegment needs JDK 22+, use ByteBuffers");
+        }
+
+        return new ByteBufferMemoryBackend(fileChannel, fileSize, order);
+    }
+
+
+    /**
+     * Get the name of the object used to map and read the file.
+     * @return "ByteBuffer" or "MemorySegment".
+     */
+    public String getBackendName() {return backend.getName();}
+
+
     /**
      * Does the first record of the first map contain compressed data?
      * @return {@code true} if data in first record of the first
@@ -261,6 +304,7 @@ public class SimpleMappedMemoryHandler {
 
     /** Close unneeded file channel object. */
     public void close() {
+        if (fileChannel == null) return;
         try {fileChannel.close();}
         catch (IOException e) {}
     }
@@ -287,7 +331,7 @@ public class SimpleMappedMemoryHandler {
      * Get the maximum byte size of each memory map (last one will be smaller).
      * @return max byte size of each memory map.
      */
-    public long getMaxMapSize() { return maxMapSize; }
+    public long getMaxMapSize() { return backend.getMaxMapSize(); }
 
 
     /**
@@ -305,15 +349,16 @@ public class SimpleMappedMemoryHandler {
 
 
     /**
-     * Get the size of the given map.
+     * Get the size of the given map, not counting its overlap with the next map.
      * @param mapIndex index of map.
      * @return size of map in bytes
      */
     public int getMapSize(int mapIndex) {
-        if (mapIndex < 0 || mapIndex > mapCount - 1) {
+        if (mapIndex < 0 || mapIndex > backend.getMapCount() - 1) {
             return 0;
         }
-        return maps.get(mapIndex).limit();
+        long maxMapSize = backend.getMaxMapSize();
+        return (int) Math.min(maxMapSize, fileSize - mapIndex*maxMapSize);
     }
 
 
@@ -321,14 +366,14 @@ public class SimpleMappedMemoryHandler {
      * Get the number of memory maps used to fully map file.
      * @return number of memory maps used to fully map file.
      */
-    public int getMapCount() {return mapCount;}
+    public int getMapCount() {return backend.getMapCount();}
 
 
     /**
      * Get the first memory map - used to map the beginning of the file.
      * @return first memory map - used to map the beginning of the file.
      */
-    public ByteBuffer getFirstMap() {return maps.get(0);}
+    public ByteBuffer getFirstMap() {return backend.getMap(0);}
 
 
     /**
@@ -338,9 +383,7 @@ public class SimpleMappedMemoryHandler {
     public void setByteOrder(ByteOrder order) {
         if (this.order == order) return;
         this.order = order;
-        for (ByteBuffer map : maps) {
-            map.order(order);
-        }
+        backend.setByteOrder(order);
     }
 
 
@@ -357,10 +400,10 @@ public class SimpleMappedMemoryHandler {
      * @return indicated memory map.
      */
     public ByteBuffer getMap(int mapIndex) {
-        if (mapIndex < 0 || mapIndex > mapCount - 1) {
+        if (mapIndex < 0 || mapIndex > backend.getMapCount() - 1) {
             return null;
         }
-        return maps.get(mapIndex);
+        return backend.getMap(mapIndex);
     }
 
 
@@ -380,51 +423,30 @@ public class SimpleMappedMemoryHandler {
      * @return int value in file at byte index
      */
     public int getIntAtBytePos(long bytePosition) {
-        int mapIndex  = (int) (bytePosition/maxMapSize);
-        int byteIndex = (int) (bytePosition - (mapIndex * maxMapSize));
-        ByteBuffer buf = getMap(mapIndex);
-        if (buf == null) return 0;
+        // Fast path for the vast majority of reads
+        if (bytePosition >= 0L && bytePosition <= lastIntPos) {
+            return backend.getInt(bytePosition);
+        }
 
         // Check for end effects if 1, 2, or 3 bytes left.
         // Assume highest (most significant) bytes are missing.
         long remainingBytes = fileSize - bytePosition;
-        if (remainingBytes < 4L && remainingBytes > 0L) {
-           int lastInt=0;
-            switch ((int)remainingBytes) {
-                case 1:
-                    lastInt = ((int) buf.get(byteIndex)) & 0xff;
-                    break;
-
-                case 2:
-                    if (buf.order() == ByteOrder.BIG_ENDIAN) {
-                        lastInt = ((((int) buf.get(byteIndex)) << 8) & 0xff00) |
-                                   (((int) buf.get(byteIndex + 1) & 0xff));
-                    }
-                    else {
-                        lastInt = ((((int) buf.get(byteIndex + 1)) << 8) & 0xff00) |
-                                   (((int) buf.get(byteIndex) & 0xff));
-                    }
-                    break;
-
-                case 3:
-                    if (buf.order() == ByteOrder.BIG_ENDIAN) {
-                        lastInt = ((((int) buf.get(byteIndex)) << 16) & 0xff0000)  |
-                                  ((((int) buf.get(byteIndex + 1)) << 8) & 0xff00) |
-                                   (((int) buf.get(byteIndex + 2)) & 0xff);
-                    }
-                    else {
-                        lastInt = ((((int) buf.get(byteIndex + 2)) << 16) & 0xff0000) |
-                                  ((((int) buf.get(byteIndex + 1)) << 8)  & 0xff00)   |
-                                   (((int) buf.get(byteIndex)) & 0xff);
-                    }
-                    break;
-
-                default:
+        if (bytePosition >= 0L && remainingBytes < 4L && remainingBytes > 0L) {
+            int lastInt = 0;
+            boolean bigEndian = (order == ByteOrder.BIG_ENDIAN);
+            for (int i=0; i < remainingBytes; i++) {
+                int b = ((int) backend.get(bytePosition + i)) & 0xff;
+                if (bigEndian) {
+                    lastInt = (lastInt << 8) | b;
+                }
+                else {
+                    lastInt |= b << (8*i);
+                }
             }
             return lastInt;
         }
 
-        return buf.getInt(byteIndex);
+        return 0;
     }
 
 
@@ -434,18 +456,15 @@ public class SimpleMappedMemoryHandler {
      * @return short value in file at byte index
      */
     public short getShortAtBytePos(long bytePosition) {
-        int mapIndex  = (int) (bytePosition/maxMapSize);
-        int byteIndex = (int) (bytePosition - (mapIndex * maxMapSize));
-        ByteBuffer buf = getMap(mapIndex);
-        if (buf == null) return 0;
+        if (bytePosition < 0L || bytePosition >= fileSize) return 0;
 
         // Check for end effect if 1 byte left
         // Assume highest (most significant) byte is missing.
         if ((fileSize - bytePosition) == 1L) {
-            return (short)(((int) buf.get(byteIndex)) & 0xff);
+            return (short)(((int) backend.get(bytePosition)) & 0xff);
         }
 
-        return buf.getShort(byteIndex);
+        return backend.getShort(bytePosition);
     }
 
 
@@ -455,11 +474,99 @@ public class SimpleMappedMemoryHandler {
      * @return byte value in file at byte index
      */
     public byte getByteAtBytePos(long bytePosition) {
-        int mapIndex  = (int) (bytePosition/maxMapSize);
-        int byteIndex = (int) (bytePosition - (mapIndex * maxMapSize));
-        ByteBuffer buf = getMap(mapIndex);
-        if (buf == null) return 0;
-        return buf.get(byteIndex);
+        if (bytePosition < 0L || bytePosition >= fileSize) return 0;
+        return backend.get(bytePosition);
+    }
+
+
+    /**
+     * Read bytes from the file into an array. This works regardless
+     * of where the data falls in relation to the memory maps.
+     *
+     * @param bytePosition byte index into file of first byte
+     * @param dst          array to hold the bytes
+     * @param offset       index into dst to place first byte
+     * @param length       number of bytes to read
+     * @return number of bytes actually read, which may be less than length at the file's end
+     */
+    public int getBytes(long bytePosition, byte[] dst, int offset, int length) {
+        if (bytePosition < 0L || bytePosition >= fileSize || length < 1) return 0;
+        if (length > fileSize - bytePosition) length = (int) (fileSize - bytePosition);
+
+        backend.getBytes(bytePosition, dst, offset, length);
+        return length;
+    }
+
+
+    /**
+     * Get a view of the given region of the file as a ByteBuffer with position = 0,
+     * limit = length and the same byte order as the data. No data is copied if
+     * using a MemorySegment, or if using ByteBuffers and the region is in a single map,
+     * which is always the case if it's no larger than
+     * {@link ByteBufferMemoryBackend#MAP_OVERLAP} bytes.
+     * Otherwise the data is copied into a new buffer.
+     *
+     * @param bytePosition byte index into file of region's start
+     * @param length       number of bytes in region
+     * @return buffer containing region, or null if region is not entirely in file
+     */
+    public ByteBuffer getByteBuffer(long bytePosition, int length) {
+        if (bytePosition < 0L || length < 0 || bytePosition + length > fileSize) return null;
+
+        return backend.getByteBuffer(bytePosition, length);
+    }
+
+
+    /**
+     * Can the given region of the file be viewed by {@link #getByteBuffer(long, int)}
+     * without copying any data?
+     *
+     * @param bytePosition byte index into file of region's start
+     * @param length       number of bytes in region
+     * @return {@code true} if region is entirely in file and can be viewed without copying
+     */
+    public boolean canViewWithoutCopy(long bytePosition, long length) {
+        if (bytePosition < 0L || length < 0L || length > Integer.MAX_VALUE ||
+            bytePosition + length > fileSize) return false;
+
+        return backend.canView(bytePosition, length);
+    }
+
+
+    /**
+     * Read consecutive int values from the file starting at the given word position.
+     * Only ints fully contained in the file are read.
+     *
+     * @param wordPosition word position in file of first int
+     * @param dst          array to hold the ints
+     * @param offset       index into dst to place first int
+     * @param count        number of ints to read
+     * @return number of ints actually read, which may be less than count at the file's end
+     */
+    public int getInts(long wordPosition, int[] dst, int offset, int count) {
+        return getIntsAtBytePos(4L*wordPosition, dst, offset, count);
+    }
+
+
+    /**
+     * Read consecutive int values from the file starting at the given byte index.
+     * Only ints fully contained in the file are read.
+     *
+     * @param bytePosition byte index into file of first int
+     * @param dst          array to hold the ints
+     * @param offset       index into dst to place first int
+     * @param count        number of ints to read
+     * @return number of ints actually read, which may be less than count at the file's end
+     */
+    public int getIntsAtBytePos(long bytePosition, int[] dst, int offset, int count) {
+        if (bytePosition < 0L || bytePosition > lastIntPos || count < 1) return 0;
+
+        // Don't read past the end of the file
+        long available = (lastIntPos - bytePosition)/4L + 1L;
+        if (count > available) count = (int) available;
+
+        backend.getInts(bytePosition, dst, offset, count);
+        return count;
     }
 
 
@@ -468,6 +575,6 @@ public class SimpleMappedMemoryHandler {
      * @param wordIndex index of word
      * @return index of map containing word
      */
-    public int getMapIndex(long wordIndex) {return (int) (wordIndex*4/maxMapSize);}
+    public int getMapIndex(long wordIndex) {return (int) (4L*wordIndex/backend.getMaxMapSize());}
 
 }
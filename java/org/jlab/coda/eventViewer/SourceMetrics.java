@@ -0,0 +1,227 @@
+package org.jlab.coda.eventViewer;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.swing.*;
+import javax.swing.event.AncestorEvent;
+import javax.swing.event.AncestorListener;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class counts what a live event source (ET or cMsg) receives so
+ * it's possible to see whether the viewer keeps up with a run.
+ * Counters are LongAdders so the receiving threads never contend.
+ * Rates are calculated from the change in counts between samples taken
+ * no more often than once a second, whether asked for by the GUI or by JMX.
+ */
+public class SourceMetrics implements SourceMetricsMBean {
+
+    /** Shortest time between rate samples in nanoseconds. */
+    private static final long SAMPLE_NANOS = 1000000000L;
+
+    /** Name of this object in JMX. */
+    private ObjectName objectName;
+
+    /** Number of ET events or cMsg messages received. */
+    private final LongAdder buffersReceived = new LongAdder();
+
+    /** Number of bytes received. */
+    private final LongAdder bytesReceived = new LongAdder();
+
+    /** Number of evio events parsed out of buffers. */
+    private final LongAdder eventsReceived = new LongAdder();
+
+    /** Number of evio events rejected by the filter. */
+    private final LongAdder eventsFiltered = new LongAdder();
+
+    /** Number of buffers dropped because the viewer could not keep up. */
+    private final LongAdder buffersDropped = new LongAdder();
+
+    /** Number of buffers which could not be parsed. */
+    private final LongAdder parseFailures = new LongAdder();
+
+    /** Total time spent parsing buffers in nanoseconds. */
+    private final LongAdder parseNanos = new LongAdder();
+
+    /** Number of buffers parsed. */
+    private final LongAdder parseCount = new LongAdder();
+
+    /** Time of last rate sample. */
+    private long lastSampleTime = System.nanoTime();
+
+    /** Event and byte counts at last rate sample. */
+    private long lastEvents, lastBytes;
+
+    /** Rates calculated at last sample. */
+    private double eventRate, byteRate;
+
+
+
+    /**
+     * Register this object with the platform MBean server under the name
+     * "org.jlab.coda.eventViewer:type=SourceMetrics,name=<i>name</i>".
+     * @param name name of event source.
+     */
+    public void register(String name) {
+        objectName = MetricsRegistry.register(this, "SourceMetrics", name);
+    }
+
+
+    /** Remove this object from the platform MBean server if registered. */
+    public void unregister() {
+        if (objectName == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        }
+        catch (JMException e) {}
+        objectName = null;
+    }
+
+
+    /** Set all counters and rates back to zero. */
+    public synchronized void reset() {
+        buffersReceived.reset();
+        bytesReceived.reset();
+        eventsReceived.reset();
+        eventsFiltered.reset();
+        buffersDropped.reset();
+        parseFailures.reset();
+        parseNanos.reset();
+        parseCount.reset();
+        lastEvents = lastBytes = 0L;
+        eventRate = byteRate = 0.;
+        lastSampleTime = System.nanoTime();
+    }
+
+
+    /**
+     * Count a received buffer.
+     * @param bytes size of buffer in bytes.
+     */
+    public void bufferReceived(int bytes) {
+        buffersReceived.increment();
+        bytesReceived.add(bytes);
+    }
+
+    /**
+     * Count a buffer successfully parsed.
+     * @param nanos time taken to parse it in nanoseconds.
+     */
+    public void bufferParsed(long nanos) {
+        parseCount.increment();
+        parseNanos.add(nanos);
+    }
+
+    /** Count a buffer that could not be parsed. */
+    public void parseFailed() {parseFailures.increment();}
+
+    /** Count an evio event parsed out of a buffer. */
+    public void eventReceived() {eventsReceived.increment();}
+
+    /** Count an evio event rejected by the filter. */
+    public void eventFiltered() {eventsFiltered.increment();}
+
+    /** Count a buffer dropped because the viewer could not keep up. */
+    public void bufferDropped() {buffersDropped.increment();}
+
+    /**
+     * Count buffers dropped because the viewer could not keep up.
+     * @param n number of buffers dropped.
+     */
+    public void buffersDropped(long n) {buffersDropped.add(n);}
+
+
+    /** Calculate new rates if it's been long enough since the last time. */
+    private synchronized void sample() {
+        long now = System.nanoTime();
+        long elapsed = now - lastSampleTime;
+        if (elapsed < SAMPLE_NANOS) return;
+
+        long events = eventsReceived.sum();
+        long bytes  = bytesReceived.sum();
+        eventRate = (events - lastEvents) * 1.e9 / elapsed;
+        byteRate  = (bytes  - lastBytes)  * 1.e9 / elapsed;
+        lastEvents = events;
+        lastBytes  = bytes;
+        lastSampleTime = now;
+    }
+
+
+    /** {@inheritDoc} */
+    public long getBuffersReceived() {return buffersReceived.sum();}
+
+    /** {@inheritDoc} */
+    public long getBytesReceived() {return bytesReceived.sum();}
+
+    /** {@inheritDoc} */
+    public long getEventsReceived() {return eventsReceived.sum();}
+
+    /** {@inheritDoc} */
+    public long getEventsFiltered() {return eventsFiltered.sum();}
+
+    /** {@inheritDoc} */
+    public long getParseFailures() {return parseFailures.sum();}
+
+    /** {@inheritDoc} */
+    public long getBuffersDropped() {return buffersDropped.sum();}
+
+    /** {@inheritDoc} */
+    public double getAverageParseMicros() {
+        long count = parseCount.sum();
+        if (count == 0) return 0.;
+        return parseNanos.sum() / 1000. / count;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized double getEventRate() {
+        sample();
+        return eventRate;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized double getByteRate() {
+        sample();
+        return byteRate;
+    }
+
+
+    /**
+     * Get a one line summary of rates and counts for display.
+     * @return one line summary of rates and counts.
+     */
+    public String getSummary() {
+        return String.format("%.1f ev/s, %.2f MB/s, filtered %d, failed %d, dropped %d, parse %.0f \u00b5s",
+                             getEventRate(), getByteRate()/1.e6, getEventsFiltered(),
+                             getParseFailures(), getBuffersDropped(), getAverageParseMicros());
+    }
+
+
+    /**
+     * Create a label which shows {@link #getSummary()}, updated once a second
+     * while it's showing. Its timer is stopped when the label is removed or hidden,
+     * so labels of handlers no longer used don't keep firing.
+     * @return label showing rates and counts.
+     */
+    public JLabel createRateLabel() {
+        final JLabel label = new JLabel(getSummary());
+        final Timer timer = new Timer(1000, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                label.setText(getSummary());
+            }
+        });
+        label.addAncestorListener(new AncestorListener() {
+            public void ancestorAdded(AncestorEvent e) {
+                label.setText(getSummary());
+                timer.start();
+            }
+            public void ancestorRemoved(AncestorEvent e) {
+                timer.stop();
+            }
+            public void ancestorMoved(AncestorEvent e) {}
+        });
+        return label;
+    }
+}
@@ -0,0 +1,35 @@
+package org.jlab.coda.eventViewer;
+
+/**
+ * This interface describes what JMX clients can see of a {@link SourceMetrics}.
+ * Rates are averaged over at least the last second.
+ */
+public interface SourceMetricsMBean {
+
+    /** @return number of buffers (ET events or cMsg messages) received. */
+    long getBuffersReceived();
+
+    /** @return number of bytes received. */
+    long getBytesReceived();
+
+    /** @return number of evio events parsed out of received buffers. */
+    long getEventsReceived();
+
+    /** @return number of evio events rejected by the filter. */
+    long getEventsFiltered();
+
+    /** @return number of buffers which could not be parsed. */
+    long getParseFailures();
+
+    /** @return number of buffers dropped because the viewer could not keep up. */
+    long getBuffersDropped();
+
+    /** @return average time to parse a buffer in microseconds. */
+    double getAverageParseMicros();
+
+    /** @return evio events received per second. */
+    double getEventRate();
+
+    /** @return bytes received per second. */
+    double getByteRate();
+}
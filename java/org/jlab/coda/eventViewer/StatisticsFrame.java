@@ -0,0 +1,297 @@
+package org.jlab.coda.eventViewer;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class implements a window that displays statistics about events:
+ * counts of each top-level tag, event lengths, record compression ratios
+ * and trigger types. For a file, the memory mapped file is divided into chunks
+ * of whole blocks or records which are scanned in parallel. For an ET system or
+ * cMsg server, each buffer is scanned as it arrives. The display updates
+ * twice a second while this goes on.
+ */
+public class StatisticsFrame extends JFrame {
+
+    /** Try to make chunks of file scanned by one thread at least this big. */
+    private static final int CHUNK_BYTES = 16000000;
+
+    /** Statistics of everything scanned so far. */
+    private final EventStatistics statistics = new EventStatistics();
+
+    /** Where statistics are displayed. */
+    private JTextArea textArea;
+
+    /** Shows progress. */
+    private JLabel statusLabel;
+
+    /** Updates the display. */
+    private Timer timer;
+
+    /** File being scanned, if any. */
+    private FileSession fileSession;
+
+    /** Thread scanning file, if any. */
+    private FileScan fileScan;
+
+    /** Live feed handler feeding statistics, if any. */
+    private FeedHandler feedHandler;
+
+
+
+    /**
+     * Constructor for statistics of a file which are gathered in parallel.
+     * The session is released when this window is disposed of.
+     * @param session session of file to scan.
+     */
+    public StatisticsFrame(FileSession session) {
+        super(session.getFile().getName() + " statistics");
+        fileSession = session;
+        createWidgets();
+        fileScan = new FileScan(session.getMemoryHandler());
+        fileScan.start();
+    }
+
+
+    /**
+     * Constructor for statistics of the buffers received from a live feed:
+     * ET, cMsg, a replayed file, a directory of files or standard input.
+     * @param handler object handling the feed.
+     */
+    public StatisticsFrame(FeedHandler handler) {
+        super(handler.getName() + " statistics");
+        feedHandler = handler;
+        createWidgets();
+        handler.setStatistics(statistics);
+    }
+
+
+    /** Add widgets to this frame, start updating them, and show it. */
+    private void createWidgets() {
+        addWindowListener(new WindowAdapter() {
+            public void windowClosing(WindowEvent event) {
+                StatisticsFrame.this.dispose();
+            }
+        });
+
+        setLayout(new BorderLayout());
+
+        textArea = new JTextArea();
+        textArea.setEditable(false);
+        textArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        add(new JScrollPane(textArea), BorderLayout.CENTER);
+
+        JPanel bottomPanel = new JPanel(new BorderLayout());
+        statusLabel = new JLabel(" ");
+        bottomPanel.add(statusLabel, BorderLayout.CENTER);
+
+        JButton clearButton = new JButton("Clear");
+        clearButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                statistics.clear();
+                refresh();
+            }
+        });
+        // Clearing a finished file scan makes no sense
+        clearButton.setEnabled(fileSession == null);
+        bottomPanel.add(clearButton, BorderLayout.EAST);
+        add(bottomPanel, BorderLayout.SOUTH);
+
+        timer = new Timer(500, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                refresh();
+            }
+        });
+        timer.start();
+
+        setSize(800, 800);
+        setLocationRelativeTo(null);
+        setVisible(true);
+    }
+
+
+    /** Display the latest statistics. */
+    private void refresh() {
+        int caret = textArea.getCaretPosition();
+        textArea.setText(statistics.report());
+        textArea.setCaretPosition(Math.min(caret, textArea.getDocument().getLength()));
+
+        if (fileScan != null) {
+            statusLabel.setText(fileScan.getStatus());
+            if (fileScan.isDone()) {
+                timer.stop();
+            }
+        }
+    }
+
+
+    /** Stop gathering statistics and give back the file, if any. */
+    @Override
+    public void dispose() {
+        timer.stop();
+        if (fileScan != null) {
+            fileScan.cancel();
+        }
+        if (fileSession != null) {
+            fileSession.release();
+            fileSession = null;
+        }
+        if (feedHandler != null) {
+            feedHandler.setStatistics(null);
+        }
+        super.dispose();
+    }
+
+
+    /**
+     * This class is a thread which walks the block or record headers of a
+     * memory mapped file and hands out chunks of whole blocks or records
+     * to a pool of threads to scan.
+     */
+    private class FileScan extends Thread {
+
+        /** Object which memory maps the file. */
+        private final SimpleMappedMemoryHandler handler;
+
+        /** Threads scanning chunks. */
+        private final ExecutorService pool;
+
+        /** Each scanning thread's own statistics which it merges after every chunk. */
+        private final ThreadLocal<EventStatistics> localStatistics = new ThreadLocal<EventStatistics>() {
+            protected EventStatistics initialValue() {return new EventStatistics();}
+        };
+
+        /** Bytes of file scanned so far. */
+        private final AtomicLong bytesScanned = new AtomicLong();
+
+        /** Time scanning started in milliseconds. */
+        private final long startTime = System.currentTimeMillis();
+
+        /** Time scanning started for metrics. */
+        private final long startNanos = MetricsRegistry.timer(MetricsRegistry.STATISTICS_SCAN).start();
+
+        /** Time scanning took in milliseconds, -1 if not done yet. */
+        private volatile long scanTime = -1L;
+
+        /** Error found walking headers, if any. */
+        private volatile String error;
+
+        /** Set to stop scanning. */
+        private volatile boolean cancelled;
+
+
+        /**
+         * Constructor.
+         * @param handler object which memory maps the file.
+         */
+        FileScan(SimpleMappedMemoryHandler handler) {
+            super("Statistics file scan");
+            this.handler = handler;
+            setDaemon(true);
+            pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+
+
+        /** Stop scanning. */
+        void cancel() {
+            cancelled = true;
+            pool.shutdownNow();
+        }
+
+
+        /**
+         * Is the scan done?
+         * @return {@code true} if scan done.
+         */
+        boolean isDone() {return scanTime > -1L;}
+
+
+        /**
+         * Get a description of the scan's progress.
+         * @return description of the scan's progress.
+         */
+        String getStatus() {
+            long fileSize = handler.getFileSize();
+            String status;
+            if (isDone()) {
+                status = String.format("Scanned %,d bytes in %.2f sec", bytesScanned.get(), scanTime/1000.);
+            }
+            else {
+                status = String.format("Scanning ... %d%%", 100L*bytesScanned.get()/fileSize);
+            }
+            if (error != null) {
+                status += ", " + error;
+            }
+            return status;
+        }
+
+
+        /**
+         * Scan the given chunk of the file in one of the pool's threads.
+         * @param pos byte position of chunk in file.
+         * @param len length of chunk in bytes.
+         */
+        private void submit(long pos, int len) {
+            final ByteBuffer chunk = handler.getByteBuffer(pos, len);
+            final int chunkLen = len;
+            pool.execute(new Runnable() {
+                public void run() {
+                    if (cancelled) return;
+                    EventStatistics local = localStatistics.get();
+                    local.scanBuffer(chunk);
+                    statistics.merge(local);
+                    local.clear();
+                    bytesScanned.addAndGet(chunkLen);
+                }
+            });
+        }
+
+
+        /** Walk the headers, handing out chunks along the way, then wait for the scan to finish. */
+        public void run() {
+            HeaderWalker walker = new HeaderWalker(handler);
+            long chunkStart = walker.getNextPosition();
+            long pos = chunkStart;
+
+            while (!cancelled && walker.next()) {
+                if (walker.getNextPosition() - chunkStart > Integer.MAX_VALUE) {
+                    error = String.format("bad length at byte %,d", walker.getPosition());
+                    break;
+                }
+
+                pos = walker.getNextPosition();
+                if (pos - chunkStart >= CHUNK_BYTES) {
+                    submit(chunkStart, (int) (pos - chunkStart));
+                    chunkStart = pos;
+                }
+            }
+            if (error == null) {
+                error = walker.getError();
+            }
+
+            if (!cancelled && pos > chunkStart) {
+                submit(chunkStart, (int) (pos - chunkStart));
+            }
+
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e) {}
+
+            scanTime = System.currentTimeMillis() - startTime;
+            if (!cancelled) {
+                MetricsRegistry.timer(MetricsRegistry.STATISTICS_SCAN).stop(startNanos, bytesScanned.get());
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.jlab.coda.eventViewer;
+
+import org.jlab.coda.hipo.FileHeader;
+import org.jlab.coda.hipo.RecordHeader;
+import org.jlab.coda.hipo.RecordInputStream;
+import org.jlab.coda.jevio.EvioException;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * This class is a feed of evio data read from a stream, such as a pipe into
+ * standard input, block by block (evio 4) or record by record (evio 6).
+ * The stream may hold whole evio files, one after another, as written by
+ * "cat run_*.evio | ..." or by a program writing evio to its standard output.
+ * The dictionary in the file header of an evio 6 file goes along with its records.<p>
+ *
+ * Reading a stream can't be interrupted. Once the subscription is cancelled,
+ * the feed's thread ends with the next block or record, which is lost.
+ */
+class StreamFeed extends PolledFeed {
+
+    /** Size of evio 4 block header, the smallest header, in bytes. */
+    private static final int MIN_HEADER_BYTES = 32;
+
+    /** Stream to read. */
+    private final DataInputStream in;
+
+    /** Dictionary of the file being read, or null if none. */
+    private String dictionary;
+
+
+
+    /**
+     * Constructor.
+     * @param name name of feed.
+     * @param in   stream to read.
+     */
+    StreamFeed(String name, InputStream in) {
+        super(name);
+        this.in = new DataInputStream(in);
+    }
+
+
+    /** {@inheritDoc} */
+    protected String getDictionary() {return dictionary;}
+
+
+    /** {@inheritDoc} */
+    protected ByteBuffer poll() throws Exception {
+        while (!isCancelled()) {
+            byte[] start = new byte[MIN_HEADER_BYTES];
+            if (!readOrEnd(start)) return null;
+
+            ByteBuffer header = ByteBuffer.wrap(start);
+            if (header.getInt(RecordHeader.MAGIC_OFFSET) != RecordHeader.HEADER_MAGIC) {
+                header.order(ByteOrder.LITTLE_ENDIAN);
+                if (header.getInt(RecordHeader.MAGIC_OFFSET) != RecordHeader.HEADER_MAGIC) {
+                    throw new EvioException("bad magic number in stream");
+                }
+            }
+
+            // The header of an evio 6 file, which comes before its records
+            int id = header.getInt(FileHeader.FILE_ID_OFFSET);
+            if (id == FileHeader.EVIO_FILE_UNIQUE_WORD || id == FileHeader.HIPO_FILE_UNIQUE_WORD) {
+                readFileHeader(start, header.order());
+                continue;
+            }
+
+            long len = 4L * (header.getInt(RecordHeader.RECORD_LENGTH_OFFSET) & 0xffffffffL);
+            if (len < MIN_HEADER_BYTES || len > Integer.MAX_VALUE) {
+                throw new EvioException("bad block or record length in stream, " + len + " bytes");
+            }
+
+            byte[] data = new byte[(int) len];
+            System.arraycopy(start, 0, data, 0, MIN_HEADER_BYTES);
+            in.readFully(data, MIN_HEADER_BYTES, data.length - MIN_HEADER_BYTES);
+
+            // An evio 6 trailer or empty evio 4 block has no events
+            if (header.getInt(RecordHeader.EVENT_COUNT_OFFSET) == 0) {
+                // A new file may follow, with its own dictionary
+                if ((header.getInt(RecordHeader.BIT_INFO_OFFSET) & 0x200) != 0) {
+                    dictionary = null;
+                }
+                continue;
+            }
+
+            return markLast(ByteBuffer.wrap(data).order(header.order()));
+        }
+        return null;
+    }
+
+
+    /**
+     * Fill an array from the stream unless it ends first.
+     * @param bytes array to fill.
+     * @return {@code false} if the stream ended before anything was read.
+     * @throws IOException if the stream ends part way through, or cannot be read.
+     */
+    private boolean readOrEnd(byte[] bytes) throws IOException {
+        int first = in.read(bytes, 0, bytes.length);
+        if (first < 0) return false;
+        in.readFully(bytes, first, bytes.length - first);
+        return true;
+    }
+
+
+    /**
+     * Read the rest of an evio 6 file header, keeping any dictionary in its user header.
+     * @param start first bytes of file header.
+     * @param order byte order of file.
+     * @throws Exception if stream cannot be read or file header is bad.
+     */
+    private void readFileHeader(byte[] start, ByteOrder order) throws Exception {
+        byte[] bytes = new byte[FileHeader.HEADER_SIZE_BYTES];
+        System.arraycopy(start, 0, bytes, 0, MIN_HEADER_BYTES);
+        in.readFully(bytes, MIN_HEADER_BYTES, bytes.length - MIN_HEADER_BYTES);
+
+        FileHeader fileHeader = new FileHeader();
+        fileHeader.readHeader(ByteBuffer.wrap(bytes).order(order));
+
+        // Skip what's left of the header and the index, then read the user header
+        long skip = fileHeader.getHeaderLength() - FileHeader.HEADER_SIZE_BYTES +
+                    fileHeader.getIndexLength();
+        while (skip > 0) {
+            int n = in.skipBytes((int) Math.min(skip, Integer.MAX_VALUE));
+            if (n < 1) throw new EOFException();
+            skip -= n;
+        }
+
+        byte[] userHeader = new byte[fileHeader.getUserHeaderLength() +
+                                     fileHeader.getUserHeaderLengthPadding()];
+        in.readFully(userHeader);
+
+        dictionary = null;
+        if (fileHeader.hasDictionary() && userHeader.length > 0) {
+            // The user header is a record whose first event is the dictionary
+            RecordInputStream record = new RecordInputStream(order);
+            record.readRecord(ByteBuffer.wrap(userHeader).order(order), 0);
+            dictionary = new String(record.getEvent(0), "US-ASCII");
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.jlab.coda.eventViewer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class times an operation each time it's done. Use it like:
+ * <pre>
+ *     long t0 = metric.start();
+ *     doOperation();
+ *     metric.stop(t0);
+ * </pre>
+ * If the operation handles a known number of bytes, use {@link #stop(long, long)}
+ * so the throughput can be calculated. Obtain objects of this class from
+ * {@link MetricsRegistry#timer(String)}.
+ */
+public class TimerMetric implements TimerMetricMBean {
+
+    /** Name of timed operation. */
+    private final String name;
+
+    /** Number of times operation was done. */
+    private final LongAdder count = new LongAdder();
+
+    /** Total time taken in nanoseconds. */
+    private final LongAdder totalNanos = new LongAdder();
+
+    /** Total number of bytes handled. */
+    private final LongAdder bytes = new LongAdder();
+
+    /** Longest time taken in nanoseconds. */
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /** Last time taken in nanoseconds. */
+    private volatile long lastNanos;
+
+
+    /**
+     * Constructor.
+     * @param name name of timed operation.
+     */
+    TimerMetric(String name) {
+        this.name = name;
+    }
+
+
+    /**
+     * Get the name of the timed operation.
+     * @return name of the timed operation.
+     */
+    public String getName() {return name;}
+
+
+    /**
+     * Mark the start of an operation.
+     * @return start time to be passed to {@link #stop(long)}.
+     */
+    public long start() {return System.nanoTime();}
+
+
+    /**
+     * Mark the end of an operation.
+     * @param startTime value returned by {@link #start()}.
+     */
+    public void stop(long startTime) {
+        long nanos = System.nanoTime() - startTime;
+        count.increment();
+        totalNanos.add(nanos);
+        lastNanos = nanos;
+
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+
+    /**
+     * Mark the end of an operation which handled the given number of bytes.
+     * @param startTime value returned by {@link #start()}.
+     * @param byteCount number of bytes handled.
+     */
+    public void stop(long startTime, long byteCount) {
+        stop(startTime);
+        bytes.add(byteCount);
+    }
+
+
+    /** {@inheritDoc} */
+    public long getCount() {return count.sum();}
+
+    /** {@inheritDoc} */
+    public double getTotalMillis() {return totalNanos.sum() / 1.e6;}
+
+    /** {@inheritDoc} */
+    public double getMeanMillis() {
+        long n = count.sum();
+        if (n == 0) return 0.;
+        return totalNanos.sum() / 1.e6 / n;
+    }
+
+    /** {@inheritDoc} */
+    public double getMaxMillis() {return maxNanos.get() / 1.e6;}
+
+    /** {@inheritDoc} */
+    public double getLastMillis() {return lastNanos / 1.e6;}
+
+    /** {@inheritDoc} */
+    public long getBytes() {return bytes.sum();}
+
+    /** {@inheritDoc} */
+    public double getMegabytesPerSecond() {
+        long nanos = totalNanos.sum();
+        if (nanos == 0) return 0.;
+        return bytes.sum() * 1.e3 / nanos;
+    }
+
+    /** {@inheritDoc} */
+    public void reset() {
+        count.reset();
+        totalNanos.reset();
+        bytes.reset();
+        maxNanos.set(0L);
+        lastNanos = 0L;
+    }
+
+
+    /**
+     * Get a one line summary of this metric.
+     * @return one line summary of this metric.
+     */
+    public String toString() {
+        String s = String.format("%-20s count %,d, mean %.3f ms, max %.3f ms, last %.3f ms",
+                                 name, getCount(), getMeanMillis(), getMaxMillis(), getLastMillis());
+        if (getBytes() > 0) {
+            s += String.format(", %.1f MB/s", getMegabytesPerSecond());
+        }
+        return s;
+    }
+}
@@ -0,0 +1,31 @@
+package org.jlab.coda.eventViewer;
+
+/**
+ * This interface describes what JMX clients can see of a {@link TimerMetric}.
+ */
+public interface TimerMetricMBean {
+
+    /** @return number of times the operation was timed. */
+    long getCount();
+
+    /** @return total time of all operations in milliseconds. */
+    double getTotalMillis();
+
+    /** @return average time of an operation in milliseconds. */
+    double getMeanMillis();
+
+    /** @return longest time of an operation in milliseconds. */
+    double getMaxMillis();
+
+    /** @return time of the last operation in milliseconds. */
+    double getLastMillis();
+
+    /** @return total bytes handled by all operations, 0 if not applicable. */
+    long getBytes();
+
+    /** @return bytes handled per second of operation time in MB/s, 0 if not applicable. */
+    double getMegabytesPerSecond();
+
+    /** Set all values back to zero. */
+    void reset();
+}
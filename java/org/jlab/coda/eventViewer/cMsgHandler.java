@@ -1,17 +1,12 @@
 package org.jlab.coda.eventViewer;
 
 import org.jlab.coda.cMsg.*;
-import org.jlab.coda.hipo.CompressionType;
-import org.jlab.coda.jevio.*;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.LineBorder;
 import java.awt.*;
 import java.awt.event.*;
-import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.util.ArrayList;
 
 /**
  * This class handles all cMsg communications using a singleton pattern.
@@ -20,17 +15,17 @@ import java.util.ArrayList;
  * in a String payload item called "dictionary" (case sensitive).
  * The endianness of the byte array is set in cMsg by the setByteArrayEndian
  * method and, of course, must be set by the sender.
+ * Messages are taken through a {@link CMsgFeed}, whose parsing threads and
+ * queue are set by the "cmsgWorkers" and "cmsgQueueSize" system properties.
  *
  * @author timmer
  * Oct 19, 2009
  */
-public class cMsgHandler {
+public class cMsgHandler extends FeedHandler {
 
-    /** Panel to control connection to the ET system. */
+    /** Panel to control connection to the cMsg server. */
     private JPanel panel;
 
-
-
     /** Handle all cMsg communications with this object. */
     private cMsg cmsg;
 
@@ -43,95 +38,27 @@ public class cMsgHandler {
     /** Type to subscribe to for receiving evio event filled messages. */
     private String type;
 
-    /** Handle cMsg subscription with this object. */
-    private cMsgSubscriptionHandle handle;
-
-    /** Callback to run when receiving a message. */
-    private final myCallback callback = new myCallback();
-
-
-    /** Keep track of event numbering across messages. */
-    private int eventNum = 1;
-
-    /** Keep track of that last event the user asked for (0 is first event). */
-    private int currentIndex = -1;
-
-    /** How many events we currently allow into the eventList. */
-    private int listLimit = 100;
-
-    /** Maximum number of events allowed in list. */
-    private final int maxListSize = 1000;
-
-    /** List of received EvioEvent objects (parsed ET buffers). */
-    private final ArrayList<EvioEvent> eventList = new ArrayList<EvioEvent>(maxListSize);
-
-    /** Filter allowing only certain events into eventList. */
-    private Filter eventFilter = Filter.EVERY;
-
-    /** Evio version of data from ET. Default to v6. */
-    private int evioVersion = 6;
-
-    /** What type of data compression? */
-    private CompressionType dataCompressionType = CompressionType.RECORD_UNCOMPRESSED;
-
 
 
 
+    /** Constructor. */
+    public cMsgHandler() {
+        super("cMsg", "cMsg messages",
+              Integer.getInteger("cmsgWorkers", DEFAULT_WORKERS),
+              Integer.getInteger("cmsgQueueSize", DEFAULT_QUEUE_SIZE));
+    }
 
-    /**
-     * Get the evio version of data being viewed.
-     * @return evio version of data being viewed.
-     */
-    public int getEvioVersion() {return evioVersion;}
 
     /**
-     * Get the compression type of data being viewed.
-     * @return compression type of data being viewed.
+     * Dictionaries arrive in a payload item of each message.
+     * @return {@link DictionarySource#CMSG}.
      */
-    public CompressionType getDataCompressionType() {return dataCompressionType;}
+    public DictionarySource getDataDictionarySource() {return DictionarySource.CMSG;}
 
 
-    /**
-     * This class defines the callback to be run when a message matching
-     * our subscription arrives.
-     */
-    private class myCallback extends cMsgCallbackAdapter {
-
-        /**
-         * Callback method definition.
-         * @param msg        message received from cMsg server
-         * @param userObject object passed as an argument which was set when the client
-         *                   originally subscribed to a subject and type of message.
-         */
-        public void callback(cMsgMessage msg, Object userObject) {
-            // If list is full, return
-            if (eventList.size() >= listLimit)  return;
-
-            // Check to see if message may contain evio event (there is a byte array)
-            byte[] data = msg.getByteArray();
-            if (data == null) return;
-
-            // Decode messages into events & store on the list if there is room,
-            // else it disappears.
-            extractEvents(msg);
-        }
-    }
-
-    /**
-     * Get the event filter to use on each event before adding to list.
-     * @return the event filter to use on each event before adding to list.
-     */
-    public Filter getEventFilter() {
-        return eventFilter;
-    }
+    /** {@inheritDoc} */
+    public JPanel createPanel() {return createCmsgPanel();}
 
-    /**
-     * Set the event filter to use on each event before adding to list.
-     * @param eventFilter filter to use on each event before adding to list.
-     */
-    public void setEventFilter(Filter eventFilter) {
-        this.eventFilter = eventFilter;
-    }
 
     /**
      * Get current subscription's subject.
@@ -155,6 +82,7 @@ public class cMsgHandler {
             return;
         }
 
+        stopFillingEventList();
         try {
             cmsg.disconnect();
         }
@@ -163,7 +91,6 @@ public class cMsgHandler {
         }
 
         // each new connection means resubscribing
-        handle  = null;
         subject = null;
         type    = null;
     }
@@ -232,7 +159,6 @@ public class cMsgHandler {
         if (cmsg == null || !cmsg.isConnected() ||
             subject == null || type == null ||
             subject.length() < 1 || type.length() < 1) {
-            handle = null;
             return false;
         }
         // already subscribed to this subject & type
@@ -240,15 +166,11 @@ public class cMsgHandler {
             return true;
         }
 
-        // only want 1 subscription at a time for receiving evio messages
-        if (handle != null) {
-            try {
-                cmsg.unsubscribe(handle);
-            }
-            catch (cMsgException e) { }
-        }
-
-        handle = cmsg.subscribe(subject, type, callback, null);
+        // only want 1 subscription at a time for receiving evio messages,
+        // and each starts with new workers and no dictionaries
+        stopFillingEventList();
+        setFeed(new CMsgFeed(cmsg, subject, type));
+        startFillingEventList();
 
         this.subject = subject;
         this.type = type;
@@ -256,210 +178,6 @@ public class cMsgHandler {
         return true;
     }
 
-    /**
-     * Take a cMsg message's byte array and extract evio events from it
-     * and place them on the event list until there is no room left.
-     *
-     * @param msg cMsg from which to extract evio events
-     * @return next event number to use
-     */
-    private int extractEvents(cMsgMessage msg) {
-        try {
-            EvioEvent ev;
-            ByteBuffer buf = ByteBuffer.wrap(msg.getByteArray());
-            EvioReader reader = new EvioReader(buf);
-            String dictionary = reader.getDictionaryXML();
-
-            evioVersion = reader.getEvioVersion();
-            dataCompressionType = reader.getFirstBlockHeader().getCompressionType();
-
-            // If no dictionary defined in buffer, look for it in message payload
-            if (dictionary == null) {
-                cMsgPayloadItem payloadItem = msg.getPayloadItem("dictionary");
-                if (payloadItem != null) {
-                    try { dictionary = payloadItem.getString(); }
-                    catch (cMsgException e) { }
-                }
-            }
-
-            while ( (ev = reader.parseNextEvent()) != null) {
-                ev.setDictionaryXML(dictionary);
-                addEvent(ev);
-                if (eventList.size() >= listLimit)  break;
-            }
-        }
-        catch (IOException e) {
-            // data in wrong format so try next msg
-        }
-        catch (EvioException e) {
-            // data in wrong format so try next msg
-        }
-
-        return eventNum;
-    }
-
-    /** Reset the event number back to 1. */
-    synchronized private void resetEventNumber() {
-        eventNum = 1;
-    }
-
-    /**
-     * Add the given event to the event list.
-     * If the list is full, nothing is added.
-     * If the event does not make it past the filter,
-     * nothing is added.
-     *
-     * @param event Evio event to add to event list.
-     */
-    synchronized public void addEvent(EvioEvent event) {
-        if (event == null || eventList.size() >= listLimit) return;
-
-        if (!Filter.allow(event)) {
-            System.out.println("CMSG FILTER REJECTS event -> " + event);
-            return;
-        }
-
-        event.setEventNumber(eventNum++);
-        eventList.add(event);
-    }
-
-    /**
-     * Get the specified event, index beginning at 1.
-     * @param index index into event list beginning at 1.
-     * @return EvioEvent object at given index in event list;
-     *         or null if no object at that index
-     */
-    synchronized public EvioEvent getEvent(int index) {
-        if (index < 1 || index > listLimit || index > eventList.size()) return null;
-        currentIndex = index - 1;
-        return eventList.get(currentIndex);
-    }
-
-    /**
-     * Get the next evio event from the list or null if none.
-     * @return next evio event from the list or null if none.
-     */
-    synchronized public EvioEvent getNextEvent() {
-        int nextIndex = currentIndex + 1;
-        if (nextIndex >= listLimit || nextIndex >= eventList.size()) return null;
-        return eventList.get(++currentIndex);
-    }
-
-    /**
-     * Is there another evio event, after the one previously obtained, in the list?
-     * @return <code>true</code> if there is an event, after the one previously obtained,
-     *         in the list, else <code>false</code>.
-     */
-    synchronized public boolean hasNextEvent() {
-        int nextIndex = currentIndex + 1;
-        return !(nextIndex >= listLimit || nextIndex >= eventList.size());
-    }
-
-    /**
-     * Get the previous evio event from the list or null if none.
-     * @return previous evio event from the list or null if none.
-     */
-    synchronized public EvioEvent getPrevEvent() {
-        int prevIndex = currentIndex - 1;
-        if (prevIndex < 0) return null;
-        return eventList.get(--currentIndex);
-    }
-
-    /**
-     * Get the size of the event list.
-     * @return size of the event list.
-     */
-    synchronized public int getListSize() {
-        return eventList.size();
-    }
-
-    /**
-     * Get the index of the current event (starting at 0).
-     * Used to determine what is next and what is previous.
-     * @return index of the current event (starting at 0).
-     */
-    synchronized public int getCurrentEventIndex() {
-        return currentIndex;
-    }
-
-    /**
-     * Reset the index of the current event to -1.
-     * Used to determine what is next and what is previous.
-     */
-    synchronized public void resetCurrentEventIndex() {
-        currentIndex = -1;
-    }
-
-    /**
-     * Set the event number. Newly added events
-     * have numbers starting with the given value.
-     * @param eventNum newly added events have numbers starting with this value
-     */
-    public void setEventNum(int eventNum) {
-        this.eventNum = eventNum;
-    }
-
-     /** Clear the entire event list - all events. */
-    synchronized public void clearList() {
-        eventList.clear();
-        currentIndex = -1;
-        resetEventNumber();
-    }
-
-    /**
-     * Clear the specified number of latest events from the list.
-     * @param numberToDelete number of latest events to delete from the list.
-     */
-    synchronized public void clearList(int numberToDelete) {
-        // Use an extra variable here to avoid a changing upper limit as
-        // we're removing one item from eventList each iteration.
-        int listSize = eventList.size();
-        if (numberToDelete < listSize) {
-            // delete latest additions
-            for (int i=listSize; i > listSize - numberToDelete; i--) {
-                eventList.remove(i-1);
-            }
-            // if we removed what we are looking at, look at nothing
-            if (currentIndex >= eventList.size()) {
-                currentIndex = -1;
-            }
-            return;
-        }
-
-        clearList();
-    }
-
-    /**
-     * Get the maximum number of events that the list will hold.
-     * @return maximum number of events that the list will hold.
-     */
-    synchronized public int getListLimit() {
-        return listLimit;
-    }
-
-    /**
-     * Set the maximum number of events that the list will hold.
-     * Does nothing if limit &lt; 1. Will set it to a max of 1000.
-     * If reducing the size of the current limit, it will clear
-     * any events beyond the new limit.
-     * @param limit maximum number of events that the list will hold.
-     */
-    synchronized public void setListLimit(int limit) {
-        if (limit < 1 || limit == listLimit) return;
-
-        if (limit > maxListSize) limit = maxListSize;
-
-        if (limit < listLimit) {
-            // If we're here, we must reduce the current limit.
-            // If necessary, get rid of newest events.
-            if (limit < eventList.size()) {
-                clearList(eventList.size() - limit);
-            }
-        }
-
-        listLimit = limit;
-    }
-
 
     /**
      *  Create the panel/menuitem used to handle communications with a cmsg server.
@@ -571,6 +289,7 @@ public class cMsgHandler {
                     }
 
                     // success connecting to cmsg server
+                    getMetrics().reset();
                     UDL.setEnabled(false);
                     status.setForeground(darkGreen);
                     status.setText(" Connected to cMsg server");
@@ -598,7 +317,7 @@ public class cMsgHandler {
 
         // label panel
         JPanel p3 = new JPanel();
-        p3.setLayout(new GridLayout(4, 0));
+        p3.setLayout(new GridLayout(5, 0));
         JLabel label1 = new JLabel("UDL ");
         label1.setHorizontalAlignment(SwingConstants.RIGHT);
         p3.add(label1);
@@ -611,14 +330,18 @@ public class cMsgHandler {
         JLabel label4 = new JLabel("Status ");
         label4.setHorizontalAlignment(SwingConstants.RIGHT);
         p3.add(label4);
+        JLabel label5 = new JLabel("Rate ");
+        label5.setHorizontalAlignment(SwingConstants.RIGHT);
+        p3.add(label5);
 
         // textfield panel
         JPanel p4 = new JPanel();
-        p4.setLayout(new GridLayout(4, 0));
+        p4.setLayout(new GridLayout(5, 0));
         p4.add(UDL);
         p4.add(Subject);
         p4.add(Type);
         p4.add(status);
+        p4.add(getMetrics().createRateLabel());
 
         // keep left hand labels from growing & shrinking in X-axis
         Dimension d = p3.getPreferredSize();
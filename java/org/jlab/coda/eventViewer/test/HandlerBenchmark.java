@@ -0,0 +1,483 @@
+package org.jlab.coda.eventViewer.test;
+
+import org.jlab.coda.cMsg.cMsg;
+import org.jlab.coda.cMsg.cMsgException;
+import org.jlab.coda.cMsg.cMsgMessage;
+import org.jlab.coda.eventViewer.EtHandler;
+import org.jlab.coda.eventViewer.EventSampler;
+import org.jlab.coda.eventViewer.SourceMetrics;
+import org.jlab.coda.eventViewer.cMsgHandler;
+import org.jlab.coda.hipo.CompressionType;
+import org.jlab.coda.jevio.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Program to measure how fast EtHandler and cMsgHandler take in events,
+ * end to end, using the in-process stand-ins {@link LocalEtSystem} and
+ * {@link LocalCMsgDomain} instead of a real ET system or cMsg server.<p>
+ *
+ * A producer thread sends buffers of evio version 6 events at a given rate.
+ * Each event holds its sequence number and the time it was sent. The handler's
+ * list keeps the newest events, so events keep flowing once it's full. A probe
+ * thread regularly looks at the newest event in the list, and each time it has
+ * changed, records how long ago it was sent. After a warm up, it reports the
+ * sustained rate of events the handler took in, percentiles of the latency
+ * to list insertion (sampled, and no finer than the probe's interval) and
+ * the fraction of events dropped along the way.
+ */
+public class HandlerBenchmark {
+
+    /** Subject and type of sent messages. */
+    private static final String SUBJECT = "evio", TYPE = "bench";
+
+    /** Most latency samples kept. */
+    private static final int MAX_SAMPLES = 1000000;
+
+    private String  source = "both";
+    private int     rate, eventsPerBuffer = 10, ints = 16;
+    private int     seconds = 10, warmup = 2, listLimit = 1000;
+    private int     etEvents = 100, cue = 50;
+    private int     pollMicros = 100;
+
+    /** Set to stop the producer and probe threads. */
+    private volatile boolean done;
+
+    /** Set while latency samples are being kept. */
+    private volatile boolean measuring;
+
+
+    /**
+     * What a benchmark drives: a handler and the stand-in feeding it.
+     */
+    private static abstract class Target {
+        /** Name to print. */
+        String name;
+        /**
+         * Send one buffer of events.
+         * @param buf buffer to send, which may be reused after this returns.
+         */
+        abstract void send(ByteBuffer buf) throws Exception;
+        /** Get the handler's counts. */
+        abstract SourceMetrics getMetrics();
+        /** Get the number of buffers dropped before reaching the handler. */
+        abstract long getDroppedBefore();
+        /** Get the number of events in handler's list. */
+        abstract int getListSize();
+        /** Get an event in the handler's list, index starting at 1. */
+        abstract EvioEvent getEvent(int index);
+        /** Stop everything. */
+        abstract void stop() throws Exception;
+    }
+
+
+    /** Constructor. */
+    HandlerBenchmark(String[] args) {
+        decodeCommandLine(args);
+    }
+
+
+    /**
+     * Method to decode the command line used to start this application.
+     * @param args command line arguments
+     */
+    private void decodeCommandLine(String[] args) {
+
+        // loop over all args
+        for (int i = 0; i < args.length; i++) {
+
+            if (args[i].equalsIgnoreCase("-h")) {
+                usage();
+                System.exit(-1);
+            }
+            else if (args[i].equalsIgnoreCase("-src")) {
+                source = args[i + 1];
+                if (!source.equalsIgnoreCase("et") && !source.equalsIgnoreCase("cmsg") &&
+                    !source.equalsIgnoreCase("both")) {
+                    usage();
+                    System.exit(-1);
+                }
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-rate")) {
+                rate = Integer.parseInt(args[i + 1]);
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-e")) {
+                eventsPerBuffer = Math.max(1, Integer.parseInt(args[i + 1]));
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-ints")) {
+                ints = Math.max(3, Integer.parseInt(args[i + 1]));
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-t")) {
+                seconds = Math.max(1, Integer.parseInt(args[i + 1]));
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-w")) {
+                warmup = Math.max(0, Integer.parseInt(args[i + 1]));
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-limit")) {
+                listLimit = Math.max(1, Integer.parseInt(args[i + 1]));
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-etEvents")) {
+                etEvents = Math.max(1, Integer.parseInt(args[i + 1]));
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-cue")) {
+                cue = Math.max(1, Integer.parseInt(args[i + 1]));
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-poll")) {
+                pollMicros = Math.max(1, Integer.parseInt(args[i + 1]));
+                i++;
+            }
+            else {
+                usage();
+                System.exit(-1);
+            }
+        }
+    }
+
+
+    /** Method to print out correct program command line usage. */
+    private static void usage() {
+        System.out.println("\nUsage:\n\n" +
+            "   java HandlerBenchmark\n" +
+            "        [-src et|cmsg|both]  handler(s) to drive (default both)\n" +
+            "        [-rate <events/s>]   rate of events sent, 0 = as fast as possible (default 0)\n" +
+            "        [-e <count>]         events in each buffer (default 10)\n" +
+            "        [-ints <count>]      ints in each event, at least 3 (default 16)\n" +
+            "        [-t <sec>]           seconds to measure (default 10)\n" +
+            "        [-w <sec>]           seconds to warm up first (default 2)\n" +
+            "        [-limit <count>]     events kept in handler's list (default 1000)\n" +
+            "        [-etEvents <count>]  events in ET system (default 100)\n" +
+            "        [-cue <count>]       most events in ET station (default 50)\n" +
+            "        [-poll <microsec>]   time between looks at the list (default 100)\n" +
+            "        [-h]                 print this help\n\n" +
+            "   cMsg parsing threads and queue are set by the cmsgWorkers\n" +
+            "   and cmsgQueueSize properties, the spill file by spillBytes.\n");
+    }
+
+
+    /**
+     * Run as a stand-alone application.
+     */
+    public static void main(String[] args) {
+        try {
+            HandlerBenchmark bench = new HandlerBenchmark(args);
+            bench.run();
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        System.exit(0);
+    }
+
+
+    /** Run the benchmark of each chosen handler. */
+    private void run() throws Exception {
+        // Keep events flowing into a full list
+        EventSampler.setPolicy(EventSampler.Policy.NEWEST, 1, 1);
+
+        Template template = new Template(eventsPerBuffer, ints);
+
+        System.out.println("Sending " + eventsPerBuffer + " events of " + ints + " ints (" +
+                           template.bytes.length + " bytes) per buffer at " +
+                           (rate > 0 ? rate + " events/s" : "full speed") +
+                           ", list of " + listLimit + "\n");
+
+        if (!source.equalsIgnoreCase("cmsg")) {
+            measure(createEtTarget(template.bytes.length), template);
+        }
+        if (!source.equalsIgnoreCase("et")) {
+            measure(createCMsgTarget(), template);
+        }
+    }
+
+
+    /**
+     * Create an EtHandler fed by a {@link LocalEtSystem}.
+     * @param eventSize size of ET events in bytes.
+     * @return target to measure.
+     */
+    private Target createEtTarget(int eventSize) throws Exception {
+        final LocalEtSystem et = new LocalEtSystem(etEvents, eventSize, cue);
+        final EtHandler handler = new EtHandler();
+        handler.setListLimit(listLimit);
+        handler.useEtSystem(et, null);
+        handler.startFillingEventList();
+
+        Target t = new Target() {
+            void send(ByteBuffer buf)     {et.publish(buf);}
+            SourceMetrics getMetrics()    {return handler.getMetrics();}
+            long getDroppedBefore()       {return et.getDropped();}
+            int getListSize()             {return handler.getListSize();}
+            EvioEvent getEvent(int index) {return handler.getEvent(index);}
+            void stop() {
+                handler.stopFillingEventList();
+                et.close();
+                handler.getMetrics().unregister();
+            }
+        };
+        t.name = "ET";
+        return t;
+    }
+
+
+    /**
+     * Create a cMsgHandler subscribed through a {@link LocalCMsgDomain}.
+     * @return target to measure.
+     */
+    private Target createCMsgTarget() throws cMsgException {
+        LocalCMsgDomain.install();
+
+        final cMsgHandler handler = new cMsgHandler();
+        handler.setListLimit(listLimit);
+        handler.connect(LocalCMsgDomain.UDL);
+        handler.subscribe(SUBJECT, TYPE);
+
+        final cMsg producer = new cMsg(LocalCMsgDomain.UDL, "benchmarkProducer", "benchmark producer");
+        producer.connect();
+        final cMsgMessage msg = new cMsgMessage();
+        msg.setSubject(SUBJECT);
+        msg.setType(TYPE);
+        final long skipped = LocalCMsgDomain.getSkipped();
+
+        Target t = new Target() {
+            void send(ByteBuffer buf) throws cMsgException {
+                // The handler keeps the message's array, so each needs its own
+                byte[] data = new byte[buf.remaining()];
+                buf.duplicate().get(data);
+                msg.setByteArrayNoCopy(data);
+                producer.send(msg);
+            }
+            SourceMetrics getMetrics()    {return handler.getMetrics();}
+            long getDroppedBefore()       {return LocalCMsgDomain.getSkipped() - skipped;}
+            int getListSize()             {return handler.getListSize();}
+            EvioEvent getEvent(int index) {return handler.getEvent(index);}
+            void stop() throws cMsgException {
+                producer.disconnect();
+                handler.disconnect();
+                handler.getMetrics().unregister();
+            }
+        };
+        t.name = "cMsg";
+        return t;
+    }
+
+
+    /**
+     * Drive one handler, then print what was measured.
+     * @param target   handler and stand-in.
+     * @param template buffer of events to send.
+     */
+    private void measure(final Target target, final Template template) throws Exception {
+        final long[] samples = new long[MAX_SAMPLES];
+        final int[] sampleCount = new int[1];
+        final long[] produced = new long[1];
+        done = measuring = false;
+
+        Thread producerThread = new Thread("benchmark producer") {
+            public void run() {
+                ByteBuffer buf = ByteBuffer.wrap(template.bytes);
+                int seq = 0;
+                long interval = rate > 0 ? 1000000000L * eventsPerBuffer / rate : 0L;
+                long due = System.nanoTime();
+
+                while (!done) {
+                    long now = System.nanoTime();
+                    for (int pos : template.positions) {
+                        buf.putInt(pos, seq++);
+                        buf.putLong(pos + 4, now);
+                    }
+                    try {
+                        target.send(buf);
+                    }
+                    catch (Exception e) {
+                        e.printStackTrace();
+                        return;
+                    }
+                    synchronized (produced) {
+                        produced[0] += eventsPerBuffer;
+                    }
+
+                    if (interval > 0L) {
+                        due += interval;
+                        long wait;
+                        while (!done && (wait = due - System.nanoTime()) > 0L) {
+                            LockSupport.parkNanos(wait);
+                        }
+                    }
+                }
+            }
+        };
+
+        Thread probeThread = new Thread("benchmark probe") {
+            public void run() {
+                int lastSeq = -1;
+                while (!done) {
+                    LockSupport.parkNanos(1000L * pollMicros);
+                    int size = target.getListSize();
+                    if (size < 1) continue;
+                    EvioEvent ev = target.getEvent(size);
+                    long now = System.nanoTime();
+                    if (ev == null) continue;
+                    int[] data = ev.getIntData();
+                    if (data == null || data.length < 3 || data[0] == lastSeq) continue;
+                    lastSeq = data[0];
+
+                    synchronized (samples) {
+                        if (measuring && sampleCount[0] < samples.length) {
+                            long sent = ((long) data[1] << 32) | (data[2] & 0xffffffffL);
+                            samples[sampleCount[0]++] = now - sent;
+                        }
+                    }
+                }
+            }
+        };
+
+        producerThread.setDaemon(true);
+        probeThread.setDaemon(true);
+        producerThread.start();
+        probeThread.start();
+
+        Thread.sleep(1000L * warmup);
+
+        // Start measuring from here
+        SourceMetrics metrics = target.getMetrics();
+        long producedStart, droppedStart, receivedStart, handlerDropStart, failedStart;
+        synchronized (samples) {
+            synchronized (produced) {
+                producedStart = produced[0];
+            }
+            droppedStart     = target.getDroppedBefore();
+            receivedStart    = metrics.getEventsReceived();
+            handlerDropStart = metrics.getBuffersDropped();
+            failedStart      = metrics.getParseFailures();
+            measuring = true;
+        }
+        long t0 = System.nanoTime();
+
+        Thread.sleep(1000L * seconds);
+
+        long elapsed;
+        long producedEvents, droppedBuffers, receivedEvents, failedBuffers;
+        synchronized (samples) {
+            measuring = false;
+            elapsed = System.nanoTime() - t0;
+            synchronized (produced) {
+                producedEvents = produced[0] - producedStart;
+            }
+            droppedBuffers = (target.getDroppedBefore() - droppedStart) +
+                             (metrics.getBuffersDropped() - handlerDropStart);
+            receivedEvents = metrics.getEventsReceived() - receivedStart;
+            failedBuffers  = metrics.getParseFailures() - failedStart;
+        }
+
+        done = true;
+        producerThread.join(1000);
+        probeThread.join(1000);
+        target.stop();
+
+        double secs = elapsed / 1.e9;
+        long droppedEvents = droppedBuffers * eventsPerBuffer;
+        long[] lat = Arrays.copyOf(samples, sampleCount[0]);
+        Arrays.sort(lat);
+
+        System.out.println(target.name + ":");
+        System.out.println(String.format("    sent       %,14d events  %,12.0f events/s", producedEvents, producedEvents / secs));
+        System.out.println(String.format("    received   %,14d events  %,12.0f events/s", receivedEvents, receivedEvents / secs));
+        System.out.println(String.format("    dropped    %,14d events  %11.2f %%", droppedEvents,
+                                         producedEvents > 0 ? 100. * droppedEvents / producedEvents : 0.));
+        System.out.println(String.format("    bad        %,14d buffers", failedBuffers));
+        if (lat.length > 0) {
+            System.out.println(String.format("    latency    %,d samples, 50%% %s, 99%% %s, 99.9%% %s, max %s",
+                                             lat.length, micros(percentile(lat, 50.)),
+                                             micros(percentile(lat, 99.)),
+                                             micros(percentile(lat, 99.9)),
+                                             micros(lat[lat.length - 1])));
+        }
+        else {
+            System.out.println("    latency    no samples");
+        }
+        System.out.println();
+    }
+
+
+    /**
+     * Get a percentile of sorted values.
+     * @param sorted  sorted values, at least one.
+     * @param percent percentile wanted.
+     * @return value at percentile.
+     */
+    private static long percentile(long[] sorted, double percent) {
+        int i = (int) Math.ceil(percent / 100. * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+    }
+
+
+    /**
+     * Format nanoseconds as microseconds.
+     * @param nanos nanoseconds.
+     * @return formatted microseconds.
+     */
+    private static String micros(long nanos) {
+        return String.format("%,.1f us", nanos / 1000.);
+    }
+
+
+    /**
+     * Buffer of events written once, in which each event's sequence number and
+     * send time are overwritten before it's sent. Each event is a bank of ints
+     * whose first holds the sequence number and next two the time.
+     */
+    private static final class Template {
+
+        /** Buffer of events. */
+        final byte[] bytes;
+
+        /** Position in bytes of each event's data. */
+        final int[] positions;
+
+
+        /**
+         * Constructor.
+         * @param count number of events.
+         * @param ints  number of ints in each event.
+         */
+        Template(int count, int ints) throws EvioException, IOException {
+            int eventBytes = 4 * (ints + 2);
+            ByteBuffer buf = ByteBuffer.allocate(count * eventBytes + 1024);
+            buf.order(ByteOrder.BIG_ENDIAN);
+
+            EventWriter writer = new EventWriter(buf, count * eventBytes + 256, count,
+                                                 null, 1, CompressionType.RECORD_UNCOMPRESSED);
+            for (int i=0; i < count; i++) {
+                EventBuilder builder = new EventBuilder(1, DataType.INT32, i);
+                EvioEvent ev = builder.getEvent();
+                ev.appendIntData(new int[ints]);
+                writer.writeEvent(ev);
+            }
+            writer.close();
+            buf.flip();
+
+            bytes = new byte[buf.remaining()];
+            buf.duplicate().get(bytes);
+
+            EvioCompactReader reader = new EvioCompactReader(ByteBuffer.wrap(bytes).order(ByteOrder.BIG_ENDIAN));
+            positions = new int[reader.getEventCount()];
+            for (int i=0; i < positions.length; i++) {
+                positions[i] = reader.getEvent(i + 1).getDataPosition();
+            }
+        }
+    }
+}
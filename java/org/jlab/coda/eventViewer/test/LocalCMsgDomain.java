@@ -0,0 +1,248 @@
+package org.jlab.coda.eventViewer.test;
+
+import org.jlab.coda.cMsg.*;
+import org.jlab.coda.cMsg.common.cMsgDomainAdapter;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for a cMsg server, so that cMsgHandler can be driven
+ * without running one. After {@link #install()}, cMsg objects created with
+ * the UDL {@link #UDL} use this domain: messages sent by one are delivered
+ * to the callbacks of all matching subscriptions in the same JVM.<p>
+ *
+ * Each subscription keeps a queue of up to its callback's maximum queue size.
+ * If full, and the callback allows it, its skip size of the oldest messages are
+ * dropped, otherwise the sender waits, just as with a cMsg server. Messages are
+ * given to each callback by a single thread, in order.
+ */
+public class LocalCMsgDomain extends cMsgDomainAdapter {
+
+    /** Name of this domain. */
+    public static final String DOMAIN = "local";
+
+    /** UDL of this domain. */
+    public static final String UDL = "cMsg:" + DOMAIN + "://viewer";
+
+    /** Subscriptions of all connections. */
+    private static final CopyOnWriteArrayList<Subscription> subscriptions =
+            new CopyOnWriteArrayList<Subscription>();
+
+    /** Number of messages dropped by all subscriptions. */
+    private static final AtomicLong skipped = new AtomicLong();
+
+
+    /**
+     * Make cMsg use this class for the domain {@link #DOMAIN}.
+     * cMsg looks for a system property named after the domain
+     * whose value is the class implementing it.
+     */
+    public static void install() {
+        System.setProperty(DOMAIN, LocalCMsgDomain.class.getName());
+    }
+
+
+    /**
+     * Get the number of messages dropped because a subscription's queue was full.
+     * @return number of messages dropped.
+     */
+    public static long getSkipped() {return skipped.get();}
+
+
+    /** Constructor called by cMsg. */
+    public LocalCMsgDomain() {
+        domain = DOMAIN;
+    }
+
+
+    /** {@inheritDoc} */
+    public void connect() throws cMsgException {
+        connected = true;
+    }
+
+
+    /** {@inheritDoc} */
+    public void disconnect() throws cMsgException {
+        connected = false;
+        receiving = false;
+        for (Subscription sub : subscriptions) {
+            if (sub.owner == this) {
+                unsubscribe(sub);
+            }
+        }
+    }
+
+
+    /** {@inheritDoc} */
+    public void start() {receiving = true;}
+
+
+    /** {@inheritDoc} */
+    public void stop() {receiving = false;}
+
+
+    /** {@inheritDoc} */
+    public void flush(int timeout) {}
+
+
+    /** {@inheritDoc} */
+    public void send(cMsgMessage message) throws cMsgException {
+        if (!connected) {
+            throw new cMsgException("not connected");
+        }
+        for (Subscription sub : subscriptions) {
+            if (sub.owner.receiving && sub.matches(message)) {
+                sub.offer(message.copy());
+            }
+        }
+    }
+
+
+    /** {@inheritDoc} */
+    public cMsgSubscriptionHandle subscribe(String subject, String type,
+                                            cMsgCallbackInterface cb, Object userObj)
+            throws cMsgException {
+        if (!connected) {
+            throw new cMsgException("not connected");
+        }
+        if (subject == null || type == null || cb == null) {
+            throw new cMsgException("null argument");
+        }
+
+        Subscription sub = new Subscription(this, subject, type, cb, userObj);
+        subscriptions.add(sub);
+        return sub;
+    }
+
+
+    /** {@inheritDoc} */
+    public void unsubscribe(cMsgSubscriptionHandle handle) throws cMsgException {
+        if (subscriptions.remove(handle)) {
+            ((Subscription) handle).stop();
+        }
+    }
+
+
+    /** A subscription with its own queue and thread running its callback. */
+    private static final class Subscription implements cMsgSubscriptionHandle {
+
+        /** Connection which made this subscription. */
+        final LocalCMsgDomain owner;
+        final String subject, type;
+        final cMsgCallbackInterface callback;
+        final Object userObject;
+
+        /** Messages waiting for the callback. */
+        private final ArrayDeque<cMsgMessage> queue = new ArrayDeque<cMsgMessage>();
+
+        /** Thread running the callback. */
+        private final Thread thread;
+
+        private boolean paused, stopped;
+
+        /** Number of messages given to callback. */
+        private volatile long count;
+
+
+        Subscription(LocalCMsgDomain owner, String subject, String type,
+                     cMsgCallbackInterface callback, Object userObject) {
+            this.owner      = owner;
+            this.subject    = subject;
+            this.type       = type;
+            this.callback   = callback;
+            this.userObject = userObject;
+
+            thread = new Thread("local cMsg callback " + subject + "/" + type) {
+                public void run() {
+                    deliver();
+                }
+            };
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+
+        /**
+         * Does the given message match this subscription? "*" matches anything.
+         * @param msg message.
+         * @return {@code true} if it matches.
+         */
+        boolean matches(cMsgMessage msg) {
+            return (subject.equals("*") || subject.equals(msg.getSubject())) &&
+                   (type.equals("*")    || type.equals(msg.getType()));
+        }
+
+
+        /**
+         * Queue a message for the callback, dropping the oldest or waiting if full.
+         * @param msg message.
+         */
+        synchronized void offer(cMsgMessage msg) {
+            int max = Math.max(1, callback.getMaximumQueueSize());
+            while (!stopped && queue.size() >= max) {
+                if (callback.maySkipMessages()) {
+                    int n = Math.min(queue.size(), Math.max(1, callback.getSkipSize()));
+                    for (int i=0; i < n; i++) {
+                        queue.poll();
+                    }
+                    skipped.addAndGet(n);
+                }
+                else {
+                    try {
+                        wait();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+            if (stopped) return;
+            queue.add(msg);
+            notifyAll();
+        }
+
+
+        /** Give queued messages to the callback until stopped. */
+        private void deliver() {
+            while (true) {
+                cMsgMessage msg;
+                synchronized (this) {
+                    while (!stopped && (paused || queue.isEmpty())) {
+                        try {
+                            wait();
+                        }
+                        catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (stopped) return;
+                    msg = queue.poll();
+                    notifyAll();
+                }
+                callback.callback(msg, userObject);
+                count++;
+            }
+        }
+
+
+        synchronized void stop() {
+            stopped = true;
+            queue.clear();
+            notifyAll();
+        }
+
+        public synchronized void pause()   {paused = true;}
+        public synchronized void restart() {paused = false; notifyAll();}
+        public synchronized int getQueueSize() {return queue.size();}
+        public synchronized boolean isQueueFull() {return queue.size() >= callback.getMaximumQueueSize();}
+        public synchronized void clearQueue() {queue.clear(); notifyAll();}
+        public long getMsgCount() {return count;}
+        public String getDomain()  {return DOMAIN;}
+        public String getSubject() {return subject;}
+        public String getType()    {return type;}
+        public cMsgCallbackInterface getCallback() {return callback;}
+        public Object getUserObject() {return userObject;}
+    }
+}
@@ -0,0 +1,224 @@
+package org.jlab.coda.eventViewer.test;
+
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.enums.Mode;
+import org.jlab.coda.et.enums.Modify;
+import org.jlab.coda.et.exception.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process stand-in for an ET system with a single station, so that EtHandler
+ * can be driven without running an ET system. Only the calls EtHandler makes of
+ * an attached consumer are supported: getEvents, putEvents, dumpEvents and
+ * wakeUpAttachment. The attachment given to them is ignored and may be null.<p>
+ *
+ * The system has a fixed number of events of a fixed size. A producer calls
+ * {@link #publish(ByteBuffer)} to copy data into a free event and hand it to the
+ * station. Like the non-blocking station EtHandler creates, the station holds at
+ * most "cue" events. If it's full, or all events are in use, the data bypasses the
+ * station and is counted as dropped instead of making the producer wait.
+ */
+public class LocalEtSystem extends EtSystem {
+
+    /** Events not in the station or held by the consumer. */
+    private final ArrayDeque<EtEvent> free = new ArrayDeque<EtEvent>();
+
+    /** Events waiting in the station to be gotten by the consumer. */
+    private final ArrayDeque<EtEvent> station = new ArrayDeque<EtEvent>();
+
+    /** Most events the station holds. */
+    private final int cue;
+
+    /** Size of each event in bytes. */
+    private final int eventSize;
+
+    /** Guards the events and flags. */
+    private final Object lock = new Object();
+
+    /** Set to wake up the consumer waiting in getEvents. */
+    private boolean wakeUp;
+
+    /** Set once closed. */
+    private boolean closed;
+
+    /** Number of buffers put into the station. */
+    private long published;
+
+    /** Number of buffers that bypassed the station. */
+    private long dropped;
+
+
+
+    /**
+     * Constructor.
+     * @param numEvents number of events in system.
+     * @param eventSize size of each event in bytes.
+     * @param cue       most events held by the station.
+     * @throws EtException never, but a real system's constructor may.
+     */
+    public LocalEtSystem(int numEvents, int eventSize, int cue) throws EtException {
+        super(new EtSystemOpenConfig("/tmp/localEt", EtConstants.hostLocal), EtConstants.debugNone);
+        this.eventSize = eventSize;
+        this.cue = Math.max(1, cue);
+        for (int i=0; i < numEvents; i++) {
+            free.add(new EtEventImpl(eventSize));
+        }
+    }
+
+
+    /**
+     * Copy data into a free event and put it into the station.
+     * The buffer's position and limit are not changed.
+     * @param data data to put into an event.
+     * @return {@code true} if put into the station, {@code false} if dropped.
+     */
+    public boolean publish(ByteBuffer data) {
+        int length = data.remaining();
+        if (length > eventSize) {
+            throw new IllegalArgumentException("data is larger than events (" + eventSize + " bytes)");
+        }
+
+        synchronized (lock) {
+            if (closed || station.size() >= cue || free.isEmpty()) {
+                dropped++;
+                return false;
+            }
+            EtEvent ev = free.poll();
+            data.duplicate().get(ev.getData(), 0, length);
+            try {
+                ev.setLength(length);
+                ev.setByteOrder(data.order());
+            }
+            catch (EtException e) {/* never happen */}
+            station.add(ev);
+            published++;
+            lock.notifyAll();
+            return true;
+        }
+    }
+
+
+    /**
+     * Get the number of buffers put into the station.
+     * @return number of buffers put into the station.
+     */
+    public long getPublished() {
+        synchronized (lock) {
+            return published;
+        }
+    }
+
+
+    /**
+     * Get the number of buffers that bypassed the station because it was full.
+     * @return number of buffers dropped.
+     */
+    public long getDropped() {
+        synchronized (lock) {
+            return dropped;
+        }
+    }
+
+
+    /** {@inheritDoc} */
+    public EtEvent[] getEvents(EtAttachment att, Mode mode, Modify modify, int microSec, int count)
+            throws EtException, EtClosedException, EtEmptyException,
+                   EtTimeoutException, EtWakeUpException {
+
+        if (count < 1) {
+            throw new EtException("bad count argument");
+        }
+
+        synchronized (lock) {
+            long deadline = System.nanoTime() + 1000L * microSec;
+
+            while (station.isEmpty()) {
+                if (closed) {
+                    throw new EtClosedException("system is closed");
+                }
+                if (wakeUp) {
+                    wakeUp = false;
+                    throw new EtWakeUpException("attachment woken up");
+                }
+
+                try {
+                    if (mode == Mode.ASYNC) {
+                        throw new EtEmptyException("no events in station");
+                    }
+                    else if (mode == Mode.TIMED) {
+                        long left = deadline - System.nanoTime();
+                        if (left <= 0L) {
+                            throw new EtTimeoutException("no events within " + microSec + " microsec");
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(lock, left);
+                    }
+                    else {
+                        lock.wait();
+                    }
+                }
+                catch (InterruptedException e) {
+                    throw new EtWakeUpException("interrupted");
+                }
+            }
+
+            EtEvent[] events = new EtEvent[Math.min(count, station.size())];
+            for (int i=0; i < events.length; i++) {
+                events[i] = station.poll();
+            }
+            return events;
+        }
+    }
+
+
+    /** {@inheritDoc} */
+    public void putEvents(EtAttachment att, EtEvent[] events) {
+        putEvents(att, events, 0, events.length);
+    }
+
+
+    /** {@inheritDoc} */
+    public void putEvents(EtAttachment att, EtEvent[] events, int offset, int length) {
+        // With only one station, events put by the consumer are free to be used again
+        synchronized (lock) {
+            for (int i=offset; i < offset + length; i++) {
+                free.add(events[i]);
+            }
+        }
+    }
+
+
+    /** {@inheritDoc} */
+    public void dumpEvents(EtAttachment att, EtEvent[] events) {
+        putEvents(att, events, 0, events.length);
+    }
+
+
+    /** {@inheritDoc} */
+    public void wakeUpAttachment(EtAttachment att) {
+        synchronized (lock) {
+            wakeUp = true;
+            lock.notifyAll();
+        }
+    }
+
+
+    /** {@inheritDoc} */
+    public boolean alive() {
+        synchronized (lock) {
+            return !closed;
+        }
+    }
+
+
+    /** {@inheritDoc} */
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            station.clear();
+            lock.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,985 @@
+package org.jlab.coda.eventViewer.test;
+
+import org.jlab.coda.hipo.Compressor;
+import org.jlab.coda.hipo.FileHeader;
+import org.jlab.coda.hipo.RecordHeader;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * Program to stream out large, synthetic evio version 4 or 6 files for
+ * benchmarking and soak testing the viewer and its scanners.
+ * Events look like CODA built physics events (trigger bank followed by
+ * ROC banks) and are bracketed by prestart/go and end control events.
+ * Event sizes follow a selectable distribution, data banks may be nested
+ * to a given depth, version 6 records may be compressed and errors may be
+ * deliberately injected. The same seed always produces the same file.<p>
+ *
+ * Records (or blocks) are built by hand in memory and written through a
+ * large, direct buffer into a FileChannel so that multi-GB files can be
+ * produced at close to disk speed.
+ */
+public class SyntheticFileGenerator {
+
+    /** Event size distributions. */
+    private static final int DIST_FIXED   = 0;
+    private static final int DIST_UNIFORM = 1;
+    private static final int DIST_GAUSS   = 2;
+    private static final int DIST_EXP     = 3;
+
+    /** Compression types as stored in the top 4 bits of the record's compression word. */
+    private static final int COMPRESS_NONE = 0;
+    private static final int COMPRESS_LZ4  = 1;
+    private static final int COMPRESS_GZIP = 3;
+
+    /** Kinds of injected event errors. */
+    private static final int ERR_BANK_LENGTH = 0;
+    private static final int ERR_DATA_TYPE   = 1;
+    private static final int ERR_PADDING     = 2;
+
+    /** Bank data types used in leaves (UINT32, FLOAT32, SHORT16, CHAR8, DOUBLE64, INT32). */
+    private static final int[] leafTypes = {0x1, 0x2, 0x4, 0x6, 0x8, 0xb};
+
+    /** Tag of built physics event. */
+    private static final int PHYSICS_TAG = 0xFF50;
+    /** Tag of built trigger bank. */
+    private static final int TRIGGER_TAG = 0xFF21;
+    /** Unix time written into control events. */
+    private static final int RUN_START_TIME = 1600000000;
+    /** Tags of prestart, go and end control events. */
+    private static final int PRESTART_TAG = 0xFFD1, GO_TAG = 0xFFD2, END_TAG = 0xFFD4;
+
+
+    // Command line settings
+
+    /** Output file name. */
+    private String fileName = "synthetic.ev";
+    /** Evio version to write, 4 or 6. */
+    private int version = 6;
+    /** Byte order of output. */
+    private ByteOrder order = ByteOrder.BIG_ENDIAN;
+    /** Seed of random number generator. */
+    private long seed = 1234567L;
+    /** Stop after writing this many bytes. */
+    private long totalBytes = 100000000L;
+    /** Stop after writing this many physics events (0 = no limit). */
+    private long maxEvents;
+    /** Mean size of physics events in bytes. */
+    private int meanEventBytes = 4000;
+    /** Event size distribution. */
+    private int distribution = DIST_UNIFORM;
+    /** Number of levels of banks-of-banks in each ROC bank. */
+    private int depth = 2;
+    /** Number of ROCs contributing to each event. */
+    private int rocCount = 4;
+    /** Maximum number of events in a record/block. */
+    private int recordEvents = 10000;
+    /** Maximum number of data bytes in a record/block. */
+    private int recordBytes = 4000000;
+    /** Compression of version 6 records. */
+    private int compression = COMPRESS_NONE;
+    /** Probability that any single physics event contains an error. */
+    private double eventErrorRate;
+    /** Probability that any single record/block header contains an error. */
+    private double recordErrorRate;
+    /** Size of buffer used to write to the file channel. */
+    private int outBufBytes = 16000000;
+
+
+    // Writing state
+
+    /** Makes all structural decisions (sizes, types, errors). */
+    private Random rand;
+    /** State of the much faster xorshift generator used to fill in bulk data. */
+    private long noise;
+    private FileChannel channel;
+    /** Large, direct buffer data gets collected into before being written to file. */
+    private ByteBuffer outBuf;
+    /** Buffer events of the current record are built into. */
+    private ByteBuffer eventBuf;
+    /** Buffer the index and events of a record are collected in before compression. */
+    private ByteBuffer rawBuf;
+    /** Buffer a compressed record is built in. */
+    private ByteBuffer compressBuf;
+    /** Lengths in bytes of each event in the current record. */
+    private int[] eventLengths;
+    /** Number of events in the current record. */
+    private int eventsInRecord;
+    /** Stack of starting positions of currently open structures (negative for segments). */
+    private int[] openStructs = new int[64];
+    /** Number of open structures. */
+    private int openCount;
+    /** Positions in eventBuf of leaf headers of the current event, used for error injection. */
+    private int[] leafPositions = new int[4096];
+    /** Number of leaves in the current event. */
+    private int leafCount;
+
+    /** Current record/block number. */
+    private int recordNumber = 1;
+    /** Physics event number. */
+    private long eventNumber = 1;
+    /** Current trigger timestamp. */
+    private long timestamp;
+
+    // Statistics
+    private long bytesWritten;
+    private long eventsWritten;
+    private long recordsWritten;
+    private long eventErrors;
+    private long recordErrors;
+    private long compressedIn, compressedOut;
+
+
+    /**
+     * Method to decode the command line used to start this application.
+     * @param args command line arguments
+     */
+    private void decodeCommandLine(String[] args) {
+
+        // loop over all args
+        for (int i = 0; i < args.length; i++) {
+
+            if (args[i].equalsIgnoreCase("-h")) {
+                usage();
+                System.exit(-1);
+            }
+            else if (args[i].equalsIgnoreCase("-f")) {
+                fileName = args[i + 1];
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-v")) {
+                version = Integer.parseInt(args[i + 1]);
+                if (version != 4 && version != 6) {
+                    System.out.println("Version must be 4 or 6");
+                    System.exit(-1);
+                }
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-size")) {
+                totalBytes = parseBytes(args[i + 1]);
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-events")) {
+                maxEvents = Long.parseLong(args[i + 1]);
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-evsize")) {
+                meanEventBytes = (int) parseBytes(args[i + 1]);
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-dist")) {
+                String d = args[i + 1];
+                if      (d.equalsIgnoreCase("fixed"))   distribution = DIST_FIXED;
+                else if (d.equalsIgnoreCase("uniform")) distribution = DIST_UNIFORM;
+                else if (d.equalsIgnoreCase("gauss"))   distribution = DIST_GAUSS;
+                else if (d.equalsIgnoreCase("exp"))     distribution = DIST_EXP;
+                else {
+                    usage();
+                    System.exit(-1);
+                }
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-depth")) {
+                depth = Integer.parseInt(args[i + 1]);
+                if (depth < 1) depth = 1;
+                if (depth > 32) depth = 32;
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-rocs")) {
+                rocCount = Integer.parseInt(args[i + 1]);
+                if (rocCount < 1) rocCount = 1;
+                if (rocCount > 255) rocCount = 255;
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-recevents")) {
+                recordEvents = Integer.parseInt(args[i + 1]);
+                if (recordEvents < 1) recordEvents = 1;
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-recsize")) {
+                recordBytes = (int) parseBytes(args[i + 1]);
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-lz4")) {
+                compression = COMPRESS_LZ4;
+            }
+            else if (args[i].equalsIgnoreCase("-gzip")) {
+                compression = COMPRESS_GZIP;
+            }
+            else if (args[i].equalsIgnoreCase("-errors")) {
+                eventErrorRate = Double.parseDouble(args[i + 1]);
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-recerrors")) {
+                recordErrorRate = Double.parseDouble(args[i + 1]);
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-seed")) {
+                seed = Long.parseLong(args[i + 1]);
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-buf")) {
+                outBufBytes = (int) parseBytes(args[i + 1]);
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-little")) {
+                order = ByteOrder.LITTLE_ENDIAN;
+            }
+            else {
+                usage();
+                System.exit(-1);
+            }
+        }
+
+        if (version == 4 && compression != COMPRESS_NONE) {
+            System.out.println("Evio version 4 has no compression, ignore");
+            compression = COMPRESS_NONE;
+        }
+    }
+
+
+    /** Method to print out correct program command line usage. */
+    private static void usage() {
+        System.out.println("\nUsage:\n\n" +
+            "   java SyntheticFileGenerator\n" +
+            "        [-f <file>]            output to file\n" +
+            "        [-v <4|6>]             evio version to write (default 6)\n" +
+            "        [-size <bytes>]        approximate file size, k/M/G suffix allowed (default 100M)\n" +
+            "        [-events <count>]      stop after this many physics events\n" +
+            "        [-evsize <bytes>]      mean physics event size (default 4000)\n" +
+            "        [-dist <type>]         event size distribution: fixed, uniform, gauss, exp\n" +
+            "        [-depth <levels>]      levels of bank nesting in each ROC bank (default 2)\n" +
+            "        [-rocs <count>]        number of ROCs in each event (default 4)\n" +
+            "        [-recevents <count>]   max events per record/block (default 10000)\n" +
+            "        [-recsize <bytes>]     max data bytes per record/block (default 4M)\n" +
+            "        [-lz4]                 LZ4 compress records (version 6 only)\n" +
+            "        [-gzip]                gzip compress records (version 6 only)\n" +
+            "        [-errors <prob>]       probability of an error in any event\n" +
+            "        [-recerrors <prob>]    probability of an error in any record/block header\n" +
+            "        [-seed <seed>]         random number seed\n" +
+            "        [-buf <bytes>]         size of file writing buffer (default 16M)\n" +
+            "        [-little]              write little endian data\n" +
+            "        [-h]                   print this help\n");
+    }
+
+
+    /**
+     * Parse a number of bytes which may end in k, M or G.
+     * @param s string to parse
+     * @return number of bytes
+     */
+    private static long parseBytes(String s) {
+        long mult = 1L;
+        char c = s.charAt(s.length() - 1);
+        if      (c == 'k' || c == 'K') mult = 1000L;
+        else if (c == 'm' || c == 'M') mult = 1000000L;
+        else if (c == 'g' || c == 'G') mult = 1000000000L;
+        if (mult > 1L) s = s.substring(0, s.length() - 1);
+        return (long) (Double.parseDouble(s) * mult);
+    }
+
+
+    /**
+     * Constructor.
+     * @param args command line arguments
+     */
+    public SyntheticFileGenerator(String[] args) {
+        decodeCommandLine(args);
+    }
+
+
+    /** For WRITING a local file. */
+    public static void main(String[] args) {
+        try {
+            SyntheticFileGenerator gen = new SyntheticFileGenerator(args);
+            gen.generate();
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+
+    /**
+     * Write the whole file.
+     * @throws Exception if error writing or compressing.
+     */
+    public void generate() throws Exception {
+
+        System.out.println("Running with:");
+        System.out.println("    file    = " + fileName);
+        System.out.println("    version = " + version + ", " + order);
+        System.out.println("    size    = " + totalBytes + " bytes" +
+                           (maxEvents > 0 ? ", max events = " + maxEvents : ""));
+        System.out.println("    event   = " + meanEventBytes + " bytes, depth = " + depth +
+                           ", rocs = " + rocCount);
+        System.out.println("    seed    = " + seed);
+
+        rand = new Random(seed);
+        noise = seed ^ 0x9E3779B97F4A7C15L;
+        if (noise == 0L) noise = 1L;
+
+        // Room for the largest possible event plus the rest of the record
+        int maxEventBytes = 8*meanEventBytes + 4096*rocCount;
+        eventBuf = ByteBuffer.allocate(recordBytes + maxEventBytes);
+        eventBuf.order(order);
+        eventLengths = new int[recordEvents];
+        if (compression != COMPRESS_NONE) {
+            rawBuf = ByteBuffer.allocate(eventBuf.capacity() + 4*recordEvents);
+            rawBuf.order(order);
+            compressBuf = ByteBuffer.allocate(Compressor.getMaxCompressedLength(
+                    org.jlab.coda.hipo.CompressionType.RECORD_COMPRESSION_LZ4,
+                    eventBuf.capacity() + 4*recordEvents) + 64);
+            compressBuf.order(order);
+        }
+
+        outBuf = ByteBuffer.allocateDirect(outBufBytes);
+        outBuf.order(order);
+
+        File file = new File(fileName);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0L);
+        channel = raf.getChannel();
+
+        long t1 = System.currentTimeMillis();
+
+        if (version == 6) {
+            writeFileHeader();
+        }
+
+        // Start of run
+        timestamp = 1000L;
+        addControlEvent(PRESTART_TAG);
+        addControlEvent(GO_TAG);
+
+        while (true) {
+            if (maxEvents > 0 && eventsWritten >= maxEvents) break;
+            if (bytesWritten + outBuf.position() + eventBuf.position() >= totalBytes) break;
+
+            int evBytes = nextEventSize();
+            int start = eventBuf.position();
+            addPhysicsEvent(evBytes);
+            endEvent(start);
+            eventsWritten++;
+
+            // Progress report
+            if (eventsWritten % 100000 == 0) {
+                System.out.println("  wrote " + eventsWritten + " events, " +
+                                   (bytesWritten + outBuf.position()) + " bytes");
+            }
+        }
+
+        // End of run
+        addControlEvent(END_TAG);
+        writeRecord(true);
+
+        if (version == 6) {
+            writeTrailer();
+        }
+        flush();
+
+        if (version == 6) {
+            patchFileHeader();
+        }
+
+        channel.close();
+        raf.close();
+
+        long t2 = System.currentTimeMillis();
+        double mb = bytesWritten/1000000.;
+        System.out.println("Wrote " + bytesWritten + " bytes, " + eventsWritten + " physics events, " +
+                           recordsWritten + (version == 6 ? " records" : " blocks") + " in " +
+                           (t2 - t1) + " ms (" + String.format("%.1f", mb*1000./Math.max(1, t2 - t1)) +
+                           " MB/s)");
+        if (compression != COMPRESS_NONE && compressedIn > 0) {
+            System.out.println("Compression ratio = " +
+                               String.format("%.3f", (double) compressedOut/compressedIn));
+        }
+        if (eventErrors > 0 || recordErrors > 0) {
+            System.out.println("Injected " + eventErrors + " event errors, " +
+                               recordErrors + " record errors");
+        }
+    }
+
+
+    /**
+     * Get the size of the next physics event according to the chosen distribution.
+     * @return size in bytes.
+     */
+    private int nextEventSize() {
+        double size;
+        switch (distribution) {
+            case DIST_FIXED:
+                size = meanEventBytes;
+                break;
+            case DIST_GAUSS:
+                size = meanEventBytes + rand.nextGaussian() * meanEventBytes / 4.;
+                break;
+            case DIST_EXP:
+                size = -meanEventBytes * Math.log(1. - rand.nextDouble());
+                break;
+            case DIST_UNIFORM:
+            default:
+                size = rand.nextDouble() * 2. * meanEventBytes;
+        }
+
+        // Keep it reasonable
+        if (size < 64) size = 64;
+        if (size > 8*meanEventBytes) size = 8*meanEventBytes;
+        return (int) size;
+    }
+
+
+    /**
+     * Get the next value of an xorshift generator. Filling GBs of data
+     * with java.util.Random is far too slow to keep up with the disk.
+     * @return random int.
+     */
+    private int nextNoise() {
+        noise ^= noise << 13;
+        noise ^= noise >>> 7;
+        noise ^= noise << 17;
+        return (int) (noise >>> 32);
+    }
+
+
+    //-----------------------------------------------------
+    // Building evio structures
+    //-----------------------------------------------------
+
+
+    /**
+     * Open a bank. Length is written when it's closed.
+     * @param tag  bank tag
+     * @param type data type
+     * @param pad  padding
+     * @param num  bank num
+     */
+    private void openBank(int tag, int type, int pad, int num) {
+        openStructs[openCount++] = eventBuf.position();
+        eventBuf.putInt(0);
+        eventBuf.putInt((tag << 16) | (pad << 14) | (type << 8) | (num & 0xff));
+    }
+
+    /**
+     * Open a segment. Length is written when it's closed.
+     * @param tag  segment tag
+     * @param type data type
+     * @param pad  padding
+     */
+    private void openSegment(int tag, int type, int pad) {
+        openStructs[openCount++] = -1 - eventBuf.position();
+        eventBuf.putInt(((tag & 0xff) << 24) | (pad << 22) | (type << 16));
+    }
+
+    /**
+     * Open a tag segment. Length is written when it's closed.
+     * @param tag  tag segment tag
+     * @param type data type
+     */
+    private void openTagSegment(int tag, int type) {
+        openStructs[openCount++] = -1 - eventBuf.position();
+        eventBuf.putInt(((tag & 0xfff) << 20) | (type << 16));
+    }
+
+    /** Close the last opened structure by writing its length. */
+    private void closeStructure() {
+        int s = openStructs[--openCount];
+        int end = eventBuf.position();
+
+        if (s >= 0) {
+            eventBuf.putInt(s, (end - s)/4 - 1);
+        }
+        else {
+            // Segments & tag segments both have length in lowest 16 bits
+            s = -1 - s;
+            int word = eventBuf.getInt(s);
+            eventBuf.putInt(s, (word & 0xffff0000) | ((end - s)/4 - 1));
+        }
+    }
+
+
+    /**
+     * Add a bank of leaf data containing about the given number of bytes.
+     * @param tag   bank tag
+     * @param num   bank num
+     * @param bytes approximate number of bytes of data
+     */
+    private void addLeaf(int tag, int num, int bytes) {
+        int type = leafTypes[rand.nextInt(leafTypes.length)];
+        if (leafCount < leafPositions.length) {
+            leafPositions[leafCount++] = eventBuf.position();
+        }
+
+        switch (type) {
+            case 0x4: {
+                // shorts, ADC-like values
+                int count = Math.max(1, bytes/2);
+                int pad = 2*(count % 2);
+                openBank(tag, type, pad, num);
+                for (int i = 0; i < count; i++) {
+                    eventBuf.putShort((short) (nextNoise() & 0xfff));
+                }
+                if (pad > 0) eventBuf.putShort((short) 0);
+                break;
+            }
+
+            case 0x6: {
+                int count = Math.max(1, bytes);
+                int pad = (4 - count % 4) % 4;
+                openBank(tag, type, pad, num);
+                for (int i = 0; i < count; i++) {
+                    eventBuf.put((byte) (nextNoise() & 0x7f));
+                }
+                for (int i = 0; i < pad; i++) {
+                    eventBuf.put((byte) 0);
+                }
+                break;
+            }
+
+            case 0x8: {
+                int count = Math.max(1, bytes/8);
+                openBank(tag, type, 0, num);
+                for (int i = 0; i < count; i++) {
+                    eventBuf.putDouble((nextNoise() >> 8) / 1000.);
+                }
+                break;
+            }
+
+            case 0x2: {
+                int count = Math.max(1, bytes/4);
+                openBank(tag, type, 0, num);
+                for (int i = 0; i < count; i++) {
+                    eventBuf.putFloat((nextNoise() >> 16) / 100.f);
+                }
+                break;
+            }
+
+            default: {
+                // TDC-like, channel in top bits, value in bottom
+                int count = Math.max(1, bytes/4);
+                openBank(tag, type, 0, num);
+                for (int i = 0; i < count; i++) {
+                    eventBuf.putInt(((i & 0xff) << 24) | (nextNoise() & 0xffff));
+                }
+            }
+        }
+        closeStructure();
+    }
+
+
+    /**
+     * Add nested banks of banks down to the given level, with leaves at the bottom.
+     * @param level level of nesting still to go
+     * @param bytes approximate number of data bytes to add
+     */
+    private void addNested(int level, int bytes) {
+        if (level <= 1) {
+            // Bottom, add a few leaves
+            int leaves = 1 + rand.nextInt(3);
+            for (int i = 0; i < leaves; i++) {
+                addLeaf(0x100 + i, i, bytes/leaves);
+            }
+
+            // Occasionally add a bank of segments or tagsegments
+            int r = rand.nextInt(8);
+            if (r == 0) {
+                openBank(0x200, 0x20, 0, 0);
+                openSegment(1, 0x1, 0);
+                eventBuf.putInt(rand.nextInt());
+                closeStructure();
+                openSegment(2, 0x1, 0);
+                eventBuf.putInt(rand.nextInt());
+                eventBuf.putInt(rand.nextInt());
+                closeStructure();
+                closeStructure();
+            }
+            else if (r == 1) {
+                openBank(0x300, 0xc, 0, 0);
+                openTagSegment(1, 0x1);
+                eventBuf.putInt(rand.nextInt());
+                closeStructure();
+                closeStructure();
+            }
+            return;
+        }
+
+        // Only split when there's enough data to keep the number of banks reasonable
+        int kids = bytes > 256 ? 1 + rand.nextInt(2) : 1;
+        for (int i = 0; i < kids; i++) {
+            openBank(0x10 + level, 0x10, 0, i);
+            addNested(level - 1, bytes/kids);
+            closeStructure();
+        }
+    }
+
+
+    /**
+     * Add a CODA-like built physics event of roughly the given size.
+     * @param bytes approximate event size in bytes.
+     */
+    private void addPhysicsEvent(int bytes) {
+        leafCount = 0;
+        timestamp += 1 + rand.nextInt(250);
+
+        // Built event, 1 event in this bank
+        openBank(PHYSICS_TAG, 0x10, 0, 1);
+
+          // Trigger bank of segments, num = # of rocs
+          openBank(TRIGGER_TAG, 0x20, 0, rocCount);
+
+            // Event number, timestamp, run number & type
+            openSegment(1, 0xa, 0);
+            eventBuf.putLong(eventNumber);
+            eventBuf.putLong(timestamp);
+            eventBuf.putLong((1L << 32) | 1L);
+            closeStructure();
+
+            // Event type (1 short, padded)
+            openSegment(1, 0x5, 2);
+            eventBuf.putShort((short) (1 + rand.nextInt(4)));
+            eventBuf.putShort((short) 0);
+            closeStructure();
+
+            // ROC specific data
+            for (int i = 0; i < rocCount; i++) {
+                openSegment(i + 1, 0x1, 0);
+                eventBuf.putInt((int) timestamp);
+                closeStructure();
+            }
+
+          closeStructure();
+
+          // Data banks from each ROC
+          int rocBytes = Math.max(4, (bytes - 64 - 4*rocCount)/rocCount);
+          for (int i = 0; i < rocCount; i++) {
+              openBank(i + 1, 0x10, 0, 1);
+              addNested(depth, rocBytes);
+              closeStructure();
+          }
+
+        closeStructure();
+
+        eventNumber++;
+
+        // Deliberately corrupt this event?
+        if (eventErrorRate > 0. && leafCount > 0 && rand.nextDouble() < eventErrorRate) {
+            injectEventError();
+        }
+    }
+
+
+    /**
+     * Add a CODA control event.
+     * @param tag tag of control event.
+     */
+    private void addControlEvent(int tag) {
+        int start = eventBuf.position();
+        openBank(tag, 0x1, 0, 0);
+        // Fixed time so the same seed always gives the same file
+        eventBuf.putInt(RUN_START_TIME + (int) (timestamp/250000000L));
+        eventBuf.putInt(1);
+        eventBuf.putInt(tag == END_TAG ? (int) (eventNumber - 1) : 0);
+        closeStructure();
+        endEvent(start);
+    }
+
+
+    /** Change a leaf of the current event so that it's no longer valid evio. */
+    private void injectEventError() {
+        int pos = leafPositions[rand.nextInt(leafCount)];
+        int word = eventBuf.getInt(pos + 4);
+
+        switch (rand.nextInt(3)) {
+            case ERR_BANK_LENGTH:
+                // Length extends past its parent
+                eventBuf.putInt(pos, eventBuf.getInt(pos) + 1 + rand.nextInt(8));
+                break;
+            case ERR_DATA_TYPE:
+                // Nonexistent data type
+                eventBuf.putInt(pos + 4, (word & 0xffff00ff) | (0x3f << 8));
+                break;
+            case ERR_PADDING:
+            default:
+                // Padding on data which can't have any
+                eventBuf.putInt(pos + 4, (word & 0xffff00ff) | (((3 << 6) | 0x1) << 8));
+        }
+        eventErrors++;
+    }
+
+
+    /**
+     * Finish an event. If the current record is full, write it.
+     * @param start position of event in eventBuf.
+     * @throws RuntimeException if error writing.
+     */
+    private void endEvent(int start) {
+        eventLengths[eventsInRecord++] = eventBuf.position() - start;
+
+        if (eventsInRecord >= recordEvents || eventBuf.position() >= recordBytes) {
+            try {
+                writeRecord(false);
+            }
+            catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+
+    //-----------------------------------------------------
+    // Writing records & blocks
+    //-----------------------------------------------------
+
+
+    /**
+     * Make sure the output buffer has room for the given number of bytes.
+     * @param bytes number of bytes needed.
+     * @throws Exception if error writing.
+     */
+    private void reserve(int bytes) throws Exception {
+        if (outBuf.remaining() < bytes) {
+            flush();
+        }
+
+        // Record bigger than buffer
+        if (outBuf.remaining() < bytes) {
+            outBuf = ByteBuffer.allocateDirect(bytes);
+            outBuf.order(order);
+        }
+    }
+
+
+    /**
+     * Write the output buffer to file.
+     * @throws Exception if error writing.
+     */
+    private void flush() throws Exception {
+        outBuf.flip();
+        while (outBuf.hasRemaining()) {
+            bytesWritten += channel.write(outBuf);
+        }
+        outBuf.clear();
+    }
+
+
+    /**
+     * Write the current events as one record (v6) or block (v4).
+     * @param isLast is this the last record/block?
+     * @throws Exception if error writing or compressing.
+     */
+    private void writeRecord(boolean isLast) throws Exception {
+        if (eventsInRecord == 0 && !isLast) return;
+
+        if (version == 4) {
+            writeBlock(isLast);
+        }
+        else {
+            // Trailer, not the last data record, gets the last record bit
+            writeRecordV6(false);
+        }
+
+        recordsWritten++;
+        recordNumber++;
+        eventsInRecord = 0;
+        eventBuf.clear();
+    }
+
+
+    /**
+     * Write the current events as one evio version 4 block.
+     * @param isLast is this the last block?
+     * @throws Exception if error writing.
+     */
+    private void writeBlock(boolean isLast) throws Exception {
+        int dataBytes = eventBuf.position();
+        reserve(32 + dataBytes);
+
+        int magic = 0xc0da0100;
+        int blockWords = 8 + dataBytes/4;
+        if (recordErrorRate > 0. && rand.nextDouble() < recordErrorRate) {
+            // Make the magic # or block length wrong
+            if (rand.nextBoolean()) magic = 0xc0da0200;
+            else blockWords += 1 + rand.nextInt(8);
+            recordErrors++;
+        }
+
+        outBuf.putInt(blockWords);
+        outBuf.putInt(recordNumber);
+        outBuf.putInt(8);
+        outBuf.putInt(eventsInRecord);
+        outBuf.putInt(0);
+        // version 4, last block bit, physics event type
+        outBuf.putInt(4 | (isLast ? 0x200 : 0) | (1 << 10));
+        outBuf.putInt(0);
+        outBuf.putInt(magic);
+
+        eventBuf.flip();
+        outBuf.put(eventBuf);
+    }
+
+
+    /**
+     * Write the current events as one evio version 6 record.
+     * @param isLast is this the last record?
+     * @throws Exception if error writing or compressing.
+     */
+    private void writeRecordV6(boolean isLast) throws Exception {
+        int dataBytes  = eventBuf.position();
+        int indexBytes = 4*eventsInRecord;
+
+        int magic = RecordHeader.HEADER_MAGIC;
+        int indexWord = indexBytes;
+        boolean badHeader = recordErrorRate > 0. && rand.nextDouble() < recordErrorRate;
+        if (badHeader) {
+            // Make the magic # or index length wrong
+            if (rand.nextBoolean()) magic = 0xc0da0200;
+            else indexWord += 4;
+            recordErrors++;
+        }
+
+        // version 6, last record bit, physics event type
+        int bitInfo = 6 | (isLast ? 0x200 : 0) | (1 << 10);
+
+        if (compression == COMPRESS_NONE) {
+            reserve(RecordHeader.HEADER_SIZE_BYTES + indexBytes + dataBytes);
+
+            outBuf.putInt(RecordHeader.HEADER_SIZE_WORDS + (indexBytes + dataBytes)/4);
+            outBuf.putInt(recordNumber);
+            outBuf.putInt(RecordHeader.HEADER_SIZE_WORDS);
+            outBuf.putInt(eventsInRecord);
+            outBuf.putInt(indexWord);
+            outBuf.putInt(bitInfo);
+            outBuf.putInt(0);
+            outBuf.putInt(magic);
+            outBuf.putInt(dataBytes);
+            outBuf.putInt(0);
+            outBuf.putLong(eventNumber);
+            outBuf.putLong(timestamp);
+
+            for (int i = 0; i < eventsInRecord; i++) {
+                outBuf.putInt(eventLengths[i]);
+            }
+            eventBuf.flip();
+            outBuf.put(eventBuf);
+            return;
+        }
+
+        // Index followed by events is what gets compressed, so put them together
+        int rawBytes = indexBytes + dataBytes;
+        ByteBuffer raw = rawBuf;
+        raw.clear();
+        for (int i = 0; i < eventsInRecord; i++) {
+            raw.putInt(eventLengths[i]);
+        }
+        raw.put(eventBuf.array(), 0, dataBytes);
+
+        int compBytes;
+        byte[] compressed;
+        if (compression == COMPRESS_LZ4) {
+            compBytes = Compressor.compressLZ4(raw.array(), 0, rawBytes,
+                                               compressBuf.array(), 0, compressBuf.capacity());
+            compressed = compressBuf.array();
+        }
+        else {
+            compressed = Compressor.compressGZIP(raw.array(), 0, rawBytes);
+            compBytes = compressed.length;
+        }
+
+        compressedIn  += rawBytes;
+        compressedOut += compBytes;
+
+        int pad = (4 - compBytes % 4) % 4;
+        int compWords = (compBytes + pad)/4;
+        bitInfo |= pad << 24;
+
+        reserve(RecordHeader.HEADER_SIZE_BYTES + 4*compWords);
+
+        outBuf.putInt(RecordHeader.HEADER_SIZE_WORDS + compWords);
+        outBuf.putInt(recordNumber);
+        outBuf.putInt(RecordHeader.HEADER_SIZE_WORDS);
+        outBuf.putInt(eventsInRecord);
+        outBuf.putInt(indexWord);
+        outBuf.putInt(bitInfo);
+        outBuf.putInt(0);
+        outBuf.putInt(magic);
+        outBuf.putInt(dataBytes);
+        outBuf.putInt((compression << 28) | compWords);
+        outBuf.putLong(eventNumber);
+        outBuf.putLong(timestamp);
+        outBuf.put(compressed, 0, compBytes);
+        for (int i = 0; i < pad; i++) {
+            outBuf.put((byte) 0);
+        }
+    }
+
+
+    /**
+     * Write the evio version 6 file header. The record count and
+     * trailer position are filled in when the file is finished.
+     * @throws Exception if error writing.
+     */
+    private void writeFileHeader() throws Exception {
+        reserve(FileHeader.HEADER_SIZE_BYTES);
+        outBuf.putInt(FileHeader.EVIO_FILE_UNIQUE_WORD);
+        outBuf.putInt(1);                             // file #
+        outBuf.putInt(FileHeader.HEADER_SIZE_WORDS);
+        outBuf.putInt(0);                             // record count, set later
+        outBuf.putInt(0);                             // index length
+        outBuf.putInt((1 << 28) | 6);                 // evio file, version 6
+        outBuf.putInt(0);                             // user header length
+        outBuf.putInt(FileHeader.HEADER_MAGIC);
+        outBuf.putLong(seed);                         // user register
+        outBuf.putLong(0L);                           // trailer position, set later
+        outBuf.putInt(0);
+        outBuf.putInt(0);
+    }
+
+
+    /** Position in file of trailer. */
+    private long trailerPosition;
+
+    /**
+     * Write the evio version 6 trailer, which is an empty record.
+     * @throws Exception if error writing.
+     */
+    private void writeTrailer() throws Exception {
+        trailerPosition = bytesWritten + outBuf.position();
+        reserve(RecordHeader.HEADER_SIZE_BYTES);
+        outBuf.putInt(RecordHeader.HEADER_SIZE_WORDS);
+        outBuf.putInt(recordNumber);
+        outBuf.putInt(RecordHeader.HEADER_SIZE_WORDS);
+        outBuf.putInt(0);
+        outBuf.putInt(0);
+        outBuf.putInt((3 << 28) | 0x200 | 6);         // trailer, last record, version 6
+        outBuf.putInt(0);
+        outBuf.putInt(RecordHeader.HEADER_MAGIC);
+        outBuf.putInt(0);
+        outBuf.putInt(0);
+        outBuf.putLong(0L);
+        outBuf.putLong(0L);
+    }
+
+
+    /**
+     * Now that all records are written, put record count and
+     * trailer position into the file header.
+     * @throws Exception if error writing.
+     */
+    private void patchFileHeader() throws Exception {
+        ByteBuffer buf = ByteBuffer.allocate(4);
+        buf.order(order);
+        buf.putInt(0, (int) recordsWritten);
+        channel.write(buf, FileHeader.RECORD_COUNT_OFFSET);
+
+        buf = ByteBuffer.allocate(8);
+        buf.order(order);
+        buf.putLong(0, trailerPosition);
+        channel.write(buf, FileHeader.TRAILER_POSITION_OFFSET);
+    }
+}